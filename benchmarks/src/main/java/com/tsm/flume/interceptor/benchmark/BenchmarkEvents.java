@@ -0,0 +1,72 @@
+package com.tsm.flume.interceptor.benchmark;
+
+import com.google.common.base.Charsets;
+import org.apache.flume.Event;
+import org.apache.flume.event.SimpleEvent;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Synthetic event bodies shared by the interceptor benchmarks.
+ * <p>
+ * Valid bodies follow the record layout used in the unit tests: a few short
+ * top-level fields followed by a padding field that brings the body to the
+ * requested size. Malformed bodies are the same text cut off before the end.
+ */
+public final class BenchmarkEvents {
+
+    public static final int BATCH_SIZE = 100;
+
+    private BenchmarkEvents() {
+    }
+
+    public static byte[] body(int size, boolean valid) {
+        StringBuilder sb = new StringBuilder(size + 64);
+        sb.append("{\"pageViewId\":\"4eae0122-052d-41ff-ac5c-120279891184\",")
+                .append("\"published\":\"2015-04-23T01:37:09+00:00\",")
+                .append("\"action\":\"pageview\",")
+                .append("\"params\":{\"v1\":\"1\",\"v2\":\"2\",\"v3\":\"3\"},")
+                .append("\"payload\":\"");
+        int i = 0;
+        while (sb.length() < size - 2) {
+            sb.append((char) ('a' + (i++ % 26)));
+        }
+        sb.append("\"}");
+        String text = sb.toString();
+        if (!valid) {
+            text = text.substring(0, text.length() / 2);
+        }
+        return text.getBytes(Charsets.UTF_8);
+    }
+
+    public static Event event(byte[] body) {
+        Event event = new SimpleEvent();
+        event.setBody(body);
+        event.setHeaders(new HashMap<String, String>());
+        return event;
+    }
+
+    public static List<Event> batch(byte[] body) {
+        List<Event> events = new ArrayList<Event>(BATCH_SIZE);
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            events.add(event(body));
+        }
+        return events;
+    }
+
+    /**
+     * Restores an event that a previous invocation may have rewritten, without allocating.
+     */
+    public static void reset(Event event, byte[] body) {
+        event.setBody(body);
+        event.getHeaders().clear();
+    }
+
+    public static void reset(List<Event> events, byte[] body) {
+        for (int i = 0; i < events.size(); i++) {
+            reset(events.get(i), body);
+        }
+    }
+}
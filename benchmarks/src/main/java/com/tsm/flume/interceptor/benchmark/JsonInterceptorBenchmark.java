@@ -0,0 +1,89 @@
+package com.tsm.flume.interceptor.benchmark;
+
+import com.tsm.flume.interceptor.json.JsonInterceptor;
+import org.apache.flume.Context;
+import org.apache.flume.Event;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Extracts three headers (a plain string, a timestamp through
+ * JsonInterceptorMillisSerializer and a nested field) with one interceptor.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class JsonInterceptorBenchmark {
+
+    @Param({"200", "4096", "1048576"})
+    public int bodySize;
+
+    @Param({"true", "false"})
+    public boolean valid;
+
+    @Param({"0", "4"})
+    public int shapeCacheSize;
+
+    @Param({"bytes", "gson", "gson-stream", "jackson"})
+    public String engine;
+
+    private byte[] body;
+    private JsonInterceptor interceptor;
+    private Event event;
+    private List<Event> events;
+
+    @Setup
+    public void setup() {
+        Context context = new Context();
+        context.put("shapeCacheSize", Integer.toString(shapeCacheSize));
+        context.put("engine", engine);
+        context.put("paths", "id ts v2");
+        context.put("paths.id.name", "id");
+        context.put("paths.id.jsonpath", "$.pageViewId");
+        context.put("paths.ts.name", "timestamp");
+        context.put("paths.ts.jsonpath", "$.published");
+        context.put("paths.ts.serializers", "dt");
+        context.put("paths.ts.serializers.dt.type", "com.tsm.flume.interceptor.json.JsonInterceptorMillisSerializer");
+        context.put("paths.ts.serializers.dt.pattern", "yyyy-MM-dd'T'HH:mm:ssZ");
+        context.put("paths.v2.name", "v2");
+        context.put("paths.v2.jsonpath", "$.params.v2");
+
+        JsonInterceptor.Builder builder = new JsonInterceptor.Builder();
+        builder.configure(context);
+        interceptor = builder.build();
+        interceptor.initialize();
+
+        body = BenchmarkEvents.body(bodySize, valid);
+        event = BenchmarkEvents.event(body);
+        events = BenchmarkEvents.batch(body);
+    }
+
+    @Benchmark
+    public Event single() {
+        BenchmarkEvents.reset(event, body);
+        return interceptor.intercept(event);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BenchmarkEvents.BATCH_SIZE)
+    public List<Event> batch() {
+        BenchmarkEvents.reset(events, body);
+        return interceptor.intercept(events);
+    }
+}
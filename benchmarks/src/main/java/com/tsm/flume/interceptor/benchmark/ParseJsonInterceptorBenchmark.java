@@ -0,0 +1,94 @@
+package com.tsm.flume.interceptor.benchmark;
+
+import com.tsm.flume.interceptor.parsejson.ParseJsonInterceptor;
+import org.apache.flume.Context;
+import org.apache.flume.Event;
+import org.apache.flume.interceptor.Interceptor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Adds a header value to the body. Malformed bodies make the interceptor
+ * throw; the exception is part of what is measured. A batch stops at its
+ * first malformed event, so batch scores are only per-event for valid bodies.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ParseJsonInterceptorBenchmark {
+
+    @Param({"200", "4096", "1048576"})
+    public int bodySize;
+
+    @Param({"true", "false"})
+    public boolean valid;
+
+    @Param({"bytes", "gson", "gson-stream", "jackson"})
+    public String engine;
+
+    private byte[] body;
+    private Interceptor interceptor;
+    private Event event;
+    private List<Event> events;
+
+    @Setup
+    public void setup() {
+        Context context = new Context();
+        context.put("headerName", "host");
+        context.put("useHeaderName", "true");
+        context.put("fixedValue", "unknown");
+        context.put("key", "host");
+        context.put("engine", engine);
+
+        ParseJsonInterceptor.Builder builder = new ParseJsonInterceptor.Builder();
+        builder.configure(context);
+        interceptor = builder.build();
+        interceptor.initialize();
+
+        body = BenchmarkEvents.body(bodySize, valid);
+        event = BenchmarkEvents.event(body);
+        events = BenchmarkEvents.batch(body);
+    }
+
+    @Benchmark
+    public void single(Blackhole blackhole) {
+        BenchmarkEvents.reset(event, body);
+        event.getHeaders().put("host", "agent-01");
+        try {
+            blackhole.consume(interceptor.intercept(event));
+        } catch (RuntimeException e) {
+            blackhole.consume(e);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BenchmarkEvents.BATCH_SIZE)
+    public void batch(Blackhole blackhole) {
+        BenchmarkEvents.reset(events, body);
+        for (int i = 0; i < events.size(); i++) {
+            events.get(i).getHeaders().put("host", "agent-01");
+        }
+        try {
+            blackhole.consume(interceptor.intercept(events));
+        } catch (RuntimeException e) {
+            blackhole.consume(e);
+        }
+    }
+}
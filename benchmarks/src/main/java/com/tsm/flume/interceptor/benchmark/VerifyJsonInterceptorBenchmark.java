@@ -0,0 +1,74 @@
+package com.tsm.flume.interceptor.benchmark;
+
+import com.tsm.flume.interceptor.verifyjson.VerifyJsonInterceptor;
+import org.apache.flume.Context;
+import org.apache.flume.Event;
+import org.apache.flume.interceptor.Interceptor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Validates bodies; malformed bodies are wrapped into a new JSON object.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class VerifyJsonInterceptorBenchmark {
+
+    @Param({"200", "4096", "1048576"})
+    public int bodySize;
+
+    @Param({"true", "false"})
+    public boolean valid;
+
+    @Param({"bytes", "gson", "gson-stream", "jackson"})
+    public String engine;
+
+    private byte[] body;
+    private Interceptor interceptor;
+    private Event event;
+    private List<Event> events;
+
+    @Setup
+    public void setup() {
+        VerifyJsonInterceptor.Builder builder = new VerifyJsonInterceptor.Builder();
+        Context context = new Context();
+        context.put("engine", engine);
+        builder.configure(context);
+        interceptor = builder.build();
+        interceptor.initialize();
+
+        body = BenchmarkEvents.body(bodySize, valid);
+        event = BenchmarkEvents.event(body);
+        events = BenchmarkEvents.batch(body);
+    }
+
+    @Benchmark
+    public Event single() {
+        BenchmarkEvents.reset(event, body);
+        return interceptor.intercept(event);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BenchmarkEvents.BATCH_SIZE)
+    public List<Event> batch() {
+        BenchmarkEvents.reset(events, body);
+        return interceptor.intercept(events);
+    }
+}
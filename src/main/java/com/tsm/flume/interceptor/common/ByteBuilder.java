@@ -0,0 +1,123 @@
+package com.tsm.flume.interceptor.common;
+
+import java.util.Arrays;
+
+/**
+ * Growable byte buffer for building new bodies, with one reusable instance
+ * per thread.
+ * <p>
+ * Rewrites write into the thread's builder from {@link #pooled(int)} and give
+ * the event a single exactly sized copy with {@link #toByteArray()}, instead of
+ * going through intermediate strings and arrays. The pooled builder grows to
+ * the largest body seen by its thread; a builder that grew past
+ * {@link #MAX_POOLED} bytes is dropped the next time it is asked for, so one
+ * huge event does not pin its memory. Requests for more than that are served
+ * by a new builder that is not pooled.
+ * <p>
+ * A pooled builder must not be kept after the call that took it, nor be taken
+ * again while in use on the same thread.
+ */
+public final class ByteBuilder {
+
+    public static final int MAX_POOLED = 1 << 20;
+    static final int INITIAL_CAPACITY = 1024;
+
+    private static final ThreadLocal<ByteBuilder> POOL = new ThreadLocal<ByteBuilder>();
+
+    private byte[] buf;
+    private int size;
+
+    public ByteBuilder(int capacity) {
+        this.buf = new byte[Math.max(capacity, 16)];
+    }
+
+    /**
+     * @param expectedSize expected number of bytes, used to size the buffer up front
+     * @return an empty builder, this thread's pooled one unless <code>expectedSize</code>
+     * is above {@link #MAX_POOLED}
+     */
+    public static ByteBuilder pooled(int expectedSize) {
+        if (expectedSize > MAX_POOLED) {
+            return new ByteBuilder(expectedSize);
+        }
+        ByteBuilder builder = POOL.get();
+        if (builder == null || builder.buf.length > MAX_POOLED) {
+            builder = new ByteBuilder(Math.max(INITIAL_CAPACITY, Integer.highestOneBit(Math.max(expectedSize, 1) - 1) << 1));
+            POOL.set(builder);
+        }
+        builder.size = 0;
+        builder.ensure(expectedSize);
+        return builder;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int capacity() {
+        return buf.length;
+    }
+
+    /**
+     * Discards the bytes after <code>size</code>.
+     */
+    public void truncate(int size) {
+        if (size < 0 || size > this.size) {
+            throw new IndexOutOfBoundsException("size " + size + " of " + this.size);
+        }
+        this.size = size;
+    }
+
+    public byte byteAt(int index) {
+        if (index >= size) {
+            throw new IndexOutOfBoundsException("index " + index + " of " + size);
+        }
+        return buf[index];
+    }
+
+    public ByteBuilder append(byte b) {
+        ensure(1);
+        buf[size++] = b;
+        return this;
+    }
+
+    public ByteBuilder append(byte[] b) {
+        return append(b, 0, b.length);
+    }
+
+    /**
+     * Appends <code>b[from, to)</code>.
+     */
+    public ByteBuilder append(byte[] b, int from, int to) {
+        int n = to - from;
+        ensure(n);
+        System.arraycopy(b, from, buf, size, n);
+        size += n;
+        return this;
+    }
+
+    /**
+     * Appends the characters of an ASCII string.
+     */
+    public ByteBuilder appendAscii(String s) {
+        int n = s.length();
+        ensure(n);
+        for (int i = 0; i < n; i++) {
+            buf[size++] = (byte) s.charAt(i);
+        }
+        return this;
+    }
+
+    /**
+     * @return a copy of the content, exactly sized
+     */
+    public byte[] toByteArray() {
+        return Arrays.copyOf(buf, size);
+    }
+
+    private void ensure(int n) {
+        if (size + n > buf.length) {
+            buf = Arrays.copyOf(buf, Math.max(buf.length * 2, size + n));
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package com.tsm.flume.interceptor.common;
+
+/**
+ * Fast, non-cryptographic 64-bit hash of byte ranges.
+ * <p>
+ * The bytes are read eight at a time in little-endian order and mixed with
+ * multiply-rotate rounds; the result goes through the MurmurHash3 finalizer
+ * so that every input bit affects every output bit. The values are stable
+ * across JVMs and releases, so they can be used to route events.
+ */
+public final class ByteHash {
+
+    private static final long P1 = 0x9E3779B185EBCA87L;
+    private static final long P2 = 0xC2B2AE3D27D4EB4FL;
+    private static final long P3 = 0x165667B19E3779F9L;
+
+    private ByteHash() {
+    }
+
+    public static long hash(byte[] b, int from, int to) {
+        return hash(b, from, to, 0);
+    }
+
+    /**
+     * @param seed combined into the hash, for example the hash of the previous field
+     */
+    public static long hash(byte[] b, int from, int to, long seed) {
+        long h = seed + P3 + (to - from);
+        int i = from;
+        for (; i + 8 <= to; i += 8) {
+            h ^= round(getLong(b, i));
+            h = Long.rotateLeft(h, 27) * P1 + P2;
+        }
+        if (i + 4 <= to) {
+            h ^= (getInt(b, i) & 0xFFFFFFFFL) * P1;
+            h = Long.rotateLeft(h, 23) * P2 + P3;
+            i += 4;
+        }
+        for (; i < to; i++) {
+            h ^= (b[i] & 0xFFL) * P3;
+            h = Long.rotateLeft(h, 11) * P1;
+        }
+        return mix(h);
+    }
+
+    /**
+     * MurmurHash3 64-bit finalizer.
+     */
+    public static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    /**
+     * Maps a hash onto <code>[0, n)</code> with a multiply and a shift instead of a division.
+     */
+    public static int reduce(long hash, int n) {
+        return (int) (((hash >>> 32) * n) >>> 32);
+    }
+
+    private static long round(long value) {
+        return Long.rotateLeft(value * P2, 31) * P1;
+    }
+
+    private static long getLong(byte[] b, int i) {
+        return (b[i] & 0xFFL)
+                | (b[i + 1] & 0xFFL) << 8
+                | (b[i + 2] & 0xFFL) << 16
+                | (b[i + 3] & 0xFFL) << 24
+                | (b[i + 4] & 0xFFL) << 32
+                | (b[i + 5] & 0xFFL) << 40
+                | (b[i + 6] & 0xFFL) << 48
+                | (b[i + 7] & 0xFFL) << 56;
+    }
+
+    private static int getInt(byte[] b, int i) {
+        return (b[i] & 0xFF)
+                | (b[i + 1] & 0xFF) << 8
+                | (b[i + 2] & 0xFF) << 16
+                | (b[i + 3] & 0xFF) << 24;
+    }
+}
@@ -0,0 +1,211 @@
+package com.tsm.flume.interceptor.common;
+
+import java.nio.charset.Charset;
+import java.util.List;
+
+/**
+ * {@link JsonEngine} that works directly on the body bytes: objects are checked
+ * by a strict {@link JsonValidator} pass, members are spliced into the
+ * original bytes and paths are located by a {@link JsonByteMatcher}. Only
+ * ASCII-compatible charsets are supported.
+ * <p>
+ * Bodies the splice cannot handle (lenient JSON, duplicate keys) are passed to
+ * a fallback engine, so that they get the same result as before.
+ * <p>
+ * With a {@link ParseCache}, validation results and top-level member indexes
+ * are shared with the other interceptors of the chain, and spliced bodies are
+ * recorded as valid objects for the next one.
+ */
+public final class ByteJsonEngine implements JsonEngine {
+
+    private final JsonEngine fallback;
+    private final ParseCache cache;
+
+    public ByteJsonEngine(JsonEngine fallback) {
+        this(fallback, null);
+    }
+
+    /**
+     * @param cache shares parse results between interceptors, or null
+     */
+    public ByteJsonEngine(JsonEngine fallback, ParseCache cache) {
+        this.fallback = fallback;
+        this.cache = cache;
+    }
+
+    /**
+     * @return the cache this engine shares parse results through, or null
+     */
+    public ParseCache getParseCache() {
+        return cache;
+    }
+
+    @Override
+    public String getName() {
+        return JsonEngines.BYTES;
+    }
+
+    @Override
+    public boolean supports(Charset charset) {
+        return JsonValidator.supports(charset);
+    }
+
+    @Override
+    public boolean isObject(byte[] body, CharsetTranscoder transcoder) {
+        return validateObject(body) == JsonValidator.VALID;
+    }
+
+    private int validateObject(byte[] body) {
+        return cache != null ? cache.validateObject(body) : JsonValidator.validate(body, 0, body.length, true);
+    }
+
+    @Override
+    public MemberSetter newMemberSetter(String key, CharsetTranscoder transcoder) {
+        return new Splicer(key, transcoder, fallback.newMemberSetter(key, transcoder), cache);
+    }
+
+    @Override
+    public Extractor newExtractor(List<JsonBytePath> paths) {
+        final JsonByteMatcher matcher = new JsonByteMatcher(paths);
+        return new Extractor() {
+            @Override
+            public boolean extract(byte[] body, String[] values, RuntimeException[] errors) {
+                int[] ranges = matcher.newRanges();
+                int[] members = cache != null ? cache.members(body) : null;
+                int status = members != null
+                        ? matcher.match(body, members, ranges)
+                        : matcher.match(body, 0, body.length, ranges);
+                if (status != JsonByteMatcher.OK) {
+                    return false;
+                }
+                for (int i = 0; i < matcher.size(); i++) {
+                    values[i] = null;
+                    errors[i] = null;
+                    if (ranges[i * 2] < 0) {
+                        continue;
+                    }
+                    try {
+                        values[i] = JsonBytes.scalarToString(body, ranges[i * 2], ranges[i * 2 + 1]);
+                    } catch (RuntimeException e) {
+                        errors[i] = e;
+                    }
+                }
+                return true;
+            }
+        };
+    }
+
+    /**
+     * Sets <code>key</code> directly in the source bytes: an existing top-level
+     * value is replaced in place, otherwise the member is inserted just before
+     * the closing brace. The rest of the body is copied unchanged. The new body
+     * is built in the thread's {@link ByteBuilder} and copied out once.
+     */
+    private static final class Splicer implements MemberSetter {
+        private final String key;
+        private final CharsetTranscoder transcoder;
+        private final MemberSetter fallback;
+        private final ParseCache cache;
+        private final Charset source;
+        private final byte[] keyBytes;
+        private final byte[] memberPrefix;
+
+        Splicer(String key, CharsetTranscoder transcoder, MemberSetter fallback, ParseCache cache) {
+            this.key = key;
+            this.transcoder = transcoder;
+            this.fallback = fallback;
+            this.cache = cache;
+            this.source = transcoder.getSource();
+            this.keyBytes = key.getBytes(source);
+            this.memberPrefix = (JsonBytes.quote(key) + ":").getBytes(source);
+        }
+
+        @Override
+        public byte[] set(byte[] body, String value) {
+            byte[] spliced = null;
+            if (cache != null) {
+                int[] members = cache.members(body);
+                if (members != null) {
+                    int[] member = new int[3];
+                    spliced = splice(body, value, findMember(body, members, member), member);
+                }
+            } else if (JsonValidator.validate(body, 0, body.length, true) == JsonValidator.VALID) {
+                spliced = splice(body, value);
+            }
+            if (spliced == null) {
+                return fallback.set(body, value);
+            }
+            byte[] result = transcoder.transcode(spliced);
+            if (cache != null && result == spliced) {
+                cache.putValidObject(result);
+            }
+            return result;
+        }
+
+        /**
+         * Same as {@link JsonBytes#findMember} over the {@link ParseCache} index of
+         * a valid object.
+         */
+        private int findMember(byte[] b, int[] members, int[] out) {
+            out[0] = -1;
+            out[1] = -1;
+            out[2] = members[1] - 1;
+            int found = 0;
+            for (int m = 2; m < members.length; m += 4) {
+                int from = members[m] + 1;
+                int to = members[m + 1] - 1;
+                boolean matches = JsonBytes.hasEscape(b, from, to)
+                        ? key.equals(JsonBytes.decodeString(b, from, to, source))
+                        : JsonBytes.regionEquals(b, from, to, keyBytes);
+                if (matches && found++ == 0) {
+                    out[0] = members[m + 2];
+                    out[1] = members[m + 3];
+                }
+            }
+            return found;
+        }
+
+        /**
+         * @return the new body in the source charset, or null if it has to go through the fallback
+         */
+        private byte[] splice(byte[] content, String keyValue) {
+            int[] member = new int[3];
+            int start = JsonBytes.skipWhitespace(content, 0, content.length);
+            int found = JsonBytes.findMember(content, start, content.length, key, keyBytes, source, member);
+            return splice(content, keyValue, found, member);
+        }
+
+        private byte[] splice(byte[] content, String keyValue, int found, int[] member) {
+            if (found < 0 || found > 1) {
+                // duplicate keys: Gson keeps a single member, let it decide which
+                return null;
+            }
+            int valueLength = keyValue == null ? 4 : keyValue.length() + 2;
+            ByteBuilder out = ByteBuilder.pooled(content.length + memberPrefix.length + valueLength + 1);
+
+            if (found == 1) {
+                out.append(content, 0, member[0]);
+                JsonBytes.quote(out, keyValue, source);
+                out.append(content, member[1], content.length);
+                return out.toByteArray();
+            }
+
+            int close = member[2];
+            out.append(content, 0, close);
+            if (content[skipWhitespaceBackwards(content, close - 1)] != '{') {
+                out.append((byte) ',');
+            }
+            out.append(memberPrefix);
+            JsonBytes.quote(out, keyValue, source);
+            out.append(content, close, content.length);
+            return out.toByteArray();
+        }
+
+        private static int skipWhitespaceBackwards(byte[] b, int i) {
+            while (i > 0 && JsonBytes.isWhitespace(b[i])) {
+                i--;
+            }
+            return i;
+        }
+    }
+}
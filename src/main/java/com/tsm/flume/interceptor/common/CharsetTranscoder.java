@@ -0,0 +1,256 @@
+package com.tsm.flume.interceptor.common;
+
+import com.google.common.base.Charsets;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.util.Arrays;
+
+/**
+ * Decodes bodies from a source charset and encodes text to a target charset,
+ * with the same results as <code>new String(bytes, source)</code> and
+ * <code>text.getBytes(target)</code> (malformed and unmappable input is
+ * replaced).
+ * <p>
+ * Both charsets are resolved once. Pure ASCII input in ASCII-compatible
+ * charsets is converted without a codec, and {@link #transcode(byte[])}
+ * returns such bodies as they are. Other input goes through a per-thread
+ * {@link CharsetDecoder}/{@link CharsetEncoder} pair whose buffers are kept
+ * between calls, up to {@link #MAX_POOLED} units.
+ */
+public final class CharsetTranscoder {
+
+    public static final int MAX_POOLED = 1 << 16;
+
+    private final Charset source;
+    private final Charset target;
+    private final boolean sameCharset;
+    private final boolean asciiSource;
+    private final boolean asciiTarget;
+    private final ThreadLocal<Codec> codecs = new ThreadLocal<Codec>() {
+        @Override
+        protected Codec initialValue() {
+            return new Codec();
+        }
+    };
+
+    public CharsetTranscoder(Charset source, Charset target) {
+        this.source = source;
+        this.target = target;
+        this.sameCharset = source.equals(target);
+        this.asciiSource = keepsAscii(source);
+        this.asciiTarget = keepsAscii(target);
+    }
+
+    public CharsetTranscoder(String source, String target) {
+        this(Charset.forName(source), Charset.forName(target));
+    }
+
+    public Charset getSource() {
+        return source;
+    }
+
+    public Charset getTarget() {
+        return target;
+    }
+
+    /**
+     * @return true if every byte below 0x80 stands for the ASCII character itself
+     */
+    public static boolean isAsciiCompatible(Charset charset) {
+        String name = charset.name();
+        return name.equals("UTF-8") || name.equals("US-ASCII") || name.startsWith("ISO-8859-")
+                || name.startsWith("windows-125") || name.equals("EUC-JP") || name.equals("EUC-KR")
+                || name.equals("GB2312");
+    }
+
+    /**
+     * @return true if pure ASCII text has the same bytes in the charset as in ASCII
+     */
+    static boolean keepsAscii(Charset charset) {
+        if (isAsciiCompatible(charset)) {
+            return true;
+        }
+        if (!charset.canEncode()) {
+            return false;
+        }
+        byte[] ascii = new byte[128];
+        for (int i = 0; i < ascii.length; i++) {
+            ascii[i] = (byte) i;
+        }
+        String text = new String(ascii, Charsets.ISO_8859_1);
+        return text.equals(new String(ascii, charset)) && Arrays.equals(ascii, text.getBytes(charset));
+    }
+
+    /**
+     * @return true if no byte in <code>b[from, to)</code> has its high bit set
+     */
+    public static boolean isAscii(byte[] b, int from, int to) {
+        int bits = 0;
+        int i = from;
+        for (; i + 8 <= to; i += 8) {
+            bits |= b[i] | b[i + 1] | b[i + 2] | b[i + 3] | b[i + 4] | b[i + 5] | b[i + 6] | b[i + 7];
+            if (bits < 0) {
+                return false;
+            }
+        }
+        for (; i < to; i++) {
+            bits |= b[i];
+        }
+        return bits >= 0;
+    }
+
+    private static boolean isAscii(String text) {
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) >= 0x80) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public String decode(byte[] b) {
+        return decode(b, 0, b.length);
+    }
+
+    /**
+     * Decodes <code>b[from, to)</code> from the source charset.
+     */
+    public String decode(byte[] b, int from, int to) {
+        if (asciiSource && isAscii(b, from, to)) {
+            return new String(b, from, to - from, Charsets.ISO_8859_1);
+        }
+        return codecs.get().decode(b, from, to);
+    }
+
+    /**
+     * Encodes text to the target charset.
+     */
+    public byte[] encode(String text) {
+        if (asciiTarget && isAscii(text)) {
+            return text.getBytes(Charsets.ISO_8859_1);
+        }
+        return codecs.get().encode(text);
+    }
+
+    /**
+     * Converts a body from the source to the target charset.
+     *
+     * @return <code>b</code> itself when the conversion would not change it
+     */
+    public byte[] transcode(byte[] b) {
+        if (sameCharset || (asciiSource && asciiTarget && isAscii(b, 0, b.length))) {
+            return b;
+        }
+        return encode(decode(b));
+    }
+
+    /**
+     * Per-thread codecs and the buffers they write into.
+     */
+    private final class Codec {
+        final CharsetDecoder decoder = source.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        final CharsetEncoder encoder = target.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        CharBuffer chars = CharBuffer.allocate(256);
+        ByteBuffer bytes = ByteBuffer.allocate(256);
+
+        String decode(byte[] b, int from, int to) {
+            ByteBuffer in = ByteBuffer.wrap(b, from, to - from);
+            CharBuffer out = chars(Math.max(1, (int) ((to - from) * (double) decoder.maxCharsPerByte())));
+            decoder.reset();
+            CoderResult result = decoder.decode(in, out, true);
+            if (!result.isOverflow()) {
+                result = decoder.flush(out);
+            }
+            while (result.isOverflow()) {
+                out = grow(out);
+                result = decoder.decode(in, out, true);
+                if (!result.isOverflow()) {
+                    result = decoder.flush(out);
+                }
+            }
+            String text = new String(out.array(), 0, out.position());
+            release(out);
+            return text;
+        }
+
+        byte[] encode(String text) {
+            CharBuffer in = CharBuffer.wrap(text);
+            ByteBuffer out = bytes(Math.max(1, (int) (text.length() * (double) encoder.maxBytesPerChar())));
+            encoder.reset();
+            CoderResult result = encoder.encode(in, out, true);
+            if (!result.isOverflow()) {
+                result = encoder.flush(out);
+            }
+            while (result.isOverflow()) {
+                out = grow(out);
+                result = encoder.encode(in, out, true);
+                if (!result.isOverflow()) {
+                    result = encoder.flush(out);
+                }
+            }
+            byte[] encoded = Arrays.copyOf(out.array(), out.position());
+            release(out);
+            return encoded;
+        }
+
+        private CharBuffer chars(int capacity) {
+            if (chars.capacity() >= capacity) {
+                chars.clear();
+                return chars;
+            }
+            CharBuffer buffer = CharBuffer.allocate(capacity);
+            if (capacity <= MAX_POOLED) {
+                chars = buffer;
+            }
+            return buffer;
+        }
+
+        private ByteBuffer bytes(int capacity) {
+            if (bytes.capacity() >= capacity) {
+                bytes.clear();
+                return bytes;
+            }
+            ByteBuffer buffer = ByteBuffer.allocate(capacity);
+            if (capacity <= MAX_POOLED) {
+                bytes = buffer;
+            }
+            return buffer;
+        }
+
+        private CharBuffer grow(CharBuffer buffer) {
+            CharBuffer grown = CharBuffer.allocate(buffer.capacity() * 2);
+            buffer.flip();
+            grown.put(buffer);
+            return grown;
+        }
+
+        private ByteBuffer grow(ByteBuffer buffer) {
+            ByteBuffer grown = ByteBuffer.allocate(buffer.capacity() * 2);
+            buffer.flip();
+            grown.put(buffer);
+            return grown;
+        }
+
+        private void release(CharBuffer buffer) {
+            if (buffer.capacity() <= MAX_POOLED && buffer.capacity() > chars.capacity()) {
+                chars = buffer;
+            }
+        }
+
+        private void release(ByteBuffer buffer) {
+            if (buffer.capacity() <= MAX_POOLED && buffer.capacity() > bytes.capacity()) {
+                bytes = buffer;
+            }
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package com.tsm.flume.interceptor.common;
+
+import com.google.common.base.Preconditions;
+import org.apache.flume.Context;
+import org.apache.flume.Event;
+import org.apache.flume.FlumeException;
+import org.slf4j.Logger;
+
+import java.util.Locale;
+
+/**
+ * What an interceptor does with an event it could not process.
+ * <p>
+ * Properties:<p>
+ * onFailure: <code>pass</code> (forward the event as it is), <code>tag</code>
+ * (forward it with the failure reason in a header), <code>drop</code> (remove
+ * it from the batch) or <code>fail</code> (throw, which fails the whole
+ * batch)<p>
+ * failureHeader: header that <code>tag</code> writes the reason to
+ * (default is "interceptor_error")<p>
+ * failureLogInterval: smallest interval in milliseconds between two failure
+ * warnings; the others are only counted (default is 10000)<p>
+ */
+public final class FailurePolicy {
+
+    public static final String CONFIG_ON_FAILURE = "onFailure";
+    public static final String CONFIG_FAILURE_HEADER = "failureHeader";
+    public static final String DEFAULT_FAILURE_HEADER = "interceptor_error";
+    public static final String CONFIG_LOG_INTERVAL = "failureLogInterval";
+
+    public enum Action {
+        PASS, TAG, DROP, FAIL
+    }
+
+    private final Action action;
+    private final String header;
+    private final SampledLogger log;
+
+    public FailurePolicy(Action action, String header, SampledLogger log) {
+        Preconditions.checkArgument(action != null, "onFailure was misconfigured");
+        Preconditions.checkArgument(action != Action.TAG || header != null, "failureHeader was misconfigured");
+        this.action = action;
+        this.header = header;
+        this.log = log;
+    }
+
+    /**
+     * @param defaultAction the action used when <code>onFailure</code> is not set
+     */
+    public static FailurePolicy configure(Context context, Action defaultAction, Logger logger) {
+        String actionStr = context.getString(CONFIG_ON_FAILURE, defaultAction.name());
+        Action action;
+        try {
+            action = Action.valueOf(actionStr.trim().toUpperCase(Locale.ENGLISH));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException(CONFIG_ON_FAILURE + " must be pass, tag, drop or fail: " + actionStr);
+        }
+        return new FailurePolicy(action,
+                context.getString(CONFIG_FAILURE_HEADER, DEFAULT_FAILURE_HEADER),
+                new SampledLogger(logger, context.getLong(CONFIG_LOG_INTERVAL, SampledLogger.DEFAULT_INTERVAL_MILLIS)));
+    }
+
+    public Action getAction() {
+        return action;
+    }
+
+    public String getHeader() {
+        return header;
+    }
+
+    /**
+     * Applies the policy to a failed event.
+     *
+     * @param reason short, header friendly failure reason
+     * @param counter counts dropped events
+     * @return the event to forward, or null if it is dropped
+     * @throws FlumeException (or <code>cause</code> itself) if the policy is <code>fail</code>
+     */
+    public Event onFailure(Event event, String reason, Throwable cause, InterceptorCounter counter) {
+        switch (action) {
+            case FAIL:
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                throw new FlumeException("Event failed: " + reason, cause);
+            case DROP:
+                counter.incrementDropped();
+                log.warn("Dropping event due to: {}.", reason, cause);
+                return null;
+            case TAG:
+                event.getHeaders().put(header, reason);
+                log.warn("Tagging event due to: {}.", reason, cause);
+                return event;
+            default:
+                log.warn("Skipping event due to: {}.", reason, cause);
+                return event;
+        }
+    }
+}
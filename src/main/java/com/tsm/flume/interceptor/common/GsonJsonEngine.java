@@ -0,0 +1,96 @@
+package com.tsm.flume.interceptor.common;
+
+import com.google.common.base.Charsets;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+
+import java.nio.charset.Charset;
+import java.util.List;
+
+/**
+ * {@link JsonEngine} that parses every body into a lenient Gson tree.
+ */
+public final class GsonJsonEngine implements JsonEngine {
+
+    @Override
+    public String getName() {
+        return JsonEngines.GSON;
+    }
+
+    @Override
+    public boolean supports(Charset charset) {
+        return true;
+    }
+
+    @Override
+    public boolean isObject(byte[] body, CharsetTranscoder transcoder) {
+        JsonElement jsonElement;
+        try {
+            jsonElement = new JsonParser().parse(transcoder.decode(body));
+        } catch (RuntimeException e) {
+            return false;
+        }
+        return jsonElement != null && jsonElement.isJsonObject();
+    }
+
+    @Override
+    public MemberSetter newMemberSetter(final String key, final CharsetTranscoder transcoder) {
+        return new MemberSetter() {
+            @Override
+            public byte[] set(byte[] body, String value) {
+                JsonObject jsonObject = new JsonParser().parse(transcoder.decode(body)).getAsJsonObject();
+                jsonObject.addProperty(key, value);
+                return transcoder.encode(jsonObject.toString());
+            }
+        };
+    }
+
+    @Override
+    public Extractor newExtractor(List<JsonBytePath> paths) {
+        final JsonBytePath[] compiled = paths.toArray(new JsonBytePath[0]);
+        return new Extractor() {
+            @Override
+            public boolean extract(byte[] body, String[] values, RuntimeException[] errors) {
+                JsonElement root;
+                try {
+                    root = new JsonParser().parse(new String(body, Charsets.UTF_8));
+                } catch (JsonParseException e) {
+                    return false;
+                }
+                for (int i = 0; i < compiled.length; i++) {
+                    values[i] = null;
+                    errors[i] = null;
+                    JsonElement element = find(root, compiled[i]);
+                    if (element == null || element.isJsonNull()) {
+                        continue;
+                    }
+                    if (element.isJsonPrimitive()) {
+                        values[i] = element.getAsString();
+                    } else {
+                        errors[i] = new ClassCastException("Value is not a scalar");
+                    }
+                }
+                return true;
+            }
+        };
+    }
+
+    /**
+     * @return the element at the path, or null if it does not exist
+     */
+    private static JsonElement find(JsonElement element, JsonBytePath path) {
+        for (int i = 0; i < path.size() && element != null; i++) {
+            Object segment = path.segment(i);
+            if (segment instanceof Integer) {
+                int index = (Integer) segment;
+                element = element.isJsonArray() && index < element.getAsJsonArray().size()
+                        ? element.getAsJsonArray().get(index) : null;
+            } else {
+                element = element.isJsonObject() ? element.getAsJsonObject().get((String) segment) : null;
+            }
+        }
+        return element;
+    }
+}
@@ -0,0 +1,339 @@
+package com.tsm.flume.interceptor.common;
+
+import com.google.common.base.Charsets;
+import com.google.gson.JsonIOException;
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import com.google.gson.stream.MalformedJsonException;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * {@link JsonEngine} that pulls tokens from a lenient Gson {@link JsonReader}
+ * without building a tree.
+ * <p>
+ * Objects are checked by skipping over the body, members are set by copying
+ * tokens to a {@link JsonWriter}, and paths are read by entering only the
+ * members and elements that lead to one of them, stopping once all are found.
+ * The output is the same as the Gson tree engine's, except that members with
+ * duplicate names other than the one being set are all kept.
+ */
+public final class GsonStreamJsonEngine implements JsonEngine {
+
+    @Override
+    public String getName() {
+        return JsonEngines.GSON_STREAM;
+    }
+
+    @Override
+    public boolean supports(Charset charset) {
+        return true;
+    }
+
+    @Override
+    public boolean isObject(byte[] body, CharsetTranscoder transcoder) {
+        JsonReader reader = reader(transcoder.decode(body));
+        try {
+            if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+                return false;
+            }
+            reader.skipValue();
+            return reader.peek() == JsonToken.END_DOCUMENT;
+        } catch (IOException e) {
+            return false;
+        } catch (RuntimeException e) {
+            return false;
+        }
+    }
+
+    @Override
+    public MemberSetter newMemberSetter(final String key, final CharsetTranscoder transcoder) {
+        return new MemberSetter() {
+            @Override
+            public byte[] set(byte[] body, String value) {
+                String text = transcoder.decode(body);
+                try {
+                    return transcoder.encode(setMember(reader(text), text.length(), key, value));
+                } catch (MalformedJsonException e) {
+                    throw new JsonSyntaxException(e);
+                } catch (IOException e) {
+                    throw new JsonIOException(e);
+                }
+            }
+        };
+    }
+
+    private static String setMember(JsonReader reader, int length, String key, String value) throws IOException {
+        if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+            throw new IllegalStateException("Not a JSON Object");
+        }
+        StringWriter out = new StringWriter(length + key.length() + 16);
+        JsonWriter writer = new JsonWriter(out);
+        writer.setLenient(true);
+        reader.beginObject();
+        writer.beginObject();
+        boolean written = false;
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (name.equals(key)) {
+                reader.skipValue();
+                if (!written) {
+                    writer.name(key).value(value);
+                    written = true;
+                }
+            } else {
+                writer.name(name);
+                copy(reader, writer);
+            }
+        }
+        reader.endObject();
+        if (!written) {
+            writer.name(key).value(value);
+        }
+        writer.endObject();
+        if (reader.peek() != JsonToken.END_DOCUMENT) {
+            throw new JsonSyntaxException("Did not consume the entire document.");
+        }
+        return out.toString();
+    }
+
+    private static void copy(JsonReader reader, JsonWriter writer) throws IOException {
+        switch (reader.peek()) {
+            case BEGIN_ARRAY:
+                reader.beginArray();
+                writer.beginArray();
+                while (reader.hasNext()) {
+                    copy(reader, writer);
+                }
+                reader.endArray();
+                writer.endArray();
+                break;
+            case BEGIN_OBJECT:
+                reader.beginObject();
+                writer.beginObject();
+                while (reader.hasNext()) {
+                    writer.name(reader.nextName());
+                    copy(reader, writer);
+                }
+                reader.endObject();
+                writer.endObject();
+                break;
+            case STRING:
+                writer.value(reader.nextString());
+                break;
+            case NUMBER:
+                writer.value(new RawNumber(reader.nextString()));
+                break;
+            case BOOLEAN:
+                writer.value(reader.nextBoolean());
+                break;
+            case NULL:
+                reader.nextNull();
+                writer.nullValue();
+                break;
+            default:
+                throw new MalformedJsonException("Unexpected " + reader.peek());
+        }
+    }
+
+    @Override
+    public Extractor newExtractor(List<JsonBytePath> paths) {
+        final Node root = new Node();
+        final int size = paths.size();
+        for (int slot = 0; slot < size; slot++) {
+            Node node = root;
+            JsonBytePath path = paths.get(slot);
+            for (int i = 0; i < path.size(); i++) {
+                node = node.child(path.segment(i));
+            }
+            node.slots = node.slots == null ? new int[]{slot} : append(node.slots, slot);
+        }
+        return new Extractor() {
+            @Override
+            public boolean extract(byte[] body, String[] values, RuntimeException[] errors) {
+                for (int i = 0; i < size; i++) {
+                    values[i] = null;
+                    errors[i] = null;
+                }
+                boolean[] found = new boolean[size];
+                JsonReader reader = new JsonReader(new InputStreamReader(new ByteArrayInputStream(body), Charsets.UTF_8));
+                reader.setLenient(true);
+                try {
+                    value(reader, root, values, errors, found, size);
+                    return true;
+                } catch (IOException e) {
+                    return false;
+                } catch (RuntimeException e) {
+                    return false;
+                }
+            }
+        };
+    }
+
+    /**
+     * Reads the value at the reader's position for <code>node</code>.
+     *
+     * @return the number of paths still to be found
+     */
+    private static int value(JsonReader reader, Node node, String[] values, RuntimeException[] errors,
+                             boolean[] found, int remaining) throws IOException {
+        JsonToken token = reader.peek();
+        boolean container = token == JsonToken.BEGIN_OBJECT || token == JsonToken.BEGIN_ARRAY;
+        String text = null;
+        if (!container) {
+            text = scalar(reader, token);
+        }
+        if (node.slots != null) {
+            for (int slot : node.slots) {
+                if (!found[slot]) {
+                    found[slot] = true;
+                    if (container) {
+                        errors[slot] = new ClassCastException("Value is not a scalar");
+                    } else {
+                        values[slot] = text;
+                    }
+                    remaining--;
+                }
+            }
+            if (remaining == 0) {
+                return 0;
+            }
+        }
+        if (token == JsonToken.BEGIN_OBJECT && node.names != null) {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                Node child = node.names.get(reader.nextName());
+                if (child == null) {
+                    reader.skipValue();
+                    continue;
+                }
+                remaining = value(reader, child, values, errors, found, remaining);
+                if (remaining == 0) {
+                    return 0;
+                }
+            }
+            reader.endObject();
+        } else if (token == JsonToken.BEGIN_ARRAY && node.indexes != null) {
+            reader.beginArray();
+            for (int index = 0; reader.hasNext(); index++) {
+                Node child = node.indexes.get(index);
+                if (child == null) {
+                    reader.skipValue();
+                    continue;
+                }
+                remaining = value(reader, child, values, errors, found, remaining);
+                if (remaining == 0) {
+                    return 0;
+                }
+            }
+            reader.endArray();
+        } else if (container) {
+            reader.skipValue();
+        }
+        return remaining;
+    }
+
+    private static String scalar(JsonReader reader, JsonToken token) throws IOException {
+        switch (token) {
+            case STRING:
+            case NUMBER:
+                return reader.nextString();
+            case BOOLEAN:
+                return Boolean.toString(reader.nextBoolean());
+            case NULL:
+                reader.nextNull();
+                return null;
+            default:
+                throw new MalformedJsonException("Unexpected " + token);
+        }
+    }
+
+    private static JsonReader reader(String text) {
+        JsonReader reader = new JsonReader(new StringReader(text));
+        reader.setLenient(true);
+        return reader;
+    }
+
+    private static int[] append(int[] array, int value) {
+        int[] copy = new int[array.length + 1];
+        System.arraycopy(array, 0, copy, 0, array.length);
+        copy[array.length] = value;
+        return copy;
+    }
+
+    private static final class Node {
+        int[] slots;
+        Map<String, Node> names;
+        Map<Integer, Node> indexes;
+
+        Node child(Object segment) {
+            if (segment instanceof Integer) {
+                if (indexes == null) {
+                    indexes = new HashMap<Integer, Node>();
+                }
+                return child(indexes, (Integer) segment);
+            }
+            if (names == null) {
+                names = new HashMap<String, Node>();
+            }
+            return child(names, (String) segment);
+        }
+
+        private static <K> Node child(Map<K, Node> children, K key) {
+            Node node = children.get(key);
+            if (node == null) {
+                node = new Node();
+                children.put(key, node);
+            }
+            return node;
+        }
+    }
+
+    /**
+     * A number written exactly as it was read.
+     */
+    private static final class RawNumber extends Number {
+        private static final long serialVersionUID = 1L;
+
+        private final String text;
+
+        RawNumber(String text) {
+            this.text = text;
+        }
+
+        @Override
+        public int intValue() {
+            return (int) doubleValue();
+        }
+
+        @Override
+        public long longValue() {
+            return (long) doubleValue();
+        }
+
+        @Override
+        public float floatValue() {
+            return (float) doubleValue();
+        }
+
+        @Override
+        public double doubleValue() {
+            return Double.parseDouble(text);
+        }
+
+        @Override
+        public String toString() {
+            return text;
+        }
+    }
+}
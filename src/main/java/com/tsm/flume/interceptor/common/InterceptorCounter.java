@@ -0,0 +1,333 @@
+package com.tsm.flume.interceptor.common;
+
+import org.apache.flume.Context;
+import org.apache.flume.instrumentation.MonitoredCounterGroup;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.management.ManagementFactory;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Counter group of one interceptor instance, registered with Flume's
+ * monitoring as <code>org.apache.flume.interceptor:type=&lt;metricsName&gt;</code>
+ * so it shows up in JMX and in the HTTP/Ganglia monitoring services.
+ * <p>
+ * Counts are kept in {@link LongAdder}s and latencies in
+ * {@link LatencyHistogram}s, so parallel sources and parallel batches update
+ * them without contending on a shared atomic.
+ * <p>
+ * Every started group is registered under a name of its own. When another
+ * live group already uses the configured name, <code>-2</code>,
+ * <code>-3</code> and so on is appended to it. The group is unregistered, and
+ * its name freed, when the interceptor is closed. Flume closes the
+ * interceptors of a reloaded configuration before it starts the new ones, so
+ * these register under the same names again.
+ * <p>
+ * Properties:<p>
+ * metrics: register and update the counters (default is false)<p>
+ * metricsName: name of the counter group (default is the interceptor class
+ * name followed by a hash of the interceptor's settings, which stays the same
+ * across reloads as long as the settings do)<p>
+ */
+public class InterceptorCounter extends MonitoredCounterGroup implements InterceptorCounterMBean {
+
+    public static final String CONFIG_METRICS = "metrics";
+    public static final boolean DEFAULT_METRICS = false;
+    public static final String CONFIG_METRICS_NAME = "metricsName";
+
+    public enum Stage {
+        INTERCEPT, PARSE, SERIALIZE, REWRITE
+    }
+
+    private static final Logger logger = LoggerFactory.getLogger(InterceptorCounter.class);
+
+    /**
+     * Started groups by the name they are registered under.
+     */
+    private static final ConcurrentMap<String, InterceptorCounter> LIVE = new ConcurrentHashMap<String, InterceptorCounter>();
+
+    private final String name;
+    private final boolean enabled;
+    private String registeredName;
+    private final AtomicLong startTime = new AtomicLong();
+    private final AtomicLong stopTime = new AtomicLong();
+
+    private final LongAdder processed = new LongAdder();
+    private final LongAdder extracted = new LongAdder();
+    private final LongAdder missing = new LongAdder();
+    private final LongAdder malformed = new LongAdder();
+    private final LongAdder rewritten = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder serializerFailures = new LongAdder();
+    private final LatencyHistogram[] latencies = new LatencyHistogram[Stage.values().length];
+
+    public InterceptorCounter(String name, boolean enabled) {
+        super(Type.INTERCEPTOR, name);
+        this.name = name;
+        this.enabled = enabled;
+        for (int i = 0; i < latencies.length; i++) {
+            latencies[i] = new LatencyHistogram();
+        }
+    }
+
+    /**
+     * Creates the counter group configured in an interceptor context.
+     */
+    public static InterceptorCounter configure(Context context, Class<?> interceptorClass) {
+        boolean enabled = context.getBoolean(CONFIG_METRICS, DEFAULT_METRICS);
+        String name = context.getString(CONFIG_METRICS_NAME);
+        if (name == null) {
+            // Flume does not pass the interceptor's own name, so its settings identify it
+            String settings = new TreeMap<String, String>(context.getParameters()).toString();
+            name = interceptorClass.getSimpleName() + "-" + Integer.toHexString(settings.hashCode());
+        }
+        return new InterceptorCounter(name, enabled);
+    }
+
+    /**
+     * @return the name the group is registered under, or the configured name
+     * when it is not started
+     */
+    public synchronized String getName() {
+        return registeredName != null ? registeredName : name;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Registers the counter group under a name no other started group uses;
+     * a no-op when metrics are disabled.
+     * <p>
+     * The group registers itself instead of calling
+     * {@link MonitoredCounterGroup#start()}, which could only use the name
+     * given to its constructor.
+     */
+    @Override
+    public synchronized void start() {
+        if (!enabled || registeredName != null) {
+            return;
+        }
+        String candidate = name;
+        for (int n = 2; LIVE.putIfAbsent(candidate, this) != null; n++) {
+            candidate = name + "-" + n;
+        }
+        registeredName = candidate;
+        try {
+            ObjectName objectName = objectName(candidate);
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            if (server.isRegistered(objectName)) {
+                // left over by a group that was never stopped
+                server.unregisterMBean(objectName);
+            }
+            server.registerMBean(this, objectName);
+        } catch (Exception e) {
+            logger.warn("Failed to register counter group " + candidate, e);
+        }
+        stopTime.set(0L);
+        startTime.set(System.currentTimeMillis());
+    }
+
+    /**
+     * Unregisters the counter group and frees its name; a no-op when metrics
+     * are disabled.
+     */
+    @Override
+    public synchronized void stop() {
+        if (!enabled || registeredName == null) {
+            return;
+        }
+        stopTime.set(System.currentTimeMillis());
+        try {
+            ObjectName objectName = objectName(registeredName);
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            if (server.isRegistered(objectName)) {
+                server.unregisterMBean(objectName);
+            }
+        } catch (Exception e) {
+            logger.warn("Failed to unregister counter group " + registeredName, e);
+        }
+        LIVE.remove(registeredName, this);
+        registeredName = null;
+    }
+
+    private static ObjectName objectName(String name) throws Exception {
+        return new ObjectName("org.apache.flume.interceptor:type=" + name);
+    }
+
+    @Override
+    public long getStartTime() {
+        return startTime.get();
+    }
+
+    @Override
+    public long getStopTime() {
+        return stopTime.get();
+    }
+
+    /**
+     * @return a start time for {@link #recordLatency(Stage, long)}, or 0 when metrics are disabled
+     */
+    public long startTimer() {
+        return enabled ? System.nanoTime() : 0L;
+    }
+
+    public void recordLatency(Stage stage, long startNanos) {
+        if (enabled) {
+            latencies[stage.ordinal()].record(System.nanoTime() - startNanos);
+        }
+    }
+
+    public void incrementProcessed() {
+        if (enabled) {
+            processed.increment();
+        }
+    }
+
+    public void incrementExtracted() {
+        if (enabled) {
+            extracted.increment();
+        }
+    }
+
+    public void incrementMissing() {
+        if (enabled) {
+            missing.increment();
+        }
+    }
+
+    public void incrementMalformed() {
+        if (enabled) {
+            malformed.increment();
+        }
+    }
+
+    public void incrementRewritten() {
+        if (enabled) {
+            rewritten.increment();
+        }
+    }
+
+    public void incrementDropped() {
+        if (enabled) {
+            dropped.increment();
+        }
+    }
+
+    public void incrementSerializerFailures() {
+        if (enabled) {
+            serializerFailures.increment();
+        }
+    }
+
+    public LatencyHistogram getLatency(Stage stage) {
+        return latencies[stage.ordinal()];
+    }
+
+    private long percentileMicros(Stage stage, double percentile) {
+        return latencies[stage.ordinal()].getPercentile(percentile) / 1000L;
+    }
+
+    @Override
+    public long getEventProcessedCount() {
+        return processed.sum();
+    }
+
+    @Override
+    public long getEventExtractedCount() {
+        return extracted.sum();
+    }
+
+    @Override
+    public long getEventMissingCount() {
+        return missing.sum();
+    }
+
+    @Override
+    public long getEventMalformedCount() {
+        return malformed.sum();
+    }
+
+    @Override
+    public long getEventRewrittenCount() {
+        return rewritten.sum();
+    }
+
+    @Override
+    public long getEventDroppedCount() {
+        return dropped.sum();
+    }
+
+    @Override
+    public long getSerializerFailureCount() {
+        return serializerFailures.sum();
+    }
+
+    @Override
+    public long getInterceptLatencyP50() {
+        return percentileMicros(Stage.INTERCEPT, 50);
+    }
+
+    @Override
+    public long getInterceptLatencyP99() {
+        return percentileMicros(Stage.INTERCEPT, 99);
+    }
+
+    @Override
+    public long getInterceptLatencyP999() {
+        return percentileMicros(Stage.INTERCEPT, 99.9);
+    }
+
+    @Override
+    public long getParseLatencyP50() {
+        return percentileMicros(Stage.PARSE, 50);
+    }
+
+    @Override
+    public long getParseLatencyP99() {
+        return percentileMicros(Stage.PARSE, 99);
+    }
+
+    @Override
+    public long getParseLatencyP999() {
+        return percentileMicros(Stage.PARSE, 99.9);
+    }
+
+    @Override
+    public long getSerializeLatencyP50() {
+        return percentileMicros(Stage.SERIALIZE, 50);
+    }
+
+    @Override
+    public long getSerializeLatencyP99() {
+        return percentileMicros(Stage.SERIALIZE, 99);
+    }
+
+    @Override
+    public long getSerializeLatencyP999() {
+        return percentileMicros(Stage.SERIALIZE, 99.9);
+    }
+
+    @Override
+    public long getRewriteLatencyP50() {
+        return percentileMicros(Stage.REWRITE, 50);
+    }
+
+    @Override
+    public long getRewriteLatencyP99() {
+        return percentileMicros(Stage.REWRITE, 99);
+    }
+
+    @Override
+    public long getRewriteLatencyP999() {
+        return percentileMicros(Stage.REWRITE, 99.9);
+    }
+}
@@ -0,0 +1,51 @@
+package com.tsm.flume.interceptor.common;
+
+/**
+ * JMX view of an {@link InterceptorCounter}. Latencies are in microseconds.
+ */
+public interface InterceptorCounterMBean {
+
+    long getEventProcessedCount();
+
+    long getEventExtractedCount();
+
+    long getEventMissingCount();
+
+    long getEventMalformedCount();
+
+    long getEventRewrittenCount();
+
+    long getEventDroppedCount();
+
+    long getSerializerFailureCount();
+
+    long getInterceptLatencyP50();
+
+    long getInterceptLatencyP99();
+
+    long getInterceptLatencyP999();
+
+    long getParseLatencyP50();
+
+    long getParseLatencyP99();
+
+    long getParseLatencyP999();
+
+    long getSerializeLatencyP50();
+
+    long getSerializeLatencyP99();
+
+    long getSerializeLatencyP999();
+
+    long getRewriteLatencyP50();
+
+    long getRewriteLatencyP99();
+
+    long getRewriteLatencyP999();
+
+    long getStartTime();
+
+    long getStopTime();
+
+    String getType();
+}
@@ -0,0 +1,70 @@
+package com.tsm.flume.interceptor.common;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.List;
+
+/**
+ * {@link JsonEngine} that parses every body into a Jackson tree. It has no
+ * extractor of its own: <code>JsonInterceptor</code> evaluates every path on
+ * the tree with the JSONPath engine.
+ */
+public final class JacksonJsonEngine implements JsonEngine {
+
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    @Override
+    public String getName() {
+        return JsonEngines.JACKSON;
+    }
+
+    @Override
+    public boolean supports(Charset charset) {
+        return true;
+    }
+
+    @Override
+    public boolean isObject(byte[] body, CharsetTranscoder transcoder) {
+        try {
+            JsonNode node = mapper.readTree(transcoder.decode(body));
+            return node != null && node.isObject();
+        } catch (IOException e) {
+            return false;
+        } catch (RuntimeException e) {
+            return false;
+        }
+    }
+
+    @Override
+    public MemberSetter newMemberSetter(final String key, final CharsetTranscoder transcoder) {
+        return new MemberSetter() {
+            @Override
+            public byte[] set(byte[] body, String value) {
+                JsonNode node;
+                try {
+                    node = mapper.readTree(transcoder.decode(body));
+                } catch (IOException e) {
+                    throw new IllegalArgumentException("Malformed JSON", e);
+                }
+                if (!(node instanceof ObjectNode)) {
+                    throw new IllegalStateException("Not a JSON Object");
+                }
+                ((ObjectNode) node).put(key, value);
+                try {
+                    return transcoder.encode(mapper.writeValueAsString(node));
+                } catch (IOException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        };
+    }
+
+    @Override
+    public Extractor newExtractor(List<JsonBytePath> paths) {
+        return null;
+    }
+}
@@ -0,0 +1,376 @@
+package com.tsm.flume.interceptor.common;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Streaming matcher that locates the values of several {@link JsonBytePath}s
+ * in a single pass over a UTF-8 body.
+ * <p>
+ * The paths are merged into a trie when the matcher is built. While scanning,
+ * only the members and elements that lead to a configured path are entered;
+ * every other subtree is skipped without being decoded, and the scan stops as
+ * soon as every path has been found. A matcher is immutable and can be shared
+ * by several threads.
+ * <p>
+ * A path can be limited to a prefix of the body. A value that does not end
+ * inside its path's prefix is reported as missing, and when every path is
+ * limited, bytes past the longest prefix are never read. Malformed JSON is
+ * then only detected inside that prefix.
+ */
+public final class JsonByteMatcher {
+
+    public static final int OK = 0;
+    public static final int MALFORMED = 1;
+
+    private static final int DONE = -2;
+
+    private final Node root = new Node();
+    private final int size;
+    private final int[] limits;
+    private final int scanLimit;
+
+    public JsonByteMatcher(List<JsonBytePath> paths) {
+        this(paths, null);
+    }
+
+    /**
+     * @param maxScanBytes length of the body prefix each path's value must lie
+     *                     in, 0 for no limit; null limits no path
+     */
+    public JsonByteMatcher(List<JsonBytePath> paths, int[] maxScanBytes) {
+        this.size = paths.size();
+        int longest = 0;
+        boolean limited = false;
+        if (maxScanBytes != null) {
+            for (int slot = 0; slot < size; slot++) {
+                if (maxScanBytes[slot] <= 0) {
+                    longest = Integer.MAX_VALUE;
+                } else {
+                    longest = Math.max(longest, maxScanBytes[slot]);
+                    limited = true;
+                }
+            }
+        }
+        this.limits = limited ? Arrays.copyOf(maxScanBytes, size) : null;
+        this.scanLimit = limited ? longest : Integer.MAX_VALUE;
+        for (int slot = 0; slot < paths.size(); slot++) {
+            JsonBytePath path = paths.get(slot);
+            Node node = root;
+            for (int i = 0; i < path.size(); i++) {
+                node = node.child(path.segment(i));
+            }
+            node.addSlot(slot);
+        }
+    }
+
+    /**
+     * @return the number of paths, in the order given to the constructor
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return the number of bytes at the start of a body a match reads at
+     * most, or <code>Integer.MAX_VALUE</code> if some path is not limited
+     */
+    public int getScanLimit() {
+        return scanLimit;
+    }
+
+    /**
+     * Creates a range array suitable for {@link #match(byte[], int, int, int[])}.
+     */
+    public int[] newRanges() {
+        return new int[size * 2];
+    }
+
+    /**
+     * Finds the value of every path in <code>body[from, to)</code>.
+     * <p>
+     * On return, <code>ranges[2 * i]</code> and <code>ranges[2 * i + 1]</code> hold the
+     * start (inclusive) and end (exclusive) of the raw value of path <code>i</code>,
+     * or -1 if the path does not exist.
+     *
+     * @return {@link #OK}, or {@link #MALFORMED} if the scanned part of the body is not valid JSON
+     */
+    public int match(byte[] body, int from, int to, int[] ranges) {
+        Arrays.fill(ranges, 0, size * 2, -1);
+        if (size == 0) {
+            return OK;
+        }
+        int scanTo = to - from > scanLimit ? from + scanLimit : to;
+        int[] remaining = {size};
+        int i = JsonBytes.skipWhitespace(body, from, scanTo);
+        int end;
+        try {
+            end = value(root, body, i, scanTo, ranges, remaining);
+        } catch (IllegalArgumentException e) {
+            // invalid escape sequence in a key
+            end = JsonBytes.MALFORMED;
+        }
+        if (end == JsonBytes.MALFORMED && scanTo == to) {
+            Arrays.fill(ranges, 0, size * 2, -1);
+            return MALFORMED;
+        }
+        // a scan cut short by the limit keeps the values it completed
+        applyLimits(body, from, to, ranges);
+        return OK;
+    }
+
+    /**
+     * Same as {@link #match(byte[], int, int, int[])} over the whole of a body
+     * known to be a valid object, whose top-level members are looked up in the
+     * {@link ParseCache} index <code>members</code> instead of being scanned.
+     *
+     * @return {@link #OK}
+     */
+    public int match(byte[] body, int[] members, int[] ranges) {
+        Arrays.fill(ranges, 0, size * 2, -1);
+        if (size == 0) {
+            return OK;
+        }
+        int[] remaining = {size};
+        if (root.names != null) {
+            for (int m = 2; m < members.length; m += 4) {
+                Node child = root.field(body, members[m] + 1, members[m + 1] - 1);
+                if (child != null && value(child, body, members[m + 2], members[m + 3], ranges, remaining) == DONE) {
+                    break;
+                }
+            }
+        }
+        if (root.slots != null) {
+            for (int slot : root.slots) {
+                ranges[slot * 2] = members[0];
+                ranges[slot * 2 + 1] = members[1];
+            }
+        }
+        applyLimits(body, 0, body.length, ranges);
+        return OK;
+    }
+
+    /**
+     * Marks the values in <code>ranges</code> that do not end inside their
+     * path's prefix of <code>body[from, to)</code> as missing, including
+     * numbers and literals that the prefix cuts in two.
+     */
+    public void applyLimits(byte[] body, int from, int to, int[] ranges) {
+        if (limits == null) {
+            return;
+        }
+        for (int slot = 0; slot < size; slot++) {
+            int start = ranges[slot * 2];
+            if (start < 0 || limits[slot] <= 0) {
+                continue;
+            }
+            int end = ranges[slot * 2 + 1];
+            if (end - from > limits[slot] || (end < to && isCut(body, start, end))) {
+                ranges[slot * 2] = -1;
+                ranges[slot * 2 + 1] = -1;
+            }
+        }
+    }
+
+    /**
+     * @return true if the scalar <code>b[start, end)</code> continues past <code>end</code>
+     */
+    private static boolean isCut(byte[] b, int start, int end) {
+        byte first = b[start];
+        if (first == '"' || first == '{' || first == '[') {
+            return false;
+        }
+        byte next = b[end];
+        return next != ',' && next != '}' && next != ']' && !JsonBytes.isWhitespace(next);
+    }
+
+    private int value(Node node, byte[] b, int i, int to, int[] ranges, int[] remaining) {
+        if (i >= to) {
+            return JsonBytes.MALFORMED;
+        }
+        int start = i;
+        int end;
+        byte c = b[i];
+        if (c == '{' && node.names != null) {
+            end = object(node, b, i, to, ranges, remaining);
+        } else if (c == '[' && node.indexes != null) {
+            end = array(node, b, i, to, ranges, remaining);
+        } else {
+            end = JsonBytes.skipValue(b, i, to);
+        }
+        if (end < 0) {
+            return end;
+        }
+        if (node.slots != null) {
+            for (int slot : node.slots) {
+                if (ranges[slot * 2] < 0) {
+                    ranges[slot * 2] = start;
+                    ranges[slot * 2 + 1] = end;
+                    if (--remaining[0] == 0) {
+                        return DONE;
+                    }
+                }
+            }
+        }
+        return end;
+    }
+
+    private int object(Node node, byte[] b, int i, int to, int[] ranges, int[] remaining) {
+        i = JsonBytes.skipWhitespace(b, i + 1, to);
+        if (i < to && b[i] == '}') {
+            return i + 1;
+        }
+        while (true) {
+            int keyStart = i;
+            int keyEnd = JsonBytes.skipString(b, i, to);
+            if (keyEnd < 0) {
+                return JsonBytes.MALFORMED;
+            }
+            i = JsonBytes.skipWhitespace(b, keyEnd, to);
+            if (i >= to || b[i] != ':') {
+                return JsonBytes.MALFORMED;
+            }
+            i = JsonBytes.skipWhitespace(b, i + 1, to);
+            Node child = node.field(b, keyStart + 1, keyEnd - 1);
+            int end = child != null
+                    ? value(child, b, i, to, ranges, remaining)
+                    : JsonBytes.skipValue(b, i, to);
+            if (end < 0) {
+                return end;
+            }
+            i = JsonBytes.skipWhitespace(b, end, to);
+            if (i >= to) {
+                return JsonBytes.MALFORMED;
+            }
+            if (b[i] == '}') {
+                return i + 1;
+            }
+            if (b[i] != ',') {
+                return JsonBytes.MALFORMED;
+            }
+            i = JsonBytes.skipWhitespace(b, i + 1, to);
+        }
+    }
+
+    private int array(Node node, byte[] b, int i, int to, int[] ranges, int[] remaining) {
+        i = JsonBytes.skipWhitespace(b, i + 1, to);
+        if (i < to && b[i] == ']') {
+            return i + 1;
+        }
+        int index = 0;
+        while (true) {
+            Node child = node.index(index++);
+            int end = child != null
+                    ? value(child, b, i, to, ranges, remaining)
+                    : JsonBytes.skipValue(b, i, to);
+            if (end < 0) {
+                return end;
+            }
+            i = JsonBytes.skipWhitespace(b, end, to);
+            if (i >= to) {
+                return JsonBytes.MALFORMED;
+            }
+            if (b[i] == ']') {
+                return i + 1;
+            }
+            if (b[i] != ',') {
+                return JsonBytes.MALFORMED;
+            }
+            i = JsonBytes.skipWhitespace(b, i + 1, to);
+        }
+    }
+
+    private static final class Node {
+        int[] slots;
+        byte[][] names;
+        String[] nameStrings;
+        Node[] nameChildren;
+        int[] indexes;
+        Node[] indexChildren;
+
+        void addSlot(int slot) {
+            slots = slots == null ? new int[]{slot} : append(slots, slot);
+        }
+
+        Node child(Object segment) {
+            if (segment instanceof Integer) {
+                int index = (Integer) segment;
+                if (indexes != null) {
+                    for (int i = 0; i < indexes.length; i++) {
+                        if (indexes[i] == index) {
+                            return indexChildren[i];
+                        }
+                    }
+                }
+                Node node = new Node();
+                indexes = indexes == null ? new int[]{index} : append(indexes, index);
+                indexChildren = append(indexChildren, node);
+                return node;
+            }
+            String name = (String) segment;
+            if (nameStrings != null) {
+                for (int i = 0; i < nameStrings.length; i++) {
+                    if (nameStrings[i].equals(name)) {
+                        return nameChildren[i];
+                    }
+                }
+            }
+            Node node = new Node();
+            nameStrings = nameStrings == null ? new String[]{name} : append(nameStrings, name);
+            names = append(names, JsonBytePath.utf8(name));
+            nameChildren = append(nameChildren, node);
+            return node;
+        }
+
+        /**
+         * @return the child for the raw key bytes <code>b[from, to)</code>, or null
+         */
+        Node field(byte[] b, int from, int to) {
+            if (names == null) {
+                return null;
+            }
+            if (JsonBytes.hasEscape(b, from, to)) {
+                String key = JsonBytes.decodeString(b, from, to);
+                for (int i = 0; i < nameStrings.length; i++) {
+                    if (nameStrings[i].equals(key)) {
+                        return nameChildren[i];
+                    }
+                }
+                return null;
+            }
+            for (int i = 0; i < names.length; i++) {
+                if (JsonBytes.regionEquals(b, from, to, names[i])) {
+                    return nameChildren[i];
+                }
+            }
+            return null;
+        }
+
+        Node index(int index) {
+            for (int i = 0; i < indexes.length; i++) {
+                if (indexes[i] == index) {
+                    return indexChildren[i];
+                }
+            }
+            return null;
+        }
+
+        private static int[] append(int[] array, int value) {
+            int[] copy = Arrays.copyOf(array, array.length + 1);
+            copy[array.length] = value;
+            return copy;
+        }
+
+        @SuppressWarnings("unchecked")
+        private static <T> T[] append(T[] array, T value) {
+            T[] copy;
+            if (array == null) {
+                copy = (T[]) java.lang.reflect.Array.newInstance(value.getClass(), 1);
+            } else {
+                copy = Arrays.copyOf(array, array.length + 1);
+            }
+            copy[copy.length - 1] = value;
+            return copy;
+        }
+    }
+}
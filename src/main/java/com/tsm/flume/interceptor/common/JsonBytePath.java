@@ -0,0 +1,125 @@
+package com.tsm.flume.interceptor.common;
+
+import com.google.common.base.Charsets;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A simple JSONPath made only of child names and array indexes, such as
+ * <code>$.a.b</code>, <code>$.a[3]</code> or <code>$['x']</code>.
+ * <p>
+ * Wildcards, recursive descent, slices, unions and filters are not supported;
+ * {@link #compile(String)} returns null for them so callers can fall back to
+ * a full JSONPath implementation.
+ */
+public final class JsonBytePath {
+
+    private final String expression;
+    private final List<Object> segments;
+
+    private JsonBytePath(String expression, List<Object> segments) {
+        this.expression = expression;
+        this.segments = Collections.unmodifiableList(segments);
+    }
+
+    /**
+     * @return the compiled path, or null if the expression is not a simple path
+     */
+    public static JsonBytePath compile(String expression) {
+        if (expression == null) {
+            return null;
+        }
+        String expr = expression.trim();
+        if (!expr.startsWith("$")) {
+            return null;
+        }
+        List<Object> segments = new ArrayList<Object>();
+        int i = 1;
+        int n = expr.length();
+        while (i < n) {
+            char c = expr.charAt(i);
+            if (c == '.') {
+                int start = ++i;
+                while (i < n && isNameChar(expr.charAt(i))) {
+                    i++;
+                }
+                if (i == start) {
+                    return null;
+                }
+                segments.add(expr.substring(start, i));
+            } else if (c == '[') {
+                int close = expr.indexOf(']', i);
+                if (close < 0) {
+                    return null;
+                }
+                String inner = expr.substring(i + 1, close).trim();
+                Object segment = bracketSegment(inner);
+                if (segment == null) {
+                    return null;
+                }
+                segments.add(segment);
+                i = close + 1;
+            } else {
+                return null;
+            }
+        }
+        return new JsonBytePath(expression, segments);
+    }
+
+    private static boolean isNameChar(char c) {
+        return c != '.' && c != '[' && c != ']' && c != '*' && c != '(' && c != ')'
+                && c != '?' && c != '@' && c != ',' && c != '\'' && c != '"' && !Character.isWhitespace(c);
+    }
+
+    private static Object bracketSegment(String inner) {
+        if (inner.length() >= 2) {
+            char q = inner.charAt(0);
+            if ((q == '\'' || q == '"') && inner.charAt(inner.length() - 1) == q) {
+                String name = inner.substring(1, inner.length() - 1);
+                if (name.indexOf(q) >= 0 || name.indexOf('\\') >= 0) {
+                    return null;
+                }
+                return name;
+            }
+        }
+        if (inner.isEmpty()) {
+            return null;
+        }
+        for (int i = 0; i < inner.length(); i++) {
+            if (inner.charAt(i) < '0' || inner.charAt(i) > '9') {
+                return null;
+            }
+        }
+        try {
+            return Integer.valueOf(inner);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    public String getExpression() {
+        return expression;
+    }
+
+    public int size() {
+        return segments.size();
+    }
+
+    /**
+     * @return a {@link String} for a child name or an {@link Integer} for an array index
+     */
+    public Object segment(int index) {
+        return segments.get(index);
+    }
+
+    static byte[] utf8(String name) {
+        return name.getBytes(Charsets.UTF_8);
+    }
+
+    @Override
+    public String toString() {
+        return expression;
+    }
+}
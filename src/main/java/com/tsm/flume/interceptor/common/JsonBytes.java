@@ -0,0 +1,569 @@
+package com.tsm.flume.interceptor.common;
+
+import com.google.common.base.Charsets;
+
+import java.nio.charset.Charset;
+
+/**
+ * Low level helpers that scan JSON text directly in a UTF-8 (or any
+ * ASCII-compatible) <code>byte[]</code>.
+ * <p>
+ * All scanning methods take an index into the buffer and an exclusive upper
+ * bound, and return the index just past what they consumed, or
+ * {@link #MALFORMED} when the bytes are not valid JSON.
+ */
+public final class JsonBytes {
+
+    public static final int MALFORMED = -1;
+
+    private JsonBytes() {
+    }
+
+    public static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\n' || b == '\r' || b == '\t';
+    }
+
+    /**
+     * @return the index of the first non-whitespace byte at or after <code>i</code>, or <code>to</code>
+     */
+    public static int skipWhitespace(byte[] b, int i, int to) {
+        while (i < to && isWhitespace(b[i])) {
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * Skips a string whose opening quote is at <code>i</code>. Long runs of
+     * plain content are skipped a word at a time, see {@link SwarBytes}.
+     *
+     * @return the index after the closing quote
+     */
+    public static int skipString(byte[] b, int i, int to) {
+        if (i >= to || b[i] != '"') {
+            return MALFORMED;
+        }
+        i++;
+        while (i < to) {
+            i = SwarBytes.quoteOrBackslash(b, i, to);
+            if (i >= to) {
+                break;
+            }
+            if (b[i] == '"') {
+                return i + 1;
+            }
+            i += 2;
+        }
+        return MALFORMED;
+    }
+
+    /**
+     * Skips one complete value (scalar, object or array) starting at <code>i</code>.
+     * Containers are skipped by tracking nesting and strings only; their
+     * content is not otherwise validated.
+     *
+     * @return the index after the value
+     */
+    public static int skipValue(byte[] b, int i, int to) {
+        if (i >= to) {
+            return MALFORMED;
+        }
+        byte c = b[i];
+        if (c == '"') {
+            return skipString(b, i, to);
+        }
+        if (c == '{' || c == '[') {
+            return skipContainer(b, i, to);
+        }
+        return skipLiteral(b, i, to);
+    }
+
+    private static int skipContainer(byte[] b, int i, int to) {
+        int depth = 0;
+        while (i < to) {
+            byte c = b[i];
+            if (c == '"') {
+                i = skipString(b, i, to);
+                if (i < 0) {
+                    return MALFORMED;
+                }
+                continue;
+            }
+            if (c == '{' || c == '[') {
+                depth++;
+            } else if (c == '}' || c == ']') {
+                if (--depth == 0) {
+                    return i + 1;
+                }
+            }
+            i++;
+        }
+        return MALFORMED;
+    }
+
+    /**
+     * Skips a number, <code>true</code>, <code>false</code> or <code>null</code>.
+     */
+    private static int skipLiteral(byte[] b, int i, int to) {
+        int start = i;
+        while (i < to) {
+            byte c = b[i];
+            if (c == ',' || c == '}' || c == ']' || c == ':' || c == '"' || c == '{' || c == '[' || isWhitespace(c)) {
+                break;
+            }
+            i++;
+        }
+        if (i == start) {
+            return MALFORMED;
+        }
+        byte first = b[start];
+        if (first == 't' || first == 'f' || first == 'n') {
+            return isKeyword(b, start, i) ? i : MALFORMED;
+        }
+        return first == '-' || (first >= '0' && first <= '9') ? i : MALFORMED;
+    }
+
+    private static boolean isKeyword(byte[] b, int from, int to) {
+        return regionEquals(b, from, to, TRUE) || regionEquals(b, from, to, FALSE) || regionEquals(b, from, to, NULL);
+    }
+
+    private static final byte[] TRUE = {'t', 'r', 'u', 'e'};
+    private static final byte[] FALSE = {'f', 'a', 'l', 's', 'e'};
+    private static final byte[] NULL = {'n', 'u', 'l', 'l'};
+
+    public static boolean regionEquals(byte[] b, int from, int to, byte[] expected) {
+        if (to - from != expected.length) {
+            return false;
+        }
+        for (int i = 0; i < expected.length; i++) {
+            if (b[from + i] != expected[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Removes the whitespace between tokens in one pass. Strings, including
+     * their escape sequences, are copied byte for byte.
+     * <p>
+     * The body is not otherwise validated, but whitespace that separates two
+     * literals (as in <code>1 2</code> or <code>tr ue</code>) is never removed,
+     * so invalid text cannot turn into a different, valid value.
+     *
+     * @return the minified bytes, <code>b</code> itself if there is no whitespace
+     * to remove, or null if a string is unterminated or two literals touch
+     */
+    public static byte[] minify(byte[] b) {
+        int to = b.length;
+        int i = 0;
+        while (i < to) {
+            byte c = b[i];
+            if (c == '"') {
+                i = skipString(b, i, to);
+                if (i < 0) {
+                    return null;
+                }
+            } else if (isWhitespace(c)) {
+                break;
+            } else {
+                i++;
+            }
+        }
+        if (i == to) {
+            return b;
+        }
+
+        ByteBuilder out = ByteBuilder.pooled(to);
+        out.append(b, 0, i);
+        boolean gap = false;
+        while (i < to) {
+            byte c = b[i];
+            if (isWhitespace(c)) {
+                gap = true;
+                i++;
+                continue;
+            }
+            if (c == '"') {
+                int end = skipString(b, i, to);
+                if (end < 0) {
+                    return null;
+                }
+                out.append(b, i, end);
+                i = end;
+            } else {
+                if (gap && out.size() > 0 && isLiteralByte(out.byteAt(out.size() - 1)) && isLiteralByte(c)) {
+                    return null;
+                }
+                out.append(c);
+                i++;
+            }
+            gap = false;
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * @return true for bytes that can be part of a number, <code>true</code>, <code>false</code> or <code>null</code>
+     */
+    private static boolean isLiteralByte(byte c) {
+        return (c >= '0' && c <= '9') || (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z')
+                || c == '-' || c == '+' || c == '.';
+    }
+
+    /**
+     * @return true if the raw bytes between <code>from</code> and <code>to</code> contain a backslash
+     */
+    public static boolean hasEscape(byte[] b, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (b[i] == '\\') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Decodes the content of a string token. <code>from</code> and <code>to</code>
+     * delimit the content, excluding the quotes.
+     */
+    public static String decodeString(byte[] b, int from, int to) {
+        return decodeString(b, from, to, Charsets.UTF_8);
+    }
+
+    /**
+     * Decodes the content of a string token in an ASCII-compatible charset.
+     */
+    public static String decodeString(byte[] b, int from, int to, Charset charset) {
+        if (!hasEscape(b, from, to)) {
+            return new String(b, from, to - from, charset);
+        }
+        StringBuilder sb = new StringBuilder(to - from);
+        int runStart = from;
+        int i = from;
+        while (i < to) {
+            if (b[i] != '\\') {
+                i++;
+                continue;
+            }
+            if (i > runStart) {
+                sb.append(new String(b, runStart, i - runStart, charset));
+            }
+            if (i + 1 >= to) {
+                throw new IllegalArgumentException("Unterminated escape sequence");
+            }
+            byte e = b[i + 1];
+            switch (e) {
+                case '"':
+                case '\\':
+                case '/':
+                    sb.append((char) e);
+                    break;
+                case 'b':
+                    sb.append('\b');
+                    break;
+                case 'f':
+                    sb.append('\f');
+                    break;
+                case 'n':
+                    sb.append('\n');
+                    break;
+                case 'r':
+                    sb.append('\r');
+                    break;
+                case 't':
+                    sb.append('\t');
+                    break;
+                case 'u':
+                    if (i + 6 > to) {
+                        throw new IllegalArgumentException("Unterminated unicode escape");
+                    }
+                    sb.append((char) Integer.parseInt(new String(b, i + 2, 4, Charsets.US_ASCII), 16));
+                    i += 4;
+                    break;
+                default:
+                    throw new IllegalArgumentException("Invalid escape sequence \\" + (char) e);
+            }
+            i += 2;
+            runStart = i;
+        }
+        if (runStart < to) {
+            sb.append(new String(b, runStart, to - runStart, charset));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Converts a scalar value token to its textual form: strings are unescaped,
+     * numbers and booleans are returned as written and <code>null</code> yields null.
+     *
+     * @throws ClassCastException if the value is an object or an array
+     */
+    public static String scalarToString(byte[] b, int from, int to) {
+        byte first = b[from];
+        if (first == '"') {
+            return decodeString(b, from + 1, to - 1);
+        }
+        if (first == '{' || first == '[') {
+            throw new ClassCastException("Value is not a scalar");
+        }
+        if (regionEquals(b, from, to, NULL)) {
+            return null;
+        }
+        return new String(b, from, to - from, Charsets.US_ASCII);
+    }
+
+    /**
+     * Scans the members of the object whose opening brace is at <code>i</code>
+     * and looks for <code>key</code>.
+     * <p>
+     * On return, <code>out[0]</code> and <code>out[1]</code> hold the value range of
+     * the first member named <code>key</code> (or -1), and <code>out[2]</code> the
+     * index of the closing brace.
+     *
+     * @param keyBytes <code>key</code> encoded in <code>charset</code>
+     * @return the number of members named <code>key</code>, or {@link #MALFORMED}
+     */
+    public static int findMember(byte[] b, int i, int to, String key, byte[] keyBytes, Charset charset, int[] out) {
+        out[0] = -1;
+        out[1] = -1;
+        out[2] = -1;
+        if (i >= to || b[i] != '{') {
+            return MALFORMED;
+        }
+        int found = 0;
+        i = skipWhitespace(b, i + 1, to);
+        if (i < to && b[i] == '}') {
+            out[2] = i;
+            return 0;
+        }
+        while (true) {
+            int keyStart = i;
+            int keyEnd = skipString(b, i, to);
+            if (keyEnd < 0) {
+                return MALFORMED;
+            }
+            i = skipWhitespace(b, keyEnd, to);
+            if (i >= to || b[i] != ':') {
+                return MALFORMED;
+            }
+            int valueStart = skipWhitespace(b, i + 1, to);
+            int valueEnd = skipValue(b, valueStart, to);
+            if (valueEnd < 0) {
+                return MALFORMED;
+            }
+            boolean matches = hasEscape(b, keyStart + 1, keyEnd - 1)
+                    ? key.equals(decodeString(b, keyStart + 1, keyEnd - 1, charset))
+                    : regionEquals(b, keyStart + 1, keyEnd - 1, keyBytes);
+            if (matches && found++ == 0) {
+                out[0] = valueStart;
+                out[1] = valueEnd;
+            }
+            i = skipWhitespace(b, valueEnd, to);
+            if (i >= to) {
+                return MALFORMED;
+            }
+            if (b[i] == '}') {
+                out[2] = i;
+                return found;
+            }
+            if (b[i] != ',') {
+                return MALFORMED;
+            }
+            i = skipWhitespace(b, i + 1, to);
+        }
+    }
+
+    /**
+     * Quotes and escapes a string the way Gson writes it: <code>"</code>,
+     * <code>\</code>, control characters, U+2028 and U+2029 are escaped.
+     *
+     * @return the JSON string literal, or <code>null</code> for a null value
+     */
+    public static String quote(String value) {
+        if (value == null) {
+            return "null";
+        }
+        StringBuilder sb = new StringBuilder(value.length() + 2);
+        sb.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    sb.append("\\\"");
+                    break;
+                case '\\':
+                    sb.append("\\\\");
+                    break;
+                case '\t':
+                    sb.append("\\t");
+                    break;
+                case '\b':
+                    sb.append("\\b");
+                    break;
+                case '\n':
+                    sb.append("\\n");
+                    break;
+                case '\r':
+                    sb.append("\\r");
+                    break;
+                case '\f':
+                    sb.append("\\f");
+                    break;
+                case '\u2028':
+                    sb.append("\\u2028");
+                    break;
+                case '\u2029':
+                    sb.append("\\u2029");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        sb.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        sb.append(c);
+                    }
+            }
+        }
+        return sb.append('"').toString();
+    }
+
+    /**
+     * Writes <code>value</code> as a JSON string literal in <code>charset</code>,
+     * escaped like {@link #quote(String)}. UTF-8 is encoded directly into
+     * <code>out</code>; unpaired surrogates become <code>?</code>, as with
+     * {@link String#getBytes(Charset)}.
+     */
+    public static void quote(ByteBuilder out, String value, Charset charset) {
+        if (value == null || !charset.equals(Charsets.UTF_8)) {
+            out.append(quote(value).getBytes(charset));
+            return;
+        }
+        out.append((byte) '"');
+        int n = value.length();
+        for (int i = 0; i < n; i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                escapeAscii(out, c);
+            } else if (c < 0x800) {
+                out.append((byte) (0xC0 | c >> 6)).append((byte) (0x80 | c & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                if (Character.isHighSurrogate(c) && i + 1 < n && Character.isLowSurrogate(value.charAt(i + 1))) {
+                    int cp = Character.toCodePoint(c, value.charAt(++i));
+                    out.append((byte) (0xF0 | cp >> 18)).append((byte) (0x80 | cp >> 12 & 0x3F))
+                            .append((byte) (0x80 | cp >> 6 & 0x3F)).append((byte) (0x80 | cp & 0x3F));
+                } else {
+                    out.append((byte) '?');
+                }
+            } else if (c == '\u2028' || c == '\u2029') {
+                out.appendAscii(c == '\u2028' ? "\\u2028" : "\\u2029");
+            } else {
+                out.append((byte) (0xE0 | c >> 12)).append((byte) (0x80 | c >> 6 & 0x3F)).append((byte) (0x80 | c & 0x3F));
+            }
+        }
+        out.append((byte) '"');
+    }
+
+    /**
+     * Writes the UTF-8 text <code>b[from, to)</code> as a JSON string literal,
+     * escaped like {@link #quote(String)}, without decoding it.
+     *
+     * @return false if the text is not well-formed UTF-8; <code>out</code> then
+     * holds a partial literal, which the caller should truncate
+     */
+    public static boolean quoteUtf8(ByteBuilder out, byte[] b, int from, int to) {
+        out.append((byte) '"');
+        int i = from;
+        while (i < to) {
+            int run = SwarBytes.notPlainAscii(b, i, to);
+            if (run > i) {
+                out.append(b, i, run);
+                i = run;
+                if (i >= to) {
+                    break;
+                }
+            }
+            int b0 = b[i] & 0xFF;
+            if (b0 < 0x80) {
+                escapeAscii(out, (char) b0);
+                i++;
+                continue;
+            }
+            int length;
+            int min = 0x80;
+            int max = 0xBF;
+            if (b0 >= 0xC2 && b0 <= 0xDF) {
+                length = 2;
+            } else if (b0 >= 0xE0 && b0 <= 0xEF) {
+                length = 3;
+                if (b0 == 0xE0) {
+                    min = 0xA0;
+                } else if (b0 == 0xED) {
+                    max = 0x9F;
+                }
+            } else if (b0 >= 0xF0 && b0 <= 0xF4) {
+                length = 4;
+                if (b0 == 0xF0) {
+                    min = 0x90;
+                } else if (b0 == 0xF4) {
+                    max = 0x8F;
+                }
+            } else {
+                return false;
+            }
+            if (i + length > to) {
+                return false;
+            }
+            int b1 = b[i + 1] & 0xFF;
+            if (b1 < min || b1 > max) {
+                return false;
+            }
+            for (int k = 2; k < length; k++) {
+                if ((b[i + k] & 0xC0) != 0x80) {
+                    return false;
+                }
+            }
+            if (b0 == 0xE2 && b1 == 0x80 && (b[i + 2] == (byte) 0xA8 || b[i + 2] == (byte) 0xA9)) {
+                out.appendAscii(b[i + 2] == (byte) 0xA8 ? "\\u2028" : "\\u2029");
+            } else {
+                out.append(b, i, i + length);
+            }
+            i += length;
+        }
+        out.append((byte) '"');
+        return true;
+    }
+
+    private static void escapeAscii(ByteBuilder out, char c) {
+        switch (c) {
+            case '"':
+                out.appendAscii("\\\"");
+                break;
+            case '\\':
+                out.appendAscii("\\\\");
+                break;
+            case '\t':
+                out.appendAscii("\\t");
+                break;
+            case '\b':
+                out.appendAscii("\\b");
+                break;
+            case '\n':
+                out.appendAscii("\\n");
+                break;
+            case '\r':
+                out.appendAscii("\\r");
+                break;
+            case '\f':
+                out.appendAscii("\\f");
+                break;
+            default:
+                if (c < 0x20) {
+                    out.appendAscii("\\u00").append(HEX[c >> 4]).append(HEX[c & 0xF]);
+                } else {
+                    out.append((byte) c);
+                }
+        }
+    }
+
+    private static final byte[] HEX = {'0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'a', 'b', 'c', 'd', 'e', 'f'};
+}
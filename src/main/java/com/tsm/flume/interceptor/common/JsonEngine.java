@@ -0,0 +1,70 @@
+package com.tsm.flume.interceptor.common;
+
+import java.nio.charset.Charset;
+import java.util.List;
+
+/**
+ * The JSON operations the interceptors need, so that the parser behind them
+ * can be chosen with the <code>engine</code> property.
+ * <p>
+ * Engines are created once per interceptor by {@link JsonEngines#forName(String)}
+ * and must be thread-safe. Operations that depend on configuration
+ * (a member key, a list of paths) are compiled once into a
+ * {@link MemberSetter} or an {@link Extractor}.
+ */
+public interface JsonEngine {
+
+    /**
+     * @return the name the engine is selected by
+     */
+    String getName();
+
+    /**
+     * @return false if bodies in <code>charset</code> must be handled by another engine
+     */
+    boolean supports(Charset charset);
+
+    /**
+     * @return true if the body, in the transcoder's source charset, is a JSON object
+     */
+    boolean isObject(byte[] body, CharsetTranscoder transcoder);
+
+    /**
+     * @param transcoder converts bodies from their source charset to the target charset
+     */
+    MemberSetter newMemberSetter(String key, CharsetTranscoder transcoder);
+
+    /**
+     * @return an extractor for the paths, or null if they are left to the JSONPath engine
+     */
+    Extractor newExtractor(List<JsonBytePath> paths);
+
+    /**
+     * Sets one top-level string member of JSON object bodies.
+     */
+    interface MemberSetter {
+
+        /**
+         * Sets the member to <code>value</code>, replacing an existing one.
+         *
+         * @param value the new value, null for JSON null
+         * @return the new body in the target charset
+         * @throws RuntimeException if the body is not a JSON object
+         */
+        byte[] set(byte[] body, String value);
+    }
+
+    /**
+     * Reads the scalar values of a fixed list of paths from UTF-8 bodies.
+     */
+    interface Extractor {
+
+        /**
+         * @param values receives the text of each path's value, or null if it is missing or JSON null
+         * @param errors receives why each path's value could not be read
+         *               ({@link ClassCastException} if it is not a scalar), or null
+         * @return false if the body is malformed
+         */
+        boolean extract(byte[] body, String[] values, RuntimeException[] errors);
+    }
+}
@@ -0,0 +1,77 @@
+package com.tsm.flume.interceptor.common;
+
+import com.google.common.base.Preconditions;
+
+import java.nio.charset.Charset;
+
+/**
+ * The built-in {@link JsonEngine}s.
+ * <p>
+ * <code>bytes</code> works directly on the raw bytes of ASCII-compatible
+ * bodies without building a tree. <code>gson</code> parses bodies into a Gson
+ * tree and <code>gson-stream</code> pulls tokens from a Gson
+ * <code>JsonReader</code>; both are lenient. <code>jackson</code> parses bodies
+ * into a Jackson tree, which <code>JsonInterceptor</code> evaluates with the
+ * JSONPath engine.
+ */
+public final class JsonEngines {
+
+    public static final String CONFIG_ENGINE = "engine";
+
+    public static final String BYTES = "bytes";
+    public static final String GSON = "gson";
+    public static final String GSON_STREAM = "gson-stream";
+    public static final String JACKSON = "jackson";
+
+    private static final JsonEngine GSON_ENGINE = new GsonJsonEngine();
+    private static final JsonEngine GSON_STREAM_ENGINE = new GsonStreamJsonEngine();
+    private static final JsonEngine JACKSON_ENGINE = new JacksonJsonEngine();
+    private static final JsonEngine BYTES_ENGINE = new ByteJsonEngine(GSON_ENGINE);
+    private static final JsonEngine CACHED_BYTES_ENGINE = new ByteJsonEngine(GSON_ENGINE, ParseCache.shared());
+
+    private JsonEngines() {
+    }
+
+    /**
+     * @param name a built-in engine, or the class name of a {@link JsonEngine}
+     *             with a public no-argument constructor
+     * @throws IllegalArgumentException if no such engine exists
+     */
+    public static JsonEngine forName(String name) {
+        Preconditions.checkArgument(name != null, "engine was misconfigured");
+        if (BYTES.equals(name)) {
+            return BYTES_ENGINE;
+        }
+        if (GSON.equals(name)) {
+            return GSON_ENGINE;
+        }
+        if (GSON_STREAM.equals(name)) {
+            return GSON_STREAM_ENGINE;
+        }
+        if (JACKSON.equals(name)) {
+            return JACKSON_ENGINE;
+        }
+        try {
+            return (JsonEngine) Class.forName(name).getDeclaredConstructor().newInstance();
+        } catch (Exception e) {
+            throw new IllegalArgumentException("Unknown engine " + name + ", expected " + BYTES + ", " + GSON + ", "
+                    + GSON_STREAM + ", " + JACKSON + " or a JsonEngine class", e);
+        }
+    }
+
+    /**
+     * @return the <code>bytes</code> engine sharing its results through
+     * {@link ParseCache#shared()} if <code>engine</code> is the <code>bytes</code>
+     * engine, otherwise <code>engine</code>
+     */
+    public static JsonEngine withParseCache(JsonEngine engine) {
+        return engine == BYTES_ENGINE ? CACHED_BYTES_ENGINE : engine;
+    }
+
+    /**
+     * @return <code>engine</code> if it supports <code>charset</code>, otherwise the Gson engine
+     */
+    public static JsonEngine forCharset(JsonEngine engine, Charset charset) {
+        return engine.supports(charset) ? engine : GSON_ENGINE;
+    }
+}
@@ -0,0 +1,277 @@
+package com.tsm.flume.interceptor.common;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Remembers the layout of the records a {@link JsonByteMatcher} has matched,
+ * for paths made of member names only (<code>$.a</code>, <code>$.a.b</code>).
+ * <p>
+ * A shape describes, for each object on the way to the paths, the members up
+ * to the last one a path needs. Each member is stored as the exact bytes that
+ * lead to its value: separator, whitespace, quoted key and colon. Matching an
+ * event against a shape compares each lead byte for byte and skips the values
+ * in between, so there is no key decoding and no lookup per member. Values
+ * can change length from event to event; any other difference (another key,
+ * order, spacing or escape) is a miss and the caller falls back to the full
+ * matcher. For well-formed bodies a hit yields the same ranges as the matcher.
+ * <p>
+ * The cache holds a few shapes, replaced round-robin, so records of several
+ * producers can alternate. Instances are thread-safe.
+ */
+public final class JsonShapeCache {
+
+    /**
+     * Longest lead kept in a shape; records with longer leads are not learned.
+     */
+    public static final int MAX_LEAD = 256;
+
+    private static final int[] NO_TARGETS = new int[0];
+
+    private final Name root;
+    private final int pathCount;
+    private final AtomicReferenceArray<Level> shapes;
+    private final AtomicInteger next = new AtomicInteger();
+
+    /**
+     * @param paths the paths of the matcher, in matcher order
+     * @param size number of shapes kept
+     */
+    public JsonShapeCache(List<JsonBytePath> paths, int size) {
+        this.pathCount = paths.size();
+        this.shapes = new AtomicReferenceArray<Level>(Math.max(size, 1));
+        this.root = new Name();
+        for (int p = 0; p < paths.size(); p++) {
+            JsonBytePath path = paths.get(p);
+            Name name = root;
+            for (int s = 0; s < path.size(); s++) {
+                name = name.child((String) path.segment(s));
+            }
+            name.paths.add(p);
+        }
+    }
+
+    /**
+     * @return true if every path is made of member names only, which is what shapes can describe
+     */
+    public static boolean supports(List<JsonBytePath> paths) {
+        for (JsonBytePath path : paths) {
+            if (path.size() == 0) {
+                return false;
+            }
+            for (int s = 0; s < path.size(); s++) {
+                if (!(path.segment(s) instanceof String)) {
+                    return false;
+                }
+            }
+        }
+        return !paths.isEmpty();
+    }
+
+    /**
+     * Fills <code>ranges</code> (as {@link JsonByteMatcher#match} does) from a cached shape.
+     *
+     * @return true on a hit; on a miss <code>ranges</code> is left undefined
+     */
+    public boolean match(byte[] b, int from, int to, int[] ranges) {
+        for (int s = 0; s < shapes.length(); s++) {
+            Level shape = shapes.get(s);
+            if (shape != null && shape.match(b, from, to, ranges, false) >= 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Records the shape of a body the matcher has just matched. Bodies in
+     * which a path was not found, or in which a needed member name repeats,
+     * are not learned.
+     */
+    public void learn(byte[] b, int from, int to, int[] ranges) {
+        for (int p = 0; p < pathCount; p++) {
+            if (ranges[p * 2] < 0) {
+                return;
+            }
+        }
+        int start = JsonBytes.skipWhitespace(b, from, to);
+        Level shape;
+        try {
+            shape = learn(root, b, from, start, to, ranges);
+        } catch (IllegalArgumentException e) {
+            // invalid escape sequence in a key
+            return;
+        }
+        if (shape != null) {
+            shapes.set((next.getAndIncrement() & Integer.MAX_VALUE) % shapes.length(), shape);
+        }
+    }
+
+    /**
+     * @param pos start of the first lead
+     * @param i index of the opening brace
+     */
+    private Level learn(Name name, byte[] b, int pos, int i, int to, int[] ranges) {
+        if (i >= to || b[i] != '{') {
+            return null;
+        }
+        int last = name.lastRangeStart(ranges);
+        List<byte[]> leads = new ArrayList<byte[]>();
+        List<int[]> targets = new ArrayList<int[]>();
+        List<Level> children = new ArrayList<Level>();
+        i = JsonBytes.skipWhitespace(b, i + 1, to);
+        while (true) {
+            int keyEnd = JsonBytes.skipString(b, i, to);
+            if (keyEnd < 0) {
+                return null;
+            }
+            int colon = JsonBytes.skipWhitespace(b, keyEnd, to);
+            if (colon >= to || b[colon] != ':') {
+                return null;
+            }
+            int valueStart = JsonBytes.skipWhitespace(b, colon + 1, to);
+            int valueEnd = JsonBytes.skipValue(b, valueStart, to);
+            if (valueEnd < 0 || valueStart - pos > MAX_LEAD) {
+                return null;
+            }
+            Name child = name.children.get(JsonBytes.decodeString(b, i + 1, keyEnd - 1));
+            Level childLevel = null;
+            if (child != null) {
+                if (!child.within(ranges, valueStart, valueEnd)) {
+                    // the matcher would also look into this earlier member
+                    return null;
+                }
+                if (!child.children.isEmpty()) {
+                    childLevel = learn(child, b, valueStart, valueStart, to, ranges);
+                    if (childLevel == null) {
+                        return null;
+                    }
+                }
+            }
+            leads.add(Arrays.copyOfRange(b, pos, valueStart));
+            targets.add(child != null ? child.pathArray() : NO_TARGETS);
+            children.add(childLevel);
+            if (valueEnd > last) {
+                break;
+            }
+            i = JsonBytes.skipWhitespace(b, valueEnd, to);
+            if (i >= to || b[i] != ',') {
+                return null;
+            }
+            pos = valueEnd;
+            i = JsonBytes.skipWhitespace(b, i + 1, to);
+        }
+        return new Level(leads.toArray(new byte[0][]), targets.toArray(new int[0][]), children.toArray(new Level[0]));
+    }
+
+    /**
+     * Member name trie built from the paths.
+     */
+    private static final class Name {
+        final Map<String, Name> children = new LinkedHashMap<String, Name>();
+        final List<Integer> paths = new ArrayList<Integer>();
+
+        Name child(String segment) {
+            Name child = children.get(segment);
+            if (child == null) {
+                child = new Name();
+                children.put(segment, child);
+            }
+            return child;
+        }
+
+        int[] pathArray() {
+            int[] array = new int[paths.size()];
+            for (int k = 0; k < array.length; k++) {
+                array[k] = paths.get(k);
+            }
+            return array;
+        }
+
+        /**
+         * @return the start of the last value any path below this name needs
+         */
+        int lastRangeStart(int[] ranges) {
+            int last = -1;
+            for (int p : paths) {
+                last = Math.max(last, ranges[p * 2]);
+            }
+            for (Name child : children.values()) {
+                last = Math.max(last, child.lastRangeStart(ranges));
+            }
+            return last;
+        }
+
+        /**
+         * @return true if every value a path below this name needs lies in <code>[start, end)</code>
+         */
+        boolean within(int[] ranges, int start, int end) {
+            for (int p : paths) {
+                if (ranges[p * 2] < start || ranges[p * 2] >= end) {
+                    return false;
+                }
+            }
+            for (Name child : children.values()) {
+                if (!child.within(ranges, start, end)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * The needed members of one object of a shape.
+     */
+    private static final class Level {
+        final byte[][] leads;
+        final int[][] targets;
+        final Level[] children;
+
+        Level(byte[][] leads, int[][] targets, Level[] children) {
+            this.leads = leads;
+            this.targets = targets;
+            this.children = children;
+        }
+
+        /**
+         * @param needEnd whether the caller needs the end of the last member's value
+         * @return the end of the last member's value (or, without <code>needEnd</code>,
+         * any non-negative index), or {@link JsonBytes#MALFORMED} on a miss
+         */
+        int match(byte[] b, int pos, int to, int[] ranges, boolean needEnd) {
+            int lastMember = leads.length - 1;
+            for (int m = 0; m <= lastMember; m++) {
+                byte[] lead = leads[m];
+                int valueStart = pos + lead.length;
+                if (valueStart > to || !JsonBytes.regionEquals(b, pos, valueStart, lead)) {
+                    return JsonBytes.MALFORMED;
+                }
+                boolean memberNeedsEnd = m < lastMember || needEnd || targets[m].length > 0;
+                int valueEnd;
+                if (children[m] != null) {
+                    valueEnd = children[m].match(b, valueStart, to, ranges, false);
+                    if (valueEnd >= 0 && memberNeedsEnd) {
+                        valueEnd = JsonBytes.skipValue(b, valueStart, to);
+                    }
+                } else {
+                    valueEnd = JsonBytes.skipValue(b, valueStart, to);
+                }
+                if (valueEnd < 0) {
+                    return JsonBytes.MALFORMED;
+                }
+                for (int p : targets[m]) {
+                    ranges[p * 2] = valueStart;
+                    ranges[p * 2 + 1] = valueEnd;
+                }
+                pos = valueEnd;
+            }
+            return pos;
+        }
+    }
+}
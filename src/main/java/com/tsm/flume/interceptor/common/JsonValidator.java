@@ -0,0 +1,297 @@
+package com.tsm.flume.interceptor.common;
+
+import java.nio.charset.Charset;
+
+/**
+ * Strict (RFC 8259) JSON syntax check over raw bytes.
+ * <p>
+ * The check is a single state machine pass over the buffer. It builds no
+ * tree, throws no exception and allocates nothing per call: the nesting of
+ * objects and arrays is kept in a per-thread bit stack. The result is one of
+ * the status codes below.
+ * <p>
+ * Bytes are interpreted as ASCII, which is only correct for charsets in which
+ * every byte below 0x80 is the ASCII character itself; see {@link #supports(Charset)}.
+ */
+public final class JsonValidator {
+
+    public static final int VALID = 0;
+    public static final int EMPTY = 1;
+    public static final int NOT_OBJECT = 2;
+    public static final int UNEXPECTED_BYTE = 3;
+    public static final int UNEXPECTED_END = 4;
+    public static final int TRAILING_DATA = 5;
+    public static final int TOO_DEEP = 6;
+    public static final int INVALID_STRING = 7;
+    public static final int INVALID_NUMBER = 8;
+
+    private static final String[] STATUS_NAMES = {
+            "valid", "empty", "not_object", "unexpected_byte", "unexpected_end",
+            "trailing_data", "too_deep", "invalid_string", "invalid_number"
+    };
+
+    public static final int MAX_DEPTH = 1024;
+
+    private static final ThreadLocal<long[]> STACK = new ThreadLocal<long[]>() {
+        @Override
+        protected long[] initialValue() {
+            return new long[MAX_DEPTH / 64];
+        }
+    };
+
+    private static final int EXPECT_VALUE = 0;
+    private static final int EXPECT_KEY_OR_END = 1;
+    private static final int EXPECT_KEY = 2;
+    private static final int EXPECT_COLON = 3;
+    private static final int EXPECT_VALUE_OR_END = 4;
+    private static final int AFTER_VALUE = 5;
+
+    private JsonValidator() {
+    }
+
+    /**
+     * @return a short, header friendly name for a status code
+     */
+    public static String statusName(int status) {
+        return status >= 0 && status < STATUS_NAMES.length ? STATUS_NAMES[status] : "unknown";
+    }
+
+    /**
+     * @return true if bodies in this charset can be validated byte by byte
+     */
+    public static boolean supports(Charset charset) {
+        return CharsetTranscoder.isAsciiCompatible(charset);
+    }
+
+    /**
+     * @return true if <code>b[from, to)</code> is exactly one JSON number
+     */
+    public static boolean isNumber(byte[] b, int from, int to) {
+        return from < to && number(b, from, to) == to;
+    }
+
+    /**
+     * Validates <code>b[from, to)</code>.
+     *
+     * @param requireObject if true, the top-level value must be an object
+     * @return {@link #VALID} or the reason the bytes are not valid JSON
+     */
+    public static int validate(byte[] b, int from, int to, boolean requireObject) {
+        int i = JsonBytes.skipWhitespace(b, from, to);
+        if (i >= to) {
+            return EMPTY;
+        }
+        if (requireObject && b[i] != '{') {
+            return NOT_OBJECT;
+        }
+
+        long[] stack = STACK.get();
+        int depth = 0;
+        int state = EXPECT_VALUE;
+        while (true) {
+            i = JsonBytes.skipWhitespace(b, i, to);
+            if (i >= to) {
+                return depth == 0 && state == AFTER_VALUE ? VALID : UNEXPECTED_END;
+            }
+            byte c = b[i];
+            if (state == EXPECT_KEY_OR_END || state == EXPECT_VALUE_OR_END) {
+                // an empty object or array, otherwise its first key or value
+                if (c == (state == EXPECT_KEY_OR_END ? '}' : ']')) {
+                    depth--;
+                    i++;
+                    state = AFTER_VALUE;
+                    continue;
+                }
+                state = state == EXPECT_KEY_OR_END ? EXPECT_KEY : EXPECT_VALUE;
+            }
+            switch (state) {
+                case EXPECT_KEY:
+                    if (c != '"') {
+                        return UNEXPECTED_BYTE;
+                    }
+                    i = string(b, i, to);
+                    if (i < 0) {
+                        return -i;
+                    }
+                    state = EXPECT_COLON;
+                    break;
+                case EXPECT_COLON:
+                    if (c != ':') {
+                        return UNEXPECTED_BYTE;
+                    }
+                    i++;
+                    state = EXPECT_VALUE;
+                    break;
+                case EXPECT_VALUE:
+                    if (c == '{' || c == '[') {
+                        if (depth == MAX_DEPTH) {
+                            return TOO_DEEP;
+                        }
+                        if (c == '{') {
+                            stack[depth >>> 6] |= 1L << depth;
+                            state = EXPECT_KEY_OR_END;
+                        } else {
+                            stack[depth >>> 6] &= ~(1L << depth);
+                            state = EXPECT_VALUE_OR_END;
+                        }
+                        depth++;
+                        i++;
+                        break;
+                    }
+                    if (c == '"') {
+                        i = string(b, i, to);
+                    } else if (c == '-' || (c >= '0' && c <= '9')) {
+                        i = number(b, i, to);
+                    } else {
+                        i = literal(b, i, to);
+                    }
+                    if (i < 0) {
+                        return -i;
+                    }
+                    state = AFTER_VALUE;
+                    break;
+                default:
+                    // AFTER_VALUE
+                    if (depth == 0) {
+                        return TRAILING_DATA;
+                    }
+                    boolean inObject = (stack[(depth - 1) >>> 6] & (1L << (depth - 1))) != 0;
+                    if (c == ',') {
+                        state = inObject ? EXPECT_KEY : EXPECT_VALUE;
+                    } else if (c == (inObject ? '}' : ']')) {
+                        depth--;
+                    } else {
+                        return UNEXPECTED_BYTE;
+                    }
+                    i++;
+                    break;
+            }
+        }
+    }
+
+    /**
+     * @return the index after the closing quote, or a negated status code
+     */
+    private static int string(byte[] b, int i, int to) {
+        i++;
+        while (i < to) {
+            // plain content is skipped a word at a time
+            i = SwarBytes.stringSpecial(b, i, to);
+            if (i >= to) {
+                break;
+            }
+            int c = b[i] & 0xFF;
+            if (c == '"') {
+                return i + 1;
+            }
+            if (c < 0x20) {
+                return -INVALID_STRING;
+            }
+            if (c == '\\') {
+                if (i + 1 >= to) {
+                    return -UNEXPECTED_END;
+                }
+                byte e = b[i + 1];
+                if (e == 'u') {
+                    if (i + 6 > to) {
+                        return -UNEXPECTED_END;
+                    }
+                    for (int k = i + 2; k < i + 6; k++) {
+                        if (!isHex(b[k])) {
+                            return -INVALID_STRING;
+                        }
+                    }
+                    i += 6;
+                    continue;
+                }
+                if (e != '"' && e != '\\' && e != '/' && e != 'b' && e != 'f' && e != 'n' && e != 'r' && e != 't') {
+                    return -INVALID_STRING;
+                }
+                i += 2;
+            }
+        }
+        return -UNEXPECTED_END;
+    }
+
+    private static boolean isHex(byte c) {
+        return (c >= '0' && c <= '9') || (c >= 'a' && c <= 'f') || (c >= 'A' && c <= 'F');
+    }
+
+    private static boolean isDigit(byte c) {
+        return c >= '0' && c <= '9';
+    }
+
+    /**
+     * @return the index after the number, or a negated status code
+     */
+    private static int number(byte[] b, int i, int to) {
+        if (b[i] == '-') {
+            i++;
+        }
+        if (i >= to) {
+            return -UNEXPECTED_END;
+        }
+        if (b[i] == '0') {
+            i++;
+        } else if (isDigit(b[i])) {
+            while (i < to && isDigit(b[i])) {
+                i++;
+            }
+        } else {
+            return -INVALID_NUMBER;
+        }
+        if (i < to && b[i] == '.') {
+            i++;
+            if (i >= to || !isDigit(b[i])) {
+                return -INVALID_NUMBER;
+            }
+            while (i < to && isDigit(b[i])) {
+                i++;
+            }
+        }
+        if (i < to && (b[i] == 'e' || b[i] == 'E')) {
+            i++;
+            if (i < to && (b[i] == '+' || b[i] == '-')) {
+                i++;
+            }
+            if (i >= to || !isDigit(b[i])) {
+                return -INVALID_NUMBER;
+            }
+            while (i < to && isDigit(b[i])) {
+                i++;
+            }
+        }
+        return i;
+    }
+
+    private static final byte[] TRUE = {'t', 'r', 'u', 'e'};
+    private static final byte[] FALSE = {'f', 'a', 'l', 's', 'e'};
+    private static final byte[] NULL = {'n', 'u', 'l', 'l'};
+
+    /**
+     * @return the index after the literal, or a negated status code
+     */
+    private static int literal(byte[] b, int i, int to) {
+        byte[] expected;
+        switch (b[i]) {
+            case 't':
+                expected = TRUE;
+                break;
+            case 'f':
+                expected = FALSE;
+                break;
+            case 'n':
+                expected = NULL;
+                break;
+            default:
+                return -UNEXPECTED_BYTE;
+        }
+        if (i + expected.length > to) {
+            return -UNEXPECTED_END;
+        }
+        if (!JsonBytes.regionEquals(b, i, i + expected.length, expected)) {
+            return -UNEXPECTED_BYTE;
+        }
+        return i + expected.length;
+    }
+}
@@ -0,0 +1,152 @@
+package com.tsm.flume.interceptor.common;
+
+import org.apache.flume.Context;
+import org.apache.flume.Event;
+import org.apache.flume.interceptor.Interceptor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs an interceptor's {@link Interceptor#intercept(Event)}, or any other
+ * {@link EventFunction}, over a batch, optionally splitting large batches
+ * across a shared fork-join pool.
+ * <p>
+ * The returned list keeps the input order and leaves out events the
+ * interceptor dropped (returned null for). Batches smaller than the threshold,
+ * and every batch when parallel mode is off, are processed on the calling
+ * thread. The pool is shared by all interceptors and has one worker per
+ * available processor.
+ * <p>
+ * Properties:<p>
+ * parallel: split large batches across the pool (default is false)<p>
+ * parallelThreshold: smallest batch that is split (default is 512)<p>
+ */
+public final class ParallelBatch {
+
+    public static final String CONFIG_PARALLEL = "parallel";
+    public static final boolean DEFAULT_PARALLEL = false;
+    public static final String CONFIG_THRESHOLD = "parallelThreshold";
+    public static final int DEFAULT_THRESHOLD = 512;
+
+    private static final int MIN_CHUNK = 64;
+
+    private final boolean parallel;
+    private final int threshold;
+
+    public ParallelBatch(boolean parallel, int threshold) {
+        this.parallel = parallel;
+        this.threshold = Math.max(threshold, 2);
+    }
+
+    public static ParallelBatch configure(Context context) {
+        return new ParallelBatch(context.getBoolean(CONFIG_PARALLEL, DEFAULT_PARALLEL),
+                context.getInteger(CONFIG_THRESHOLD, DEFAULT_THRESHOLD));
+    }
+
+    public boolean isParallel() {
+        return parallel;
+    }
+
+    public int getThreshold() {
+        return threshold;
+    }
+
+    public List<Event> intercept(Interceptor interceptor, List<Event> events) {
+        return intercept(interceptor::intercept, events);
+    }
+
+    public List<Event> intercept(EventFunction function, List<Event> events) {
+        int size = events.size();
+        if (!parallel || size < threshold) {
+            List<Event> interceptedEvents = new ArrayList<Event>(size);
+            for (Event event : events) {
+                Event interceptedEvent = function.apply(event);
+                if (interceptedEvent != null) {
+                    interceptedEvents.add(interceptedEvent);
+                }
+            }
+            return interceptedEvents;
+        }
+
+        Event[] input = events.toArray(new Event[size]);
+        Event[] output = new Event[size];
+        ForkJoinPool pool = Pool.INSTANCE;
+        int chunk = Math.max(MIN_CHUNK, size / (pool.getParallelism() * 4));
+        pool.invoke(new Chunk(function, input, output, 0, size, chunk));
+
+        List<Event> interceptedEvents = new ArrayList<Event>(size);
+        for (Event event : output) {
+            if (event != null) {
+                interceptedEvents.add(event);
+            }
+        }
+        return interceptedEvents;
+    }
+
+    /**
+     * Work done on each event of a batch.
+     */
+    public interface EventFunction {
+
+        /**
+         * @return the event to pass on, or null to drop it
+         */
+        Event apply(Event event);
+    }
+
+    private static final class Chunk extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final EventFunction function;
+        private final Event[] input;
+        private final Event[] output;
+        private final int from;
+        private final int to;
+        private final int chunk;
+
+        Chunk(EventFunction function, Event[] input, Event[] output, int from, int to, int chunk) {
+            this.function = function;
+            this.input = input;
+            this.output = output;
+            this.from = from;
+            this.to = to;
+            this.chunk = chunk;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= chunk) {
+                for (int i = from; i < to; i++) {
+                    output[i] = function.apply(input[i]);
+                }
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new Chunk(function, input, output, from, middle, chunk),
+                    new Chunk(function, input, output, middle, to, chunk));
+        }
+    }
+
+    /**
+     * Lazily created shared pool.
+     */
+    private static final class Pool {
+        static final ForkJoinPool INSTANCE = new ForkJoinPool(Runtime.getRuntime().availableProcessors(),
+                new ForkJoinPool.ForkJoinWorkerThreadFactory() {
+                    private final AtomicInteger count = new AtomicInteger();
+
+                    @Override
+                    public ForkJoinWorkerThread newThread(ForkJoinPool pool) {
+                        ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+                        thread.setName("flume-interceptor-parallel-" + count.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                }, null, false);
+    }
+}
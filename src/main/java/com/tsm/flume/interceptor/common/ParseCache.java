@@ -0,0 +1,150 @@
+package com.tsm.flume.interceptor.common;
+
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Parse results shared by the interceptors of a chain, so that a body is
+ * validated and indexed once rather than once per interceptor.
+ * <p>
+ * Results are keyed by the identity of the body array. An interceptor that
+ * rewrites an event gives it a new array with <code>setBody</code>, which
+ * leaves the old results unreachable: nothing has to be invalidated, as long
+ * as no one changes a body array in place.
+ * <p>
+ * The cache is a fixed table of {@link #SLOTS} entries indexed by the
+ * identity hash of the body, so a chain running over a batch finds the
+ * results of the batch's events while older ones are overwritten. Bodies are
+ * held by weak references: once a batch is done and its events are gone, so
+ * are their entries, and the cache never keeps a body alive.
+ * <p>
+ * An entry holds the {@link JsonValidator} status of the body as an object
+ * and, for valid objects, the index of its top-level members: the start and
+ * end of the object, then for each member the start and end of its quoted
+ * key and of its value.
+ */
+public final class ParseCache {
+
+    public static final String CONFIG_PARSE_CACHE = "parseCache";
+    public static final boolean DEFAULT_PARSE_CACHE = false;
+
+    public static final int SLOTS = 1 << 13;
+
+    private static final ParseCache SHARED = new ParseCache(SLOTS);
+
+    private final AtomicReferenceArray<Entry> entries;
+    private final int mask;
+
+    ParseCache(int slots) {
+        this.entries = new AtomicReferenceArray<Entry>(slots);
+        this.mask = slots - 1;
+    }
+
+    /**
+     * @return the cache shared by every interceptor of the process
+     */
+    public static ParseCache shared() {
+        return SHARED;
+    }
+
+    /**
+     * @return the {@link JsonValidator} status of <code>body</code> with an object
+     * required, validating it only if no interceptor did before
+     */
+    public int validateObject(byte[] body) {
+        Entry entry = get(body);
+        if (entry != null) {
+            return entry.status;
+        }
+        int status = JsonValidator.validate(body, 0, body.length, true);
+        put(body, new Entry(new WeakReference<byte[]>(body), status, null));
+        return status;
+    }
+
+    /**
+     * Records that <code>body</code> is a valid object, for a body built from one.
+     */
+    public void putValidObject(byte[] body) {
+        put(body, new Entry(new WeakReference<byte[]>(body), JsonValidator.VALID, null));
+    }
+
+    /**
+     * @return the top-level member index of <code>body</code>, or null if it is
+     * not a valid object
+     */
+    public int[] members(byte[] body) {
+        Entry entry = get(body);
+        if (entry != null && entry.members != null) {
+            return entry.members;
+        }
+        int status = entry != null ? entry.status : JsonValidator.validate(body, 0, body.length, true);
+        WeakReference<byte[]> ref = entry != null ? entry.body : new WeakReference<byte[]>(body);
+        int[] members = status == JsonValidator.VALID ? index(body) : null;
+        put(body, new Entry(ref, status, members));
+        return members;
+    }
+
+    /**
+     * Indexes the top-level members of a valid object.
+     */
+    static int[] index(byte[] b) {
+        int to = b.length;
+        int start = JsonBytes.skipWhitespace(b, 0, to);
+        int[] index = new int[2 + 4 * 8];
+        int n = 2;
+        int i = JsonBytes.skipWhitespace(b, start + 1, to);
+        while (b[i] != '}') {
+            int keyEnd = JsonBytes.skipString(b, i, to);
+            int valueStart = JsonBytes.skipWhitespace(b, JsonBytes.skipWhitespace(b, keyEnd, to) + 1, to);
+            int valueEnd = JsonBytes.skipValue(b, valueStart, to);
+            if (n + 4 > index.length) {
+                index = Arrays.copyOf(index, index.length * 2);
+            }
+            index[n++] = i;
+            index[n++] = keyEnd;
+            index[n++] = valueStart;
+            index[n++] = valueEnd;
+            i = JsonBytes.skipWhitespace(b, valueEnd, to);
+            if (b[i] == ',') {
+                i = JsonBytes.skipWhitespace(b, i + 1, to);
+            }
+        }
+        index[0] = start;
+        index[1] = i + 1;
+        return Arrays.copyOf(index, n);
+    }
+
+    /**
+     * @return true if an interceptor validated <code>body</code> through the cache
+     */
+    boolean contains(byte[] body) {
+        return get(body) != null;
+    }
+
+    private Entry get(byte[] body) {
+        Entry entry = entries.get(slot(body));
+        return entry != null && entry.body.get() == body ? entry : null;
+    }
+
+    private void put(byte[] body, Entry entry) {
+        entries.set(slot(body), entry);
+    }
+
+    private int slot(byte[] body) {
+        int h = System.identityHashCode(body);
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+    private static final class Entry {
+        final WeakReference<byte[]> body;
+        final int status;
+        final int[] members;
+
+        Entry(WeakReference<byte[]> body, int status, int[] members) {
+            this.body = body;
+            this.status = status;
+            this.members = members;
+        }
+    }
+}
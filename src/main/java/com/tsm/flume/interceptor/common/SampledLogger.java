@@ -0,0 +1,89 @@
+package com.tsm.flume.interceptor.common;
+
+import org.slf4j.Logger;
+import org.slf4j.helpers.MessageFormatter;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Rate-limited warnings for per-event failures.
+ * <p>
+ * At most one message, with its stack trace, is written per interval. The
+ * messages suppressed in between are only counted, and their number is added
+ * to the next message that is written. Deciding whether to log is a single
+ * volatile read on the common path, so a flood of bad events costs a counter
+ * increment each instead of a stack trace. Messages with a <code>{}</code>
+ * placeholder are only formatted once they are written.
+ */
+public final class SampledLogger {
+
+    public static final long DEFAULT_INTERVAL_MILLIS = 10000L;
+
+    private final Logger logger;
+    private final long intervalNanos;
+    private final AtomicLong nextLogNanos;
+    private final LongAdder suppressed = new LongAdder();
+
+    public SampledLogger(Logger logger, long intervalMillis) {
+        this.logger = logger;
+        this.intervalNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(intervalMillis, 0L));
+        this.nextLogNanos = new AtomicLong(System.nanoTime());
+    }
+
+    public SampledLogger(Logger logger) {
+        this(logger, DEFAULT_INTERVAL_MILLIS);
+    }
+
+    public void warn(String message, Throwable cause) {
+        if (!logger.isWarnEnabled() || !sample()) {
+            return;
+        }
+        write(message, cause);
+    }
+
+    /**
+     * Same as {@link #warn(String, Throwable)} with the <code>{}</code> of
+     * <code>format</code> replaced by <code>argument</code>.
+     */
+    public void warn(String format, Object argument, Throwable cause) {
+        if (!logger.isWarnEnabled() || !sample()) {
+            return;
+        }
+        write(MessageFormatter.format(format, argument).getMessage(), cause);
+    }
+
+    private void write(String message, Throwable cause) {
+        long skipped = suppressed.sumThenReset();
+        if (skipped > 0) {
+            message = message + " (" + skipped + " more not logged)";
+        }
+        if (cause == null) {
+            logger.warn(message);
+        } else {
+            logger.warn(message, cause);
+        }
+    }
+
+    /**
+     * @return true if a message may be written now; otherwise counts it as suppressed
+     */
+    boolean sample() {
+        long now = System.nanoTime();
+        long next = nextLogNanos.get();
+        if (now - next < 0 || !nextLogNanos.compareAndSet(next, now + intervalNanos)) {
+            suppressed.increment();
+            return false;
+        }
+        return true;
+    }
+
+    public void warn(String message) {
+        warn(message, null);
+    }
+
+    public long getSuppressedCount() {
+        return suppressed.sum();
+    }
+}
@@ -0,0 +1,153 @@
+package com.tsm.flume.interceptor.common;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bounded cache that hands out one shared <code>String</code> per distinct
+ * value of a low-cardinality field.
+ * <p>
+ * Values can be looked up by the raw bytes they were extracted from, so a
+ * value that is already cached costs a hash over those bytes and no new
+ * <code>String</code>. Both tables are 4-way set associative: a value can sit
+ * in any of four neighbouring slots, and when they are all taken a new value
+ * replaces one of them.
+ * <p>
+ * The cache watches its own miss rate. If more than half of the lookups in a
+ * window of {@link #WINDOW} miss, the field is not low-cardinality and the
+ * cache turns itself off for good: lookups then return null and
+ * {@link #intern(String)} returns its argument. The counts are approximate
+ * under concurrency, which only moves the cutoff slightly. Instances are
+ * thread-safe.
+ */
+public final class StringInterner {
+
+    public static final int WINDOW = 1024;
+
+    private static final int WAYS = 4;
+
+    private final AtomicReferenceArray<Entry> byRaw;
+    private final AtomicReferenceArray<String> byValue;
+    private final int mask;
+    private final AtomicInteger lookups = new AtomicInteger();
+    private final AtomicInteger misses = new AtomicInteger();
+    private volatile boolean disabled;
+
+    /**
+     * @param size number of values kept, rounded up to a power of two
+     */
+    public StringInterner(int size) {
+        int capacity = Math.max(Integer.highestOneBit(Math.max(size, WAYS) - 1) << 1, WAYS);
+        this.byRaw = new AtomicReferenceArray<Entry>(capacity);
+        this.byValue = new AtomicReferenceArray<String>(capacity);
+        this.mask = capacity - 1;
+    }
+
+    public boolean isDisabled() {
+        return disabled;
+    }
+
+    private static int hash(byte[] b, int from, int to) {
+        int h = 1;
+        for (int i = from; i < to; i++) {
+            h = 31 * h + b[i];
+        }
+        return h ^ (h >>> 16);
+    }
+
+    private static int spread(int h) {
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * @return the value cached for the raw bytes <code>b[from, to)</code>, or null
+     */
+    public String lookup(byte[] b, int from, int to) {
+        if (disabled) {
+            return null;
+        }
+        int h = hash(b, from, to);
+        for (int way = 0; way < WAYS; way++) {
+            Entry entry = byRaw.get((h + way) & mask);
+            if (entry != null && JsonBytes.regionEquals(b, from, to, entry.raw)) {
+                count(true);
+                return entry.value;
+            }
+        }
+        count(false);
+        return null;
+    }
+
+    /**
+     * Caches <code>value</code> as the value of the raw bytes <code>b[from, to)</code>.
+     *
+     * @return the shared instance equal to <code>value</code>
+     */
+    public String remember(byte[] b, int from, int to, String value) {
+        if (disabled) {
+            return value;
+        }
+        String shared = intern(value);
+        byte[] raw = new byte[to - from];
+        System.arraycopy(b, from, raw, 0, raw.length);
+        int h = hash(b, from, to);
+        byRaw.set(victim(byRaw, h), new Entry(raw, shared));
+        return shared;
+    }
+
+    /**
+     * @return a cached string equal to <code>value</code>, or <code>value</code> itself after caching it
+     */
+    public String intern(String value) {
+        if (disabled || value == null) {
+            return value;
+        }
+        int h = spread(value.hashCode());
+        for (int way = 0; way < WAYS; way++) {
+            String cached = byValue.get((h + way) & mask);
+            if (cached != null && cached.equals(value)) {
+                return cached;
+            }
+        }
+        byValue.set(victim(byValue, h), value);
+        return value;
+    }
+
+    /**
+     * @return the first empty slot of the set of <code>h</code>, or one picked by the hash's high bits
+     */
+    private <T> int victim(AtomicReferenceArray<T> table, int h) {
+        for (int way = 0; way < WAYS; way++) {
+            if (table.get((h + way) & mask) == null) {
+                return (h + way) & mask;
+            }
+        }
+        return (h + (h >>> 28 & (WAYS - 1))) & mask;
+    }
+
+    private void count(boolean hit) {
+        int missed = hit ? misses.get() : misses.incrementAndGet();
+        if (lookups.incrementAndGet() < WINDOW) {
+            return;
+        }
+        if (missed * 2 > WINDOW) {
+            disabled = true;
+            for (int i = 0; i <= mask; i++) {
+                byRaw.set(i, null);
+                byValue.set(i, null);
+            }
+        }
+        lookups.set(0);
+        misses.set(0);
+    }
+
+    private static final class Entry {
+        final byte[] raw;
+        final String value;
+
+        Entry(byte[] raw, String value) {
+            this.raw = raw;
+            this.value = value;
+        }
+    }
+}
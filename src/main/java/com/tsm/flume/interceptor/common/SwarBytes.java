@@ -0,0 +1,148 @@
+package com.tsm.flume.interceptor.common;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Word-at-a-time (SWAR) scans for the bytes that end a run of plain string
+ * content.
+ * <p>
+ * Runs longer than a word are read as little-endian <code>long</code>s, and
+ * bit tricks test all eight bytes of a word at once, so the position of the
+ * first byte of interest comes out of the word without a branch per byte.
+ * The first {@link #SCALAR_PREFIX} bytes are scanned one at a time, so short
+ * strings such as keys do not pay for the word reads. Words are read through
+ * a <code>ByteBuffer</code> view that does not escape, which the JIT removes,
+ * so the scans stay allocation free on Java 8.
+ */
+final class SwarBytes {
+
+    /**
+     * Number of bytes scanned one at a time before switching to words.
+     */
+    static final int SCALAR_PREFIX = 16;
+
+    private static final long ONES = 0x0101010101010101L;
+    private static final long LOW_BITS = 0x7F7F7F7F7F7F7F7FL;
+    private static final long HIGH_BITS = 0x8080808080808080L;
+    private static final long QUOTE = ONES * '"';
+    private static final long BACKSLASH = ONES * '\\';
+    private static final long BELOW_SPACE = ONES * (0x80 - 0x20);
+
+    private SwarBytes() {
+    }
+
+    /**
+     * @return the index of the first quote or backslash in <code>b[i, to)</code>,
+     * or <code>to</code>
+     */
+    static int quoteOrBackslash(byte[] b, int i, int to) {
+        int scalarEnd = Math.min(to, i + SCALAR_PREFIX);
+        for (; i < scalarEnd; i++) {
+            byte c = b[i];
+            if (c == '"' || c == '\\') {
+                return i;
+            }
+        }
+        if (to - i >= 8) {
+            ByteBuffer in = ByteBuffer.wrap(b).order(ByteOrder.LITTLE_ENDIAN);
+            for (; to - i >= 8; i += 8) {
+                long word = in.getLong(i);
+                long found = equal(word, QUOTE) | equal(word, BACKSLASH);
+                if (found != 0) {
+                    return i + (Long.numberOfTrailingZeros(found) >>> 3);
+                }
+            }
+        }
+        for (; i < to; i++) {
+            byte c = b[i];
+            if (c == '"' || c == '\\') {
+                return i;
+            }
+        }
+        return to;
+    }
+
+    /**
+     * @return the index of the first quote, backslash or control character in
+     * <code>b[i, to)</code>, or <code>to</code>
+     */
+    static int stringSpecial(byte[] b, int i, int to) {
+        int scalarEnd = Math.min(to, i + SCALAR_PREFIX);
+        for (; i < scalarEnd; i++) {
+            int c = b[i] & 0xFF;
+            if (c == '"' || c == '\\' || c < 0x20) {
+                return i;
+            }
+        }
+        if (to - i >= 8) {
+            ByteBuffer in = ByteBuffer.wrap(b).order(ByteOrder.LITTLE_ENDIAN);
+            for (; to - i >= 8; i += 8) {
+                long word = in.getLong(i);
+                long found = equal(word, QUOTE) | equal(word, BACKSLASH) | belowSpace(word);
+                if (found != 0) {
+                    return i + (Long.numberOfTrailingZeros(found) >>> 3);
+                }
+            }
+        }
+        for (; i < to; i++) {
+            int c = b[i] & 0xFF;
+            if (c == '"' || c == '\\' || c < 0x20) {
+                return i;
+            }
+        }
+        return to;
+    }
+
+    /**
+     * @return the index of the first byte of <code>b[i, to)</code> that a JSON
+     * string cannot hold as it is (quote, backslash, control character) or that
+     * is not ASCII, or <code>to</code>
+     */
+    static int notPlainAscii(byte[] b, int i, int to) {
+        int scalarEnd = Math.min(to, i + SCALAR_PREFIX);
+        for (; i < scalarEnd; i++) {
+            int c = b[i] & 0xFF;
+            if (c == '"' || c == '\\' || c < 0x20 || c >= 0x80) {
+                return i;
+            }
+        }
+        if (to - i >= 8) {
+            ByteBuffer in = ByteBuffer.wrap(b).order(ByteOrder.LITTLE_ENDIAN);
+            for (; to - i >= 8; i += 8) {
+                long word = in.getLong(i);
+                long found = equal(word, QUOTE) | equal(word, BACKSLASH) | belowSpace(word) | (word & HIGH_BITS);
+                if (found != 0) {
+                    return i + (Long.numberOfTrailingZeros(found) >>> 3);
+                }
+            }
+        }
+        for (; i < to; i++) {
+            int c = b[i] & 0xFF;
+            if (c == '"' || c == '\\' || c < 0x20 || c >= 0x80) {
+                return i;
+            }
+        }
+        return to;
+    }
+
+    /**
+     * @return 0x80 in every byte of <code>word</code> equal to the byte of
+     * <code>pattern</code>, 0 in the others
+     */
+    static long equal(long word, long pattern) {
+        long v = word ^ pattern;
+        // the high bit of each byte of t is set unless its low 7 bits are all zero
+        long t = (v & LOW_BITS) + LOW_BITS;
+        return ~(t | v | LOW_BITS);
+    }
+
+    /**
+     * @return 0x80 in every byte of <code>word</code> below 0x20, 0 in the others
+     */
+    static long belowSpace(long word) {
+        // the high bit of each byte of t is set if its low 7 bits are 0x20 or more
+        long t = (word & LOW_BITS) + BELOW_SPACE;
+        return ~(t | word) & HIGH_BITS;
+    }
+}
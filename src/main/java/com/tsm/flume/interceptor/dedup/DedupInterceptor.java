@@ -0,0 +1,245 @@
+package com.tsm.flume.interceptor.dedup;
+
+import com.google.common.base.Preconditions;
+import com.tsm.flume.interceptor.common.ByteHash;
+import com.tsm.flume.interceptor.common.FailurePolicy;
+import com.tsm.flume.interceptor.common.InterceptorCounter;
+import com.tsm.flume.interceptor.common.InterceptorCounter.Stage;
+import com.tsm.flume.interceptor.common.JsonByteMatcher;
+import com.tsm.flume.interceptor.common.JsonBytePath;
+import com.tsm.flume.interceptor.common.ParallelBatch;
+import org.apache.flume.Context;
+import org.apache.flume.Event;
+import org.apache.flume.interceptor.Interceptor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Interceptor class that drops events whose JSON id was seen recently.
+ * <p>
+ * The id is located by a {@link JsonByteMatcher} directly over the UTF-8 body,
+ * and the 64-bit {@link ByteHash} of its raw bytes is looked up in a
+ * fixed-size set of recent ids. Ids are compared as written, so
+ * <code>"42"</code> and <code>42</code> are different ids. Two distinct ids
+ * with the same hash are taken for duplicates; with a 64-bit hash this is
+ * negligible for millions of ids.
+ * <p>
+ * Ids are recorded when an event passes the interceptor, not when the channel
+ * commits it. Flume runs the interceptors before the put, so when the put
+ * fails (a full channel, for instance) and the source sends the same batch
+ * again, its ids are already recorded. A batch whose first id is the first id
+ * of one of the last <code>retryWindow</code> batches is therefore taken for
+ * such a retry, and the ids let through in that batch are let through again.
+ * This also lets through a producer that re-sends a whole batch right away,
+ * and it does not help when the failed batch is never retried and its records
+ * arrive again later by another way: those are dropped as duplicates. Only
+ * batches are tracked; events intercepted one by one are never taken for
+ * retries.
+ * <p>
+ * key: simple JSONPath of the id, such as <code>$.pageViewId</code> (required)<p>
+ * capacity: number of ids a generation of the set holds; the set remembers the
+ * last <code>capacity</code> to <code>2 * capacity</code> ids and takes up to
+ * 32 bytes per id (default is 1000000)<p>
+ * windowSeconds: age after which a generation is retired, so that ids are
+ * forgotten after one to two windows; 0 keeps them until the capacity is
+ * reached (default is 0)<p>
+ * retryWindow: number of recent batches a retried batch is recognized from;
+ * 0 drops every id seen before, even in a retried batch (default is 1)<p>
+ * metrics, metricsName: see {@link InterceptorCounter}. Events with a new id
+ * are counted as extracted, events without the id as missing and duplicates
+ * as dropped.<p>
+ * onFailure, failureHeader: see {@link FailurePolicy}; applies to malformed
+ * bodies, which are not checked for duplicates (default is pass).
+ * <p>
+ * Sample config:<p>
+ *
+ * <code>
+ * agent.sources.r1.interceptors.i1.type = com.tsm.flume.interceptor.dedup.DedupInterceptor$Builder<p>
+ * agent.sources.r1.interceptors.i1.key = $.pageViewId<p>
+ * agent.sources.r1.interceptors.i1.windowSeconds = 600<p>
+ * </code>
+ */
+public class DedupInterceptor implements Interceptor {
+
+    private static final Logger logger = LoggerFactory.getLogger(DedupInterceptor.class);
+
+    static final String REASON_MALFORMED = "malformed_json";
+
+    private final JsonByteMatcher matcher;
+    private final SeenKeys seen;
+    private final boolean windowed;
+    private final RecentBatches recent;
+    final ParallelBatch batch;
+    final InterceptorCounter counter;
+    final FailurePolicy failurePolicy;
+
+    /**
+     * Only {@link DedupInterceptor.Builder} can build me
+     */
+    private DedupInterceptor(JsonBytePath key, int capacity, long windowSeconds, int retryWindow,
+                             ParallelBatch batch, InterceptorCounter counter, FailurePolicy failurePolicy) {
+        this.matcher = new JsonByteMatcher(Collections.singletonList(key));
+        this.seen = new SeenKeys(capacity, windowSeconds * 1000);
+        this.windowed = windowSeconds > 0;
+        this.recent = retryWindow > 0 ? new RecentBatches(retryWindow) : null;
+        this.batch = batch;
+        this.counter = counter;
+        this.failurePolicy = failurePolicy;
+    }
+
+    @Override
+    public void initialize() {
+        counter.start();
+    }
+
+    /**
+     * Returns null for duplicates.
+     */
+    @Override
+    public Event intercept(Event event) {
+        return intercept(event, null);
+    }
+
+    private Event intercept(Event event, RecentBatches.Batch current) {
+        long interceptStart = counter.startTimer();
+        counter.incrementProcessed();
+        try {
+            return dedup(event, current);
+        } finally {
+            counter.recordLatency(Stage.INTERCEPT, interceptStart);
+        }
+    }
+
+    private Event dedup(Event event, RecentBatches.Batch current) {
+        byte[] body = event.getBody();
+        int[] ranges = matcher.newRanges();
+        long parseStart = counter.startTimer();
+        int status = matcher.match(body, 0, body.length, ranges);
+        counter.recordLatency(Stage.PARSE, parseStart);
+        if (status != JsonByteMatcher.OK) {
+            counter.incrementMalformed();
+            return failurePolicy.onFailure(event, REASON_MALFORMED, null, counter);
+        }
+        if (ranges[0] < 0) {
+            counter.incrementMissing();
+            return event;
+        }
+        long key = key(body, ranges);
+        if (seen.add(key, windowed ? System.currentTimeMillis() : 0)) {
+            if (current != null) {
+                current.add(key);
+            }
+        } else if (current == null || !current.isReplayed(key) || !current.add(key)) {
+            counter.incrementDropped();
+            return null;
+        }
+        counter.incrementExtracted();
+        return event;
+    }
+
+    /**
+     * @return the hash of the id, never 0 so that it can mark empty slots
+     */
+    private static long key(byte[] body, int[] ranges) {
+        long hash = ByteHash.hash(body, ranges[0], ranges[1]);
+        return hash == 0 ? 1 : hash;
+    }
+
+    /**
+     * @return the key of the first event of the batch that has an id, or 0
+     */
+    private long firstKey(List<Event> events) {
+        int[] ranges = matcher.newRanges();
+        for (Event event : events) {
+            byte[] body = event.getBody();
+            if (matcher.match(body, 0, body.length, ranges) == JsonByteMatcher.OK && ranges[0] >= 0) {
+                return key(body, ranges);
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Delegates to {@link #intercept(Event)} in a loop, or across threads for
+     * large batches when parallel mode is on. The ids let through are
+     * remembered for recognizing a retry of the batch.
+     */
+    @Override
+    public List<Event> intercept(List<Event> events) {
+        long firstKey = recent == null ? 0 : firstKey(events);
+        if (firstKey == 0) {
+            return batch.intercept(this, events);
+        }
+        RecentBatches.Batch current = new RecentBatches.Batch(firstKey, events.size(), recent.replayed(firstKey));
+        List<Event> interceptedEvents = batch.intercept(event -> intercept(event, current), events);
+        recent.add(current);
+        return interceptedEvents;
+    }
+
+    @Override
+    public void close() {
+        counter.stop();
+    }
+
+    /**
+     * Builder which builds new instance of the DedupInterceptor.
+     */
+    public static class Builder implements Interceptor.Builder {
+
+        String key;
+        int capacity;
+        long windowSeconds;
+        int retryWindow;
+        ParallelBatch batch;
+        InterceptorCounter counter;
+        FailurePolicy failurePolicy;
+
+        @Override
+        public void configure(Context context) {
+            key = context.getString(Constants.KEY);
+            capacity = context.getInteger(Constants.CAPACITY, Constants.CAPACITY_DEFAULT);
+            windowSeconds = context.getLong(Constants.WINDOW_SECONDS, Constants.WINDOW_SECONDS_DEFAULT);
+            retryWindow = context.getInteger(Constants.RETRY_WINDOW, Constants.RETRY_WINDOW_DEFAULT);
+            batch = ParallelBatch.configure(context);
+            counter = InterceptorCounter.configure(context, DedupInterceptor.class);
+            failurePolicy = FailurePolicy.configure(context, Constants.ON_FAILURE_DEFAULT, logger);
+        }
+
+        @Override
+        public Interceptor build() {
+            logger.info(String.format("Creating DedupInterceptor:key=%s,capacity=%s,windowSeconds=%s,retryWindow=%s",
+                    key, capacity, windowSeconds, retryWindow));
+
+            JsonBytePath path = JsonBytePath.compile(key);
+            Preconditions.checkArgument(path != null, "key must be a simple JSONPath");
+            Preconditions.checkArgument(capacity > 0 && capacity <= Constants.CAPACITY_MAX,
+                    "capacity must be between 1 and " + Constants.CAPACITY_MAX);
+            Preconditions.checkArgument(windowSeconds >= 0, "windowSeconds must not be negative");
+            Preconditions.checkArgument(retryWindow >= 0, "retryWindow must not be negative");
+            return new DedupInterceptor(path, capacity, windowSeconds, retryWindow, batch, counter, failurePolicy);
+        }
+
+    }
+
+    public static class Constants {
+
+        public static final String KEY = "key";
+
+        public static final String CAPACITY = "capacity";
+        public static final int CAPACITY_DEFAULT = 1000000;
+        public static final int CAPACITY_MAX = 1 << 28;
+
+        public static final String WINDOW_SECONDS = "windowSeconds";
+        public static final long WINDOW_SECONDS_DEFAULT = 0L;
+
+        public static final String RETRY_WINDOW = "retryWindow";
+        public static final int RETRY_WINDOW_DEFAULT = 1;
+
+        public static final FailurePolicy.Action ON_FAILURE_DEFAULT = FailurePolicy.Action.PASS;
+
+    }
+
+}
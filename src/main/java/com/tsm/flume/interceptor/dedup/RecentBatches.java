@@ -0,0 +1,118 @@
+package com.tsm.flume.interceptor.dedup;
+
+import java.util.Arrays;
+
+/**
+ * Ids let through in the last few batches, so that a batch the channel
+ * rejected can be sent again by its source without being dropped.
+ * <p>
+ * Flume runs the interceptors before it puts a batch into the channel. When
+ * the put fails, for instance because the channel is full, sources such as
+ * spooldir, taildir and Avro send the same batch again, and its ids are
+ * already in {@link SeenKeys}. A batch is taken for such a replay when its
+ * first id is the first id of one of the remembered batches; the ids let
+ * through in that batch are then let through again. Memory is bounded by the
+ * number of batches times their size.
+ */
+final class RecentBatches {
+
+    private final long[] firstIds;
+    private final long[][] ids;
+    private int next;
+
+    /**
+     * @param window number of batches remembered
+     */
+    RecentBatches(int window) {
+        this.firstIds = new long[window];
+        this.ids = new long[window][];
+    }
+
+    /**
+     * @return the sorted ids let through in the remembered batch starting with
+     * <code>firstId</code>, or null if there is none
+     */
+    synchronized long[] replayed(long firstId) {
+        for (int i = 0; i < ids.length; i++) {
+            if (ids[i] != null && firstIds[i] == firstId) {
+                return ids[i];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Remembers a finished batch in place of the oldest one.
+     */
+    synchronized void add(Batch batch) {
+        firstIds[next] = batch.firstId;
+        ids[next] = batch.sortedIds();
+        next = (next + 1) % ids.length;
+    }
+
+    /**
+     * Ids let through in the batch being processed. Keys must not be 0.
+     */
+    static final class Batch {
+
+        final long firstId;
+        private final long[] replayed;
+        private final long[] table;
+        private final int mask;
+        private int size;
+
+        /**
+         * @param firstId  id of the first event of the batch that has one
+         * @param expected number of events in the batch
+         * @param replayed ids of the batch this one replays, or null
+         */
+        Batch(long firstId, int expected, long[] replayed) {
+            this.firstId = firstId;
+            this.replayed = replayed;
+            int tableSize = Integer.highestOneBit(Math.max(expected, 1) * 2 - 1) << 1;
+            this.table = new long[tableSize];
+            this.mask = tableSize - 1;
+        }
+
+        /**
+         * @return true if the id was let through in the batch this one replays
+         */
+        boolean isReplayed(long key) {
+            return replayed != null && Arrays.binarySearch(replayed, key) >= 0;
+        }
+
+        /**
+         * Records an id let through.
+         *
+         * @return true if the id was not let through earlier in this batch
+         */
+        synchronized boolean add(long key) {
+            if (size * 2 >= table.length) {
+                // more ids than events were announced, stop recording
+                return true;
+            }
+            int slot = (int) key & mask;
+            while (table[slot] != 0) {
+                if (table[slot] == key) {
+                    return false;
+                }
+                slot = (slot + 1) & mask;
+            }
+            table[slot] = key;
+            size++;
+            return true;
+        }
+
+        synchronized long[] sortedIds() {
+            long[] sorted = new long[size];
+            int count = 0;
+            for (long key : table) {
+                if (key != 0) {
+                    sorted[count++] = key;
+                }
+            }
+            Arrays.sort(sorted);
+            return sorted;
+        }
+    }
+}
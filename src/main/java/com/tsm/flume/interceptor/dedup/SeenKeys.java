@@ -0,0 +1,112 @@
+package com.tsm.flume.interceptor.dedup;
+
+import java.util.Arrays;
+
+/**
+ * Fixed-size set of recently seen 64-bit key hashes.
+ * <p>
+ * Keys are spread over stripes, each locked on its own and holding two
+ * generations of open-addressing <code>long</code> tables. New keys go into
+ * the current generation; when it is full, or older than the window, it
+ * becomes the previous generation and the old previous one is cleared and
+ * reused. A key is therefore remembered until between one and two
+ * generations have passed, and memory never grows after construction.
+ */
+final class SeenKeys {
+
+    static final int STRIPES = 16;
+
+    private final Stripe[] stripes = new Stripe[STRIPES];
+
+    /**
+     * @param capacity     number of keys a generation holds, over all stripes
+     * @param windowMillis age after which a generation is retired, 0 for none
+     */
+    SeenKeys(int capacity, long windowMillis) {
+        int perStripe = Math.max(1, (capacity + STRIPES - 1) / STRIPES);
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Stripe(perStripe, windowMillis);
+        }
+    }
+
+    /**
+     * Adds a key.
+     *
+     * @param now current time in milliseconds, only read when there is a window
+     * @return true if the key was not seen before
+     */
+    boolean add(long hash, long now) {
+        long key = hash == 0 ? 1 : hash;
+        return stripes[(int) (key >>> 60) & (STRIPES - 1)].add(key, now);
+    }
+
+    private static final class Stripe {
+
+        private final int limit;
+        private final int mask;
+        private final long window;
+        private long[] current;
+        private long[] previous;
+        private int size;
+        private long rotatedAt = Long.MIN_VALUE;
+
+        Stripe(int limit, long window) {
+            this.limit = limit;
+            int tableSize = Integer.highestOneBit(limit * 2 - 1) << 1;
+            this.mask = tableSize - 1;
+            this.window = window;
+            this.current = new long[tableSize];
+            this.previous = new long[tableSize];
+        }
+
+        synchronized boolean add(long key, long now) {
+            if (window > 0) {
+                if (rotatedAt == Long.MIN_VALUE) {
+                    rotatedAt = now;
+                } else if (now - rotatedAt >= window) {
+                    if (now - rotatedAt >= window * 2) {
+                        // both generations are out of the window
+                        Arrays.fill(current, 0);
+                        size = 0;
+                    }
+                    rotate(now);
+                }
+            }
+            if (contains(previous, key)) {
+                return false;
+            }
+            int slot = (int) key & mask;
+            while (current[slot] != 0) {
+                if (current[slot] == key) {
+                    return false;
+                }
+                slot = (slot + 1) & mask;
+            }
+            current[slot] = key;
+            if (++size >= limit) {
+                rotate(now);
+            }
+            return true;
+        }
+
+        private boolean contains(long[] table, long key) {
+            int slot = (int) key & mask;
+            while (table[slot] != 0) {
+                if (table[slot] == key) {
+                    return true;
+                }
+                slot = (slot + 1) & mask;
+            }
+            return false;
+        }
+
+        private void rotate(long now) {
+            long[] retired = previous;
+            Arrays.fill(retired, 0);
+            previous = current;
+            current = retired;
+            size = 0;
+            rotatedAt = now;
+        }
+    }
+}
@@ -0,0 +1,435 @@
+package com.tsm.flume.interceptor.filter;
+
+import com.google.common.base.Charsets;
+import com.tsm.flume.interceptor.common.JsonBytePath;
+import com.tsm.flume.interceptor.common.JsonBytes;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Predicate over the JSON fields of a body, compiled once into a tree.
+ * <p>
+ * Grammar, with <code>or</code> binding loosest:
+ * <pre>
+ * expression := and ('or' and)*
+ * and        := unary ('and' unary)*
+ * unary      := 'not' unary | '(' expression ')' | comparison
+ * comparison := path op literal | path 'in' '(' literal (',' literal)* ')'
+ * op         := '==' | '!=' | '&lt;' | '&lt;=' | '&gt;' | '&gt;='
+ * literal    := "string" | number | true | false | null
+ * </pre>
+ * Paths are simple JSONPaths. Strings compare with strings, numbers with
+ * numbers, and the literals <code>true</code>, <code>false</code> and
+ * <code>null</code> only with themselves. A missing field, or one of another
+ * type than the literal, satisfies only <code>!=</code>.
+ */
+abstract class FilterExpression {
+
+    /**
+     * @param ranges value ranges of the paths, as filled by
+     *               {@link com.tsm.flume.interceptor.common.JsonByteMatcher#match(byte[], int, int, int[])}
+     */
+    abstract boolean matches(byte[] body, int[] ranges);
+
+    /**
+     * Compiles an expression. The paths it reads are appended to <code>paths</code>,
+     * once each, in the order the tree refers to them.
+     *
+     * @throws IllegalArgumentException if the expression is invalid
+     */
+    static FilterExpression compile(String text, List<JsonBytePath> paths) {
+        Parser parser = new Parser(text, paths);
+        FilterExpression expression = parser.or();
+        parser.skipWhitespace();
+        if (parser.pos < text.length()) {
+            throw parser.error("unexpected input");
+        }
+        return expression;
+    }
+
+    private static final class And extends FilterExpression {
+        private final FilterExpression[] operands;
+
+        And(List<FilterExpression> operands) {
+            this.operands = operands.toArray(new FilterExpression[operands.size()]);
+        }
+
+        @Override
+        boolean matches(byte[] body, int[] ranges) {
+            for (FilterExpression operand : operands) {
+                if (!operand.matches(body, ranges)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    private static final class Or extends FilterExpression {
+        private final FilterExpression[] operands;
+
+        Or(List<FilterExpression> operands) {
+            this.operands = operands.toArray(new FilterExpression[operands.size()]);
+        }
+
+        @Override
+        boolean matches(byte[] body, int[] ranges) {
+            for (FilterExpression operand : operands) {
+                if (operand.matches(body, ranges)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    private static final class Not extends FilterExpression {
+        private final FilterExpression operand;
+
+        Not(FilterExpression operand) {
+            this.operand = operand;
+        }
+
+        @Override
+        boolean matches(byte[] body, int[] ranges) {
+            return !operand.matches(body, ranges);
+        }
+    }
+
+    private enum Op {
+        EQ, NE, LT, LE, GT, GE;
+
+        boolean test(int comparison) {
+            switch (this) {
+                case EQ:
+                    return comparison == 0;
+                case NE:
+                    return comparison != 0;
+                case LT:
+                    return comparison < 0;
+                case LE:
+                    return comparison <= 0;
+                case GT:
+                    return comparison > 0;
+                default:
+                    return comparison >= 0;
+            }
+        }
+    }
+
+    private enum Kind {
+        STRING, NUMBER, KEYWORD
+    }
+
+    private static final class Literal {
+        final Kind kind;
+        final String text;
+        final byte[] bytes;
+        final double number;
+
+        Literal(Kind kind, String text, double number) {
+            this.kind = kind;
+            this.text = text;
+            this.bytes = text.getBytes(Charsets.UTF_8);
+            this.number = number;
+        }
+    }
+
+    private static final class Compare extends FilterExpression {
+        private final int slot;
+        private final Op op;
+        private final Literal literal;
+
+        Compare(int slot, Op op, Literal literal) {
+            this.slot = slot;
+            this.op = op;
+            this.literal = literal;
+        }
+
+        @Override
+        boolean matches(byte[] body, int[] ranges) {
+            int from = ranges[slot * 2];
+            if (from < 0) {
+                return op == Op.NE;
+            }
+            int to = ranges[slot * 2 + 1];
+            switch (literal.kind) {
+                case STRING:
+                    if (body[from] != '"') {
+                        return op == Op.NE;
+                    }
+                    return op.test(compareString(body, from + 1, to - 1));
+                case NUMBER:
+                    if (body[from] != '-' && (body[from] < '0' || body[from] > '9')) {
+                        return op == Op.NE;
+                    }
+                    double value = parseNumber(body, from, to);
+                    return op.test(value < literal.number ? -1 : value > literal.number ? 1 : 0);
+                default:
+                    return op.test(JsonBytes.regionEquals(body, from, to, literal.bytes) ? 0 : 1);
+            }
+        }
+
+        private int compareString(byte[] body, int from, int to) {
+            if (JsonBytes.hasEscape(body, from, to)) {
+                return JsonBytes.decodeString(body, from, to).compareTo(literal.text);
+            }
+            byte[] expected = literal.bytes;
+            int n = Math.min(to - from, expected.length);
+            for (int i = 0; i < n; i++) {
+                int c = (body[from + i] & 0xFF) - (expected[i] & 0xFF);
+                if (c != 0) {
+                    return c;
+                }
+            }
+            return (to - from) - expected.length;
+        }
+
+        private static double parseNumber(byte[] body, int from, int to) {
+            boolean negative = body[from] == '-';
+            int i = negative ? from + 1 : from;
+            if (to - i > 0 && to - i <= 18) {
+                long value = 0;
+                for (; i < to; i++) {
+                    byte c = body[i];
+                    if (c < '0' || c > '9') {
+                        break;
+                    }
+                    value = value * 10 + (c - '0');
+                }
+                if (i == to) {
+                    return negative ? -value : value;
+                }
+            }
+            return Double.parseDouble(new String(body, from, to - from, Charsets.US_ASCII));
+        }
+    }
+
+    private static final class In extends FilterExpression {
+        private final Compare[] members;
+
+        In(List<Compare> members) {
+            this.members = members.toArray(new Compare[members.size()]);
+        }
+
+        @Override
+        boolean matches(byte[] body, int[] ranges) {
+            for (Compare member : members) {
+                if (member.matches(body, ranges)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    private static final class Parser {
+        private final String text;
+        private final List<JsonBytePath> paths;
+        private int pos;
+
+        Parser(String text, List<JsonBytePath> paths) {
+            this.text = text;
+            this.paths = paths;
+        }
+
+        FilterExpression or() {
+            List<FilterExpression> operands = new ArrayList<FilterExpression>();
+            operands.add(and());
+            while (keyword("or")) {
+                operands.add(and());
+            }
+            return operands.size() == 1 ? operands.get(0) : new Or(operands);
+        }
+
+        private FilterExpression and() {
+            List<FilterExpression> operands = new ArrayList<FilterExpression>();
+            operands.add(unary());
+            while (keyword("and")) {
+                operands.add(unary());
+            }
+            return operands.size() == 1 ? operands.get(0) : new And(operands);
+        }
+
+        private FilterExpression unary() {
+            if (keyword("not")) {
+                return new Not(unary());
+            }
+            if (symbol("(")) {
+                FilterExpression expression = or();
+                expect(")");
+                return expression;
+            }
+            return comparison();
+        }
+
+        private FilterExpression comparison() {
+            int slot = path();
+            if (keyword("in")) {
+                expect("(");
+                List<Compare> members = new ArrayList<Compare>();
+                do {
+                    members.add(new Compare(slot, Op.EQ, literal()));
+                } while (symbol(","));
+                expect(")");
+                return new In(members);
+            }
+            Op op = op();
+            int start = pos;
+            Literal literal = literal();
+            if (op != Op.EQ && op != Op.NE && literal.kind == Kind.KEYWORD) {
+                pos = start;
+                throw error(literal.text + " cannot be ordered");
+            }
+            return new Compare(slot, op, literal);
+        }
+
+        private int path() {
+            skipWhitespace();
+            int start = pos;
+            if (pos >= text.length() || text.charAt(pos) != '$') {
+                throw error("expected a JSONPath");
+            }
+            char quote = 0;
+            while (pos < text.length()) {
+                char c = text.charAt(pos);
+                if (quote != 0) {
+                    if (c == quote) {
+                        quote = 0;
+                    }
+                } else if (c == '\'' || c == '"') {
+                    quote = c;
+                } else if (Character.isWhitespace(c) || "=!<>(),".indexOf(c) >= 0) {
+                    break;
+                }
+                pos++;
+            }
+            String expression = text.substring(start, pos);
+            JsonBytePath path = JsonBytePath.compile(expression);
+            if (path == null) {
+                pos = start;
+                throw error(expression + " is not a simple JSONPath");
+            }
+            for (int slot = 0; slot < paths.size(); slot++) {
+                if (sameSegments(paths.get(slot), path)) {
+                    return slot;
+                }
+            }
+            paths.add(path);
+            return paths.size() - 1;
+        }
+
+        private static boolean sameSegments(JsonBytePath a, JsonBytePath b) {
+            if (a.size() != b.size()) {
+                return false;
+            }
+            for (int i = 0; i < a.size(); i++) {
+                if (!a.segment(i).equals(b.segment(i))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private Op op() {
+            if (symbol("==")) {
+                return Op.EQ;
+            }
+            if (symbol("!=")) {
+                return Op.NE;
+            }
+            if (symbol("<=")) {
+                return Op.LE;
+            }
+            if (symbol(">=")) {
+                return Op.GE;
+            }
+            if (symbol("<")) {
+                return Op.LT;
+            }
+            if (symbol(">")) {
+                return Op.GT;
+            }
+            throw error("expected an operator");
+        }
+
+        private Literal literal() {
+            skipWhitespace();
+            if (pos >= text.length()) {
+                throw error("expected a literal");
+            }
+            char c = text.charAt(pos);
+            if (c == '"') {
+                int start = ++pos;
+                while (pos < text.length() && text.charAt(pos) != '"') {
+                    pos += text.charAt(pos) == '\\' ? 2 : 1;
+                }
+                if (pos >= text.length()) {
+                    pos = start - 1;
+                    throw error("unterminated string");
+                }
+                byte[] raw = text.substring(start, pos++).getBytes(Charsets.UTF_8);
+                try {
+                    return new Literal(Kind.STRING, JsonBytes.decodeString(raw, 0, raw.length), 0);
+                } catch (IllegalArgumentException e) {
+                    pos = start - 1;
+                    throw error(e.getMessage());
+                }
+            }
+            for (String keyword : new String[]{"true", "false", "null"}) {
+                if (keyword(keyword)) {
+                    return new Literal(Kind.KEYWORD, keyword, 0);
+                }
+            }
+            int start = pos;
+            while (pos < text.length() && "+-.0123456789eE".indexOf(text.charAt(pos)) >= 0) {
+                pos++;
+            }
+            String number = text.substring(start, pos);
+            try {
+                return new Literal(Kind.NUMBER, number, Double.parseDouble(number));
+            } catch (NumberFormatException e) {
+                pos = start;
+                throw error("expected a literal");
+            }
+        }
+
+        private boolean keyword(String keyword) {
+            skipWhitespace();
+            int end = pos + keyword.length();
+            if (!text.startsWith(keyword, pos)
+                    || (end < text.length() && Character.isLetterOrDigit(text.charAt(end)))) {
+                return false;
+            }
+            pos = end;
+            return true;
+        }
+
+        private boolean symbol(String symbol) {
+            skipWhitespace();
+            if (!text.startsWith(symbol, pos)) {
+                return false;
+            }
+            pos += symbol.length();
+            return true;
+        }
+
+        private void expect(String symbol) {
+            if (!symbol(symbol)) {
+                throw error("expected " + symbol);
+            }
+        }
+
+        void skipWhitespace() {
+            while (pos < text.length() && Character.isWhitespace(text.charAt(pos))) {
+                pos++;
+            }
+        }
+
+        IllegalArgumentException error(String message) {
+            return new IllegalArgumentException(
+                    "Invalid filter expression at position " + pos + ": " + message + " in " + text);
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package com.tsm.flume.interceptor.filter;
+
+import com.google.common.base.Preconditions;
+import com.tsm.flume.interceptor.common.FailurePolicy;
+import com.tsm.flume.interceptor.common.InterceptorCounter;
+import com.tsm.flume.interceptor.common.InterceptorCounter.Stage;
+import com.tsm.flume.interceptor.common.JsonByteMatcher;
+import com.tsm.flume.interceptor.common.JsonBytePath;
+import com.tsm.flume.interceptor.common.JsonValidator;
+import com.tsm.flume.interceptor.common.ParallelBatch;
+import org.apache.commons.lang.StringUtils;
+import org.apache.flume.Context;
+import org.apache.flume.Event;
+import org.apache.flume.interceptor.Interceptor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Interceptor class that drops events by a predicate over their JSON fields.
+ * <p>
+ * The expression is compiled once into a {@link FilterExpression} tree; the
+ * fields it reads are located by a single {@link JsonByteMatcher} pass over
+ * the UTF-8 body, which stops as soon as all of them are found.
+ * <p>
+ * expression: the predicate, for example
+ * <code>$.action == "heartbeat" or ($.level in ("debug", "trace") and $.ms &lt; 5)</code>
+ * (required)<p>
+ * excludeEvents: if true, events matching the expression are dropped; if false,
+ * only matching events are kept (default is true)<p>
+ * metrics, metricsName: see {@link InterceptorCounter}. Filtered events are
+ * counted as dropped.<p>
+ * onFailure, failureHeader: see {@link FailurePolicy}; applies to malformed
+ * bodies, which are not evaluated (default is pass).
+ * <p>
+ * Sample config:<p>
+ *
+ * <code>
+ * agent.sources.r1.interceptors.i1.type = com.tsm.flume.interceptor.filter.FilterInterceptor$Builder<p>
+ * agent.sources.r1.interceptors.i1.expression = $.action == "heartbeat"<p>
+ * </code>
+ */
+public class FilterInterceptor implements Interceptor {
+
+    private static final Logger logger = LoggerFactory.getLogger(FilterInterceptor.class);
+
+    static final String REASON_MALFORMED = "malformed_json";
+
+    private final FilterExpression expression;
+    private final JsonByteMatcher matcher;
+    private final boolean excludeEvents;
+    final ParallelBatch batch;
+    final InterceptorCounter counter;
+    final FailurePolicy failurePolicy;
+
+    /**
+     * Only {@link FilterInterceptor.Builder} can build me
+     */
+    private FilterInterceptor(FilterExpression expression, List<JsonBytePath> paths, boolean excludeEvents,
+                              ParallelBatch batch, InterceptorCounter counter, FailurePolicy failurePolicy) {
+        this.expression = expression;
+        this.matcher = new JsonByteMatcher(paths);
+        this.excludeEvents = excludeEvents;
+        this.batch = batch;
+        this.counter = counter;
+        this.failurePolicy = failurePolicy;
+    }
+
+    @Override
+    public void initialize() {
+        counter.start();
+    }
+
+    /**
+     * Returns null for filtered events.
+     */
+    @Override
+    public Event intercept(Event event) {
+        long interceptStart = counter.startTimer();
+        counter.incrementProcessed();
+        try {
+            return filter(event);
+        } finally {
+            counter.recordLatency(Stage.INTERCEPT, interceptStart);
+        }
+    }
+
+    private Event filter(Event event) {
+        byte[] body = event.getBody();
+        int[] ranges = matcher.newRanges();
+        long parseStart = counter.startTimer();
+        int status = matcher.match(body, 0, body.length, ranges);
+        counter.recordLatency(Stage.PARSE, parseStart);
+        if (status != JsonByteMatcher.OK || hasMalformedNumber(body, ranges)) {
+            counter.incrementMalformed();
+            return failurePolicy.onFailure(event, REASON_MALFORMED, null, counter);
+        }
+        if (expression.matches(body, ranges) == excludeEvents) {
+            counter.incrementDropped();
+            return null;
+        }
+        return event;
+    }
+
+    /**
+     * The matcher skips over any token starting like a number, so the
+     * values compared as numbers are checked against the JSON grammar.
+     */
+    private static boolean hasMalformedNumber(byte[] body, int[] ranges) {
+        for (int i = 0; i < ranges.length; i += 2) {
+            int from = ranges[i];
+            if (from >= 0 && (body[from] == '-' || (body[from] >= '0' && body[from] <= '9'))
+                    && !JsonValidator.isNumber(body, from, ranges[i + 1])) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Delegates to {@link #intercept(Event)} in a loop, or across threads for
+     * large batches when parallel mode is on.
+     */
+    @Override
+    public List<Event> intercept(List<Event> events) {
+        return batch.intercept(this, events);
+    }
+
+    @Override
+    public void close() {
+        counter.stop();
+    }
+
+    /**
+     * Builder which builds new instance of the FilterInterceptor.
+     */
+    public static class Builder implements Interceptor.Builder {
+
+        String expression;
+        boolean excludeEvents;
+        ParallelBatch batch;
+        InterceptorCounter counter;
+        FailurePolicy failurePolicy;
+
+        @Override
+        public void configure(Context context) {
+            expression = context.getString(Constants.EXPRESSION);
+            excludeEvents = context.getBoolean(Constants.EXCLUDE_EVENTS, Constants.EXCLUDE_EVENTS_DEFAULT);
+            batch = ParallelBatch.configure(context);
+            counter = InterceptorCounter.configure(context, FilterInterceptor.class);
+            failurePolicy = FailurePolicy.configure(context, Constants.ON_FAILURE_DEFAULT, logger);
+        }
+
+        @Override
+        public Interceptor build() {
+            logger.info(String.format("Creating FilterInterceptor:expression=%s,excludeEvents=%s", expression, excludeEvents));
+
+            Preconditions.checkArgument(!StringUtils.isBlank(expression), "expression was misconfigured");
+            List<JsonBytePath> paths = new ArrayList<JsonBytePath>();
+            FilterExpression compiled = FilterExpression.compile(expression, paths);
+            return new FilterInterceptor(compiled, paths, excludeEvents, batch, counter, failurePolicy);
+        }
+
+    }
+
+    public static class Constants {
+
+        public static final String EXPRESSION = "expression";
+
+        public static final String EXCLUDE_EVENTS = "excludeEvents";
+        public static final boolean EXCLUDE_EVENTS_DEFAULT = true;
+
+        public static final FailurePolicy.Action ON_FAILURE_DEFAULT = FailurePolicy.Action.PASS;
+
+    }
+
+}
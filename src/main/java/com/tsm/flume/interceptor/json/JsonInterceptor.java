@@ -1,131 +1,558 @@
 package com.tsm.flume.interceptor.json;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Throwables;
-import com.google.common.base.Charsets;
-import com.nebhale.jsonpath.JsonPath;
+import com.tsm.flume.interceptor.common.FailurePolicy;
+import com.tsm.flume.interceptor.common.InterceptorCounter;
+import com.tsm.flume.interceptor.common.InterceptorCounter.Stage;
+import com.tsm.flume.interceptor.common.JsonByteMatcher;
+import com.tsm.flume.interceptor.common.JsonBytePath;
+import com.tsm.flume.interceptor.common.JsonEngine;
+import com.tsm.flume.interceptor.common.JsonEngines;
+import com.tsm.flume.interceptor.common.JsonShapeCache;
+import com.tsm.flume.interceptor.common.ParallelBatch;
+import com.tsm.flume.interceptor.common.ParseCache;
+import com.tsm.flume.interceptor.common.SampledLogger;
 import org.apache.commons.lang.StringUtils;
 import org.apache.flume.Context;
 import org.apache.flume.Event;
 import org.apache.flume.interceptor.Interceptor;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import static com.tsm.flume.interceptor.json.JsonInterceptor.Constants.CONFIG_PATHS;
+import static com.tsm.flume.interceptor.json.JsonInterceptor.Constants.CONFIG_STREAMING;
+import static com.tsm.flume.interceptor.json.JsonInterceptor.Constants.DEFAULT_ON_FAILURE;
+import static com.tsm.flume.interceptor.json.JsonInterceptor.Constants.CONFIG_SHAPE_CACHE_SIZE;
+import static com.tsm.flume.interceptor.json.JsonInterceptor.Constants.DEFAULT_SHAPE_CACHE_SIZE;
+import static com.tsm.flume.interceptor.json.JsonInterceptor.Constants.DEFAULT_STREAMING;
 import static com.tsm.flume.interceptor.json.JsonInterceptor.Constants.CONFIG_SERIALIZERS;
 import static com.tsm.flume.interceptor.json.JsonInterceptor.Constants.CONFIG_HEADER_NAME;
 import static com.tsm.flume.interceptor.json.JsonInterceptor.Constants.CONFIG_HEADER_JSONPATH;
+import static com.tsm.flume.interceptor.json.JsonInterceptor.Constants.CONFIG_INTERN;
+import static com.tsm.flume.interceptor.json.JsonInterceptor.Constants.DEFAULT_INTERN;
+import static com.tsm.flume.interceptor.json.JsonInterceptor.Constants.CONFIG_ENGINE;
+import static com.tsm.flume.interceptor.json.JsonInterceptor.Constants.CONFIG_MAX_SCAN_BYTES;
+import static com.tsm.flume.interceptor.json.JsonInterceptor.Constants.CONFIG_PARSE_CACHE;
+import static com.tsm.flume.interceptor.json.JsonInterceptor.Constants.DEFAULT_PARSE_CACHE;
+import static com.tsm.flume.interceptor.json.JsonInterceptor.Constants.DEFAULT_MAX_SCAN_BYTES;
 import static com.tsm.flume.interceptor.json.JsonInterceptor.Constants.DEFAULT_SERIALIZER;
 import static com.tsm.flume.interceptor.json.JsonInterceptor.Constants.CONFIG_SERIALIZER_TYPE;
 import static com.tsm.flume.interceptor.json.JsonInterceptor.Constants.CONFIG_SERIALIZER_NAME;
 
+/**
+ * Interceptor that extracts one or more headers from a JSON body.
+ * <p>
+ * Every configured {@link JsonInterceptorPath} is compiled once by the
+ * {@link JsonInterceptor.Builder}, and the body of each event is parsed only
+ * once no matter how many paths are configured.
+ * <p>
+ * Simple paths (<code>$.a.b</code>, <code>$.a[3]</code>, <code>$['x']</code>) are
+ * matched by a {@link JsonByteMatcher} directly over the UTF-8 body, which skips
+ * the subtrees it does not need and stops once every simple path is found.
+ * Other paths are evaluated by the JSONPath engine on a Jackson tree.
+ * <p>
+ * <code>engine</code> selects the {@link JsonEngine} for the simple paths:
+ * <code>bytes</code> (the default, the matcher above), <code>gson</code>,
+ * <code>gson-stream</code> or <code>jackson</code> (the JSONPath engine for
+ * every path, like the older <code>streaming = false</code>). The shape cache
+ * and byte-level interning only apply to the <code>bytes</code> engine.
+ * <p>
+ * When every path names a top-level member, <code>shapeCacheSize</code> (default
+ * 0, off) enables a {@link JsonShapeCache} that remembers the layout of
+ * fixed-layout records and checks new events against it before running the
+ * matcher.
+ * <p>
+ * <code>parseCache</code> (default false) makes the <code>bytes</code> engine
+ * share its work with the other interceptors of the chain through the
+ * {@link ParseCache}: a body is validated and its top-level members indexed
+ * once, by the first interceptor that needs them, and later ones only descend
+ * into the members their paths name. Bodies that are not valid objects are
+ * scanned as without the cache.
+ * <p>
+ * <code>maxScanBytes</code> on a path bounds the work spent on large bodies:
+ * its value must end within that many bytes from the start of the body, or it
+ * is reported as missing. Once every streaming path is limited, the matcher
+ * reads no further than the longest limit. A path left to the JSONPath engine
+ * is only evaluated on bodies no longer than its limit.
+ * <p>
+ * Counts and stage latencies are published as an {@link InterceptorCounter}.
+ * Events with a malformed body or a value that cannot be read or serialized
+ * are handled by a {@link FailurePolicy} (by default they pass unchanged,
+ * apart from the headers that could be extracted).
+ * <p>
+ * Sample config:<p>
+ *
+ * <code>
+ * agent.sources.r1.interceptors.i1.type = com.tsm.flume.interceptor.json.JsonInterceptor$Builder<p>
+ * agent.sources.r1.interceptors.i1.paths = p1 p2<p>
+ * agent.sources.r1.interceptors.i1.paths.p1.name = action<p>
+ * agent.sources.r1.interceptors.i1.paths.p1.jsonpath = $.action<p>
+ * agent.sources.r1.interceptors.i1.paths.p2.name = timestamp<p>
+ * agent.sources.r1.interceptors.i1.paths.p2.jsonpath = $.published<p>
+ * agent.sources.r1.interceptors.i1.paths.p2.serializers = dt<p>
+ * agent.sources.r1.interceptors.i1.paths.p2.serializers.dt.type = com.tsm.flume.interceptor.json.JsonInterceptorMillisSerializer<p>
+ * agent.sources.r1.interceptors.i1.paths.p2.serializers.dt.pattern = yyyy-MM-dd'T'HH:mm:ssZ<p>
+ * </code>
+ * <p>
+ * Every serializer writes the header named by its own <code>name</code>, or
+ * by the path's <code>name</code> when it has none, so a path with several
+ * serializers writes one header per serializer. Date serializers with the same
+ * <code>pattern</code> parse the value once between them.
+ * <p>
+ * Without <code>paths</code>, <code>name</code>, <code>jsonpath</code> and
+ * <code>serializers</code> are read directly from the interceptor context.
+ */
 public class JsonInterceptor implements Interceptor {
     private static final Logger logger =
             LoggerFactory.getLogger(JsonInterceptor.class);
 
-    private String headerName;
-    private String headerJSONPath;
-    private final JsonInterceptorSerializer serializer;
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    static final String REASON_MALFORMED = "malformed_json";
+    static final String REASON_NOT_SCALAR = "not_scalar";
+    static final String REASON_PATH = "path_error";
+    static final String REASON_SERIALIZER = "serializer_error";
+
+    private final List<JsonInterceptorPath> paths;
+    private final JsonInterceptorPath[] streamingPaths;
+    private final JsonInterceptorPath[] enginePaths;
+    private final JsonInterceptorPath[] treePaths;
+    private final JsonEngine engine;
+    private final JsonEngine.Extractor extractor;
+    private final JsonByteMatcher matcher;
+    /**
+     * Longest body the engine extractor is run on.
+     */
+    private final int engineLimit;
+    /**
+     * Longest body the JSONPath engine is run on.
+     */
+    private final int treeLimit;
+    private final JsonShapeCache shapeCache;
+    private ParseCache parseCache;
+    private ParallelBatch batch = new ParallelBatch(ParallelBatch.DEFAULT_PARALLEL, ParallelBatch.DEFAULT_THRESHOLD);
+    private InterceptorCounter counter = new InterceptorCounter(JsonInterceptor.class.getSimpleName(), false);
+    private FailurePolicy failurePolicy = new FailurePolicy(DEFAULT_ON_FAILURE, FailurePolicy.DEFAULT_FAILURE_HEADER,
+            new SampledLogger(logger));
 
     public JsonInterceptor(String headerName, String headerJSONPath, JsonInterceptorSerializer serializer) {
-        this.headerName = headerName;
-        this.headerJSONPath = headerJSONPath;
-        this.serializer = serializer;
+        this(Collections.singletonList(new JsonInterceptorPath(headerName, headerJSONPath, serializer)));
+    }
+
+    public JsonInterceptor(List<JsonInterceptorPath> paths) {
+        this(paths, DEFAULT_STREAMING);
+    }
+
+    public JsonInterceptor(List<JsonInterceptorPath> paths, boolean streaming) {
+        this(paths, streaming, DEFAULT_SHAPE_CACHE_SIZE);
+    }
+
+    /**
+     * @param shapeCacheSize number of record shapes remembered for the streaming paths; 0 disables the cache
+     */
+    public JsonInterceptor(List<JsonInterceptorPath> paths, boolean streaming, int shapeCacheSize) {
+        this(paths, JsonEngines.forName(streaming ? JsonEngines.BYTES : JsonEngines.JACKSON), shapeCacheSize);
+    }
+
+    /**
+     * @param engine reads the simple paths; the JSONPath engine reads the others
+     * @param shapeCacheSize number of record shapes remembered for the <code>bytes</code> engine; 0 disables the cache
+     */
+    public JsonInterceptor(List<JsonInterceptorPath> paths, JsonEngine engine, int shapeCacheSize) {
+        this.paths = Collections.unmodifiableList(new ArrayList<JsonInterceptorPath>(paths));
+        this.engine = engine;
+
+        boolean streaming = JsonEngines.BYTES.equals(engine.getName());
+        List<JsonInterceptorPath> streamingList = new ArrayList<JsonInterceptorPath>();
+        List<JsonInterceptorPath> engineList = new ArrayList<JsonInterceptorPath>();
+        List<JsonInterceptorPath> treeList = new ArrayList<JsonInterceptorPath>();
+        List<JsonBytePath> bytePaths = new ArrayList<JsonBytePath>();
+        List<JsonBytePath> engineBytePaths = new ArrayList<JsonBytePath>();
+        for (JsonInterceptorPath path : paths) {
+            if (path.getBytePath() == null) {
+                treeList.add(path);
+            } else if (streaming) {
+                streamingList.add(path);
+                bytePaths.add(path.getBytePath());
+            } else {
+                engineList.add(path);
+                engineBytePaths.add(path.getBytePath());
+            }
+        }
+        JsonEngine.Extractor extractor = null;
+        if (!engineList.isEmpty()) {
+            extractor = engine.newExtractor(engineBytePaths);
+            if (extractor == null) {
+                treeList.addAll(engineList);
+                engineList.clear();
+            }
+        }
+        this.extractor = extractor;
+        this.streamingPaths = streamingList.toArray(new JsonInterceptorPath[0]);
+        this.enginePaths = engineList.toArray(new JsonInterceptorPath[0]);
+        this.treePaths = treeList.toArray(new JsonInterceptorPath[0]);
+        int[] maxScanBytes = new int[streamingPaths.length];
+        for (int i = 0; i < streamingPaths.length; i++) {
+            maxScanBytes[i] = streamingPaths[i].getMaxScanBytes();
+        }
+        this.matcher = new JsonByteMatcher(bytePaths, maxScanBytes);
+        this.engineLimit = longestLimit(enginePaths);
+        this.treeLimit = longestLimit(treePaths);
+        if (shapeCacheSize > 0 && JsonShapeCache.supports(bytePaths)) {
+            this.shapeCache = new JsonShapeCache(bytePaths, shapeCacheSize);
+        } else {
+            if (shapeCacheSize > 0) {
+                logger.warn("Shape cache disabled: it only supports top-level member paths such as $.name");
+            }
+            this.shapeCache = null;
+        }
+    }
+
+    /**
+     * @return the longest <code>maxScanBytes</code> of the paths, or
+     * <code>Integer.MAX_VALUE</code> if one of them has none
+     */
+    private static int longestLimit(JsonInterceptorPath[] paths) {
+        int limit = 0;
+        for (JsonInterceptorPath path : paths) {
+            if (path.getMaxScanBytes() <= 0) {
+                return Integer.MAX_VALUE;
+            }
+            limit = Math.max(limit, path.getMaxScanBytes());
+        }
+        return limit;
+    }
+
+    public List<JsonInterceptorPath> getPaths() {
+        return paths;
+    }
+
+    public JsonEngine getEngine() {
+        return engine;
+    }
+
+    /**
+     * Sets how {@link #intercept(List)} spreads large batches over threads.
+     */
+    public void setBatch(ParallelBatch batch) {
+        this.batch = batch;
+    }
+
+    /**
+     * Sets the counter group the interceptor reports to. It is registered by
+     * {@link #initialize()}; the default one is disabled.
+     */
+    public void setCounter(InterceptorCounter counter) {
+        this.counter = counter;
+    }
+
+    public InterceptorCounter getCounter() {
+        return counter;
+    }
+
+    /**
+     * Shares parse results of the <code>bytes</code> engine with other
+     * interceptors through <code>parseCache</code>, or stops sharing if null.
+     */
+    public void setParseCache(ParseCache parseCache) {
+        this.parseCache = parseCache;
+    }
+
+    /**
+     * Sets what happens to events whose body is malformed or whose values
+     * could not be read or serialized.
+     */
+    public void setFailurePolicy(FailurePolicy failurePolicy) {
+        this.failurePolicy = failurePolicy;
     }
 
     @Override
     public void initialize() {
+        counter.start();
     }
 
     @Override
     public Event intercept(Event event) {
+        long interceptStart = counter.startTimer();
+        counter.incrementProcessed();
         try {
+            return interceptPaths(event);
+        } finally {
+            counter.recordLatency(Stage.INTERCEPT, interceptStart);
+        }
+    }
 
-            String body = new String(event.getBody(), Charsets.UTF_8);
-            Map<String, String> headers = event.getHeaders();
-            //String value = JsonPath.read(body, headerJSONPath);
-            JsonPath namePath = JsonPath.compile(headerJSONPath);
-            String value  = namePath.read(body,String.class);
-            headers.put(headerName, serializer.serialize(value));
+    private Event interceptPaths(Event event) {
+        byte[] body = event.getBody();
+        Map<String, String> headers = event.getHeaders();
+        Failure failure = null;
 
-        } catch (java.lang.ClassCastException e) {
-            logger.warn("Skipping event due to: ClassCastException.", e);
-        } catch (Exception e) {
-            logger.warn("Skipping event due to: unknown error.", e);
-            e.printStackTrace();
+        if (streamingPaths.length > 0) {
+            int[] ranges = matcher.newRanges();
+            long parseStart = counter.startTimer();
+            int status = match(body, ranges);
+            counter.recordLatency(Stage.PARSE, parseStart);
+            if (status != JsonByteMatcher.OK) {
+                counter.incrementMalformed();
+                return failurePolicy.onFailure(event, REASON_MALFORMED, null, counter);
+            }
+            for (int i = 0; i < streamingPaths.length; i++) {
+                JsonInterceptorPath path = streamingPaths[i];
+                if (ranges[i * 2] < 0) {
+                    counter.incrementMissing();
+                    continue;
+                }
+                int start = ranges[i * 2];
+                int end = ranges[i * 2 + 1];
+                if (path.writeInterned(body, start, end, headers, counter)) {
+                    continue;
+                }
+                String value;
+                try {
+                    value = path.read(body, start, end);
+                } catch (RuntimeException e) {
+                    failure = failure != null ? failure : new Failure(e);
+                    continue;
+                }
+                failure = put(headers, path, value, body, start, end, failure);
+            }
+        }
+
+        if (enginePaths.length > 0 && body.length > engineLimit) {
+            for (int i = 0; i < enginePaths.length; i++) {
+                counter.incrementMissing();
+            }
+        } else if (enginePaths.length > 0) {
+            String[] values = new String[enginePaths.length];
+            RuntimeException[] errors = new RuntimeException[enginePaths.length];
+            long parseStart = counter.startTimer();
+            boolean wellFormed = extractor.extract(body, values, errors);
+            counter.recordLatency(Stage.PARSE, parseStart);
+            if (!wellFormed) {
+                counter.incrementMalformed();
+                return failurePolicy.onFailure(event, REASON_MALFORMED, null, counter);
+            }
+            for (int i = 0; i < enginePaths.length; i++) {
+                JsonInterceptorPath path = enginePaths[i];
+                if (path.getMaxScanBytes() > 0 && body.length > path.getMaxScanBytes()) {
+                    counter.incrementMissing();
+                } else if (errors[i] != null) {
+                    failure = failure != null ? failure : new Failure(errors[i]);
+                } else {
+                    failure = put(headers, path, values[i], null, 0, 0, failure);
+                }
+            }
+        }
+
+        if (treePaths.length > 0 && body.length > treeLimit) {
+            for (int i = 0; i < treePaths.length; i++) {
+                counter.incrementMissing();
+            }
+        } else if (treePaths.length > 0) {
+            JsonNode root;
+            long parseStart = counter.startTimer();
+            try {
+                root = mapper.readTree(body);
+            } catch (Exception e) {
+                counter.incrementMalformed();
+                return failurePolicy.onFailure(event, REASON_MALFORMED, e, counter);
+            } finally {
+                counter.recordLatency(Stage.PARSE, parseStart);
+            }
+            if (root == null) {
+                counter.incrementMalformed();
+                return failurePolicy.onFailure(event, REASON_MALFORMED, null, counter);
+            }
+            for (JsonInterceptorPath path : treePaths) {
+                if (path.getMaxScanBytes() > 0 && body.length > path.getMaxScanBytes()) {
+                    counter.incrementMissing();
+                    continue;
+                }
+                String value;
+                try {
+                    value = path.read(root);
+                } catch (RuntimeException e) {
+                    failure = failure != null ? failure : new Failure(e);
+                    continue;
+                }
+                failure = put(headers, path, value, null, 0, 0, failure);
+            }
+        }
+
+        if (failure != null) {
+            return failurePolicy.onFailure(event, failure.reason, failure.cause, counter);
         }
         return event;
     }
 
-    @Override
-    public List<Event> intercept(List<Event> events) {
+    private int match(byte[] body, int[] ranges) {
+        if (shapeCache != null) {
+            if (shapeCache.match(body, 0, body.length, ranges)) {
+                matcher.applyLimits(body, 0, body.length, ranges);
+                return JsonByteMatcher.OK;
+            }
+            Arrays.fill(ranges, -1);
+        }
+        // the cache validates and indexes the whole body, past the scan limit
+        int[] members = parseCache != null && body.length <= matcher.getScanLimit() ? parseCache.members(body) : null;
+        int status = members != null
+                ? matcher.match(body, members, ranges)
+                : matcher.match(body, 0, body.length, ranges);
+        if (status == JsonByteMatcher.OK && shapeCache != null) {
+            shapeCache.learn(body, 0, body.length, ranges);
+        }
+        return status;
+    }
+
+    /**
+     * @return the first failure of the event so far
+     */
+    private Failure put(Map<String, String> headers, JsonInterceptorPath path, String value,
+                        byte[] body, int start, int end, Failure failure) {
+        if (value == null) {
+            counter.incrementMissing();
+            return failure;
+        }
+        RuntimeException e = path.write(value, body, start, end, headers, counter);
+        if (e != null && failure == null) {
+            return new Failure(REASON_SERIALIZER, e);
+        }
+        return failure;
+    }
+
+    /**
+     * First failure of an event, created only when something fails.
+     */
+    private static final class Failure {
+        final String reason;
+        final Throwable cause;
 
-        List<Event> interceptedEvents = new ArrayList<Event>(events.size());
-        for (Event event : events) {
-            Event interceptedEvent = intercept(event);
-            interceptedEvents.add(interceptedEvent);
+        Failure(String reason, Throwable cause) {
+            this.reason = reason;
+            this.cause = cause;
         }
 
-        return interceptedEvents;
+        Failure(RuntimeException cause) {
+            this(cause instanceof ClassCastException ? REASON_NOT_SCALAR : REASON_PATH, cause);
+        }
+    }
+
+    @Override
+    public List<Event> intercept(List<Event> events) {
+        return batch.intercept(this, events);
     }
 
     @Override
     public void close() {
+        counter.stop();
     }
 
     public static class Builder implements Interceptor.Builder {
 
-        private String headerName;
-        private String headerJSONPath;
-        private JsonInterceptorSerializer serializer;
+        private final List<PathConfig> pathConfigs = new ArrayList<PathConfig>();
+        private String engine;
+        private int shapeCacheSize;
+        private boolean parseCache;
+        private ParallelBatch batch;
+        private InterceptorCounter counter;
+        private FailurePolicy failurePolicy;
         private final JsonInterceptorSerializer defaultSerializer = new JsonInterceptorPassThroughSerializer();
 
         @Override
         public void configure(Context context) {
-            headerName = context.getString(CONFIG_HEADER_NAME);
-            headerJSONPath = context.getString(CONFIG_HEADER_JSONPATH);
+            pathConfigs.clear();
+            boolean streaming = context.getBoolean(CONFIG_STREAMING, DEFAULT_STREAMING);
+            engine = context.getString(CONFIG_ENGINE, streaming ? JsonEngines.BYTES : JsonEngines.JACKSON);
+            shapeCacheSize = context.getInteger(CONFIG_SHAPE_CACHE_SIZE, DEFAULT_SHAPE_CACHE_SIZE);
+            parseCache = context.getBoolean(CONFIG_PARSE_CACHE, DEFAULT_PARSE_CACHE);
+            batch = ParallelBatch.configure(context);
+            counter = InterceptorCounter.configure(context, JsonInterceptor.class);
+            failurePolicy = FailurePolicy.configure(context, DEFAULT_ON_FAILURE, logger);
 
-            configureSerializers(context);
+            String pathListStr = context.getString(CONFIG_PATHS);
+            if (StringUtils.isEmpty(pathListStr)) {
+                pathConfigs.add(configurePath(context));
+                return;
+            }
+
+            Context pathContexts = new Context(context.getSubProperties(CONFIG_PATHS + "."));
+            for (String pathName : pathListStr.trim().split("\\s+")) {
+                pathConfigs.add(configurePath(new Context(pathContexts.getSubProperties(pathName + "."))));
+            }
         }
 
         @Override
         public JsonInterceptor build() {
-            Preconditions.checkArgument(headerName != null, "Header name was misconfigured");
-            Preconditions.checkArgument(headerJSONPath != null, "Header JSONPath was misconfigured");
-            return new JsonInterceptor(headerName, headerJSONPath, serializer);
+            Preconditions.checkArgument(!pathConfigs.isEmpty(), "No JSONPath was configured");
+            List<JsonInterceptorPath> paths = new ArrayList<JsonInterceptorPath>(pathConfigs.size());
+            for (PathConfig pathConfig : pathConfigs) {
+                Preconditions.checkArgument(pathConfig.headerName != null, "Header name was misconfigured");
+                Preconditions.checkArgument(pathConfig.headerJSONPath != null, "Header JSONPath was misconfigured");
+                paths.add(new JsonInterceptorPath(pathConfig.headerName, pathConfig.headerJSONPath, pathConfig.serializers,
+                        pathConfig.internSize, pathConfig.maxScanBytes));
+            }
+            JsonEngine jsonEngine = JsonEngines.forName(engine);
+            JsonInterceptor interceptor = new JsonInterceptor(paths, jsonEngine, shapeCacheSize);
+            if (parseCache && JsonEngines.BYTES.equals(jsonEngine.getName())) {
+                interceptor.setParseCache(ParseCache.shared());
+            }
+            interceptor.setBatch(batch);
+            interceptor.setCounter(counter);
+            interceptor.setFailurePolicy(failurePolicy);
+            return interceptor;
         }
 
-        private void configureSerializers(Context context) {
-            String serializerListStr = context.getString(CONFIG_SERIALIZERS);
-            if (StringUtils.isEmpty(serializerListStr)) {
-                serializer = defaultSerializer;
-                return;
+        private PathConfig configurePath(Context context) {
+            PathConfig pathConfig = new PathConfig();
+            pathConfig.headerName = context.getString(CONFIG_HEADER_NAME);
+            pathConfig.headerJSONPath = context.getString(CONFIG_HEADER_JSONPATH);
+            pathConfig.internSize = context.getInteger(CONFIG_INTERN, DEFAULT_INTERN);
+            pathConfig.maxScanBytes = context.getInteger(CONFIG_MAX_SCAN_BYTES, DEFAULT_MAX_SCAN_BYTES);
+            if (pathConfig.headerName != null) {
+                pathConfig.serializers = configureSerializers(context, pathConfig.headerName);
             }
+            return pathConfig;
+        }
 
-            String[] serializerNames = serializerListStr.split("\\s+");
-            if (serializerNames.length > 1) {
-                logger.warn("Only one serializer is supported.");
+        /**
+         * Each serializer writes the header named by its own <code>name</code>,
+         * which defaults to the path's header name.
+         */
+        private Map<String, JsonInterceptorSerializer> configureSerializers(Context context, String headerName) {
+            Map<String, JsonInterceptorSerializer> serializers = new LinkedHashMap<String, JsonInterceptorSerializer>();
+            String serializerListStr = context.getString(CONFIG_SERIALIZERS);
+            if (StringUtils.isEmpty(serializerListStr)) {
+                serializers.put(headerName, defaultSerializer);
+                return serializers;
             }
-            String serializerName = serializerNames[0];
 
+            String[] serializerNames = serializerListStr.trim().split("\\s+");
             Context serializerContexts = new Context(context.getSubProperties(CONFIG_SERIALIZERS + "."));
-            Context serializerContext = new Context(serializerContexts.getSubProperties(serializerName + "."));
+            for (String serializerName : serializerNames) {
+                Context serializerContext = new Context(serializerContexts.getSubProperties(serializerName + "."));
+                String outputName = serializerContext.getString(CONFIG_SERIALIZER_NAME, headerName);
+                Preconditions.checkArgument(!serializers.containsKey(outputName),
+                        "Serializers of " + headerName + " write the same header " + outputName);
 
-            String type = serializerContext.getString(CONFIG_SERIALIZER_TYPE, DEFAULT_SERIALIZER);
-            String name = serializerContext.getString(CONFIG_SERIALIZER_NAME);
-
-            Preconditions.checkArgument(!StringUtils.isEmpty(name), "Supplied name cannot be empty.");
-            if (DEFAULT_SERIALIZER.equals(type)) {
-                serializer = defaultSerializer;
-            } else {
-                serializer = getCustomSerializer(type, serializerContext);
+                String type = serializerContext.getString(CONFIG_SERIALIZER_TYPE, DEFAULT_SERIALIZER);
+                if (DEFAULT_SERIALIZER.equals(type)) {
+                    serializers.put(outputName, defaultSerializer);
+                } else {
+                    serializers.put(outputName, getCustomSerializer(type, serializerContext));
+                }
             }
-            headerName = name;
-
+            return serializers;
         }
 
         private JsonInterceptorSerializer getCustomSerializer(String clazzName, Context context) {
@@ -140,15 +567,36 @@ public class JsonInterceptor implements Interceptor {
             }
             return defaultSerializer;
         }
+
+        private static class PathConfig {
+            String headerName;
+            String headerJSONPath;
+            Map<String, JsonInterceptorSerializer> serializers;
+            int internSize;
+            int maxScanBytes;
+        }
     }
 
 
     public static class Constants {
 
+        public static final String CONFIG_PATHS = "paths";
+        public static final String CONFIG_STREAMING = "streaming";
+        public static final boolean DEFAULT_STREAMING = true;
+        public static final String CONFIG_ENGINE = JsonEngines.CONFIG_ENGINE;
+        public static final String CONFIG_SHAPE_CACHE_SIZE = "shapeCacheSize";
+        public static final int DEFAULT_SHAPE_CACHE_SIZE = 0;
+        public static final String CONFIG_PARSE_CACHE = ParseCache.CONFIG_PARSE_CACHE;
+        public static final boolean DEFAULT_PARSE_CACHE = ParseCache.DEFAULT_PARSE_CACHE;
+        public static final FailurePolicy.Action DEFAULT_ON_FAILURE = FailurePolicy.Action.PASS;
         public static final String CONFIG_SERIALIZERS = "serializers";
         public static final String DEFAULT_SERIALIZER = "DEFAULT";
         public static final String CONFIG_HEADER_NAME = "name";
         public static final String CONFIG_HEADER_JSONPATH = "jsonpath";
+        public static final String CONFIG_INTERN = "intern";
+        public static final int DEFAULT_INTERN = 0;
+        public static final String CONFIG_MAX_SCAN_BYTES = "maxScanBytes";
+        public static final int DEFAULT_MAX_SCAN_BYTES = 0;
         public static final String CONFIG_SERIALIZER_TYPE = "type";
         public static final String CONFIG_SERIALIZER_NAME = "name";
     }
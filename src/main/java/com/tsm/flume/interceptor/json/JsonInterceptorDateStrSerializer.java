@@ -1,18 +1,21 @@
 package com.tsm.flume.interceptor.json;
 
 import com.google.common.base.Preconditions;
+import com.tsm.flume.interceptor.common.SampledLogger;
 import org.apache.commons.lang.StringUtils;
 import org.apache.flume.Context;
 import org.apache.flume.conf.ComponentConfiguration;
-import org.joda.time.DateTime;
 import org.joda.time.format.DateTimeFormat;
 import org.joda.time.format.DateTimeFormatter;
+import org.slf4j.LoggerFactory;
 
 public class JsonInterceptorDateStrSerializer implements
-        JsonInterceptorSerializer {
-    private DateTimeFormatter formatter;
+        JsonInterceptorSharedSerializer {
+    private final SampledLogger log = new SampledLogger(LoggerFactory.getLogger(JsonInterceptorDateStrSerializer.class));
+    private JsonInterceptorTimestampParser parser;
     private DateTimeFormatter formatterTarget;
     private String defaultValue;
+    private volatile Formatted lastFormatted;
 
     @Override
     public void configure(Context context) {
@@ -25,7 +28,8 @@ public class JsonInterceptorDateStrSerializer implements
                 "Must configure with a valid patternTarget");
 
         defaultValue = context.getString("defaultValue");
-        formatter = DateTimeFormat.forPattern(pattern);
+        int cacheSize = context.getInteger("cacheSize", JsonInterceptorTimestampParser.DEFAULT_CACHE_SIZE);
+        parser = new JsonInterceptorTimestampParser(pattern, cacheSize);
         formatterTarget = DateTimeFormat.forPattern(patternTarget);
     }
 
@@ -34,17 +38,54 @@ public class JsonInterceptorDateStrSerializer implements
         String reValue = defaultValue;
         try {
             if (StringUtils.isNotEmpty(value)) {
-                DateTime dateTime = formatter.parseDateTime(value);
-                reValue = dateTime.toString(formatterTarget);
+                reValue = format(parser.parseMillis(value));
             }
         } catch (Exception ex) {
-            ex.printStackTrace();
+            log.warn("Using defaultValue for unparseable date {}.", value, ex);
         }
 
         return reValue;
     }
 
+    @Override
+    public Object getIntermediateKey() {
+        return parser.getIntermediateKey();
+    }
+
+    @Override
+    public Object parse(String value) {
+        return parser.parseMillis(value);
+    }
+
+    @Override
+    public String serialize(String value, Object intermediate) {
+        return format((Long) intermediate);
+    }
+
+    /**
+     * Consecutive events usually carry the same instant, so the last result is reused.
+     */
+    private String format(long millis) {
+        Formatted formatted = lastFormatted;
+        if (formatted != null && formatted.millis == millis) {
+            return formatted.value;
+        }
+        String value = formatterTarget.print(millis);
+        lastFormatted = new Formatted(millis, value);
+        return value;
+    }
+
     @Override
     public void configure(ComponentConfiguration conf) {
     }
+
+    private static final class Formatted {
+        final long millis;
+        final String value;
+
+        Formatted(long millis, String value) {
+            this.millis = millis;
+            this.value = value;
+        }
+    }
 }
@@ -3,25 +3,34 @@ package com.tsm.flume.interceptor.json;
 import org.apache.commons.lang.StringUtils;
 import org.apache.flume.Context;
 import org.apache.flume.conf.ComponentConfiguration;
-import org.joda.time.DateTime;
-import org.joda.time.format.DateTimeFormat;
-import org.joda.time.format.DateTimeFormatter;
 import com.google.common.base.Preconditions;
 
 public class JsonInterceptorMillisSerializer implements
-        JsonInterceptorSerializer {
-    private DateTimeFormatter formatter;
+        JsonInterceptorSharedSerializer {
+    private JsonInterceptorTimestampParser parser;
     @Override
     public void configure(Context context) {
         String pattern = context.getString("pattern");
         Preconditions.checkArgument(!StringUtils.isEmpty(pattern),
                 "Must configure with a valid pattern");
-        formatter = DateTimeFormat.forPattern(pattern);
+        int cacheSize = context.getInteger("cacheSize", JsonInterceptorTimestampParser.DEFAULT_CACHE_SIZE);
+        parser = new JsonInterceptorTimestampParser(pattern, cacheSize);
     }
     @Override
     public String serialize(String value) {
-        DateTime dateTime = formatter.parseDateTime(value);
-        return Long.toString(dateTime.getMillis());
+        return Long.toString(parser.parseMillis(value));
+    }
+    @Override
+    public Object getIntermediateKey() {
+        return parser.getIntermediateKey();
+    }
+    @Override
+    public Object parse(String value) {
+        return parser.parseMillis(value);
+    }
+    @Override
+    public String serialize(String value, Object intermediate) {
+        return Long.toString((Long) intermediate);
     }
     @Override
     public void configure(ComponentConfiguration conf) {
@@ -0,0 +1,292 @@
+package com.tsm.flume.interceptor.json;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.google.common.base.Preconditions;
+import com.nebhale.jsonpath.JsonPath;
+import com.tsm.flume.interceptor.common.JsonBytePath;
+import com.tsm.flume.interceptor.common.JsonBytes;
+import com.tsm.flume.interceptor.common.StringInterner;
+import com.tsm.flume.interceptor.common.InterceptorCounter;
+import org.apache.commons.lang.StringUtils;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * One (header name, JSONPath, serializer) triple of a {@link JsonInterceptor}.
+ * <p>
+ * The JSONPath expression is compiled once, when the path is created, so that
+ * intercepting an event only evaluates it against the already parsed body.
+ * Simple paths are also compiled into a {@link JsonBytePath} so they can be
+ * matched directly over the raw body bytes.
+ * <p>
+ * A path may have several serializers, each writing its own header from the
+ * same extracted value. {@link JsonInterceptorSharedSerializer}s with equal
+ * intermediate keys parse the value once for all of them.
+ * <p>
+ * With an intern size, each header keeps a {@link StringInterner} so that
+ * repeated values share one <code>String</code> and, for values matched over
+ * the raw body, are resolved from the bytes without reading or serializing
+ * them again. Serializers are then expected to return the same output for the
+ * same input.
+ */
+public class JsonInterceptorPath {
+    private static final Object FAILED = new Object();
+
+    private final String headerName;
+    private final String headerJSONPath;
+    private final JsonPath compiledPath;
+    private final JsonBytePath bytePath;
+    private final String[] outputNames;
+    private final JsonInterceptorSerializer[] serializers;
+    /**
+     * Index of the serializer whose intermediate result serializer i uses, or -1.
+     */
+    private final int[] sharedWith;
+    private final boolean sharing;
+    private final StringInterner[] interners;
+    private final int maxScanBytes;
+
+    public JsonInterceptorPath(String headerName, String headerJSONPath, JsonInterceptorSerializer serializer) {
+        this(headerName, headerJSONPath, Collections.singletonMap(headerName, serializer));
+    }
+
+    /**
+     * @param serializers serializer of each header, in the order they are applied
+     */
+    public JsonInterceptorPath(String headerName, String headerJSONPath, Map<String, JsonInterceptorSerializer> serializers) {
+        this(headerName, headerJSONPath, serializers, 0);
+    }
+
+    /**
+     * @param internSize number of values interned per header; 0 disables interning
+     */
+    public JsonInterceptorPath(String headerName, String headerJSONPath, Map<String, JsonInterceptorSerializer> serializers,
+                               int internSize) {
+        this(headerName, headerJSONPath, serializers, internSize, 0);
+    }
+
+    /**
+     * @param maxScanBytes length of the body prefix the value must lie in; 0 reads the whole body
+     */
+    public JsonInterceptorPath(String headerName, String headerJSONPath, Map<String, JsonInterceptorSerializer> serializers,
+                               int internSize, int maxScanBytes) {
+        Preconditions.checkArgument(!StringUtils.isEmpty(headerName), "Header name was misconfigured");
+        Preconditions.checkArgument(maxScanBytes >= 0, "maxScanBytes must not be negative");
+        Preconditions.checkArgument(!StringUtils.isEmpty(headerJSONPath), "Header JSONPath was misconfigured");
+        Preconditions.checkArgument(serializers != null && !serializers.isEmpty(), "Serializer was misconfigured");
+        this.headerName = headerName;
+        this.headerJSONPath = headerJSONPath;
+        this.compiledPath = JsonPath.compile(headerJSONPath);
+        this.bytePath = JsonBytePath.compile(headerJSONPath);
+        this.maxScanBytes = maxScanBytes;
+
+        int count = serializers.size();
+        this.outputNames = new String[count];
+        this.serializers = new JsonInterceptorSerializer[count];
+        int i = 0;
+        for (Map.Entry<String, JsonInterceptorSerializer> entry : serializers.entrySet()) {
+            Preconditions.checkArgument(!StringUtils.isEmpty(entry.getKey()), "Header name was misconfigured");
+            Preconditions.checkArgument(entry.getValue() != null, "Serializer was misconfigured");
+            outputNames[i] = entry.getKey();
+            this.serializers[i++] = entry.getValue();
+        }
+
+        this.sharedWith = new int[count];
+        boolean shared = false;
+        for (i = 0; i < count; i++) {
+            sharedWith[i] = -1;
+            Object key = intermediateKey(this.serializers[i]);
+            if (key == null) {
+                continue;
+            }
+            int owner = -1;
+            int members = 0;
+            for (int j = 0; j < count; j++) {
+                if (key.equals(intermediateKey(this.serializers[j]))) {
+                    owner = owner < 0 ? j : owner;
+                    members++;
+                }
+            }
+            if (members > 1) {
+                sharedWith[i] = owner;
+                shared = true;
+            }
+        }
+        this.sharing = shared;
+
+        if (internSize > 0) {
+            this.interners = new StringInterner[count];
+            for (i = 0; i < count; i++) {
+                interners[i] = new StringInterner(internSize);
+            }
+        } else {
+            this.interners = null;
+        }
+    }
+
+    private static Object intermediateKey(JsonInterceptorSerializer serializer) {
+        return serializer instanceof JsonInterceptorSharedSerializer
+                ? ((JsonInterceptorSharedSerializer) serializer).getIntermediateKey() : null;
+    }
+
+    public String getHeaderName() {
+        return headerName;
+    }
+
+    public String getHeaderJSONPath() {
+        return headerJSONPath;
+    }
+
+    /**
+     * @return the first serializer of the path
+     */
+    public JsonInterceptorSerializer getSerializer() {
+        return serializers[0];
+    }
+
+    /**
+     * @return the serializer of each header written by this path
+     */
+    public Map<String, JsonInterceptorSerializer> getSerializers() {
+        Map<String, JsonInterceptorSerializer> map = new LinkedHashMap<String, JsonInterceptorSerializer>();
+        for (int i = 0; i < serializers.length; i++) {
+            map.put(outputNames[i], serializers[i]);
+        }
+        return Collections.unmodifiableMap(map);
+    }
+
+    /**
+     * @return the byte-level form of this path, or null if only the JSONPath engine can evaluate it
+     */
+    public JsonBytePath getBytePath() {
+        return bytePath;
+    }
+
+    /**
+     * @return the length of the body prefix the value must lie in, or 0 if the whole body is read
+     */
+    public int getMaxScanBytes() {
+        return maxScanBytes;
+    }
+
+    /**
+     * Evaluates the compiled path against a parsed body.
+     *
+     * @return the scalar value, or null if the path does not exist
+     * @throws ClassCastException (or a Jackson conversion error) if the value is not a scalar
+     */
+    public String read(JsonNode root) {
+        return compiledPath.read(root, String.class);
+    }
+
+    /**
+     * Converts the raw value located by a {@link com.tsm.flume.interceptor.common.JsonByteMatcher}.
+     *
+     * @return the scalar value, or null for a JSON null
+     * @throws ClassCastException if the value is not a scalar
+     */
+    public String read(byte[] body, int start, int end) {
+        return JsonBytes.scalarToString(body, start, end);
+    }
+
+    /**
+     * Serializes an extracted value into every header of the path. A
+     * serializer that throws is counted, and the other headers are still
+     * written.
+     *
+     * @return the first serializer exception, or null
+     */
+    public RuntimeException write(String value, Map<String, String> headers, InterceptorCounter counter) {
+        return write(value, null, 0, 0, headers, counter);
+    }
+
+    /**
+     * Same as {@link #write(String, Map, InterceptorCounter)} for a value read
+     * from <code>body[start, end)</code>; the interning caches remember the raw bytes.
+     */
+    public RuntimeException write(String value, byte[] body, int start, int end, Map<String, String> headers,
+                                  InterceptorCounter counter) {
+        Object[] intermediates = sharing ? new Object[serializers.length] : null;
+        RuntimeException failure = null;
+        for (int i = 0; i < serializers.length; i++) {
+            long serializeStart = counter.startTimer();
+            try {
+                String output = serialize(i, value, intermediates);
+                if (interners != null) {
+                    output = body != null
+                            ? interners[i].remember(body, start, end, output)
+                            : interners[i].intern(output);
+                }
+                headers.put(outputNames[i], output);
+                counter.incrementExtracted();
+            } catch (RuntimeException e) {
+                counter.incrementSerializerFailures();
+                failure = failure != null ? failure : e;
+            } finally {
+                counter.recordLatency(InterceptorCounter.Stage.SERIALIZE, serializeStart);
+            }
+        }
+        return failure;
+    }
+
+    /**
+     * Writes every header of the path from the interning caches, if all of
+     * them already know the raw value <code>body[start, end)</code>.
+     *
+     * @return true if the headers were written
+     */
+    public boolean writeInterned(byte[] body, int start, int end, Map<String, String> headers, InterceptorCounter counter) {
+        if (interners == null) {
+            return false;
+        }
+        if (interners.length == 1) {
+            String output = interners[0].lookup(body, start, end);
+            if (output == null) {
+                return false;
+            }
+            headers.put(outputNames[0], output);
+            counter.incrementExtracted();
+            return true;
+        }
+        String[] outputs = new String[interners.length];
+        for (int i = 0; i < interners.length; i++) {
+            outputs[i] = interners[i].lookup(body, start, end);
+            if (outputs[i] == null) {
+                return false;
+            }
+        }
+        for (int i = 0; i < outputs.length; i++) {
+            headers.put(outputNames[i], outputs[i]);
+            counter.incrementExtracted();
+        }
+        return true;
+    }
+
+    private String serialize(int i, String value, Object[] intermediates) {
+        JsonInterceptorSerializer serializer = serializers[i];
+        int owner = sharedWith[i];
+        if (owner < 0) {
+            return serializer.serialize(value);
+        }
+        Object intermediate = intermediates[owner];
+        if (intermediate == null) {
+            try {
+                intermediate = ((JsonInterceptorSharedSerializer) serializers[owner]).parse(value);
+            } catch (RuntimeException e) {
+                intermediate = FAILED;
+            }
+            intermediates[owner] = intermediate;
+        }
+        if (intermediate == FAILED) {
+            return serializer.serialize(value);
+        }
+        return ((JsonInterceptorSharedSerializer) serializer).serialize(value, intermediate);
+    }
+
+    @Override
+    public String toString() {
+        return headerName + "=" + headerJSONPath;
+    }
+}
@@ -0,0 +1,30 @@
+package com.tsm.flume.interceptor.json;
+
+/**
+ * A serializer whose work can be shared with the other serializers of the
+ * same path.
+ * <p>
+ * When several serializers of a path return equal
+ * {@link #getIntermediateKey() intermediate keys}, {@link #parse(String)} is
+ * called once per event on the first of them and its result is handed to
+ * {@link #serialize(String, Object)} of each. If the parse throws, every
+ * serializer of the group falls back to {@link #serialize(String)}, so error
+ * handling is the same as without sharing.
+ */
+public interface JsonInterceptorSharedSerializer extends JsonInterceptorSerializer {
+
+    /**
+     * @return a key that is equal for serializers producing the same intermediate result
+     */
+    Object getIntermediateKey();
+
+    /**
+     * @throws RuntimeException if the value cannot be parsed
+     */
+    Object parse(String value);
+
+    /**
+     * @param intermediate the result of {@link #parse(String)} on a serializer with an equal key
+     */
+    String serialize(String value, Object intermediate);
+}
@@ -0,0 +1,248 @@
+package com.tsm.flume.interceptor.json;
+
+import org.joda.time.format.DateTimeFormat;
+import org.joda.time.format.DateTimeFormatter;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Parses timestamps for the date serializers with the same results as a Joda
+ * {@link DateTimeFormatter} built from the configured pattern.
+ * <p>
+ * Two shortcuts avoid most of the Joda work:
+ * <ul>
+ * <li>a bounded cache of recently parsed values, so the runs of identical
+ * timestamps that nearly ordered log lines produce are parsed once;</li>
+ * <li>a hand-written parser for the common ISO-8601 layouts
+ * <code>yyyy-MM-dd'T'HH:mm:ss[.SSS]Z</code> (also with <code>ZZ</code> or a space
+ * instead of <code>'T'</code>), selected automatically from the pattern. Input
+ * that does not have exactly that layout is handed to Joda, so unusual but
+ * valid input and error messages stay the same.</li>
+ * </ul>
+ * Instances are thread-safe.
+ */
+public class JsonInterceptorTimestampParser {
+
+    public static final int DEFAULT_CACHE_SIZE = 64;
+
+    private static final Pattern ISO_PATTERN =
+            Pattern.compile("yyyy-MM-dd(?:'T'| )HH:mm:ss(\\.SSS)?ZZ?");
+
+    private final String pattern;
+    private final DateTimeFormatter formatter;
+    private final boolean iso;
+    private final boolean isoMillis;
+    private final char isoSeparator;
+    private final Entry[] cache;
+    private final int mask;
+    private volatile Second lastSecond;
+
+    public JsonInterceptorTimestampParser(String pattern) {
+        this(pattern, DEFAULT_CACHE_SIZE);
+    }
+
+    /**
+     * @param cacheSize number of cached values, rounded up to a power of two; 0 disables the cache
+     */
+    public JsonInterceptorTimestampParser(String pattern, int cacheSize) {
+        this.pattern = pattern;
+        this.formatter = DateTimeFormat.forPattern(pattern);
+
+        Matcher matcher = ISO_PATTERN.matcher(pattern);
+        this.iso = matcher.matches();
+        this.isoMillis = iso && matcher.group(1) != null;
+        this.isoSeparator = pattern.indexOf('\'') >= 0 ? 'T' : ' ';
+
+        if (cacheSize > 0) {
+            int size = Integer.highestOneBit(cacheSize - 1) << 1;
+            this.cache = new Entry[Math.max(size, 1)];
+            this.mask = cache.length - 1;
+        } else {
+            this.cache = null;
+            this.mask = 0;
+        }
+    }
+
+    public String getPattern() {
+        return pattern;
+    }
+
+    /**
+     * @return the key shared by serializers whose parsers read the same instants
+     */
+    public Object getIntermediateKey() {
+        return "timestamp:" + pattern;
+    }
+
+    public DateTimeFormatter getFormatter() {
+        return formatter;
+    }
+
+    /**
+     * @return true if the pattern is handled by the hand-written ISO-8601 parser
+     */
+    public boolean isFastPath() {
+        return iso;
+    }
+
+    /**
+     * @return the instant in milliseconds since the epoch
+     * @throws IllegalArgumentException if the text does not match the pattern
+     */
+    public long parseMillis(String text) {
+        if (cache == null) {
+            return parseUncached(text);
+        }
+        int slot = text.hashCode() & mask;
+        Entry entry = cache[slot];
+        if (entry != null && entry.text.equals(text)) {
+            return entry.millis;
+        }
+        long millis = parseUncached(text);
+        cache[slot] = new Entry(text, millis);
+        return millis;
+    }
+
+    private long parseUncached(String text) {
+        if (iso) {
+            long millis = parseIso(text);
+            if (millis != Long.MIN_VALUE) {
+                return millis;
+            }
+        }
+        return formatter.parseMillis(text);
+    }
+
+    /**
+     * @return the parsed instant, or {@link Long#MIN_VALUE} if the text must be left to Joda
+     */
+    long parseIso(String text) {
+        int length = text.length();
+        if (length < 20 || text.charAt(4) != '-' || text.charAt(7) != '-' || text.charAt(10) != isoSeparator
+                || text.charAt(13) != ':' || text.charAt(16) != ':') {
+            return Long.MIN_VALUE;
+        }
+
+        long localMillis;
+        Second second = lastSecond;
+        if (second != null && text.regionMatches(0, second.prefix, 0, 19)) {
+            localMillis = second.localMillis;
+        } else {
+            int year = digits(text, 0, 4);
+            int month = digits(text, 5, 2);
+            int day = digits(text, 8, 2);
+            int hour = digits(text, 11, 2);
+            int minute = digits(text, 14, 2);
+            int sec = digits(text, 17, 2);
+            if (year < 0 || month < 1 || month > 12 || day < 1 || day > daysInMonth(year, month)
+                    || hour < 0 || hour > 23 || minute < 0 || minute > 59 || sec < 0 || sec > 59) {
+                return Long.MIN_VALUE;
+            }
+            localMillis = ((epochDay(year, month, day) * 24 + hour) * 60 + minute) * 60000L + sec * 1000L;
+            lastSecond = new Second(text.substring(0, 19), localMillis);
+        }
+
+        int i = 19;
+        if (isoMillis) {
+            if (length < 24 || text.charAt(19) != '.') {
+                return Long.MIN_VALUE;
+            }
+            int millis = digits(text, 20, 3);
+            if (millis < 0) {
+                return Long.MIN_VALUE;
+            }
+            localMillis += millis;
+            i = 23;
+        }
+
+        if (i == length - 1 && text.charAt(i) == 'Z') {
+            return localMillis;
+        }
+        char sign = text.charAt(i);
+        if (sign != '+' && sign != '-') {
+            return Long.MIN_VALUE;
+        }
+        int offsetHours;
+        int offsetMinutes;
+        if (length - i == 6 && text.charAt(i + 3) == ':') {
+            offsetHours = digits(text, i + 1, 2);
+            offsetMinutes = digits(text, i + 4, 2);
+        } else if (length - i == 5) {
+            offsetHours = digits(text, i + 1, 2);
+            offsetMinutes = digits(text, i + 3, 2);
+        } else {
+            return Long.MIN_VALUE;
+        }
+        if (offsetHours < 0 || offsetHours > 23 || offsetMinutes < 0 || offsetMinutes > 59) {
+            return Long.MIN_VALUE;
+        }
+        long offset = (offsetHours * 60L + offsetMinutes) * 60000L;
+        return sign == '+' ? localMillis - offset : localMillis + offset;
+    }
+
+    /**
+     * @return the decimal value of <code>count</code> ASCII digits, or -1
+     */
+    private static int digits(String text, int from, int count) {
+        int value = 0;
+        for (int i = from; i < from + count; i++) {
+            char c = text.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    private static boolean isLeapYear(int year) {
+        return (year & 3) == 0 && (year % 100 != 0 || year % 400 == 0);
+    }
+
+    private static int daysInMonth(int year, int month) {
+        switch (month) {
+            case 2:
+                return isLeapYear(year) ? 29 : 28;
+            case 4:
+            case 6:
+            case 9:
+            case 11:
+                return 30;
+            default:
+                return 31;
+        }
+    }
+
+    /**
+     * Days since 1970-01-01 in the proleptic Gregorian calendar used by Joda's ISO chronology.
+     */
+    private static long epochDay(int year, int month, int day) {
+        long y = month <= 2 ? year - 1 : year;
+        long era = (y >= 0 ? y : y - 399) / 400;
+        long yearOfEra = y - era * 400;
+        long dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097 + dayOfEra - 719468;
+    }
+
+    private static final class Entry {
+        final String text;
+        final long millis;
+
+        Entry(String text, long millis) {
+            this.text = text;
+            this.millis = millis;
+        }
+    }
+
+    private static final class Second {
+        final String prefix;
+        final long localMillis;
+
+        Second(String prefix, long localMillis) {
+            this.prefix = prefix;
+            this.localMillis = localMillis;
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package com.tsm.flume.interceptor.minifyjson;
+
+import com.google.common.base.Preconditions;
+import com.tsm.flume.interceptor.common.FailurePolicy;
+import com.tsm.flume.interceptor.common.InterceptorCounter;
+import com.tsm.flume.interceptor.common.InterceptorCounter.Stage;
+import com.tsm.flume.interceptor.common.JsonBytes;
+import com.tsm.flume.interceptor.common.JsonValidator;
+import com.tsm.flume.interceptor.common.ParallelBatch;
+import org.apache.flume.Context;
+import org.apache.flume.Event;
+import org.apache.flume.interceptor.Interceptor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.charset.Charset;
+import java.util.List;
+
+/**
+ * Interceptor class that removes insignificant whitespace from JSON bodies.
+ * <p>
+ * The body is rewritten in a single pass over its bytes without building a
+ * tree; strings and their escape sequences are copied unchanged. Bodies
+ * without whitespace between tokens are passed on as they are.
+ * <p>
+ * charset: charset of the body; must be ASCII compatible (default is utf-8)<p>
+ * validate: check bodies with a strict {@link JsonValidator} pass before
+ * minifying them (default is false). Without it, only unterminated strings
+ * and literals separated by whitespace are detected.<p>
+ * metrics, metricsName: see {@link InterceptorCounter}. Invalid bodies are
+ * counted as malformed and minified bodies as rewritten.<p>
+ * onFailure, failureHeader: see {@link FailurePolicy}; applies to invalid
+ * bodies, which are never minified (default is pass).
+ */
+public class MinifyJsonInterceptor implements Interceptor {
+
+    private static final Logger logger = LoggerFactory.getLogger(MinifyJsonInterceptor.class);
+
+    static final String REASON_MALFORMED = "malformed_json";
+
+    final boolean validate;
+    final ParallelBatch batch;
+    final InterceptorCounter counter;
+    final FailurePolicy failurePolicy;
+
+    /**
+     * Only {@link MinifyJsonInterceptor.Builder} can build me
+     */
+    private MinifyJsonInterceptor(boolean validate, ParallelBatch batch, InterceptorCounter counter, FailurePolicy failurePolicy) {
+        this.validate = validate;
+        this.batch = batch;
+        this.counter = counter;
+        this.failurePolicy = failurePolicy;
+    }
+
+    @Override
+    public void initialize() {
+        counter.start();
+    }
+
+    /**
+     * Modifies events in-place.
+     */
+    @Override
+    public Event intercept(Event event) {
+        long interceptStart = counter.startTimer();
+        counter.incrementProcessed();
+        try {
+            return minify(event);
+        } finally {
+            counter.recordLatency(Stage.INTERCEPT, interceptStart);
+        }
+    }
+
+    private Event minify(Event event) {
+        byte[] body = event.getBody();
+        if (validate) {
+            long parseStart = counter.startTimer();
+            int status = JsonValidator.validate(body, 0, body.length, false);
+            counter.recordLatency(Stage.PARSE, parseStart);
+            if (status != JsonValidator.VALID) {
+                counter.incrementMalformed();
+                return failurePolicy.onFailure(event, REASON_MALFORMED,
+                        new IllegalArgumentException("Invalid JSON body: " + JsonValidator.statusName(status)), counter);
+            }
+        }
+
+        long rewriteStart = counter.startTimer();
+        byte[] minified = JsonBytes.minify(body);
+        counter.recordLatency(Stage.REWRITE, rewriteStart);
+        if (minified == null) {
+            counter.incrementMalformed();
+            return failurePolicy.onFailure(event, REASON_MALFORMED,
+                    new IllegalArgumentException("Invalid JSON body"), counter);
+        }
+        if (minified != body) {
+            event.setBody(minified);
+            counter.incrementRewritten();
+        }
+        return event;
+    }
+
+    /**
+     * Delegates to {@link #intercept(Event)} in a loop, or across threads for
+     * large batches when parallel mode is on.
+     */
+    @Override
+    public List<Event> intercept(List<Event> events) {
+        return batch.intercept(this, events);
+    }
+
+    @Override
+    public void close() {
+        counter.stop();
+    }
+
+    /**
+     * Builder which builds new instance of the MinifyJsonInterceptor.
+     */
+    public static class Builder implements Interceptor.Builder {
+
+        String charset;
+        boolean validate;
+        ParallelBatch batch;
+        InterceptorCounter counter;
+        FailurePolicy failurePolicy;
+
+        @Override
+        public void configure(Context context) {
+            charset = context.getString(Constants.CHARSET, Constants.CHARSET_DEFAULT);
+            validate = context.getBoolean(Constants.VALIDATE, Constants.VALIDATE_DEFAULT);
+            batch = ParallelBatch.configure(context);
+            counter = InterceptorCounter.configure(context, MinifyJsonInterceptor.class);
+            failurePolicy = FailurePolicy.configure(context, Constants.ON_FAILURE_DEFAULT, logger);
+        }
+
+        @Override
+        public Interceptor build() {
+            logger.info(String.format("Creating MinifyJsonInterceptor:charset=%s,validate=%s", charset, validate));
+
+            Preconditions.checkArgument(JsonValidator.supports(Charset.forName(charset)),
+                    "charset " + charset + " is not ASCII compatible");
+            return new MinifyJsonInterceptor(validate, batch, counter, failurePolicy);
+        }
+
+    }
+
+    public static class Constants {
+
+        public static final String CHARSET = "charset";
+        public static final String CHARSET_DEFAULT = "utf-8";
+
+        public static final String VALIDATE = "validate";
+        public static final boolean VALIDATE_DEFAULT = false;
+
+        public static final FailurePolicy.Action ON_FAILURE_DEFAULT = FailurePolicy.Action.PASS;
+
+    }
+
+}
@@ -1,17 +1,20 @@
 package com.tsm.flume.interceptor.parsejson;
 
 import com.google.common.base.Preconditions;
-import com.google.gson.JsonDeserializer;
-import com.google.gson.JsonObject;
-import com.google.gson.JsonParser;
-import org.apache.avro.data.Json;
+import com.tsm.flume.interceptor.common.CharsetTranscoder;
+import com.tsm.flume.interceptor.common.FailurePolicy;
+import com.tsm.flume.interceptor.common.InterceptorCounter;
+import com.tsm.flume.interceptor.common.InterceptorCounter.Stage;
+import com.tsm.flume.interceptor.common.JsonEngine;
+import com.tsm.flume.interceptor.common.JsonEngines;
+import com.tsm.flume.interceptor.common.ParallelBatch;
+import com.tsm.flume.interceptor.common.ParseCache;
 import org.apache.flume.Context;
 import org.apache.flume.Event;
 import org.apache.flume.interceptor.Interceptor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.nio.charset.Charset;
 import java.util.List;
 import java.util.Map;
 
@@ -26,6 +29,27 @@ import java.util.Map;
  * charset: charset to use in string of charset .
  * (default is "utf-8")<p>
  * <p>
+ * engine: the {@link JsonEngine} that sets the member, see {@link JsonEngines}.
+ * <code>bytes</code> escapes the value and splices it into the original bytes
+ * instead of parsing and re-serializing the whole body; bodies the splice
+ * cannot handle (lenient JSON, duplicate keys) and charsets it does not
+ * support still go through Gson. (default is bytes)<p>
+ * <p>
+ * splice: older switch between the <code>bytes</code> (true) and
+ * <code>gson</code> (false) engines, used when <code>engine</code> is not set.<p>
+ * <p>
+ * parseCache: with the <code>bytes</code> engine, reuses the validation and
+ * member index of interceptors before this one through the {@link ParseCache},
+ * and records spliced bodies as valid for the ones after it.
+ * (default is false)<p>
+ * <p>
+ * metrics, metricsName: see {@link InterceptorCounter}. Bodies that are not
+ * JSON objects are counted as malformed.<p>
+ * <p>
+ * onFailure, failureHeader: what happens to bodies that are not JSON objects,
+ * see {@link FailurePolicy}. <code>fail</code> (the default) throws as before;
+ * the other policies forward the body unchanged or drop the event.<p>
+ * <p>
  * Sample config:<p>
  *
  * <code>
@@ -41,28 +65,43 @@ public class ParseJsonInterceptor implements Interceptor {
 
     private static final Logger logger = LoggerFactory.getLogger(ParseJsonInterceptor.class);
 
+    static final String REASON_MALFORMED = "malformed_json";
+
     private String headerName;
     private Boolean useHeaderName;
     private String fixedValue;
     private final String key;
     private final String sourceCharset;
     private final String targetCharset;
+    private final JsonEngine engine;
+    private final ParallelBatch batch;
+    private final InterceptorCounter counter;
+    private final CharsetTranscoder transcoder;
+    private final JsonEngine.MemberSetter setter;
+    private final FailurePolicy failurePolicy;
 
     /**
      * Only {@link ParseJsonInterceptor.Builder} can build me
      */
-    private ParseJsonInterceptor(String headerName, Boolean useHeaderName, String fixedValue, String key, String sourceCharset, String targetCharset) {
+    private ParseJsonInterceptor(String headerName, Boolean useHeaderName, String fixedValue, String key, String sourceCharset, String targetCharset, JsonEngine engine, ParallelBatch batch, InterceptorCounter counter, FailurePolicy failurePolicy) {
         this.headerName = headerName;
         this.useHeaderName = useHeaderName;
         this.fixedValue = fixedValue;
         this.key = key;
         this.sourceCharset = sourceCharset;
         this.targetCharset = targetCharset;
+        this.batch = batch;
+        this.counter = counter;
+        this.failurePolicy = failurePolicy;
+
+        this.transcoder = new CharsetTranscoder(sourceCharset, targetCharset);
+        this.engine = JsonEngines.forCharset(engine, transcoder.getSource());
+        this.setter = this.engine.newMemberSetter(key, transcoder);
     }
 
     @Override
     public void initialize() {
-        // no-op
+        counter.start();
     }
 
     /**
@@ -70,7 +109,16 @@ public class ParseJsonInterceptor implements Interceptor {
      */
     @Override
     public Event intercept(Event event) {
+        long interceptStart = counter.startTimer();
+        counter.incrementProcessed();
+        try {
+            return rewrite(event);
+        } finally {
+            counter.recordLatency(Stage.INTERCEPT, interceptStart);
+        }
+    }
 
+    private Event rewrite(Event event) {
         byte[] content = event.getBody();
         String keyValue = fixedValue;
         if(useHeaderName)
@@ -81,14 +129,22 @@ public class ParseJsonInterceptor implements Interceptor {
                 keyValue = headers.get(headerName);
             }
         }
-        JsonObject jsonObject = new JsonParser().parse(new String(content, Charset.forName(sourceCharset))).getAsJsonObject();
-        jsonObject.addProperty(key, keyValue);
-        event.setBody(jsonObject.toString().getBytes(Charset.forName(targetCharset)));
+        long rewriteStart = counter.startTimer();
+        try {
+            event.setBody(setter.set(content, keyValue));
+        } catch (RuntimeException e) {
+            counter.incrementMalformed();
+            return failurePolicy.onFailure(event, REASON_MALFORMED, e, counter);
+        } finally {
+            counter.recordLatency(Stage.REWRITE, rewriteStart);
+        }
+        counter.incrementRewritten();
         return event;
     }
 
     /**
-     * Delegates to {@link #intercept(Event)} in a loop.
+     * Delegates to {@link #intercept(Event)} in a loop, or across threads for
+     * large batches when parallel mode is on.
      *
      * @param events
      * @return
@@ -97,15 +153,12 @@ public class ParseJsonInterceptor implements Interceptor {
     /**
      */
     public List<Event> intercept(List<Event> events) {
-        for (Event event : events) {
-            intercept(event);
-        }
-        return events;
+        return batch.intercept(this, events);
     }
 
     @Override
     public void close() {
-        // no-op
+        counter.stop();
     }
 
     /**
@@ -119,6 +172,11 @@ public class ParseJsonInterceptor implements Interceptor {
         String key;
         String sourceCharset;
         String targetCharset;
+        String engine;
+        boolean parseCache;
+        ParallelBatch batch;
+        InterceptorCounter counter;
+        FailurePolicy failurePolicy;
 
         @Override
         public void configure(Context context) {
@@ -128,18 +186,28 @@ public class ParseJsonInterceptor implements Interceptor {
             key = context.getString(Constants.KEY);
             sourceCharset = context.getString(Constants.SOURCECHARSET, Constants.CHARSET_DEFAULT);
             targetCharset = context.getString(Constants.TARGETCHARSET, sourceCharset);
+            boolean splice = context.getBoolean(Constants.SPLICE, Constants.SPLICE_DEFAULT);
+            engine = context.getString(Constants.ENGINE, splice ? JsonEngines.BYTES : JsonEngines.GSON);
+            parseCache = context.getBoolean(Constants.PARSE_CACHE, Constants.PARSE_CACHE_DEFAULT);
+            batch = ParallelBatch.configure(context);
+            counter = InterceptorCounter.configure(context, ParseJsonInterceptor.class);
+            failurePolicy = FailurePolicy.configure(context, Constants.ON_FAILURE_DEFAULT, logger);
         }
 
         @Override
         public Interceptor build() {
             logger.info(String.format(
-                    "Creating ParseJsonInterceptor:headerName=%s, useHeaderName=%s, fixedValue=%s, key=%s,source_charset=%s,target_charset=%s",
-                    headerName, useHeaderName, fixedValue, key, sourceCharset, targetCharset));
+                    "Creating ParseJsonInterceptor:headerName=%s, useHeaderName=%s, fixedValue=%s, key=%s,source_charset=%s,target_charset=%s,engine=%s,parseCache=%s",
+                    headerName, useHeaderName, fixedValue, key, sourceCharset, targetCharset, engine, parseCache));
 
             Preconditions.checkArgument(headerName != null, "headerName name was misconfigured");
             Preconditions.checkArgument(key != null, "key name was misconfigured");
 
-            return new ParseJsonInterceptor(headerName, useHeaderName, fixedValue, key, sourceCharset, targetCharset);
+            JsonEngine jsonEngine = JsonEngines.forName(engine);
+            if (parseCache) {
+                jsonEngine = JsonEngines.withParseCache(jsonEngine);
+            }
+            return new ParseJsonInterceptor(headerName, useHeaderName, fixedValue, key, sourceCharset, targetCharset, jsonEngine, batch, counter, failurePolicy);
         }
 
     }
@@ -156,5 +224,15 @@ public class ParseJsonInterceptor implements Interceptor {
         public static final String TARGETCHARSET = "target_charset";
         public static final String CHARSET_DEFAULT = "utf-8";
 
+        public static final String SPLICE = "splice";
+        public static final Boolean SPLICE_DEFAULT = true;
+
+        public static final String ENGINE = JsonEngines.CONFIG_ENGINE;
+
+        public static final String PARSE_CACHE = ParseCache.CONFIG_PARSE_CACHE;
+        public static final boolean PARSE_CACHE_DEFAULT = ParseCache.DEFAULT_PARSE_CACHE;
+
+        public static final FailurePolicy.Action ON_FAILURE_DEFAULT = FailurePolicy.Action.FAIL;
+
     }
 }
@@ -0,0 +1,47 @@
+package com.tsm.flume.interceptor.partition;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Approximate detector of keys that make up a large share of recent events.
+ * <p>
+ * Key hashes are counted in a small table over windows of {@link #WINDOW}
+ * events; a key is hot while its slot holds more than the threshold in the
+ * current or the previous window. Keys that share a slot are counted
+ * together, so a rare key can be taken for a hot one, never the reverse.
+ * Counts are updated without locks and may be slightly off under contention.
+ */
+final class HotKeyTracker {
+
+    static final int WINDOW = 4096;
+    static final int SLOTS = 1024;
+
+    private final int threshold;
+    private final AtomicInteger seen = new AtomicInteger();
+    private volatile AtomicIntegerArray current = new AtomicIntegerArray(SLOTS);
+    private volatile AtomicIntegerArray previous = new AtomicIntegerArray(SLOTS);
+
+    /**
+     * @param share fraction of the events of a window above which a key is hot
+     */
+    HotKeyTracker(double share) {
+        this.threshold = Math.max(1, (int) (WINDOW * share));
+    }
+
+    /**
+     * Counts one event with the key and tells whether the key is hot.
+     */
+    boolean record(long hash) {
+        int slot = (int) (hash >>> 40) & (SLOTS - 1);
+        AtomicIntegerArray counts = current;
+        int count = counts.incrementAndGet(slot);
+        boolean hot = count > threshold || previous.get(slot) > threshold;
+        if (seen.incrementAndGet() == WINDOW) {
+            previous = counts;
+            current = new AtomicIntegerArray(SLOTS);
+            seen.set(0);
+        }
+        return hot;
+    }
+}
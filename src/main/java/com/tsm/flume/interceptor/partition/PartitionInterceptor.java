@@ -0,0 +1,234 @@
+package com.tsm.flume.interceptor.partition;
+
+import com.google.common.base.Preconditions;
+import com.tsm.flume.interceptor.common.ByteHash;
+import com.tsm.flume.interceptor.common.FailurePolicy;
+import com.tsm.flume.interceptor.common.InterceptorCounter;
+import com.tsm.flume.interceptor.common.InterceptorCounter.Stage;
+import com.tsm.flume.interceptor.common.JsonByteMatcher;
+import com.tsm.flume.interceptor.common.JsonBytePath;
+import com.tsm.flume.interceptor.common.ParallelBatch;
+import org.apache.commons.lang.StringUtils;
+import org.apache.flume.Context;
+import org.apache.flume.Event;
+import org.apache.flume.interceptor.Interceptor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Interceptor class that writes a partition number, computed from one or more
+ * JSON fields, to a header that a multiplexing channel selector can route on.
+ * <p>
+ * The fields are located by a {@link JsonByteMatcher} directly over the UTF-8
+ * body, and their raw bytes (strings with their quotes and escapes, numbers as
+ * written) are hashed with {@link ByteHash} in the configured order. The same
+ * field values therefore always give the same partition, across agents and
+ * restarts. Events without any of the fields get no header, so the selector's
+ * default channel applies.
+ * <p>
+ * keys: whitespace separated simple JSONPaths such as <code>$.tenant</code> or
+ * <code>$.user.id</code> (required)<p>
+ * partitions: number of partitions N; the header is a number from 0 to N - 1 (required)<p>
+ * header: header the partition is written to (default is "partition")<p>
+ * hotKeySpread: number of partitions the events of a hot key are spread over
+ * at random; 1 keeps every key on one partition (default is 1)<p>
+ * hotKeyShare: share of recent events above which a key is hot (default is 0.05)<p>
+ * metrics, metricsName: see {@link InterceptorCounter}. Partitioned events
+ * are counted as extracted, events without any key field as missing.<p>
+ * onFailure, failureHeader: see {@link FailurePolicy}; applies to malformed
+ * bodies, which get no partition (default is pass).
+ * <p>
+ * Sample config:<p>
+ *
+ * <code>
+ * agent.sources.r1.interceptors.i1.type = com.tsm.flume.interceptor.partition.PartitionInterceptor$Builder<p>
+ * agent.sources.r1.interceptors.i1.keys = $.tenant $.userId<p>
+ * agent.sources.r1.interceptors.i1.partitions = 4<p>
+ * agent.sources.r1.selector.type = multiplexing<p>
+ * agent.sources.r1.selector.header = partition<p>
+ * agent.sources.r1.selector.mapping.0 = c0<p>
+ * </code>
+ */
+public class PartitionInterceptor implements Interceptor {
+
+    private static final Logger logger = LoggerFactory.getLogger(PartitionInterceptor.class);
+
+    static final String REASON_MALFORMED = "malformed_json";
+
+    private static final long MISSING = 0x5851F42D4C957F2DL;
+
+    private final JsonByteMatcher matcher;
+    private final int partitions;
+    private final String header;
+    private final String[] partitionNames;
+    private final int hotKeySpread;
+    private final HotKeyTracker hotKeys;
+    final ParallelBatch batch;
+    final InterceptorCounter counter;
+    final FailurePolicy failurePolicy;
+
+    /**
+     * Only {@link PartitionInterceptor.Builder} can build me
+     */
+    private PartitionInterceptor(List<JsonBytePath> keys, int partitions, String header, int hotKeySpread, double hotKeyShare,
+                                 ParallelBatch batch, InterceptorCounter counter, FailurePolicy failurePolicy) {
+        this.matcher = new JsonByteMatcher(keys);
+        this.partitions = partitions;
+        this.header = header;
+        this.partitionNames = new String[partitions];
+        for (int i = 0; i < partitions; i++) {
+            partitionNames[i] = Integer.toString(i);
+        }
+        this.hotKeySpread = Math.min(hotKeySpread, partitions);
+        this.hotKeys = this.hotKeySpread > 1 ? new HotKeyTracker(hotKeyShare) : null;
+        this.batch = batch;
+        this.counter = counter;
+        this.failurePolicy = failurePolicy;
+    }
+
+    @Override
+    public void initialize() {
+        counter.start();
+    }
+
+    /**
+     * Modifies events in-place.
+     */
+    @Override
+    public Event intercept(Event event) {
+        long interceptStart = counter.startTimer();
+        counter.incrementProcessed();
+        try {
+            return partition(event);
+        } finally {
+            counter.recordLatency(Stage.INTERCEPT, interceptStart);
+        }
+    }
+
+    private Event partition(Event event) {
+        byte[] body = event.getBody();
+        int[] ranges = matcher.newRanges();
+        long parseStart = counter.startTimer();
+        int status = matcher.match(body, 0, body.length, ranges);
+        counter.recordLatency(Stage.PARSE, parseStart);
+        if (status != JsonByteMatcher.OK) {
+            counter.incrementMalformed();
+            return failurePolicy.onFailure(event, REASON_MALFORMED, null, counter);
+        }
+
+        long hash = 0;
+        boolean found = false;
+        for (int i = 0; i < matcher.size(); i++) {
+            if (ranges[i * 2] < 0) {
+                hash = ByteHash.mix(hash + MISSING);
+            } else {
+                hash = ByteHash.hash(body, ranges[i * 2], ranges[i * 2 + 1], hash);
+                found = true;
+            }
+        }
+        if (!found) {
+            counter.incrementMissing();
+            return event;
+        }
+        event.getHeaders().put(header, partitionNames[partition(hash)]);
+        counter.incrementExtracted();
+        return event;
+    }
+
+    /**
+     * @return the partition of a key, salted at random if the key is hot
+     */
+    int partition(long hash) {
+        if (hotKeys != null && hotKeys.record(hash)) {
+            int salt = ThreadLocalRandom.current().nextInt(hotKeySpread);
+            if (salt > 0) {
+                return ByteHash.reduce(ByteHash.mix(hash + salt), partitions);
+            }
+        }
+        return ByteHash.reduce(hash, partitions);
+    }
+
+    /**
+     * Delegates to {@link #intercept(Event)} in a loop, or across threads for
+     * large batches when parallel mode is on.
+     */
+    @Override
+    public List<Event> intercept(List<Event> events) {
+        return batch.intercept(this, events);
+    }
+
+    @Override
+    public void close() {
+        counter.stop();
+    }
+
+    /**
+     * Builder which builds new instance of the PartitionInterceptor.
+     */
+    public static class Builder implements Interceptor.Builder {
+
+        String keys;
+        Integer partitions;
+        String header;
+        int hotKeySpread;
+        double hotKeyShare;
+        ParallelBatch batch;
+        InterceptorCounter counter;
+        FailurePolicy failurePolicy;
+
+        @Override
+        public void configure(Context context) {
+            keys = context.getString(Constants.KEYS);
+            partitions = context.getInteger(Constants.PARTITIONS);
+            header = context.getString(Constants.HEADER, Constants.HEADER_DEFAULT);
+            hotKeySpread = context.getInteger(Constants.HOT_KEY_SPREAD, Constants.HOT_KEY_SPREAD_DEFAULT);
+            hotKeyShare = Double.parseDouble(context.getString(Constants.HOT_KEY_SHARE, Constants.HOT_KEY_SHARE_DEFAULT));
+            batch = ParallelBatch.configure(context);
+            counter = InterceptorCounter.configure(context, PartitionInterceptor.class);
+            failurePolicy = FailurePolicy.configure(context, Constants.ON_FAILURE_DEFAULT, logger);
+        }
+
+        @Override
+        public Interceptor build() {
+            logger.info(String.format("Creating PartitionInterceptor:keys=%s,partitions=%s,header=%s,hotKeySpread=%s,hotKeyShare=%s",
+                    keys, partitions, header, hotKeySpread, hotKeyShare));
+
+            Preconditions.checkArgument(!StringUtils.isBlank(keys), "keys was misconfigured");
+            Preconditions.checkArgument(partitions != null && partitions > 0, "partitions must be positive");
+            Preconditions.checkArgument(hotKeySpread > 0, "hotKeySpread must be positive");
+            Preconditions.checkArgument(hotKeyShare > 0 && hotKeyShare < 1, "hotKeyShare must be between 0 and 1");
+            List<JsonBytePath> paths = new ArrayList<JsonBytePath>();
+            for (String key : keys.trim().split("\\s+")) {
+                JsonBytePath path = JsonBytePath.compile(key);
+                Preconditions.checkArgument(path != null, "Key " + key + " is not a simple JSONPath");
+                paths.add(path);
+            }
+            return new PartitionInterceptor(paths, partitions, header, hotKeySpread, hotKeyShare, batch, counter, failurePolicy);
+        }
+
+    }
+
+    public static class Constants {
+
+        public static final String KEYS = "keys";
+
+        public static final String PARTITIONS = "partitions";
+
+        public static final String HEADER = "header";
+        public static final String HEADER_DEFAULT = "partition";
+
+        public static final String HOT_KEY_SPREAD = "hotKeySpread";
+        public static final int HOT_KEY_SPREAD_DEFAULT = 1;
+
+        public static final String HOT_KEY_SHARE = "hotKeyShare";
+        public static final String HOT_KEY_SHARE_DEFAULT = "0.05";
+
+        public static final FailurePolicy.Action ON_FAILURE_DEFAULT = FailurePolicy.Action.PASS;
+
+    }
+
+}
@@ -0,0 +1,335 @@
+package com.tsm.flume.interceptor.projectjson;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Preconditions;
+import com.tsm.flume.interceptor.common.ByteBuilder;
+import com.tsm.flume.interceptor.common.FailurePolicy;
+import com.tsm.flume.interceptor.common.InterceptorCounter;
+import com.tsm.flume.interceptor.common.InterceptorCounter.Stage;
+import com.tsm.flume.interceptor.common.JsonBytePath;
+import com.tsm.flume.interceptor.common.JsonBytes;
+import com.tsm.flume.interceptor.common.ParallelBatch;
+import org.apache.commons.lang.StringUtils;
+import org.apache.flume.Context;
+import org.apache.flume.Event;
+import org.apache.flume.interceptor.Interceptor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Interceptor class that rewrites JSON object bodies to a subset of their members.
+ * <p>
+ * The body is read in one pass: the members to keep are copied byte for byte
+ * into the thread's {@link ByteBuilder}, which is reused across events, and the others
+ * are skipped without being parsed. No tree is built and no value is
+ * re-serialized; only the whitespace between the members of rewritten objects
+ * is dropped. Duplicate members are kept or dropped like any other.
+ * <p>
+ * include: whitespace separated JSONPaths of the members to keep, such as
+ * <code>$.id $.user.name</code>. Objects on the way to a kept member keep only
+ * the members asked for, and are left out if none of them is present.<p>
+ * exclude: whitespace separated JSONPaths of the members to drop; everything
+ * else is kept. Exactly one of include and exclude must be set, and paths may
+ * only name object members.<p>
+ * metrics, metricsName: see {@link InterceptorCounter}. Bodies that got
+ * smaller are counted as rewritten, bodies that are not JSON objects as
+ * malformed.<p>
+ * onFailure, failureHeader: see {@link FailurePolicy} (default is pass).
+ * <p>
+ * Sample config:<p>
+ *
+ * <code>
+ * agent.sources.r1.interceptors.i1.type = com.tsm.flume.interceptor.projectjson.ProjectJsonInterceptor$Builder<p>
+ * agent.sources.r1.interceptors.i1.include = $.pageViewId $.user.id $.timestamp<p>
+ * </code>
+ */
+public class ProjectJsonInterceptor implements Interceptor {
+
+    private static final Logger logger = LoggerFactory.getLogger(ProjectJsonInterceptor.class);
+
+    static final String REASON_MALFORMED = "malformed_json";
+
+    private final Projection projection;
+    final ParallelBatch batch;
+    final InterceptorCounter counter;
+    final FailurePolicy failurePolicy;
+
+    /**
+     * Only {@link ProjectJsonInterceptor.Builder} can build me
+     */
+    private ProjectJsonInterceptor(Projection projection, ParallelBatch batch, InterceptorCounter counter,
+                                   FailurePolicy failurePolicy) {
+        this.projection = projection;
+        this.batch = batch;
+        this.counter = counter;
+        this.failurePolicy = failurePolicy;
+    }
+
+    @Override
+    public void initialize() {
+        counter.start();
+    }
+
+    /**
+     * Modifies events in-place.
+     */
+    @Override
+    public Event intercept(Event event) {
+        long interceptStart = counter.startTimer();
+        counter.incrementProcessed();
+        try {
+            return project(event);
+        } finally {
+            counter.recordLatency(Stage.INTERCEPT, interceptStart);
+        }
+    }
+
+    private Event project(Event event) {
+        byte[] body = event.getBody();
+        ByteBuilder out = ByteBuilder.pooled(body.length);
+        long rewriteStart = counter.startTimer();
+        boolean projected = projection.project(body, out);
+        counter.recordLatency(Stage.REWRITE, rewriteStart);
+        if (!projected) {
+            counter.incrementMalformed();
+            return failurePolicy.onFailure(event, REASON_MALFORMED, null, counter);
+        }
+        if (out.size() < body.length) {
+            // nothing is ever added, so an output as long as the body is the body
+            event.setBody(out.toByteArray());
+            counter.incrementRewritten();
+        }
+        return event;
+    }
+
+    /**
+     * Delegates to {@link #intercept(Event)} in a loop, or across threads for
+     * large batches when parallel mode is on.
+     */
+    @Override
+    public List<Event> intercept(List<Event> events) {
+        return batch.intercept(this, events);
+    }
+
+    @Override
+    public void close() {
+        counter.stop();
+    }
+
+    /**
+     * Trie of member names with the projection over it.
+     */
+    static final class Projection {
+
+        private final Node root = new Node(null);
+        private final boolean include;
+
+        /**
+         * @throws IllegalArgumentException if a path does not only name object members
+         */
+        Projection(List<JsonBytePath> paths, boolean include) {
+            this.include = include;
+            for (JsonBytePath path : paths) {
+                Preconditions.checkArgument(path.size() > 0, "Path " + path + " selects the whole body");
+                Node node = root;
+                for (int i = 0; i < path.size(); i++) {
+                    Object segment = path.segment(i);
+                    Preconditions.checkArgument(segment instanceof String, "Path " + path + " does not only name object members");
+                    node = node.child((String) segment);
+                }
+                node.leaf = true;
+            }
+        }
+
+        /**
+         * Writes the projection of <code>body</code> to <code>out</code>.
+         *
+         * @return false if the body is not a JSON object
+         */
+        boolean project(byte[] body, ByteBuilder out) {
+            int to = body.length;
+            int i = JsonBytes.skipWhitespace(body, 0, to);
+            if (i >= to || body[i] != '{') {
+                return false;
+            }
+            int end;
+            try {
+                end = object(body, i, to, root, out);
+            } catch (IllegalArgumentException e) {
+                // invalid escape sequence in a key
+                return false;
+            }
+            return end >= 0 && JsonBytes.skipWhitespace(body, end, to) == to;
+        }
+
+        /**
+         * Projects the object whose opening brace is at <code>i</code>.
+         *
+         * @return the index after its closing brace, or {@link JsonBytes#MALFORMED}
+         */
+        private int object(byte[] b, int i, int to, Node node, ByteBuilder out) {
+            out.append((byte) '{');
+            int membersStart = out.size();
+            i = JsonBytes.skipWhitespace(b, i + 1, to);
+            if (i < to && b[i] == '}') {
+                out.append((byte) '}');
+                return i + 1;
+            }
+            while (true) {
+                int keyStart = i;
+                int keyEnd = JsonBytes.skipString(b, i, to);
+                if (keyEnd < 0) {
+                    return JsonBytes.MALFORMED;
+                }
+                i = JsonBytes.skipWhitespace(b, keyEnd, to);
+                if (i >= to || b[i] != ':') {
+                    return JsonBytes.MALFORMED;
+                }
+                int valueStart = JsonBytes.skipWhitespace(b, i + 1, to);
+                Node child = node.find(b, keyStart + 1, keyEnd - 1);
+                int valueEnd;
+                if (child != null && !child.leaf && valueStart < to && b[valueStart] == '{') {
+                    int mark = out.size();
+                    writeKey(b, keyStart, keyEnd, membersStart, out);
+                    int nestedStart = out.size();
+                    valueEnd = object(b, valueStart, to, child, out);
+                    if (include && out.size() - nestedStart == 2) {
+                        // none of the members asked for is present
+                        out.truncate(mark);
+                    }
+                } else {
+                    valueEnd = JsonBytes.skipValue(b, valueStart, to);
+                    boolean keep = include ? child != null && child.leaf : child == null || !child.leaf;
+                    if (keep && valueEnd >= 0) {
+                        writeKey(b, keyStart, keyEnd, membersStart, out);
+                        out.append(b, valueStart, valueEnd);
+                    }
+                }
+                if (valueEnd < 0) {
+                    return JsonBytes.MALFORMED;
+                }
+                i = JsonBytes.skipWhitespace(b, valueEnd, to);
+                if (i >= to) {
+                    return JsonBytes.MALFORMED;
+                }
+                if (b[i] == '}') {
+                    out.append((byte) '}');
+                    return i + 1;
+                }
+                if (b[i] != ',') {
+                    return JsonBytes.MALFORMED;
+                }
+                i = JsonBytes.skipWhitespace(b, i + 1, to);
+            }
+        }
+
+        private static void writeKey(byte[] b, int keyStart, int keyEnd, int membersStart, ByteBuilder out) {
+            if (out.size() > membersStart) {
+                out.append((byte) ',');
+            }
+            out.append(b, keyStart, keyEnd);
+            out.append((byte) ':');
+        }
+    }
+
+    private static final class Node {
+        final String name;
+        final byte[] nameBytes;
+        final List<Node> children = new ArrayList<Node>();
+        boolean leaf;
+
+        Node(String name) {
+            this.name = name;
+            this.nameBytes = name == null ? null : name.getBytes(Charsets.UTF_8);
+        }
+
+        Node child(String name) {
+            for (Node child : children) {
+                if (child.name.equals(name)) {
+                    return child;
+                }
+            }
+            Node child = new Node(name);
+            children.add(child);
+            return child;
+        }
+
+        /**
+         * @param from start of the key content, after the opening quote
+         * @param to   end of the key content, before the closing quote
+         */
+        Node find(byte[] b, int from, int to) {
+            if (children.isEmpty()) {
+                return null;
+            }
+            if (JsonBytes.hasEscape(b, from, to)) {
+                String key = JsonBytes.decodeString(b, from, to);
+                for (Node child : children) {
+                    if (child.name.equals(key)) {
+                        return child;
+                    }
+                }
+                return null;
+            }
+            for (int i = 0; i < children.size(); i++) {
+                Node child = children.get(i);
+                if (JsonBytes.regionEquals(b, from, to, child.nameBytes)) {
+                    return child;
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Builder which builds new instance of the ProjectJsonInterceptor.
+     */
+    public static class Builder implements Interceptor.Builder {
+
+        String include;
+        String exclude;
+        ParallelBatch batch;
+        InterceptorCounter counter;
+        FailurePolicy failurePolicy;
+
+        @Override
+        public void configure(Context context) {
+            include = context.getString(Constants.INCLUDE);
+            exclude = context.getString(Constants.EXCLUDE);
+            batch = ParallelBatch.configure(context);
+            counter = InterceptorCounter.configure(context, ProjectJsonInterceptor.class);
+            failurePolicy = FailurePolicy.configure(context, Constants.ON_FAILURE_DEFAULT, logger);
+        }
+
+        @Override
+        public Interceptor build() {
+            logger.info(String.format("Creating ProjectJsonInterceptor:include=%s,exclude=%s", include, exclude));
+
+            Preconditions.checkArgument(StringUtils.isBlank(include) != StringUtils.isBlank(exclude),
+                    "exactly one of include and exclude must be set");
+            boolean including = !StringUtils.isBlank(include);
+            List<JsonBytePath> paths = new ArrayList<JsonBytePath>();
+            for (String expression : (including ? include : exclude).trim().split("\\s+")) {
+                JsonBytePath path = JsonBytePath.compile(expression);
+                Preconditions.checkArgument(path != null, "Path " + expression + " is not a simple JSONPath");
+                paths.add(path);
+            }
+            return new ProjectJsonInterceptor(new Projection(paths, including), batch, counter, failurePolicy);
+        }
+
+    }
+
+    public static class Constants {
+
+        public static final String INCLUDE = "include";
+
+        public static final String EXCLUDE = "exclude";
+
+        public static final FailurePolicy.Action ON_FAILURE_DEFAULT = FailurePolicy.Action.PASS;
+
+    }
+
+}
@@ -0,0 +1,260 @@
+package com.tsm.flume.interceptor.splitjson;
+
+import com.google.common.base.Preconditions;
+import com.tsm.flume.interceptor.common.FailurePolicy;
+import com.tsm.flume.interceptor.common.InterceptorCounter;
+import com.tsm.flume.interceptor.common.InterceptorCounter.Stage;
+import com.tsm.flume.interceptor.common.JsonBytes;
+import com.tsm.flume.interceptor.common.JsonValidator;
+import org.apache.flume.Context;
+import org.apache.flume.Event;
+import org.apache.flume.event.SimpleEvent;
+import org.apache.flume.interceptor.Interceptor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Interceptor class that splits bodies holding several JSON records into one
+ * event per record.
+ * <p>
+ * A body is read as a sequence of top-level values separated by optional
+ * whitespace, which covers newline delimited JSON and records written back to
+ * back. With <code>splitArrays</code>, a top-level array stands for its
+ * elements. Records are found in one pass over the bytes by tracking nesting
+ * and strings; they are not parsed, and every child event gets a copy of its
+ * record's bytes and of the parent's headers. A body that holds a single
+ * top-level value that is not split is passed on unchanged.
+ * <p>
+ * Flume can only fan out a batch, so splitting happens in
+ * {@link #intercept(List)}; {@link #intercept(Event)} returns the event as it is.
+ * <p>
+ * charset: charset of the body; must be ASCII compatible (default is utf-8)<p>
+ * splitArrays: replace a top-level array with its elements (default is true)<p>
+ * indexHeader: header that receives the position of the record in its parent
+ * body, starting at 0 (default is none)<p>
+ * metrics, metricsName: see {@link InterceptorCounter}. Split events are
+ * counted as rewritten, bodies without records (such as <code>[]</code>) as
+ * dropped.<p>
+ * onFailure, failureHeader: see {@link FailurePolicy}; applies to bodies whose
+ * records cannot be delimited, which are never split (default is pass).
+ */
+public class SplitJsonInterceptor implements Interceptor {
+
+    private static final Logger logger = LoggerFactory.getLogger(SplitJsonInterceptor.class);
+
+    static final String REASON_MALFORMED = "malformed_json";
+
+    final boolean splitArrays;
+    final String indexHeader;
+    final InterceptorCounter counter;
+    final FailurePolicy failurePolicy;
+
+    /**
+     * Only {@link SplitJsonInterceptor.Builder} can build me
+     */
+    private SplitJsonInterceptor(boolean splitArrays, String indexHeader, InterceptorCounter counter, FailurePolicy failurePolicy) {
+        this.splitArrays = splitArrays;
+        this.indexHeader = indexHeader;
+        this.counter = counter;
+        this.failurePolicy = failurePolicy;
+    }
+
+    @Override
+    public void initialize() {
+        counter.start();
+    }
+
+    /**
+     * Returns the event unchanged; see {@link #intercept(List)}.
+     */
+    @Override
+    public Event intercept(Event event) {
+        return event;
+    }
+
+    /**
+     * Replaces every event whose body holds several records with one event per
+     * record, in order.
+     */
+    @Override
+    public List<Event> intercept(List<Event> events) {
+        List<Event> interceptedEvents = new ArrayList<Event>(events.size());
+        Ranges ranges = new Ranges();
+        for (Event event : events) {
+            long interceptStart = counter.startTimer();
+            counter.incrementProcessed();
+            split(event, ranges, interceptedEvents);
+            counter.recordLatency(Stage.INTERCEPT, interceptStart);
+        }
+        return interceptedEvents;
+    }
+
+    private void split(Event event, Ranges ranges, List<Event> out) {
+        byte[] body = event.getBody();
+        long parseStart = counter.startTimer();
+        boolean delimited = records(body, splitArrays, ranges);
+        counter.recordLatency(Stage.PARSE, parseStart);
+        if (!delimited) {
+            counter.incrementMalformed();
+            Event failed = failurePolicy.onFailure(event, REASON_MALFORMED,
+                    new IllegalArgumentException("Cannot delimit JSON records"), counter);
+            if (failed != null) {
+                out.add(failed);
+            }
+            return;
+        }
+        if (ranges.size == 0) {
+            counter.incrementDropped();
+            return;
+        }
+        if (ranges.size == 1 && !ranges.fromArray) {
+            out.add(event);
+            return;
+        }
+
+        long rewriteStart = counter.startTimer();
+        Map<String, String> headers = event.getHeaders();
+        for (int r = 0; r < ranges.size; r++) {
+            Map<String, String> childHeaders = new HashMap<String, String>(headers);
+            if (indexHeader != null) {
+                childHeaders.put(indexHeader, Integer.toString(r));
+            }
+            Event child = new SimpleEvent();
+            child.setHeaders(childHeaders);
+            child.setBody(Arrays.copyOfRange(body, ranges.bounds[2 * r], ranges.bounds[2 * r + 1]));
+            out.add(child);
+            counter.incrementRewritten();
+        }
+        counter.recordLatency(Stage.REWRITE, rewriteStart);
+    }
+
+    /**
+     * Collects the byte ranges of the records in a body.
+     *
+     * @return false if the records cannot be delimited
+     */
+    static boolean records(byte[] b, boolean splitArrays, Ranges ranges) {
+        ranges.clear();
+        int to = b.length;
+        int i = JsonBytes.skipWhitespace(b, 0, to);
+        while (i < to) {
+            if (splitArrays && b[i] == '[') {
+                ranges.fromArray = true;
+                i = JsonBytes.skipWhitespace(b, i + 1, to);
+                if (i < to && b[i] == ']') {
+                    i = JsonBytes.skipWhitespace(b, i + 1, to);
+                    continue;
+                }
+                while (true) {
+                    int end = JsonBytes.skipValue(b, i, to);
+                    if (end < 0) {
+                        return false;
+                    }
+                    ranges.add(i, end);
+                    i = JsonBytes.skipWhitespace(b, end, to);
+                    if (i >= to) {
+                        return false;
+                    }
+                    if (b[i] == ']') {
+                        break;
+                    }
+                    if (b[i] != ',') {
+                        return false;
+                    }
+                    i = JsonBytes.skipWhitespace(b, i + 1, to);
+                }
+                i = JsonBytes.skipWhitespace(b, i + 1, to);
+            } else {
+                int end = JsonBytes.skipValue(b, i, to);
+                if (end < 0) {
+                    return false;
+                }
+                ranges.add(i, end);
+                i = JsonBytes.skipWhitespace(b, end, to);
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void close() {
+        counter.stop();
+    }
+
+    /**
+     * Reusable list of <code>[start, end)</code> record ranges.
+     */
+    static final class Ranges {
+        int[] bounds = new int[16];
+        int size;
+        boolean fromArray;
+
+        void clear() {
+            size = 0;
+            fromArray = false;
+        }
+
+        void add(int start, int end) {
+            if (2 * size + 2 > bounds.length) {
+                bounds = Arrays.copyOf(bounds, bounds.length * 2);
+            }
+            bounds[2 * size] = start;
+            bounds[2 * size + 1] = end;
+            size++;
+        }
+    }
+
+    /**
+     * Builder which builds new instance of the SplitJsonInterceptor.
+     */
+    public static class Builder implements Interceptor.Builder {
+
+        String charset;
+        boolean splitArrays;
+        String indexHeader;
+        InterceptorCounter counter;
+        FailurePolicy failurePolicy;
+
+        @Override
+        public void configure(Context context) {
+            charset = context.getString(Constants.CHARSET, Constants.CHARSET_DEFAULT);
+            splitArrays = context.getBoolean(Constants.SPLIT_ARRAYS, Constants.SPLIT_ARRAYS_DEFAULT);
+            indexHeader = context.getString(Constants.INDEX_HEADER);
+            counter = InterceptorCounter.configure(context, SplitJsonInterceptor.class);
+            failurePolicy = FailurePolicy.configure(context, Constants.ON_FAILURE_DEFAULT, logger);
+        }
+
+        @Override
+        public Interceptor build() {
+            logger.info(String.format("Creating SplitJsonInterceptor:charset=%s,splitArrays=%s,indexHeader=%s",
+                    charset, splitArrays, indexHeader));
+
+            Preconditions.checkArgument(JsonValidator.supports(Charset.forName(charset)),
+                    "charset " + charset + " is not ASCII compatible");
+            return new SplitJsonInterceptor(splitArrays, indexHeader, counter, failurePolicy);
+        }
+
+    }
+
+    public static class Constants {
+
+        public static final String CHARSET = "charset";
+        public static final String CHARSET_DEFAULT = "utf-8";
+
+        public static final String SPLIT_ARRAYS = "splitArrays";
+        public static final boolean SPLIT_ARRAYS_DEFAULT = true;
+
+        public static final String INDEX_HEADER = "indexHeader";
+
+        public static final FailurePolicy.Action ON_FAILURE_DEFAULT = FailurePolicy.Action.PASS;
+
+    }
+
+}
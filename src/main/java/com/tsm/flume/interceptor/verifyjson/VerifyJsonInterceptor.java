@@ -1,8 +1,20 @@
 package com.tsm.flume.interceptor.verifyjson;
 
+import com.google.common.base.Charsets;
+import com.google.common.base.Preconditions;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
+import com.tsm.flume.interceptor.common.ByteBuilder;
+import com.tsm.flume.interceptor.common.CharsetTranscoder;
+import com.tsm.flume.interceptor.common.FailurePolicy;
+import com.tsm.flume.interceptor.common.InterceptorCounter;
+import com.tsm.flume.interceptor.common.InterceptorCounter.Stage;
+import com.tsm.flume.interceptor.common.JsonBytes;
+import com.tsm.flume.interceptor.common.JsonEngine;
+import com.tsm.flume.interceptor.common.JsonEngines;
+import com.tsm.flume.interceptor.common.ParallelBatch;
+import com.tsm.flume.interceptor.common.ParseCache;
 import org.apache.flume.Context;
 import org.apache.flume.Event;
 import org.apache.flume.interceptor.Interceptor;
@@ -18,11 +30,31 @@ import java.util.Map;
 
 /**
  * Interceptor class that appends a static, pre-configured header to all events.
+ * <p>
+ * engine: the {@link JsonEngine} that checks bodies, see {@link JsonEngines}.
+ * <code>gson</code> (the default) parses the body into a lenient Gson tree;
+ * <code>bytes</code> runs a strict validator over the raw bytes without
+ * decoding or allocating, and is only used for charsets it supports.
+ * <p>
+ * validator: older name of the engine, used when <code>engine</code> is not
+ * set: <code>gson</code> or <code>structural</code> (the <code>bytes</code> engine).
+ * <p>
+ * parseCache: with the <code>bytes</code> engine, shares validation results
+ * with the interceptors after this one through the {@link ParseCache}, and
+ * records wrapped bodies as valid (default false).
+ * <p>
+ * metrics, metricsName: see {@link InterceptorCounter}. Invalid bodies are
+ * counted as malformed and wrapped bodies as rewritten.
+ * <p>
+ * onFailure, failureHeader: see {@link FailurePolicy}; applies to events that
+ * fail to be wrapped (default is fail).
  */
 public class VerifyJsonInterceptor implements Interceptor {
 
     private static final Logger logger = LoggerFactory.getLogger(VerifyJsonInterceptor.class);
 
+    static final String REASON_WRAP = "wrap_error";
+
     String headerName;
     String headerValue;
     Boolean preserveExisting;
@@ -31,13 +63,21 @@ public class VerifyJsonInterceptor implements Interceptor {
     //String eventTimePattern;
     final String sourceCharset;
     final String targetCharset;
+    final JsonEngine engine;
+    final ParallelBatch batch;
+    final InterceptorCounter counter;
+    final CharsetTranscoder transcoder;
+    final FailurePolicy failurePolicy;
+    private final ParseCache parseCache;
+    private final boolean directWrap;
+    private final boolean utf8;
 
     private DateTimeFormatter formatter;
 
     /**
      * Only {@link VerifyJsonInterceptor.Builder} can build me
      */
-    private VerifyJsonInterceptor(String headerName, String headerValue, Boolean preserveExisting, String eventJsonKey, String eventTimeKey, String eventTimePattern, String sourceCharset, String targetCharset) {
+    private VerifyJsonInterceptor(String headerName, String headerValue, Boolean preserveExisting, String eventJsonKey, String eventTimeKey, String eventTimePattern, String sourceCharset, String targetCharset, JsonEngine engine, ParseCache parseCache, ParallelBatch batch, InterceptorCounter counter, FailurePolicy failurePolicy) {
         this.headerName = headerName;
         this.headerValue = headerValue;
         this.preserveExisting = preserveExisting;
@@ -46,6 +86,15 @@ public class VerifyJsonInterceptor implements Interceptor {
         //this.eventTimePattern = eventTimePattern;
         this.sourceCharset = sourceCharset;
         this.targetCharset = targetCharset;
+        this.engine = engine;
+        this.parseCache = parseCache;
+        this.batch = batch;
+        this.counter = counter;
+        this.transcoder = new CharsetTranscoder(sourceCharset, targetCharset);
+        this.failurePolicy = failurePolicy;
+        // Gson keeps one member when both keys are the same
+        this.directWrap = CharsetTranscoder.isAsciiCompatible(transcoder.getTarget()) && !eventTimeKey.equals(eventJsonKey);
+        this.utf8 = transcoder.getSource().equals(Charsets.UTF_8) && transcoder.getTarget().equals(Charsets.UTF_8);
 
         formatter = DateTimeFormat.forPattern(eventTimePattern);
     }
@@ -53,7 +102,7 @@ public class VerifyJsonInterceptor implements Interceptor {
 
     @Override
     public void initialize() {
-        // no-op
+        counter.start();
     }
 
     public static boolean validateJson(String jsonStr) {
@@ -80,11 +129,25 @@ public class VerifyJsonInterceptor implements Interceptor {
      */
     @Override
     public Event intercept(Event event) {
+        long interceptStart = counter.startTimer();
+        counter.incrementProcessed();
+        try {
+            return verify(event);
+        } catch (RuntimeException e) {
+            return failurePolicy.onFailure(event, REASON_WRAP, e, counter);
+        } finally {
+            counter.recordLatency(Stage.INTERCEPT, interceptStart);
+        }
+    }
 
+    private Event verify(Event event) {
         byte[] content = event.getBody();
-        String contentStr = new String(content, Charset.forName(sourceCharset));
-        Boolean isJson = validateJson(contentStr);
+        long parseStart = counter.startTimer();
+        boolean isJson = engine.isObject(content, transcoder);
+        counter.recordLatency(Stage.PARSE, parseStart);
         if (!isJson) {
+            counter.incrementMalformed();
+            long rewriteStart = counter.startTimer();
             Map<String, String> headers = event.getHeaders();
             if (headers.containsKey(headerName) && preserveExisting) {
                 headers.put(headerName, headerValue);
@@ -94,20 +157,58 @@ public class VerifyJsonInterceptor implements Interceptor {
                 headers.put(headerName, headerValue);
             }
 
-            JsonObject jsonObject = new JsonObject();
+            String eventTime = DateTime.now().toString(formatter);
+            if (directWrap) {
+                byte[] wrapped = wrap(content, eventTime);
+                if (parseCache != null) {
+                    parseCache.putValidObject(wrapped);
+                }
+                event.setBody(wrapped);
+            } else {
+                event.setBody(wrapWithGson(content, eventTime));
+            }
+            counter.recordLatency(Stage.REWRITE, rewriteStart);
+            counter.incrementRewritten();
+        }
 
-            DateTime dateTime = DateTime.now();
-            jsonObject.addProperty(eventTimeKey, dateTime.toString(formatter));
-            jsonObject.addProperty(eventJsonKey, contentStr);
+        return event;
+    }
 
-            event.setBody(jsonObject.toString().getBytes(Charset.forName(targetCharset)));
+    /**
+     * Writes <code>{"time":...,"event_json":...}</code> straight into the thread's
+     * {@link ByteBuilder}, with the same bytes Gson would produce. UTF-8 bodies
+     * are escaped without being decoded.
+     */
+    private byte[] wrap(byte[] content, String eventTime) {
+        Charset target = transcoder.getTarget();
+        ByteBuilder out = ByteBuilder.pooled(content.length + (content.length >> 3) + 64);
+        out.append((byte) '{');
+        JsonBytes.quote(out, eventTimeKey, target);
+        out.append((byte) ':');
+        JsonBytes.quote(out, eventTime, target);
+        out.append((byte) ',');
+        JsonBytes.quote(out, eventJsonKey, target);
+        out.append((byte) ':');
+        int mark = out.size();
+        if (!utf8 || !JsonBytes.quoteUtf8(out, content, 0, content.length)) {
+            // other charsets and malformed UTF-8 are decoded first, replacing bad input
+            out.truncate(mark);
+            JsonBytes.quote(out, transcoder.decode(content), target);
         }
+        out.append((byte) '}');
+        return out.toByteArray();
+    }
 
-        return event;
+    private byte[] wrapWithGson(byte[] content, String eventTime) {
+        JsonObject jsonObject = new JsonObject();
+        jsonObject.addProperty(eventTimeKey, eventTime);
+        jsonObject.addProperty(eventJsonKey, transcoder.decode(content));
+        return transcoder.encode(jsonObject.toString());
     }
 
     /**
-     * Delegates to {@link #intercept(Event)} in a loop.
+     * Delegates to {@link #intercept(Event)} in a loop, or across threads for
+     * large batches when parallel mode is on.
      *
      * @param events
      * @return
@@ -116,15 +217,12 @@ public class VerifyJsonInterceptor implements Interceptor {
     /**
      */
     public List<Event> intercept(List<Event> events) {
-        for (Event event : events) {
-            intercept(event);
-        }
-        return events;
+        return batch.intercept(this, events);
     }
 
     @Override
     public void close() {
-        // no-op
+        counter.stop();
     }
 
     /**
@@ -140,6 +238,11 @@ public class VerifyJsonInterceptor implements Interceptor {
         String eventTimePattern;
         String sourceCharset;
         String targetCharset;
+        String engine;
+        boolean parseCache;
+        ParallelBatch batch;
+        InterceptorCounter counter;
+        FailurePolicy failurePolicy;
 
         @Override
         public void configure(Context context) {
@@ -151,15 +254,35 @@ public class VerifyJsonInterceptor implements Interceptor {
             eventTimePattern = context.getString(Constants.EVENT_TIME_PATTERN, Constants.EVENT_TIME_PATTERN_DEFAULT);
             sourceCharset = context.getString(Constants.SOURCECHARSET, Constants.CHARSET_DEFAULT);
             targetCharset = context.getString(Constants.TARGETCHARSET, sourceCharset);
+            String validator = context.getString(Constants.VALIDATOR, Constants.VALIDATOR_DEFAULT);
+            Preconditions.checkArgument(Constants.VALIDATOR_GSON.equals(validator) || Constants.VALIDATOR_STRUCTURAL.equals(validator),
+                    "validator must be " + Constants.VALIDATOR_GSON + " or " + Constants.VALIDATOR_STRUCTURAL);
+            engine = context.getString(Constants.ENGINE,
+                    Constants.VALIDATOR_STRUCTURAL.equals(validator) ? JsonEngines.BYTES : JsonEngines.GSON);
+            parseCache = context.getBoolean(Constants.PARSE_CACHE, Constants.PARSE_CACHE_DEFAULT);
+            batch = ParallelBatch.configure(context);
+            counter = InterceptorCounter.configure(context, VerifyJsonInterceptor.class);
+            failurePolicy = FailurePolicy.configure(context, Constants.ON_FAILURE_DEFAULT, logger);
         }
 
         @Override
         public Interceptor build() {
             logger.info(String.format(
-                    "Creating ParseJsonInterceptor:headerName=%s, headerValue=%s, preserveExisting=%s, eventJsonKey=%s, eventTimeKey=%s, eventTimePattern=%s,source_charset=%s,target_charset=%s",
-                    headerName, headerValue, preserveExisting, eventJsonKey, eventTimeKey, eventTimePattern, sourceCharset, targetCharset));
+                    "Creating ParseJsonInterceptor:headerName=%s, headerValue=%s, preserveExisting=%s, eventJsonKey=%s, eventTimeKey=%s, eventTimePattern=%s,source_charset=%s,target_charset=%s,engine=%s,parseCache=%s",
+                    headerName, headerValue, preserveExisting, eventJsonKey, eventTimeKey, eventTimePattern, sourceCharset, targetCharset, engine, parseCache));
+
+            JsonEngine jsonEngine = JsonEngines.forName(engine);
+            if (!jsonEngine.supports(Charset.forName(sourceCharset))) {
+                logger.warn("Engine " + engine + " does not support charset " + sourceCharset + ", using " + JsonEngines.GSON);
+                jsonEngine = JsonEngines.forCharset(jsonEngine, Charset.forName(sourceCharset));
+            }
+            ParseCache cache = null;
+            if (parseCache && JsonEngines.BYTES.equals(jsonEngine.getName())) {
+                jsonEngine = JsonEngines.withParseCache(jsonEngine);
+                cache = ParseCache.shared();
+            }
 
-            return new VerifyJsonInterceptor(headerName, headerValue, preserveExisting, eventJsonKey, eventTimeKey, eventTimePattern, sourceCharset, targetCharset);
+            return new VerifyJsonInterceptor(headerName, headerValue, preserveExisting, eventJsonKey, eventTimeKey, eventTimePattern, sourceCharset, targetCharset, jsonEngine, cache, batch, counter, failurePolicy);
         }
 
     }
@@ -191,6 +314,18 @@ public class VerifyJsonInterceptor implements Interceptor {
         public static final String TARGETCHARSET = "target_charset";
         public static final String CHARSET_DEFAULT = "utf-8";
 
+        public static final String VALIDATOR = "validator";
+        public static final String VALIDATOR_GSON = "gson";
+        public static final String VALIDATOR_STRUCTURAL = "structural";
+        public static final String VALIDATOR_DEFAULT = VALIDATOR_GSON;
+
+        public static final String ENGINE = JsonEngines.CONFIG_ENGINE;
+
+        public static final String PARSE_CACHE = ParseCache.CONFIG_PARSE_CACHE;
+        public static final boolean PARSE_CACHE_DEFAULT = ParseCache.DEFAULT_PARSE_CACHE;
+
+        public static final FailurePolicy.Action ON_FAILURE_DEFAULT = FailurePolicy.Action.FAIL;
+
     }
 
 }
@@ -0,0 +1,81 @@
+package com.tsm.flume.interceptor.common;
+
+import com.google.common.base.Charsets;
+
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNotSame;
+import static junit.framework.Assert.assertSame;
+import static junit.framework.Assert.assertTrue;
+
+@RunWith(JUnit4.class)
+public class ByteBuilderTest {
+
+    @Test
+    public void testPooled() {
+        ByteBuilder builder = ByteBuilder.pooled(10);
+        builder.appendAscii("abc").append((byte) 'd').append(new byte[]{'x', 'e', 'f'}, 1, 3);
+        assertEquals("abcdef", new String(builder.toByteArray(), Charsets.US_ASCII));
+        builder.truncate(2);
+        assertEquals("ab", new String(builder.toByteArray(), Charsets.US_ASCII));
+
+        ByteBuilder again = ByteBuilder.pooled(5000);
+        assertSame(builder, again);
+        assertEquals(0, again.size());
+        assertTrue(again.capacity() >= 5000);
+    }
+
+    @Test
+    public void testPoolCap() {
+        assertNotSame(ByteBuilder.pooled(0), ByteBuilder.pooled(ByteBuilder.MAX_POOLED + 1));
+
+        ByteBuilder builder = ByteBuilder.pooled(0);
+        byte[] chunk = new byte[64 * 1024];
+        for (int i = 0; i < 20; i++) {
+            builder.append(chunk);
+        }
+        assertTrue(builder.capacity() > ByteBuilder.MAX_POOLED);
+        // a builder that grew past the cap is not kept
+        ByteBuilder next = ByteBuilder.pooled(0);
+        assertNotSame(builder, next);
+        assertEquals(ByteBuilder.INITIAL_CAPACITY, next.capacity());
+        assertSame(next, ByteBuilder.pooled(0));
+    }
+
+    @Test
+    public void testQuoteMatchesString() {
+        String[] values = {"", "plain", "q\"b\\s/\n\r\t\b\f\u0001\u001f", "café \u2028\u2029 日本 😀", "lone \ud83d x \ude00", null};
+        for (Charset charset : new Charset[]{Charsets.UTF_8, Charsets.ISO_8859_1}) {
+            for (String value : values) {
+                ByteBuilder out = ByteBuilder.pooled(0);
+                JsonBytes.quote(out, value, charset);
+                assertTrue(charset + " " + value, Arrays.equals(JsonBytes.quote(value).getBytes(charset), out.toByteArray()));
+            }
+        }
+    }
+
+    @Test
+    public void testQuoteUtf8() {
+        for (String value : new String[]{"", "plain", "q\"b\\\n\u0001", "café \u2028\u2029 日本 😀 \uffff"}) {
+            byte[] utf8 = value.getBytes(Charsets.UTF_8);
+            ByteBuilder out = ByteBuilder.pooled(0);
+            assertTrue(value, JsonBytes.quoteUtf8(out, utf8, 0, utf8.length));
+            assertEquals(JsonBytes.quote(value), new String(out.toByteArray(), Charsets.UTF_8));
+        }
+        byte[][] invalid = {
+                {(byte) 0xC3}, {(byte) 0xC0, (byte) 0x80}, {(byte) 0xE0, (byte) 0x80, (byte) 0x80},
+                {(byte) 0xED, (byte) 0xA0, (byte) 0x80}, {(byte) 0xF4, (byte) 0x90, (byte) 0x80, (byte) 0x80},
+                {(byte) 0xFF}, {'a', (byte) 0x80},
+        };
+        for (byte[] bytes : invalid) {
+            assertFalse(Arrays.toString(bytes), JsonBytes.quoteUtf8(ByteBuilder.pooled(0), bytes, 0, bytes.length));
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package com.tsm.flume.interceptor.common;
+
+import com.google.common.base.Charsets;
+
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertSame;
+import static junit.framework.Assert.assertTrue;
+
+@RunWith(JUnit4.class)
+public class CharsetTranscoderTest {
+
+    @Test
+    public void testAsciiCheck() {
+        byte[] ascii = "{\"action\":\"login\",\"user\":\"alice\"}".getBytes(Charsets.UTF_8);
+        assertTrue(CharsetTranscoder.isAscii(ascii, 0, ascii.length));
+        for (int i = 0; i < ascii.length; i++) {
+            byte[] copy = ascii.clone();
+            copy[i] = (byte) 0xC3;
+            assertFalse(CharsetTranscoder.isAscii(copy, 0, copy.length));
+            assertTrue(CharsetTranscoder.isAscii(copy, i + 1, copy.length));
+        }
+    }
+
+    @Test
+    public void testSameCharsetIsPassedThrough() {
+        byte[] body = "{\"name\":\"été\"}".getBytes(Charsets.UTF_8);
+        assertSame(body, new CharsetTranscoder("utf-8", "UTF-8").transcode(body));
+    }
+
+    @Test
+    public void testAsciiBodyIsPassedThroughBetweenCompatibleCharsets() {
+        byte[] body = "{\"a\":1}".getBytes(Charsets.UTF_8);
+        assertSame(body, new CharsetTranscoder("GBK", "UTF-8").transcode(body));
+        byte[] utf16 = new CharsetTranscoder("UTF-8", "UTF-16").transcode(body);
+        assertTrue(Arrays.equals("{\"a\":1}".getBytes(Charset.forName("UTF-16")), utf16));
+    }
+
+    @Test
+    public void testMatchesStringConversions() {
+        String[] charsets = {"UTF-8", "GBK", "ISO-8859-1", "UTF-16", "US-ASCII"};
+        StringBuilder large = new StringBuilder();
+        while (large.length() < CharsetTranscoder.MAX_POOLED * 2) {
+            large.append("中文 text é ");
+        }
+        String[] texts = {"", "plain", "{\"k\":\"中文\"}", "éè 😀", large.toString()};
+        for (String sourceName : charsets) {
+            for (String targetName : charsets) {
+                Charset source = Charset.forName(sourceName);
+                Charset target = Charset.forName(targetName);
+                CharsetTranscoder transcoder = new CharsetTranscoder(source, target);
+                for (String text : texts) {
+                    byte[] body = text.getBytes(source);
+                    String decoded = new String(body, source);
+                    assertEquals(decoded, transcoder.decode(body));
+                    assertTrue(sourceName + "->" + targetName,
+                            Arrays.equals(decoded.getBytes(target), transcoder.transcode(body)));
+                    assertTrue(Arrays.equals(text.getBytes(target), transcoder.encode(text)));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testMalformedInputIsReplaced() {
+        byte[] body = {'{', '"', (byte) 0xC3, '"', (byte) 0xFF, '}'};
+        CharsetTranscoder transcoder = new CharsetTranscoder(Charsets.UTF_8, Charsets.ISO_8859_1);
+        assertEquals(new String(body, Charsets.UTF_8), transcoder.decode(body));
+        assertTrue(Arrays.equals(new String(body, Charsets.UTF_8).getBytes(Charsets.ISO_8859_1), transcoder.transcode(body)));
+    }
+}
@@ -0,0 +1,131 @@
+package com.tsm.flume.interceptor.common;
+
+import com.google.common.base.Charsets;
+import org.apache.flume.Context;
+import org.apache.flume.Event;
+import org.apache.flume.FlumeException;
+import org.apache.flume.event.EventBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertSame;
+import static junit.framework.Assert.assertTrue;
+
+@RunWith(JUnit4.class)
+public class FailurePolicyTest {
+
+    private final InterceptorCounter counter = new InterceptorCounter("failure-policy-test", true);
+
+    private FailurePolicy configure(String onFailure) {
+        Context context = new Context();
+        if (onFailure != null) {
+            context.put(FailurePolicy.CONFIG_ON_FAILURE, onFailure);
+        }
+        context.put(FailurePolicy.CONFIG_FAILURE_HEADER, "bad");
+        return FailurePolicy.configure(context, FailurePolicy.Action.PASS, LoggerFactory.getLogger(FailurePolicyTest.class));
+    }
+
+    private static Event event() {
+        return EventBuilder.withBody("{", Charsets.UTF_8);
+    }
+
+    @Test
+    public void testPass() {
+        Event event = event();
+        assertEquals(FailurePolicy.Action.PASS, configure(null).getAction());
+        assertSame(event, configure(null).onFailure(event, "malformed_json", null, counter));
+        assertTrue(event.getHeaders().isEmpty());
+    }
+
+    @Test
+    public void testTag() {
+        Event event = event();
+        assertSame(event, configure("tag").onFailure(event, "malformed_json", null, counter));
+        assertEquals("malformed_json", event.getHeaders().get("bad"));
+    }
+
+    @Test
+    public void testDrop() {
+        assertNull(configure("DROP").onFailure(event(), "malformed_json", null, counter));
+        assertEquals(1, counter.getEventDroppedCount());
+    }
+
+    @Test
+    public void testFail() {
+        IllegalStateException cause = new IllegalStateException();
+        try {
+            configure("fail").onFailure(event(), "malformed_json", cause, counter);
+        } catch (IllegalStateException e) {
+            assertSame(cause, e);
+        }
+        try {
+            configure("fail").onFailure(event(), "malformed_json", null, counter);
+        } catch (FlumeException e) {
+            assertTrue(e.getMessage().contains("malformed_json"));
+            return;
+        }
+        throw new AssertionError("fail policy did not throw");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownAction() {
+        configure("ignore");
+    }
+
+    @Test
+    public void testSampledLoggerSuppressesWithinInterval() {
+        SampledLogger log = new SampledLogger(LoggerFactory.getLogger(FailurePolicyTest.class), 60000L);
+        assertTrue(log.sample());
+        for (int i = 0; i < 99; i++) {
+            assertFalse(log.sample());
+        }
+        assertEquals(99, log.getSuppressedCount());
+    }
+
+    @Test
+    public void testSampledLoggerFormatsOnlyWrittenMessages() {
+        final List<String> messages = new ArrayList<String>();
+        Logger logger = (Logger) Proxy.newProxyInstance(Logger.class.getClassLoader(), new Class<?>[]{Logger.class},
+                new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        if (method.getName().equals("isWarnEnabled")) {
+                            return true;
+                        }
+                        if (method.getName().equals("warn")) {
+                            messages.add((String) args[0]);
+                        }
+                        return null;
+                    }
+                });
+        final int[] formatted = {0};
+        Object reason = new Object() {
+            @Override
+            public String toString() {
+                formatted[0]++;
+                return "malformed_json";
+            }
+        };
+        SampledLogger log = new SampledLogger(logger, 60000L);
+        for (int i = 0; i < 100; i++) {
+            log.warn("Dropping event due to: {}.", reason, null);
+        }
+        assertEquals(1, formatted[0]);
+        assertEquals(1, messages.size());
+        assertEquals("Dropping event due to: malformed_json.", messages.get(0));
+        assertEquals(99, log.getSuppressedCount());
+    }
+}
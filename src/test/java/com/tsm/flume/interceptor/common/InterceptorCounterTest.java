@@ -0,0 +1,172 @@
+package com.tsm.flume.interceptor.common;
+
+import com.google.common.base.Charsets;
+import com.tsm.flume.interceptor.json.JsonInterceptor;
+import org.apache.flume.Context;
+import org.apache.flume.Event;
+import org.apache.flume.event.EventBuilder;
+
+import java.lang.management.ManagementFactory;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+
+@RunWith(JUnit4.class)
+public class InterceptorCounterTest {
+
+    @Test
+    public void testHistogramBuckets() {
+        for (long value : new long[]{0, 1, 3, 4, 5, 7, 8, 9, 15, 16, 1000, 123456789L, Long.MAX_VALUE}) {
+            int bucket = LatencyHistogram.bucket(value);
+            assertTrue(value + " above its bucket", value <= LatencyHistogram.upperBound(bucket));
+            if (bucket > 0) {
+                assertTrue(value + " below its bucket", value > LatencyHistogram.upperBound(bucket - 1));
+            }
+            assertTrue(LatencyHistogram.upperBound(bucket) - value <= value / 4);
+        }
+    }
+
+    @Test
+    public void testHistogramPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.getPercentile(50));
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i * 1000L);
+        }
+        assertEquals(1000, histogram.getCount());
+        long p50 = histogram.getPercentile(50);
+        long p99 = histogram.getPercentile(99);
+        assertTrue(p50 >= 500000 && p50 <= 500000 * 5 / 4);
+        assertTrue(p99 >= 990000 && p99 <= 990000 * 5 / 4);
+        assertTrue(histogram.getPercentile(99.9) >= p99);
+    }
+
+    @Test
+    public void testDisabledCounterIgnoresUpdates() {
+        Context context = new Context();
+        context.put(InterceptorCounter.CONFIG_METRICS, "false");
+        InterceptorCounter counter = InterceptorCounter.configure(context, JsonInterceptor.class);
+        assertFalse(counter.isEnabled());
+        assertTrue(counter.getName().startsWith("JsonInterceptor-"));
+        counter.incrementProcessed();
+        counter.recordLatency(InterceptorCounter.Stage.INTERCEPT, counter.startTimer());
+        assertEquals(0, counter.getEventProcessedCount());
+        assertEquals(0, counter.getLatency(InterceptorCounter.Stage.INTERCEPT).getCount());
+    }
+
+    @Test
+    public void testJsonInterceptorCountsAndJmx() throws Exception {
+        Context context = new Context();
+        context.put("paths", "p1 p2");
+        context.put("paths.p1.name", "action");
+        context.put("paths.p1.jsonpath", "$.action");
+        context.put("paths.p2.name", "user");
+        context.put("paths.p2.jsonpath", "$.user");
+        context.put(InterceptorCounter.CONFIG_METRICS, "true");
+        context.put(InterceptorCounter.CONFIG_METRICS_NAME, "json-counter-test");
+        JsonInterceptor.Builder builder = new JsonInterceptor.Builder();
+        builder.configure(context);
+        JsonInterceptor interceptor = builder.build();
+        interceptor.initialize();
+        try {
+            interceptor.intercept(event("{\"action\":\"a\",\"user\":\"u\"}"));
+            interceptor.intercept(event("{\"action\":\"b\"}"));
+            interceptor.intercept(event("{\"action\":"));
+
+            InterceptorCounter counter = interceptor.getCounter();
+            assertEquals(3, counter.getEventProcessedCount());
+            assertEquals(3, counter.getEventExtractedCount());
+            assertEquals(1, counter.getEventMissingCount());
+            assertEquals(1, counter.getEventMalformedCount());
+            assertEquals(3, counter.getLatency(InterceptorCounter.Stage.INTERCEPT).getCount());
+            assertEquals(3, counter.getLatency(InterceptorCounter.Stage.PARSE).getCount());
+            assertEquals(3, counter.getLatency(InterceptorCounter.Stage.SERIALIZE).getCount());
+
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName("org.apache.flume.interceptor:type=json-counter-test");
+            assertEquals(3L, server.getAttribute(name, "EventProcessedCount"));
+            assertEquals(1L, server.getAttribute(name, "EventMalformedCount"));
+        } finally {
+            interceptor.close();
+        }
+    }
+
+    @Test
+    public void testNameIsStableAcrossReloads() throws Exception {
+        Context context = new Context();
+        context.put("name", "action");
+        context.put("jsonpath", "$.action");
+        context.put(InterceptorCounter.CONFIG_METRICS, "true");
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        String name = null;
+        for (int reload = 0; reload < 2; reload++) {
+            JsonInterceptor.Builder builder = new JsonInterceptor.Builder();
+            builder.configure(context);
+            JsonInterceptor interceptor = builder.build();
+            if (name == null) {
+                name = interceptor.getCounter().getName();
+            }
+            assertEquals(name, interceptor.getCounter().getName());
+            ObjectName objectName = new ObjectName("org.apache.flume.interceptor:type=" + name);
+            interceptor.initialize();
+            assertTrue(server.isRegistered(objectName));
+            interceptor.close();
+            assertFalse(server.isRegistered(objectName));
+        }
+
+        context.put("jsonpath", "$.other");
+        assertFalse(name.equals(InterceptorCounter.configure(context, JsonInterceptor.class).getName()));
+        assertFalse(InterceptorCounter.configure(new Context(), JsonInterceptor.class).isEnabled());
+    }
+
+    @Test
+    public void testIdenticalInterceptorsGetTheirOwnNames() throws Exception {
+        Context context = new Context();
+        context.put("name", "action");
+        context.put("jsonpath", "$.action");
+        context.put(InterceptorCounter.CONFIG_METRICS, "true");
+        JsonInterceptor first = build(context);
+        JsonInterceptor second = build(context);
+        first.initialize();
+        second.initialize();
+        String firstName = first.getCounter().getName();
+        String secondName = second.getCounter().getName();
+        assertEquals(firstName + "-2", secondName);
+
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName firstObjectName = new ObjectName("org.apache.flume.interceptor:type=" + firstName);
+        ObjectName secondObjectName = new ObjectName("org.apache.flume.interceptor:type=" + secondName);
+        second.intercept(event("{\"action\":\"a\"}"));
+        assertEquals(0L, server.getAttribute(firstObjectName, "EventProcessedCount"));
+        assertEquals(1L, server.getAttribute(secondObjectName, "EventProcessedCount"));
+
+        first.close();
+        assertFalse(server.isRegistered(firstObjectName));
+        assertTrue(server.isRegistered(secondObjectName));
+
+        // the freed name goes to the next interceptor started
+        JsonInterceptor third = build(context);
+        third.initialize();
+        assertEquals(firstName, third.getCounter().getName());
+        third.close();
+        second.close();
+        assertFalse(server.isRegistered(secondObjectName));
+    }
+
+    private static JsonInterceptor build(Context context) {
+        JsonInterceptor.Builder builder = new JsonInterceptor.Builder();
+        builder.configure(context);
+        return builder.build();
+    }
+
+    private static Event event(String body) {
+        return EventBuilder.withBody(body, Charsets.UTF_8);
+    }
+}
@@ -0,0 +1,122 @@
+package com.tsm.flume.interceptor.common;
+
+import com.google.common.base.Charsets;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNotNull;
+import static junit.framework.Assert.assertNull;
+
+@RunWith(JUnit4.class)
+public class JsonByteMatcherTest {
+
+    private String[] match(String body, String... expressions) {
+        return match(body, null, expressions);
+    }
+
+    private String[] match(String body, int[] maxScanBytes, String... expressions) {
+        List<JsonBytePath> paths = new ArrayList<JsonBytePath>();
+        for (String expression : expressions) {
+            JsonBytePath path = JsonBytePath.compile(expression);
+            assertNotNull("Should compile " + expression, path);
+            paths.add(path);
+        }
+        JsonByteMatcher matcher = new JsonByteMatcher(paths, maxScanBytes);
+        byte[] bytes = body.getBytes(Charsets.UTF_8);
+        int[] ranges = matcher.newRanges();
+        if (matcher.match(bytes, 0, bytes.length, ranges) != JsonByteMatcher.OK) {
+            return null;
+        }
+        String[] values = new String[expressions.length];
+        for (int i = 0; i < expressions.length; i++) {
+            if (ranges[i * 2] >= 0) {
+                values[i] = new String(bytes, ranges[i * 2], ranges[i * 2 + 1] - ranges[i * 2], Charsets.UTF_8);
+            }
+        }
+        return values;
+    }
+
+    @Test
+    public void testCompile() {
+        assertEquals(2, JsonBytePath.compile("$.a.b").size());
+        assertEquals("x y", JsonBytePath.compile("$['x y']").segment(0));
+        assertEquals(3, JsonBytePath.compile("$.a[3]").segment(1));
+        assertNull(JsonBytePath.compile("$..a"));
+        assertNull(JsonBytePath.compile("$.a[*]"));
+        assertNull(JsonBytePath.compile("$.a[1,2]"));
+        assertNull(JsonBytePath.compile("$.a[?(@.b)]"));
+        assertNull(JsonBytePath.compile("a.b"));
+    }
+
+    @Test
+    public void testNestedAndIndexedPaths() {
+        String body = "{ \"a\" : {\"skip\":[1,{\"b\":\"no\"}], \"b\" : \"yes\"}, \"list\":[10, \"x\", {\"c\":true}], \"n\":null }";
+        String[] values = match(body, "$.a.b", "$.list[0]", "$.list[2].c", "$['n']", "$.list[5]", "$.missing");
+        assertEquals("\"yes\"", values[0]);
+        assertEquals("10", values[1]);
+        assertEquals("true", values[2]);
+        assertEquals("null", values[3]);
+        assertNull(values[4]);
+        assertNull(values[5]);
+    }
+
+    @Test
+    public void testWholeSubtree() {
+        String[] values = match("{\"a\":{\"b\":[1, 2]},\"c\":1}", "$.a", "$.a.b[1]");
+        assertEquals("{\"b\":[1, 2]}", values[0]);
+        assertEquals("2", values[1]);
+    }
+
+    @Test
+    public void testEscapedKeysAndValues() {
+        String body = "{\"q\\\"k\":\"a\\\"}b\",\"\\u0061\":\"\\u00e9\\n\",\"k\":\"v\"}";
+        String[] values = match(body, "$['a']", "$.k");
+        assertEquals("\"\\u00e9\\n\"", values[0]);
+        assertEquals("\"v\"", values[1]);
+        byte[] raw = values[0].getBytes(Charsets.UTF_8);
+        assertEquals("\u00e9\n", JsonBytes.scalarToString(raw, 0, raw.length));
+    }
+
+    @Test
+    public void testStopsOnceAllPathsFound() {
+        String[] values = match("{\"a\":1,\"b\":2, this is not json", "$.a");
+        assertEquals("1", values[0]);
+    }
+
+    @Test
+    public void testMalformed() {
+        assertNull(match("{\"a\":1,\"b\":", "$.c"));
+        assertNull(match("{\"a\" 1}", "$.a"));
+        assertNull(match("{\"a\":tru}", "$.a"));
+        assertNull(match("", "$.a"));
+    }
+
+    @Test
+    public void testMaxScanBytes() {
+        String body = "{\"a\":\"xy\",\"n\":12345,\"b\":{\"c\":true}, \"tail\": [1, 2, 3 ";
+        String[] values = match(body, new int[]{10, 0}, "$.a", "$.b.c");
+        assertEquals("\"xy\"", values[0]);
+        assertEquals("true", values[1]);
+
+        // the value must end inside its window
+        values = match(body, new int[]{8, 16, 40}, "$.a", "$.n", "$.b.c");
+        assertNull(values[0]);
+        assertNull(values[1]);
+        assertEquals("true", values[2]);
+        values = match(body, new int[]{19}, "$.n");
+        assertEquals("12345", values[0]);
+
+        // a scan cut short by the window is not malformed, and finds nothing past it
+        values = match(body, new int[]{20, 20}, "$.n", "$.b.c");
+        assertEquals("12345", values[0]);
+        assertNull(values[1]);
+        assertNull(match(body, new int[]{0}, "$.missing"));
+        assertNull(match("{\"a\" 1}", new int[]{100}, "$.a"));
+    }
+}
@@ -0,0 +1,128 @@
+package com.tsm.flume.interceptor.common;
+
+import com.google.common.base.Charsets;
+import com.google.gson.JsonParser;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNotNull;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertTrue;
+
+@RunWith(JUnit4.class)
+public class JsonEngineTest {
+
+    private static final String[] ENGINES = {JsonEngines.BYTES, JsonEngines.GSON, JsonEngines.GSON_STREAM, JsonEngines.JACKSON};
+
+    private static final CharsetTranscoder UTF8 = new CharsetTranscoder(Charsets.UTF_8, Charsets.UTF_8);
+
+    private static byte[] utf8(String text) {
+        return text.getBytes(Charsets.UTF_8);
+    }
+
+    @Test
+    public void testIsObject() {
+        for (String name : ENGINES) {
+            JsonEngine engine = JsonEngines.forName(name);
+            assertEquals(name, engine.getName());
+            assertTrue(name, engine.isObject(utf8("{\"a\":[1,{\"b\":null}],\"c\":\"\\\"}\"}"), UTF8));
+            assertTrue(name, engine.isObject(utf8(" {} "), UTF8));
+            assertFalse(name, engine.isObject(utf8("[1,2]"), UTF8));
+            assertFalse(name, engine.isObject(utf8("\"text\""), UTF8));
+            assertFalse(name, engine.isObject(utf8("{\"a\":"), UTF8));
+            assertFalse(name, engine.isObject(utf8(""), UTF8));
+        }
+    }
+
+    @Test
+    public void testMemberSetters() {
+        String[] bodies = {
+                "{}",
+                "{\"a\":1}",
+                "{ \"k\" : {\"x\":[1,2]}, \"b\" : -1.50e3 }",
+                "{\"s\":\"\\u00e9t\\u00e9 \\\"q\\\"\",\"t\":true,\"n\":null,\"k\":\"old\"}",
+                "{\"deep\":[[{\"k\":1}]],\"unicode\":\"日本\"}",
+        };
+        for (String name : ENGINES) {
+            JsonEngine.MemberSetter setter = JsonEngines.forName(name).newMemberSetter("k", UTF8);
+            JsonEngine.MemberSetter gson = JsonEngines.forName(JsonEngines.GSON).newMemberSetter("k", UTF8);
+            for (String body : bodies) {
+                for (String value : new String[]{"v", "a \"quoted\"\n value", null}) {
+                    String expected = new String(gson.set(utf8(body), value), Charsets.UTF_8);
+                    String actual = new String(setter.set(utf8(body), value), Charsets.UTF_8);
+                    assertEquals(name + " " + body, new JsonParser().parse(expected), new JsonParser().parse(actual));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testMemberSetterRejectsNonObjects() {
+        for (String name : ENGINES) {
+            JsonEngine.MemberSetter setter = JsonEngines.forName(name).newMemberSetter("k", UTF8);
+            for (String body : new String[]{"[1,2]", "{\"a\":"}) {
+                try {
+                    setter.set(utf8(body), "v");
+                    throw new AssertionError(name + " accepted " + body);
+                } catch (RuntimeException e) {
+                    // expected
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testExtractors() {
+        List<JsonBytePath> paths = new ArrayList<JsonBytePath>();
+        for (String expression : Arrays.asList("$.a", "$.b.c", "$.list[1]", "$.list[2].d", "$.n", "$.obj", "$.missing", "$.num")) {
+            paths.add(JsonBytePath.compile(expression));
+        }
+        byte[] body = utf8("{\"a\":\"x\\ty\",\"skip\":{\"c\":0},\"b\":{\"c\":true},\"list\":[0,\"é\",{\"d\":2}],"
+                + "\"n\":null,\"obj\":{\"o\":1},\"num\":1.50}");
+        for (String name : new String[]{JsonEngines.BYTES, JsonEngines.GSON, JsonEngines.GSON_STREAM}) {
+            JsonEngine.Extractor extractor = JsonEngines.forName(name).newExtractor(paths);
+            assertNotNull(name, extractor);
+            String[] values = new String[paths.size()];
+            RuntimeException[] errors = new RuntimeException[paths.size()];
+            assertTrue(name, extractor.extract(body, values, errors));
+            assertEquals(name, "x\ty", values[0]);
+            assertEquals(name, "true", values[1]);
+            assertEquals(name, "é", values[2]);
+            assertEquals(name, "2", values[3]);
+            assertNull(name, values[4]);
+            assertNull(name, values[5]);
+            assertTrue(name, errors[5] instanceof ClassCastException);
+            assertNull(name, values[6]);
+            assertNull(name, errors[6]);
+            assertEquals(name, "1.50", values[7]);
+
+            assertFalse(name, extractor.extract(utf8("{\"a\":"), values, errors));
+        }
+        assertNull(JsonEngines.forName(JsonEngines.JACKSON).newExtractor(paths));
+    }
+
+    @Test
+    public void testEngineByClassName() {
+        assertEquals(JsonEngines.GSON_STREAM, JsonEngines.forName(GsonStreamJsonEngine.class.getName()).getName());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownEngine() {
+        JsonEngines.forName("simdjson");
+    }
+
+    @Test
+    public void testForCharset() {
+        JsonEngine bytes = JsonEngines.forName(JsonEngines.BYTES);
+        assertEquals(JsonEngines.BYTES, JsonEngines.forCharset(bytes, Charsets.UTF_8).getName());
+        assertEquals(JsonEngines.GSON, JsonEngines.forCharset(bytes, Charsets.UTF_16).getName());
+    }
+}
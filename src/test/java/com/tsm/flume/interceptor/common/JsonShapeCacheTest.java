@@ -0,0 +1,105 @@
+package com.tsm.flume.interceptor.common;
+
+import com.google.common.base.Charsets;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+
+@RunWith(JUnit4.class)
+public class JsonShapeCacheTest {
+
+    private static List<JsonBytePath> paths(String... expressions) {
+        List<JsonBytePath> paths = new ArrayList<JsonBytePath>();
+        for (String expression : expressions) {
+            paths.add(JsonBytePath.compile(expression));
+        }
+        return paths;
+    }
+
+    @Test
+    public void testSupports() {
+        assertTrue(JsonShapeCache.supports(paths("$.a", "$['b c']", "$.params.v2")));
+        assertFalse(JsonShapeCache.supports(paths("$.a", "$.list[1]")));
+        assertFalse(JsonShapeCache.supports(paths("$[0]")));
+    }
+
+    @Test
+    public void testHitWithValuesOfAnotherLength() {
+        List<JsonBytePath> paths = paths("$.published", "$.id");
+        JsonByteMatcher matcher = new JsonByteMatcher(paths);
+        JsonShapeCache cache = new JsonShapeCache(paths, 2);
+
+        byte[] first = "{ \"id\":\"a1\", \"params\":{\"v\":[1,2]}, \"published\":\"2015\", \"tail\":1 }".getBytes(Charsets.UTF_8);
+        int[] ranges = matcher.newRanges();
+        assertFalse(cache.match(first, 0, first.length, ranges));
+        Arrays.fill(ranges, -1);
+        assertEquals(JsonByteMatcher.OK, matcher.match(first, 0, first.length, ranges));
+        cache.learn(first, 0, first.length, ranges);
+
+        byte[] second = "{ \"id\":\"a1234\", \"params\":{\"v\":[]}, \"published\":\"2015-04-23\", \"other\":\"x\" }".getBytes(Charsets.UTF_8);
+        assertTrue(cache.match(second, 0, second.length, ranges));
+        assertEquals("\"2015-04-23\"", new String(second, ranges[0], ranges[1] - ranges[0], Charsets.UTF_8));
+        assertEquals("\"a1234\"", new String(second, ranges[2], ranges[3] - ranges[2], Charsets.UTF_8));
+
+        byte[] reordered = "{ \"params\":{}, \"id\":\"a1\", \"published\":\"2015\" }".getBytes(Charsets.UTF_8);
+        assertFalse(cache.match(reordered, 0, reordered.length, ranges));
+        byte[] respaced = "{\"id\":\"a1\", \"params\":{}, \"published\":\"2015\"}".getBytes(Charsets.UTF_8);
+        assertFalse(cache.match(respaced, 0, respaced.length, ranges));
+    }
+
+    /**
+     * Random records from a few producer layouts must give the matcher's ranges.
+     */
+    @Test
+    public void testAgreesWithMatcher() {
+        List<JsonBytePath> paths = paths("$.a", "$.b", "$.c", "$.p.b", "$.p.q.a");
+        JsonByteMatcher matcher = new JsonByteMatcher(paths);
+        JsonShapeCache cache = new JsonShapeCache(paths, 2);
+        String[][] layouts = {
+                {"a", "x", "b", "p", "c"},
+                {"x", "c", "p", "b", "a", "y"},
+                {"b", "a", "b", "p", "c"},
+                {"a", "p", "x", "p", "b", "c"},
+                {"a", "b", "c"},
+                {"p", "a", "x", "b", "c", "c"},
+        };
+        String[] values = {"1", "-2.5e3", "\"s\"", "\"\\\"a\\\",\\\"b\\\":1\"", "{\"a\":1,\"b\":2}", "[{\"c\":3}]", "null", "true"};
+        String[] objects = {"{\"b\":1,\"q\":{\"a\":2}}", "{\"q\":{\"z\":[],\"a\":\"x\"},\"b\":[1]}",
+                "{\"b\":\"long value\",\"q\":{\"a\":{}} ,\"r\":0}", "{\"b\":1}", "{\"q\":{\"a\":1},\"q\":{\"a\":2},\"b\":3}"};
+        Random random = new Random(42);
+        int hits = 0;
+        for (int n = 0; n < 5000; n++) {
+            String[] layout = layouts[random.nextInt(layouts.length)];
+            StringBuilder sb = new StringBuilder("{");
+            for (int m = 0; m < layout.length; m++) {
+                sb.append(m == 0 ? "" : ",").append('"').append(layout[m]).append("\":");
+                sb.append(layout[m].equals("p")
+                        ? objects[random.nextInt(objects.length)]
+                        : values[random.nextInt(values.length)]);
+            }
+            byte[] body = sb.append('}').toString().getBytes(Charsets.UTF_8);
+
+            int[] expected = matcher.newRanges();
+            int status = matcher.match(body, 0, body.length, expected);
+            int[] actual = matcher.newRanges();
+            if (cache.match(body, 0, body.length, actual)) {
+                hits++;
+                assertEquals(JsonByteMatcher.OK, status);
+                assertTrue(sb.toString(), Arrays.equals(expected, actual));
+            } else if (status == JsonByteMatcher.OK) {
+                cache.learn(body, 0, body.length, expected);
+            }
+        }
+        assertTrue(hits > 500);
+    }
+}
@@ -0,0 +1,76 @@
+package com.tsm.flume.interceptor.common;
+
+import com.google.common.base.Charsets;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import static junit.framework.Assert.assertEquals;
+
+@RunWith(JUnit4.class)
+public class JsonValidatorTest {
+
+    private int validate(String json, boolean requireObject) {
+        byte[] bytes = json.getBytes(Charsets.UTF_8);
+        return JsonValidator.validate(bytes, 0, bytes.length, requireObject);
+    }
+
+    private void assertValid(String json) {
+        assertEquals(json, JsonValidator.VALID, validate(json, false));
+    }
+
+    private void assertStatus(int status, String json) {
+        assertEquals(json, JsonValidator.statusName(status), JsonValidator.statusName(validate(json, false)));
+    }
+
+    @Test
+    public void testValidDocuments() {
+        assertValid("{}");
+        assertValid(" { \"a\" : [ 1, -2.5e+3, 0, true, false, null, \"x\\\"\\u00e9\\n\" ], \"b\" : {} } \n");
+        assertValid("[]");
+        assertValid("[[[]],{}]");
+        assertValid("\"text\"");
+        assertValid("-0.1E2");
+        assertValid("{\"k\":\"\u4e2d\u6587\"}");
+    }
+
+    @Test
+    public void testInvalidDocuments() {
+        assertStatus(JsonValidator.EMPTY, "  ");
+        assertStatus(JsonValidator.UNEXPECTED_END, "{\"a\":1");
+        assertStatus(JsonValidator.UNEXPECTED_END, "{ \"pageViewId\":\"4eae0122-052d-41ff-ac5c-120279891184\",");
+        assertStatus(JsonValidator.UNEXPECTED_BYTE, "{\"a\":1,}");
+        assertStatus(JsonValidator.UNEXPECTED_BYTE, "{a:1}");
+        assertStatus(JsonValidator.UNEXPECTED_BYTE, "{\"a\":1]");
+        assertStatus(JsonValidator.UNEXPECTED_BYTE, "[1 2]");
+        assertStatus(JsonValidator.UNEXPECTED_BYTE, "{\"a\":tru}");
+        assertStatus(JsonValidator.TRAILING_DATA, "{} {}");
+        assertStatus(JsonValidator.INVALID_STRING, "{\"a\":\"\\x\"}");
+        assertStatus(JsonValidator.INVALID_STRING, "{\"a\":\"tab\there\"}");
+        assertStatus(JsonValidator.INVALID_NUMBER, "[1.]");
+        assertStatus(JsonValidator.INVALID_NUMBER, "[-]");
+        assertStatus(JsonValidator.UNEXPECTED_BYTE, "[01]");
+    }
+
+    @Test
+    public void testRequireObject() {
+        assertEquals(JsonValidator.NOT_OBJECT, validate("[1]", true));
+        assertEquals(JsonValidator.NOT_OBJECT, validate("plain text", true));
+        assertEquals(JsonValidator.VALID, validate("{\"a\":[1]}", true));
+    }
+
+    @Test
+    public void testDepth() {
+        StringBuilder deep = new StringBuilder();
+        for (int i = 0; i < JsonValidator.MAX_DEPTH; i++) {
+            deep.append(i % 2 == 0 ? "[" : "{\"k\":");
+        }
+        StringBuilder close = new StringBuilder();
+        for (int i = JsonValidator.MAX_DEPTH - 1; i >= 0; i--) {
+            close.append(i % 2 == 0 ? "]" : "}");
+        }
+        assertEquals(JsonValidator.VALID, validate(deep.toString() + "1" + close, false));
+        assertEquals(JsonValidator.TOO_DEEP, validate("[" + deep + "1" + close + "]", false));
+    }
+}
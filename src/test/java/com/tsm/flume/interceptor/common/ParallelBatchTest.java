@@ -0,0 +1,125 @@
+package com.tsm.flume.interceptor.common;
+
+import com.google.common.base.Charsets;
+import org.apache.flume.Context;
+import org.apache.flume.Event;
+import org.apache.flume.event.EventBuilder;
+import org.apache.flume.interceptor.Interceptor;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+
+@RunWith(JUnit4.class)
+public class ParallelBatchTest {
+
+    /**
+     * Tags every event with the thread that saw it and drops every tenth one.
+     */
+    private static class TaggingInterceptor implements Interceptor {
+        final Set<String> threads = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+        @Override
+        public void initialize() {
+        }
+
+        @Override
+        public Event intercept(Event event) {
+            threads.add(Thread.currentThread().getName());
+            int index = Integer.parseInt(new String(event.getBody(), Charsets.UTF_8));
+            if (index % 10 == 9) {
+                return null;
+            }
+            event.getHeaders().put("seen", "true");
+            return event;
+        }
+
+        @Override
+        public List<Event> intercept(List<Event> events) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    private List<Event> getEvents(int count) {
+        List<Event> events = new ArrayList<Event>(count);
+        for (int i = 0; i < count; i++) {
+            events.add(EventBuilder.withBody(Integer.toString(i), Charsets.UTF_8));
+        }
+        return events;
+    }
+
+    private void assertOrderedWithoutDropped(List<Event> events, int count) {
+        assertEquals(count - count / 10, events.size());
+        int expected = 0;
+        for (Event event : events) {
+            if (expected % 10 == 9) {
+                expected++;
+            }
+            assertEquals(Integer.toString(expected++), new String(event.getBody(), Charsets.UTF_8));
+            assertEquals("true", event.getHeaders().get("seen"));
+        }
+    }
+
+    @Test
+    public void testSmallBatchStaysOnCallingThread() {
+        TaggingInterceptor interceptor = new TaggingInterceptor();
+        List<Event> events = new ParallelBatch(true, 1000).intercept(interceptor, getEvents(500));
+
+        assertOrderedWithoutDropped(events, 500);
+        assertEquals(Collections.singleton(Thread.currentThread().getName()), interceptor.threads);
+    }
+
+    @Test
+    public void testLargeBatchKeepsOrder() {
+        TaggingInterceptor interceptor = new TaggingInterceptor();
+        List<Event> events = new ParallelBatch(true, 100).intercept(interceptor, getEvents(20000));
+
+        assertOrderedWithoutDropped(events, 20000);
+        boolean pooled = false;
+        for (String thread : interceptor.threads) {
+            pooled |= thread.startsWith("flume-interceptor-parallel-");
+        }
+        assertTrue("Large batch should run on the shared pool", pooled);
+    }
+
+    @Test
+    public void testDisabledByDefault() {
+        ParallelBatch batch = ParallelBatch.configure(new Context());
+        assertFalse(batch.isParallel());
+
+        TaggingInterceptor interceptor = new TaggingInterceptor();
+        assertOrderedWithoutDropped(batch.intercept(interceptor, getEvents(5000)), 5000);
+        assertEquals(Collections.singleton(Thread.currentThread().getName()), interceptor.threads);
+    }
+
+    @Test
+    public void testWorkerExceptionPropagates() {
+        Interceptor failing = new TaggingInterceptor() {
+            @Override
+            public Event intercept(Event event) {
+                throw new IllegalStateException("boom");
+            }
+        };
+        try {
+            new ParallelBatch(true, 100).intercept(failing, getEvents(1000));
+        } catch (IllegalStateException e) {
+            assertTrue(e.getMessage().contains("boom"));
+            return;
+        }
+        throw new AssertionError("Exception should have been propagated");
+    }
+}
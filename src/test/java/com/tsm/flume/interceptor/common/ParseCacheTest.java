@@ -0,0 +1,178 @@
+package com.tsm.flume.interceptor.common;
+
+import com.google.common.base.Charsets;
+import com.tsm.flume.interceptor.json.JsonInterceptor;
+import com.tsm.flume.interceptor.parsejson.ParseJsonInterceptor;
+import com.tsm.flume.interceptor.verifyjson.VerifyJsonInterceptor;
+import org.apache.flume.Context;
+import org.apache.flume.Event;
+import org.apache.flume.event.EventBuilder;
+import org.apache.flume.interceptor.Interceptor;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNotSame;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertSame;
+import static junit.framework.Assert.assertTrue;
+
+@RunWith(JUnit4.class)
+public class ParseCacheTest {
+
+    private static final String[] BODIES = {
+            "{}",
+            " { } ",
+            "{\"a\":1}",
+            " {\n\"a\" : {\"b\": [1, {\"c\": \"x\"}]} , \"s\\u0074r\":\"v\", \"n\" : null, \"a\": 2 }\n",
+            "{\"list\":[10,\"x\",{\"c\":true}],\"num\":12345,\"big\":{\"x\":[[],{}]},\"t\":\"caf\u00e9\"}",
+    };
+
+    private static final String[] PATHS = {"$", "$.a", "$.a.b[1].c", "$.str", "$.n", "$.list[2].c", "$.num", "$.big.x[0]", "$.t", "$.missing"};
+
+    private static byte[] bytes(String s) {
+        return s.getBytes(Charsets.UTF_8);
+    }
+
+    @Test
+    public void testIndex() {
+        byte[] body = bytes(" {\"a\" : 1 ,\"b\":[2]} ");
+        assertTrue(Arrays.equals(new int[]{1, 19, 2, 5, 8, 9, 11, 14, 15, 18}, ParseCache.index(body)));
+        assertTrue(Arrays.equals(new int[]{0, 3}, ParseCache.index(bytes("{ }"))));
+    }
+
+    @Test
+    public void testEntriesFollowBodyIdentity() {
+        ParseCache cache = new ParseCache(16);
+        byte[] body = bytes("{\"a\":1}");
+        int[] members = cache.members(body);
+        assertSame(members, cache.members(body));
+        assertEquals(JsonValidator.VALID, cache.validateObject(body));
+
+        // a new body, as set by setBody, starts over even with the same content
+        byte[] copy = body.clone();
+        assertNotSame(members, cache.members(copy));
+        assertTrue(Arrays.equals(members, cache.members(copy)));
+
+        byte[] invalid = bytes("{\"a\":1");
+        assertEquals(JsonValidator.UNEXPECTED_END, cache.validateObject(invalid));
+        assertNull(cache.members(invalid));
+        assertNull(cache.members(bytes("[1]")));
+
+        byte[] wrapped = bytes("{\"b\":2}");
+        cache.putValidObject(wrapped);
+        assertEquals(JsonValidator.VALID, cache.validateObject(wrapped));
+    }
+
+    @Test
+    public void testIndexedMatchIsSameAsScan() {
+        List<JsonBytePath> paths = new ArrayList<JsonBytePath>();
+        for (String path : PATHS) {
+            paths.add(JsonBytePath.compile(path));
+        }
+        int[] limits = new int[PATHS.length];
+        Arrays.fill(limits, 12);
+        limits[0] = 0;
+        ParseCache cache = new ParseCache(16);
+        for (JsonByteMatcher matcher : new JsonByteMatcher[]{new JsonByteMatcher(paths), new JsonByteMatcher(paths, limits)}) {
+            for (String text : BODIES) {
+                byte[] body = bytes(text);
+                int[] scanned = matcher.newRanges();
+                int[] indexed = matcher.newRanges();
+                assertEquals(JsonByteMatcher.OK, matcher.match(body, 0, body.length, scanned));
+                assertEquals(JsonByteMatcher.OK, matcher.match(body, cache.members(body), indexed));
+                assertTrue(text, Arrays.equals(scanned, indexed));
+            }
+        }
+    }
+
+    @Test
+    public void testScanLimitIsAppliedBeforeTheCache() {
+        StringBuilder padding = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            padding.append("0123456789");
+        }
+        for (String shapeCacheSize : new String[]{"0", "2"}) {
+            ParseCache cache = new ParseCache(16);
+            JsonInterceptor interceptor = (JsonInterceptor) build(new JsonInterceptor.Builder(),
+                    "name", "id", "jsonpath", "$.id", "maxScanBytes", "64", "shapeCacheSize", shapeCacheSize);
+            interceptor.setParseCache(cache);
+
+            byte[] small = bytes("{\"id\":\"a\",\"n\":1}");
+            assertEquals("a", interceptor.intercept(EventBuilder.withBody(small)).getHeaders().get("id"));
+            assertTrue(cache.contains(small));
+
+            // the limit keeps the whole body from being validated and indexed
+            byte[] large = bytes("{\"id\":\"b\",\"padding\":\"" + padding + "\"}");
+            assertEquals("b", interceptor.intercept(EventBuilder.withBody(large)).getHeaders().get("id"));
+            assertFalse(cache.contains(large));
+            byte[] cut = bytes("{\"id\":\"c\",\"padding\":\"" + padding);
+            assertEquals("c", interceptor.intercept(EventBuilder.withBody(cut)).getHeaders().get("id"));
+            assertFalse(cache.contains(cut));
+
+            // a layout the shape cache learned is read without the parse cache
+            byte[] same = bytes("{\"id\":\"d\",\"n\":2}");
+            assertEquals("d", interceptor.intercept(EventBuilder.withBody(same)).getHeaders().get("id"));
+            assertEquals(shapeCacheSize.equals("0"), cache.contains(same));
+            assertEquals(0, interceptor.getCounter().getEventMalformedCount());
+        }
+    }
+
+    private static Interceptor build(Interceptor.Builder builder, String... properties) {
+        Map<String, String> map = new HashMap<String, String>();
+        for (int i = 0; i < properties.length; i += 2) {
+            map.put(properties[i], properties[i + 1]);
+        }
+        builder.configure(new Context(map));
+        Interceptor interceptor = builder.build();
+        interceptor.initialize();
+        return interceptor;
+    }
+
+    private static List<Interceptor> chain(String parseCache) {
+        return Arrays.asList(
+                build(new VerifyJsonInterceptor.Builder(), "engine", "bytes", "parseCache", parseCache),
+                build(new JsonInterceptor.Builder(), "name", "action", "jsonpath", "$.action", "parseCache", parseCache),
+                build(new ParseJsonInterceptor.Builder(), "headerName", "action", "useHeaderName", "true",
+                        "key", "copy", "parseCache", parseCache),
+                build(new JsonInterceptor.Builder(), "name", "copy", "jsonpath", "$.copy", "parseCache", parseCache),
+                build(new JsonInterceptor.Builder(), "name", "raw", "jsonpath", "$.event_json", "parseCache", parseCache));
+    }
+
+    @Test
+    public void testChainGivesSameEvents() {
+        String[] bodies = {
+                "{\"action\":\"view\",\"user\":{\"id\":1}}",
+                "{\"action\" : \"a\\\"b\", \"copy\": 1, \"copy\": 2}",
+                "not json",
+                "{\"action\":\"x\"",
+                "{\"other\":[1,2,3]}",
+        };
+        List<Interceptor> plain = chain("false");
+        List<Interceptor> cached = chain("true");
+        for (String body : bodies) {
+            Event expected = EventBuilder.withBody(bytes(body));
+            Event actual = EventBuilder.withBody(bytes(body));
+            for (int i = 0; i < plain.size(); i++) {
+                expected = plain.get(i).intercept(expected);
+                actual = cached.get(i).intercept(actual);
+            }
+            String expectedBody = new String(expected.getBody(), Charsets.UTF_8);
+            // the wrapped time differs between the two runs
+            assertEquals(body, expectedBody.replaceAll("\"time\":\"[^\"]*\"", ""),
+                    new String(actual.getBody(), Charsets.UTF_8).replaceAll("\"time\":\"[^\"]*\"", ""));
+            assertEquals(body, expected.getHeaders().get("action"), actual.getHeaders().get("action"));
+            assertEquals(body, expected.getHeaders().get("copy"), actual.getHeaders().get("copy"));
+            assertEquals(body, expected.getHeaders().get("raw"), actual.getHeaders().get("raw"));
+        }
+    }
+}
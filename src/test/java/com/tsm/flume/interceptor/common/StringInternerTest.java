@@ -0,0 +1,67 @@
+package com.tsm.flume.interceptor.common;
+
+import com.google.common.base.Charsets;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertSame;
+import static junit.framework.Assert.assertTrue;
+
+@RunWith(JUnit4.class)
+public class StringInternerTest {
+
+    @Test
+    public void testLookupFromRawBytes() {
+        StringInterner interner = new StringInterner(16);
+        byte[] body = "{\"action\":\"pageview\",\"other\":\"pageview\"}".getBytes(Charsets.UTF_8);
+        assertNull(interner.lookup(body, 10, 20));
+        String value = interner.remember(body, 10, 20, new String("pageview"));
+        assertSame(value, interner.lookup(body, 10, 20));
+        assertSame(value, interner.lookup(body, 29, 39));
+        assertNull(interner.lookup(body, 1, 9));
+    }
+
+    @Test
+    public void testIntern() {
+        StringInterner interner = new StringInterner(16);
+        String first = new String("click");
+        assertSame(first, interner.intern(first));
+        assertSame(first, interner.intern(new String("click")));
+        assertNull(interner.intern(null));
+    }
+
+    @Test
+    public void testLowCardinalityStaysEnabled() {
+        StringInterner interner = new StringInterner(8);
+        String[] actions = {"pageview", "click", "scroll", "login"};
+        for (int i = 0; i < StringInterner.WINDOW * 4; i++) {
+            byte[] raw = ("\"" + actions[i % actions.length] + "\"").getBytes(Charsets.UTF_8);
+            if (interner.lookup(raw, 0, raw.length) == null) {
+                interner.remember(raw, 0, raw.length, actions[i % actions.length]);
+            }
+        }
+        assertFalse(interner.isDisabled());
+    }
+
+    @Test
+    public void testHighCardinalityTurnsItOff() {
+        StringInterner interner = new StringInterner(8);
+        for (int i = 0; i < StringInterner.WINDOW; i++) {
+            byte[] raw = ("\"id-" + i + "\"").getBytes(Charsets.UTF_8);
+            if (interner.lookup(raw, 0, raw.length) == null) {
+                interner.remember(raw, 0, raw.length, "id-" + i);
+            }
+        }
+        assertTrue(interner.isDisabled());
+        byte[] raw = "\"id-1\"".getBytes(Charsets.UTF_8);
+        assertNull(interner.lookup(raw, 0, raw.length));
+        String value = new String("id-1");
+        assertSame(value, interner.intern(value));
+        assertEquals("id-1", interner.remember(raw, 0, raw.length, value));
+    }
+}
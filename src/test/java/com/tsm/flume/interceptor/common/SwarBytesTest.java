@@ -0,0 +1,88 @@
+package com.tsm.flume.interceptor.common;
+
+import com.google.common.base.Charsets;
+
+import java.util.Random;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import static junit.framework.Assert.assertEquals;
+
+@RunWith(JUnit4.class)
+public class SwarBytesTest {
+
+    private static int expected(byte[] b, int i, int to, boolean stopOnHigh) {
+        for (; i < to; i++) {
+            int c = b[i] & 0xFF;
+            if (c == '"' || c == '\\' || c < 0x20 || (stopOnHigh && c >= 0x80)) {
+                return i;
+            }
+        }
+        return to;
+    }
+
+    @Test
+    public void testWordTricks() {
+        long word = 0x22005C2222417F80L;
+        assertEquals(0x8000008080000000L, SwarBytes.equal(word, 0x2222222222222222L));
+        assertEquals(0x0000800000000000L, SwarBytes.equal(word, 0x5C5C5C5C5C5C5C5CL));
+        assertEquals(0x0080000000000000L, SwarBytes.belowSpace(word));
+        assertEquals(0x8080808080808080L, SwarBytes.belowSpace(0x1F1E0D0A09080100L));
+        assertEquals(0L, SwarBytes.belowSpace(0xFFA0802020207F7EL));
+    }
+
+    @Test
+    public void testEveryPosition() {
+        byte[] specials = {'"', '\\', 0, '\n', 0x1F, (byte) 0x80, (byte) 0xE2, (byte) 0xFF};
+        for (int length = 0; length < 40; length++) {
+            for (int at = 0; at <= length; at++) {
+                for (byte special : specials) {
+                    byte[] b = new byte[length];
+                    for (int i = 0; i < length; i++) {
+                        b[i] = (byte) ('a' + i % 26);
+                    }
+                    if (at < length) {
+                        b[at] = special;
+                    }
+                    for (int from = 0; from <= Math.min(length, 9); from++) {
+                        assertEquals(expected(b, from, length, false), SwarBytes.stringSpecial(b, from, length));
+                        assertEquals(expected(b, from, length, true), SwarBytes.notPlainAscii(b, from, length));
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testRandomBytes() {
+        Random random = new Random(11);
+        for (int round = 0; round < 2000; round++) {
+            byte[] b = new byte[random.nextInt(200)];
+            for (int i = 0; i < b.length; i++) {
+                b[i] = random.nextInt(20) == 0 ? (byte) random.nextInt(256) : (byte) (0x20 + random.nextInt(0x5F));
+            }
+            int from = b.length == 0 ? 0 : random.nextInt(b.length);
+            int to = from + random.nextInt(b.length - from + 1);
+            assertEquals(expected(b, from, to, false), SwarBytes.stringSpecial(b, from, to));
+            assertEquals(expected(b, from, to, true), SwarBytes.notPlainAscii(b, from, to));
+        }
+    }
+
+    @Test
+    public void testLongStrings() {
+        StringBuilder sb = new StringBuilder("{\"text\":\"");
+        for (int i = 0; i < 500; i++) {
+            sb.append("plain text ").append(i).append(i % 50 == 0 ? " \\\"quoted\\\" \\u00e9 " : " ");
+        }
+        sb.append("\",\"n\":1}");
+        byte[] b = sb.toString().getBytes(Charsets.UTF_8);
+        assertEquals(b.length - 7, JsonBytes.skipString(b, 8, b.length));
+        assertEquals(JsonValidator.VALID, JsonValidator.validate(b, 0, b.length, true));
+        assertEquals(JsonBytes.MALFORMED, JsonBytes.skipString(b, 8, b.length - 8));
+        b[sb.indexOf("plain text 251")] = '\n';
+        assertEquals(JsonValidator.INVALID_STRING, JsonValidator.validate(b, 0, b.length, true));
+        assertEquals(b.length - 7, JsonBytes.skipString(b, 8, b.length));
+    }
+}
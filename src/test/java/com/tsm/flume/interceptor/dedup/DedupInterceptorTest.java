@@ -0,0 +1,166 @@
+package com.tsm.flume.interceptor.dedup;
+
+import com.google.common.base.Charsets;
+import org.apache.flume.Context;
+import org.apache.flume.Event;
+import org.apache.flume.event.SimpleEvent;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertTrue;
+
+@RunWith(JUnit4.class)
+public class DedupInterceptorTest {
+
+    private DedupInterceptor getInterceptor(Map<String, String> properties) {
+        Context context = new Context(properties);
+        context.put("metrics", "true");
+        DedupInterceptor.Builder builder = new DedupInterceptor.Builder();
+        builder.configure(context);
+        DedupInterceptor interceptor = (DedupInterceptor) builder.build();
+        interceptor.initialize();
+        return interceptor;
+    }
+
+    private DedupInterceptor getInterceptor(String key) {
+        Map<String, String> properties = new HashMap<String, String>();
+        properties.put("key", key);
+        return getInterceptor(properties);
+    }
+
+    private Event getEvent(String body) {
+        Event event = new SimpleEvent();
+        event.setBody(body.getBytes(Charsets.UTF_8));
+        event.setHeaders(new HashMap<String, String>());
+        return event;
+    }
+
+    private List<String> dedup(DedupInterceptor interceptor, String... bodies) {
+        List<Event> events = new ArrayList<Event>();
+        for (String body : bodies) {
+            events.add(getEvent(body));
+        }
+        List<String> out = new ArrayList<String>();
+        for (Event event : interceptor.intercept(events)) {
+            out.add(new String(event.getBody(), Charsets.UTF_8));
+        }
+        return out;
+    }
+
+    @Test
+    public void testDropsDuplicates() {
+        DedupInterceptor interceptor = getInterceptor("$.pageViewId");
+        assertEquals(Arrays.asList(
+                "{\"pageViewId\":\"a\",\"n\":1}",
+                "{\"pageViewId\":\"b\"}",
+                "{\"pageViewId\":1}"),
+                dedup(interceptor,
+                        "{\"pageViewId\":\"a\",\"n\":1}",
+                        "{\"pageViewId\":\"b\"}",
+                        "{\"n\":2, \"pageViewId\" : \"a\"}",
+                        "{\"pageViewId\":1}"));
+        // duplicates across batches
+        assertEquals(Arrays.asList("{\"pageViewId\":\"c\"}"),
+                dedup(interceptor, "{\"pageViewId\":\"b\"}", "{\"pageViewId\":\"c\"}"));
+        assertEquals(4, interceptor.counter.getEventExtractedCount());
+        assertEquals(2, interceptor.counter.getEventDroppedCount());
+        assertNull(interceptor.intercept(getEvent("{\"pageViewId\":\"c\"}")));
+    }
+
+    @Test
+    public void testRetriedBatch() {
+        DedupInterceptor interceptor = getInterceptor("$.id");
+        String[] batch = {"{\"x\":0}", "{\"id\":1}", "{\"id\":2}", "{\"id\":1}", "{\"id\":3}"};
+        List<String> expected = Arrays.asList("{\"x\":0}", "{\"id\":1}", "{\"id\":2}", "{\"id\":3}");
+        assertEquals(expected, dedup(interceptor, batch));
+        // the channel rejected the batch and the source sends it again, twice
+        assertEquals(expected, dedup(interceptor, batch));
+        assertEquals(expected, dedup(interceptor, batch));
+        // a later batch with the same ids is still made of duplicates
+        assertEquals(Arrays.asList("{\"id\":4}"), dedup(interceptor, "{\"id\":4}", "{\"id\":2}"));
+        assertEquals(Arrays.asList("{\"x\":0}"), dedup(interceptor, batch));
+        assertEquals(8, interceptor.counter.getEventDroppedCount());
+    }
+
+    @Test
+    public void testRetryWindow() {
+        Map<String, String> properties = new HashMap<String, String>();
+        properties.put("key", "$.id");
+        properties.put("retryWindow", "0");
+        DedupInterceptor interceptor = getInterceptor(properties);
+        assertEquals(2, dedup(interceptor, "{\"id\":1}", "{\"id\":2}").size());
+        assertEquals(0, dedup(interceptor, "{\"id\":1}", "{\"id\":2}").size());
+
+        properties.put("retryWindow", "2");
+        interceptor = getInterceptor(properties);
+        assertEquals(2, dedup(interceptor, "{\"id\":1}", "{\"id\":2}").size());
+        assertEquals(1, dedup(interceptor, "{\"id\":3}").size());
+        // retried after another batch went through
+        assertEquals(2, dedup(interceptor, "{\"id\":1}", "{\"id\":2}").size());
+        assertEquals(1, dedup(interceptor, "{\"id\":4}").size());
+        assertEquals(1, dedup(interceptor, "{\"id\":5}").size());
+        assertEquals(0, dedup(interceptor, "{\"id\":3}").size());
+    }
+
+    @Test
+    public void testMissingAndMalformed() {
+        DedupInterceptor interceptor = getInterceptor("$.id");
+        assertEquals(Arrays.asList("{\"x\":1}", "{\"x\":1}", "{\"id\":"),
+                dedup(interceptor, "{\"x\":1}", "{\"x\":1}", "{\"id\":"));
+        assertEquals(2, interceptor.counter.getEventMissingCount());
+        assertEquals(1, interceptor.counter.getEventMalformedCount());
+
+        Map<String, String> properties = new HashMap<String, String>();
+        properties.put("key", "$.id");
+        properties.put("onFailure", "tag");
+        Event event = getInterceptor(properties).intercept(getEvent("[1,"));
+        assertEquals(DedupInterceptor.REASON_MALFORMED, event.getHeaders().get("interceptor_error"));
+    }
+
+    @Test
+    public void testCapacity() {
+        Map<String, String> properties = new HashMap<String, String>();
+        properties.put("key", "$.id");
+        properties.put("capacity", "1600");
+        DedupInterceptor interceptor = getInterceptor(properties);
+        for (int i = 0; i < 20000; i++) {
+            interceptor.intercept(getEvent("{\"id\":" + i + "}"));
+        }
+        assertEquals(0, interceptor.counter.getEventDroppedCount());
+        // the most recent ids are remembered, the oldest are forgotten
+        assertNull(interceptor.intercept(getEvent("{\"id\":19999}")));
+        assertNull(interceptor.intercept(getEvent("{\"id\":19000}")));
+        assertTrue(interceptor.intercept(getEvent("{\"id\":0}")) != null);
+    }
+
+    @Test
+    public void testSeenKeysWindow() {
+        SeenKeys seen = new SeenKeys(1000, 100);
+        assertTrue(seen.add(1, 0));
+        assertFalse(seen.add(1, 50));
+        assertTrue(seen.add(2, 120));
+        // retired to the previous generation, still remembered
+        assertFalse(seen.add(1, 150));
+        assertFalse(seen.add(2, 210));
+        // both generations are out of the window
+        assertTrue(seen.add(2, 500));
+        assertTrue(seen.add(0, 500));
+        assertFalse(seen.add(0, 500));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testComplexKey() {
+        getInterceptor("$.items[*].id");
+    }
+}
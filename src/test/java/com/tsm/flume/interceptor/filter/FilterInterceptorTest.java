@@ -0,0 +1,186 @@
+package com.tsm.flume.interceptor.filter;
+
+import com.google.common.base.Charsets;
+import com.tsm.flume.interceptor.common.JsonByteMatcher;
+import com.tsm.flume.interceptor.common.JsonBytePath;
+import org.apache.flume.Context;
+import org.apache.flume.Event;
+import org.apache.flume.event.SimpleEvent;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+import static junit.framework.Assert.fail;
+
+@RunWith(JUnit4.class)
+public class FilterInterceptorTest {
+
+    private static final String BODY = "{\"action\":\"click\",\"level\":\"debug\",\"ms\":12,\"ratio\":0.5e1,"
+            + "\"ok\":true,\"none\":null,\"name\":\"caf\\u00e9\",\"user\":{\"id\":-3,\"tags\":[\"a\",\"b\"]}}";
+
+    private FilterInterceptor getInterceptor(Map<String, String> properties) {
+        Context context = new Context(properties);
+        context.put("metrics", "true");
+        FilterInterceptor.Builder builder = new FilterInterceptor.Builder();
+        builder.configure(context);
+        FilterInterceptor interceptor = (FilterInterceptor) builder.build();
+        interceptor.initialize();
+        return interceptor;
+    }
+
+    private FilterInterceptor getInterceptor(String expression) {
+        Map<String, String> properties = new HashMap<String, String>();
+        properties.put("expression", expression);
+        return getInterceptor(properties);
+    }
+
+    private Event getEvent(String body) {
+        Event event = new SimpleEvent();
+        event.setBody(body.getBytes(Charsets.UTF_8));
+        event.setHeaders(new HashMap<String, String>());
+        return event;
+    }
+
+    private List<String> filter(FilterInterceptor interceptor, String... bodies) {
+        List<Event> events = new ArrayList<Event>();
+        for (String body : bodies) {
+            events.add(getEvent(body));
+        }
+        List<String> out = new ArrayList<String>();
+        for (Event event : interceptor.intercept(events)) {
+            out.add(new String(event.getBody(), Charsets.UTF_8));
+        }
+        return out;
+    }
+
+    private boolean matches(String expression, String body) {
+        List<JsonBytePath> paths = new ArrayList<JsonBytePath>();
+        FilterExpression compiled = FilterExpression.compile(expression, paths);
+        JsonByteMatcher matcher = new JsonByteMatcher(paths);
+        byte[] bytes = body.getBytes(Charsets.UTF_8);
+        int[] ranges = matcher.newRanges();
+        assertEquals(JsonByteMatcher.OK, matcher.match(bytes, 0, bytes.length, ranges));
+        return compiled.matches(bytes, ranges);
+    }
+
+    @Test
+    public void testComparisons() {
+        assertTrue(matches("$.action == \"click\"", BODY));
+        assertFalse(matches("$.action == \"heartbeat\"", BODY));
+        assertTrue(matches("$.action != \"heartbeat\"", BODY));
+        assertTrue(matches("$.action < \"d\"", BODY));
+        assertTrue(matches("$.name == \"café\"", BODY));
+        assertTrue(matches("$.name == \"caf\\u00e9\"", BODY));
+        assertTrue(matches("$.ms == 12", BODY));
+        assertTrue(matches("$.ms >= 12.0", BODY));
+        assertFalse(matches("$.ms > 12", BODY));
+        assertTrue(matches("$.ratio <= 5", BODY));
+        assertTrue(matches("$.user.id < 0", BODY));
+        assertTrue(matches("$.user.tags[1] == \"b\"", BODY));
+        assertTrue(matches("$.ok == true", BODY));
+        assertTrue(matches("$.none == null", BODY));
+        assertFalse(matches("$.ok == false", BODY));
+    }
+
+    @Test
+    public void testMissingAndMismatchedTypes() {
+        assertFalse(matches("$.missing == \"x\"", BODY));
+        assertTrue(matches("$.missing != \"x\"", BODY));
+        assertFalse(matches("$.missing < 1", BODY));
+        assertFalse(matches("$.ms == \"12\"", BODY));
+        assertTrue(matches("$.ms != \"12\"", BODY));
+        assertFalse(matches("$.action > 1", BODY));
+        assertFalse(matches("$.user == 1", BODY));
+    }
+
+    @Test
+    public void testLogic() {
+        assertTrue(matches("$.level in (\"trace\", \"debug\")", BODY));
+        assertFalse(matches("$.level in (\"info\")", BODY));
+        assertTrue(matches("$.ms in (1, 12)", BODY));
+        assertTrue(matches("$.action == \"x\" or $.ms == 12", BODY));
+        assertFalse(matches("$.action == \"x\" and $.ms == 12", BODY));
+        assertTrue(matches("not $.action == \"x\" and $.ms == 12", BODY));
+        assertFalse(matches("not ($.action == \"click\" or $.ms == 1)", BODY));
+        // and binds tighter than or
+        assertTrue(matches("$.ms == 12 or $.ms == 1 and $.ok == false", BODY));
+        assertFalse(matches("($.ms == 12 or $.ms == 1) and $.ok == false", BODY));
+    }
+
+    @Test
+    public void testInvalidExpressions() {
+        for (String expression : Arrays.asList("", "$.a", "$.a == ", "$.a = 1", "$.a == 'x'", "$.a == \"x",
+                "$..a == 1", "$.a < true", "$.a in ()", "($.a == 1", "$.a == 1 $.b == 2", "$.a == 1 or")) {
+            try {
+                FilterExpression.compile(expression, new ArrayList<JsonBytePath>());
+                fail("accepted " + expression);
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+    }
+
+    @Test
+    public void testSharedPaths() {
+        List<JsonBytePath> paths = new ArrayList<JsonBytePath>();
+        FilterExpression.compile("$.a == 1 or $['a'] == 2 or $.b == 3", paths);
+        assertEquals(2, paths.size());
+    }
+
+    @Test
+    public void testDropsMatchingEvents() {
+        FilterInterceptor interceptor = getInterceptor("$.action == \"heartbeat\"");
+        assertEquals(Arrays.asList("{\"action\":\"click\"}", "{}"),
+                filter(interceptor, "{\"action\":\"heartbeat\"}", "{\"action\":\"click\"}", "{}",
+                        "{\"n\":1, \"action\" : \"heartbeat\"}"));
+        assertEquals(4, interceptor.counter.getEventProcessedCount());
+        assertEquals(2, interceptor.counter.getEventDroppedCount());
+    }
+
+    @Test
+    public void testKeepsMatchingEvents() {
+        Map<String, String> properties = new HashMap<String, String>();
+        properties.put("expression", "$.level in (\"warn\", \"error\")");
+        properties.put("excludeEvents", "false");
+        FilterInterceptor interceptor = getInterceptor(properties);
+        assertEquals(Arrays.asList("{\"level\":\"error\"}"),
+                filter(interceptor, "{\"level\":\"debug\"}", "{\"level\":\"error\"}", "{}"));
+    }
+
+    @Test
+    public void testMalformedBodies() {
+        FilterInterceptor interceptor = getInterceptor("$.missing == 1");
+        assertEquals(Arrays.asList("{\"a\":"), filter(interceptor, "{\"a\":"));
+        assertEquals(1, interceptor.counter.getEventMalformedCount());
+
+        Map<String, String> properties = new HashMap<String, String>();
+        properties.put("expression", "$.missing == 1");
+        properties.put("onFailure", "drop");
+        assertTrue(filter(getInterceptor(properties), "[1,").isEmpty());
+    }
+
+    @Test
+    public void testMalformedNumbers() {
+        FilterInterceptor interceptor = getInterceptor("$.ms > 100");
+        String[] bodies = {"{\"ms\":12abc}", "{\"ms\":-}", "{\"ms\":1e}", "{\"ms\":01}", "{\"ms\":1.}"};
+        assertEquals(Arrays.asList(bodies), filter(interceptor, bodies));
+        assertEquals(bodies.length, interceptor.counter.getEventMalformedCount());
+        assertEquals(Arrays.asList("{\"ms\":-1e3}"), filter(interceptor, "{\"ms\":1.5e3}", "{\"ms\":-1e3}"));
+
+        Map<String, String> properties = new HashMap<String, String>();
+        properties.put("expression", "$.ms > 100");
+        properties.put("onFailure", "tag");
+        Event event = getInterceptor(properties).intercept(getEvent("{\"ms\":12abc}"));
+        assertEquals(FilterInterceptor.REASON_MALFORMED, event.getHeaders().get("interceptor_error"));
+    }
+}
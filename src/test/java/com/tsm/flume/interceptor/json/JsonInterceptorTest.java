@@ -13,6 +13,7 @@ import org.junit.runner.RunWith;
 import org.junit.runners.JUnit4;
 
 import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNull;
 import static junit.framework.Assert.assertTrue;
 
 @RunWith(JUnit4.class)
@@ -23,6 +24,7 @@ public class JsonInterceptorTest {
     }
 
     private JsonInterceptor getInterceptor(Context context) {
+        context.put("metrics", "true");
         JsonInterceptor.Builder interceptorBuilder = new JsonInterceptor.Builder();
         interceptorBuilder.configure(context);
 
@@ -57,9 +59,9 @@ public class JsonInterceptorTest {
     private Context getDefaultContext(String headerName, String headerJSONPath) {
         Context context = new Context();
         context.put("serializers", "s1");
-        context.put("serializers.s1.name", "s1");
         if (!headerName.isEmpty()) {
             context.put("name", headerName);
+            context.put("serializers.s1.name", headerName);
         }
         if (!headerJSONPath.isEmpty()) {
             context.put("jsonpath", headerJSONPath);
@@ -250,7 +252,7 @@ public class JsonInterceptorTest {
 
         Context context = getDefaultContext(headerName, headerJSONPath);
         context.put("serializers.s1.type", "com.tsm.flume.interceptor.json.JsonInterceptorDateStrSerializer");
-        context.put("serializers.s1.name", "test-date");
+        context.put("serializers.s1.name", headerName);
         context.put("serializers.s1.pattern", "yyyy-MM-dd'T'HH:mm:ssZ");
         context.put("serializers.s1.patternTarget", "yyyyMMdd");
         context.put("serializers.s1.defaultValue", "unknow");
@@ -273,4 +275,412 @@ public class JsonInterceptorTest {
                 interceptedEvent.getHeaders().get(headerName));
     }
 
+
+    @Test
+    public void testSingleSerializerName() {
+
+        Context context = getDefaultContext("testName", "$.published");
+        context.put("serializers.s1.type", "com.tsm.flume.interceptor.json.JsonInterceptorDateStrSerializer");
+        context.put("serializers.s1.name", "day");
+        context.put("serializers.s1.pattern", "yyyy-MM-dd'T'HH:mm:ssZ");
+        context.put("serializers.s1.patternTarget", "yyyy-MM-dd");
+
+        Event interceptedEvent = getInterceptor(context).intercept(
+                getEvent(new HashMap<String, String>(), getDefaultEventBody()));
+
+        assertEquals("2015-04-23", interceptedEvent.getHeaders().get("day"));
+        assertNull(interceptedEvent.getHeaders().get("testName"));
+
+        // without its own name, the serializer writes the path's header
+        context = new Context();
+        context.put("paths", "p1");
+        context.put("paths.p1.name", "timestamp");
+        context.put("paths.p1.jsonpath", "$.published");
+        context.put("paths.p1.serializers", "dt");
+        context.put("paths.p1.serializers.dt.type", "com.tsm.flume.interceptor.json.JsonInterceptorMillisSerializer");
+        context.put("paths.p1.serializers.dt.pattern", "yyyy-MM-dd'T'HH:mm:ssZ");
+
+        interceptedEvent = getInterceptor(context).intercept(
+                getEvent(new HashMap<String, String>(), getDefaultEventBody()));
+
+        assertEquals("1429753029000", interceptedEvent.getHeaders().get("timestamp"));
+    }
+
+    @Test
+    public void testMultiplePaths() {
+
+        Map<String, String> headers = new HashMap<String, String>(1);
+        headers.put("existingKey", "existingValue");
+
+        String body = getDefaultEventBody();
+        Event event = getEvent(headers, body);
+
+        Context context = new Context();
+        context.put("paths", "p1 p2 p3");
+        context.put("paths.p1.name", "id");
+        context.put("paths.p1.jsonpath", "$.pageViewId");
+        context.put("paths.p2.name", "timestamp");
+        context.put("paths.p2.jsonpath", "$.published");
+        context.put("paths.p2.serializers", "dt");
+        context.put("paths.p2.serializers.dt.type", "com.tsm.flume.interceptor.json.JsonInterceptorMillisSerializer");
+        context.put("paths.p2.serializers.dt.pattern", "yyyy-MM-dd'T'HH:mm:ssZ");
+        context.put("paths.p3.name", "v2");
+        context.put("paths.p3.jsonpath", "$.params.v2");
+
+        JsonInterceptor interceptor = getInterceptor(context);
+
+        Event interceptedEvent = interceptor.intercept(event);
+
+        assertEquals("Event body should not have been altered",
+                body,
+                new String(interceptedEvent.getBody()));
+        assertEquals("4eae0122-052d-41ff-ac5c-120279891184", interceptedEvent.getHeaders().get("id"));
+        assertEquals("1429753029000", interceptedEvent.getHeaders().get("timestamp"));
+        assertEquals("2", interceptedEvent.getHeaders().get("v2"));
+        assertEquals("existingValue", interceptedEvent.getHeaders().get("existingKey"));
+    }
+
+    @Test
+    public void testMultiplePathsWithMissingPath() {
+
+        Map<String, String> headers = new HashMap<String, String>(1);
+
+        String body = getDefaultEventBody();
+        Event event = getEvent(headers, body);
+
+        Context context = new Context();
+        context.put("paths", "p1 p2 p3");
+        context.put("paths.p1.name", "missing");
+        context.put("paths.p1.jsonpath", "$.notExists");
+        context.put("paths.p2.name", "params");
+        context.put("paths.p2.jsonpath", "$.params");
+        context.put("paths.p3.name", "published");
+        context.put("paths.p3.jsonpath", "$.published");
+
+        JsonInterceptor interceptor = getInterceptor(context);
+
+        Event interceptedEvent = interceptor.intercept(event);
+
+        assertTrue("Missing path should not add a header",
+                !interceptedEvent.getHeaders().containsKey("missing"));
+        assertTrue("Non-scalar path should not add a header",
+                !interceptedEvent.getHeaders().containsKey("params"));
+        assertEquals("2015-04-23T01:37:09+00:00", interceptedEvent.getHeaders().get("published"));
+    }
+
+    @Test(expected = java.lang.IllegalArgumentException.class)
+    public void testMissedJSONPathInPathList() {
+
+        Context context = new Context();
+        context.put("paths", "p1 p2");
+        context.put("paths.p1.name", "id");
+        context.put("paths.p1.jsonpath", "$.pageViewId");
+        context.put("paths.p2.name", "timestamp");
+
+        getInterceptor(context);
+    }
+
+
+    @Test
+    public void testStreamingAndTreeEnginesAgree() {
+
+        String body = getDefaultEventBody();
+        String[] jsonPaths = {"$.pageViewId", "$.published", "$.params.v3", "$['params']['v1']"};
+
+        for (String streaming : new String[]{"true", "false"}) {
+            Context context = new Context();
+            context.put("streaming", streaming);
+            context.put("paths", "p0 p1 p2 p3");
+            for (int i = 0; i < jsonPaths.length; i++) {
+                context.put("paths.p" + i + ".name", "h" + i);
+                context.put("paths.p" + i + ".jsonpath", jsonPaths[i]);
+            }
+
+            JsonInterceptor interceptor = getInterceptor(context);
+            Event interceptedEvent = interceptor.intercept(getEvent(new HashMap<String, String>(), body));
+
+            assertEquals("4eae0122-052d-41ff-ac5c-120279891184", interceptedEvent.getHeaders().get("h0"));
+            assertEquals("2015-04-23T01:37:09+00:00", interceptedEvent.getHeaders().get("h1"));
+            assertEquals("3", interceptedEvent.getHeaders().get("h2"));
+            assertEquals("1", interceptedEvent.getHeaders().get("h3"));
+        }
+    }
+
+    @Test
+    public void testShapeCache() {
+
+        Context context = new Context();
+        context.put("shapeCacheSize", "2");
+        context.put("paths", "p0 p1 p2");
+        context.put("paths.p0.name", "h0");
+        context.put("paths.p0.jsonpath", "$.pageViewId");
+        context.put("paths.p1.name", "h1");
+        context.put("paths.p1.jsonpath", "$.published");
+        context.put("paths.p2.name", "h2");
+        context.put("paths.p2.jsonpath", "$.params.v2");
+        JsonInterceptor interceptor = getInterceptor(context);
+
+        String[] bodies = {
+                getDefaultEventBody(),
+                getDefaultEventBody().replace("\"v2\":\"2\"", "\"v2\":\"22\"").replace("4eae0122", "x"),
+                "{\"published\":\"p\",\"params\":{\"v2\":\"2\"},\"pageViewId\":\"id\"}",
+                getDefaultEventBody(),
+        };
+        String[][] expected = {
+                {"4eae0122-052d-41ff-ac5c-120279891184", "2015-04-23T01:37:09+00:00", "2"},
+                {"x-052d-41ff-ac5c-120279891184", "2015-04-23T01:37:09+00:00", "22"},
+                {"id", "p", "2"},
+                {"4eae0122-052d-41ff-ac5c-120279891184", "2015-04-23T01:37:09+00:00", "2"},
+        };
+        for (int n = 0; n < bodies.length; n++) {
+            Event interceptedEvent = interceptor.intercept(getEvent(new HashMap<String, String>(), bodies[n]));
+            for (int h = 0; h < 3; h++) {
+                assertEquals(expected[n][h], interceptedEvent.getHeaders().get("h" + h));
+            }
+        }
+    }
+
+    @Test
+    public void testInternedHeaders() {
+
+        Context context = new Context();
+        context.put("paths", "p1 p2");
+        context.put("paths.p1.name", "v1");
+        context.put("paths.p1.jsonpath", "$.params.v1");
+        context.put("paths.p1.intern", "16");
+        context.put("paths.p2.name", "day");
+        context.put("paths.p2.jsonpath", "$.published");
+        context.put("paths.p2.intern", "16");
+        context.put("paths.p2.serializers", "dt");
+        context.put("paths.p2.serializers.dt.type", "com.tsm.flume.interceptor.json.JsonInterceptorDateStrSerializer");
+        context.put("paths.p2.serializers.dt.pattern", "yyyy-MM-dd'T'HH:mm:ssZ");
+        context.put("paths.p2.serializers.dt.patternTarget", "yyyyMMdd");
+        JsonInterceptor interceptor = getInterceptor(context);
+
+        Event first = interceptor.intercept(getEvent(new HashMap<String, String>(), getDefaultEventBody()));
+        Event second = interceptor.intercept(getEvent(new HashMap<String, String>(), getDefaultEventBody()));
+        assertEquals("1", second.getHeaders().get("v1"));
+        assertEquals("20150423", second.getHeaders().get("day"));
+        assertTrue(first.getHeaders().get("v1") == second.getHeaders().get("v1"));
+        assertTrue(first.getHeaders().get("day") == second.getHeaders().get("day"));
+        assertEquals(4, interceptor.getCounter().getEventExtractedCount());
+    }
+
+    @Test
+    public void testSerializerChain() {
+
+        String body = getDefaultEventBody();
+        Event event = getEvent(new HashMap<String, String>(), body);
+
+        Context context = new Context();
+        context.put("paths", "p1");
+        context.put("paths.p1.name", "published");
+        context.put("paths.p1.jsonpath", "$.published");
+        context.put("paths.p1.serializers", "raw millis day");
+        context.put("paths.p1.serializers.millis.name", "timestamp");
+        context.put("paths.p1.serializers.millis.type", "com.tsm.flume.interceptor.json.JsonInterceptorMillisSerializer");
+        context.put("paths.p1.serializers.millis.pattern", "yyyy-MM-dd'T'HH:mm:ssZ");
+        context.put("paths.p1.serializers.day.name", "day");
+        context.put("paths.p1.serializers.day.type", "com.tsm.flume.interceptor.json.JsonInterceptorDateStrSerializer");
+        context.put("paths.p1.serializers.day.pattern", "yyyy-MM-dd'T'HH:mm:ssZ");
+        context.put("paths.p1.serializers.day.patternTarget", "yyyy-MM-dd");
+
+        JsonInterceptor interceptor = getInterceptor(context);
+        Event interceptedEvent = interceptor.intercept(event);
+
+        assertEquals("2015-04-23T01:37:09+00:00", interceptedEvent.getHeaders().get("published"));
+        assertEquals("1429753029000", interceptedEvent.getHeaders().get("timestamp"));
+        assertEquals("2015-04-23", interceptedEvent.getHeaders().get("day"));
+        assertEquals(3, interceptor.getCounter().getEventExtractedCount());
+    }
+
+    @Test
+    public void testSharedIntermediateIsParsedOnce() {
+
+        CountingSerializer.parses = 0;
+        Context context = new Context();
+        context.put("paths", "p1");
+        context.put("paths.p1.name", "v");
+        context.put("paths.p1.jsonpath", "$.params.v2");
+        context.put("paths.p1.serializers", "a b");
+        context.put("paths.p1.serializers.a.name", "a");
+        context.put("paths.p1.serializers.a.type", CountingSerializer.class.getName());
+        context.put("paths.p1.serializers.b.name", "b");
+        context.put("paths.p1.serializers.b.type", CountingSerializer.class.getName());
+
+        JsonInterceptor interceptor = getInterceptor(context);
+        Event interceptedEvent = interceptor.intercept(getEvent(new HashMap<String, String>(), getDefaultEventBody()));
+
+        assertEquals("#2", interceptedEvent.getHeaders().get("a"));
+        assertEquals("#2", interceptedEvent.getHeaders().get("b"));
+        assertEquals(1, CountingSerializer.parses);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testSerializersWritingTheSameHeader() {
+
+        Context context = new Context();
+        context.put("name", "v");
+        context.put("jsonpath", "$.params.v2");
+        context.put("serializers", "a b");
+        getInterceptor(context);
+    }
+
+    @Test
+    public void testEngines() {
+
+        Context context = new Context();
+        context.put("paths", "id ts v2 all");
+        context.put("paths.id.name", "id");
+        context.put("paths.id.jsonpath", "$.pageViewId");
+        context.put("paths.ts.name", "timestamp");
+        context.put("paths.ts.jsonpath", "$.published");
+        context.put("paths.ts.serializers", "dt");
+        context.put("paths.ts.serializers.dt.type", "com.tsm.flume.interceptor.json.JsonInterceptorMillisSerializer");
+        context.put("paths.ts.serializers.dt.pattern", "yyyy-MM-dd'T'HH:mm:ssZ");
+        context.put("paths.v2.name", "v2");
+        context.put("paths.v2.jsonpath", "$.params.v2");
+        context.put("paths.all.name", "all");
+        context.put("paths.all.jsonpath", "$.params");
+
+        for (String engine : new String[]{"bytes", "gson", "gson-stream", "jackson"}) {
+            context.put("engine", engine);
+            JsonInterceptor interceptor = getInterceptor(context);
+            assertEquals(engine, interceptor.getEngine().getName());
+            Event interceptedEvent = interceptor.intercept(getEvent(new HashMap<String, String>(), getDefaultEventBody()));
+
+            assertEquals(engine, "4eae0122-052d-41ff-ac5c-120279891184", interceptedEvent.getHeaders().get("id"));
+            assertEquals(engine, "1429753029000", interceptedEvent.getHeaders().get("timestamp"));
+            assertEquals(engine, "2", interceptedEvent.getHeaders().get("v2"));
+            assertNull(engine, interceptedEvent.getHeaders().get("all"));
+
+            interceptor.intercept(getEvent(new HashMap<String, String>(), getInvalidEventBody() + "\"x\":"));
+            assertEquals(engine, 1, interceptor.getCounter().getEventMalformedCount());
+        }
+    }
+
+    @Test
+    public void testMaxScanBytes() {
+
+        StringBuilder body = new StringBuilder("{\"id\":\"a1\",\"padding\":\"");
+        for (int i = 0; i < 1000; i++) {
+            body.append("0123456789");
+        }
+        body.append("\",\"late\":\"z\",\"list\":[1,2]}");
+
+        Context context = new Context();
+        context.put("paths", "id late list");
+        context.put("paths.id.name", "id");
+        context.put("paths.id.jsonpath", "$.id");
+        context.put("paths.id.maxScanBytes", "64");
+        context.put("paths.late.name", "late");
+        context.put("paths.late.jsonpath", "$.late");
+        context.put("paths.late.maxScanBytes", "64");
+        context.put("paths.list.name", "list");
+        context.put("paths.list.jsonpath", "$.list[*]");
+        context.put("paths.list.maxScanBytes", "64");
+
+        JsonInterceptor interceptor = getInterceptor(context);
+        Event interceptedEvent = interceptor.intercept(getEvent(new HashMap<String, String>(), body.toString()));
+        assertEquals("a1", interceptedEvent.getHeaders().get("id"));
+        assertNull(interceptedEvent.getHeaders().get("late"));
+        assertNull(interceptedEvent.getHeaders().get("list"));
+        assertEquals(2, interceptor.getCounter().getEventMissingCount());
+        assertEquals(0, interceptor.getCounter().getEventMalformedCount());
+
+        context.put("paths.late.maxScanBytes", "0");
+        interceptedEvent = getInterceptor(context).intercept(getEvent(new HashMap<String, String>(), body.toString()));
+        assertEquals("z", interceptedEvent.getHeaders().get("late"));
+    }
+
+    @Test
+    public void testMaxScanBytesWithEngines() {
+
+        StringBuilder body = new StringBuilder("{\"id\":\"a1\",\"padding\":\"");
+        for (int i = 0; i < 1000; i++) {
+            body.append("0123456789");
+        }
+        // malformed past the limit
+        body.append("\",\"late\":");
+
+        Context context = new Context();
+        context.put("paths", "id late");
+        context.put("paths.id.name", "id");
+        context.put("paths.id.jsonpath", "$.id");
+        context.put("paths.id.maxScanBytes", "64");
+        context.put("paths.late.name", "late");
+        context.put("paths.late.jsonpath", "$.late");
+        context.put("paths.late.maxScanBytes", "64");
+
+        for (String engine : new String[]{"bytes", "gson", "gson-stream", "jackson"}) {
+            context.put("engine", engine);
+            JsonInterceptor interceptor = getInterceptor(context);
+            Event interceptedEvent = interceptor.intercept(getEvent(new HashMap<String, String>(), body.toString()));
+            assertTrue(engine, interceptedEvent != null);
+            assertNull(engine, interceptedEvent.getHeaders().get("late"));
+            assertEquals(engine, 0, interceptor.getCounter().getEventMalformedCount());
+            if (engine.equals("bytes")) {
+                assertEquals("a1", interceptedEvent.getHeaders().get("id"));
+            } else {
+                // the other engines parse whole bodies, so they skip bodies longer than every limit
+                assertNull(engine, interceptedEvent.getHeaders().get("id"));
+                assertEquals(engine, 2, interceptor.getCounter().getEventMissingCount());
+            }
+        }
+    }
+
+    @Test
+    public void testFailurePolicies() {
+
+        Context context = getDefaultContext("id", "$.pageViewId");
+        context.put("onFailure", "tag");
+        JsonInterceptor interceptor = getInterceptor(context);
+        Event tagged = interceptor.intercept(getEvent(new HashMap<String, String>(), "{\"pageViewId\":"));
+        assertEquals(JsonInterceptor.REASON_MALFORMED, tagged.getHeaders().get("interceptor_error"));
+        tagged = interceptor.intercept(getEvent(new HashMap<String, String>(), "{\"pageViewId\":{}}"));
+        assertEquals(JsonInterceptor.REASON_NOT_SCALAR, tagged.getHeaders().get("interceptor_error"));
+
+        context.put("onFailure", "drop");
+        interceptor = getInterceptor(context);
+        java.util.List<Event> events = new java.util.ArrayList<Event>();
+        events.add(getEvent(new HashMap<String, String>(), getDefaultEventBody()));
+        events.add(getEvent(new HashMap<String, String>(), "{\"pageViewId\":"));
+        java.util.List<Event> intercepted = interceptor.intercept(events);
+        assertEquals(1, intercepted.size());
+        assertEquals("4eae0122-052d-41ff-ac5c-120279891184", intercepted.get(0).getHeaders().get("id"));
+        assertEquals(1, interceptor.getCounter().getEventDroppedCount());
+    }
+
+    public static class CountingSerializer implements JsonInterceptorSharedSerializer {
+        static int parses;
+
+        @Override
+        public Object getIntermediateKey() {
+            return "counting";
+        }
+
+        @Override
+        public Object parse(String value) {
+            parses++;
+            return "#" + value;
+        }
+
+        @Override
+        public String serialize(String value, Object intermediate) {
+            return (String) intermediate;
+        }
+
+        @Override
+        public String serialize(String value) {
+            return (String) parse(value);
+        }
+
+        @Override
+        public void configure(Context context) {
+        }
+
+        @Override
+        public void configure(org.apache.flume.conf.ComponentConfiguration conf) {
+        }
+    }
 }
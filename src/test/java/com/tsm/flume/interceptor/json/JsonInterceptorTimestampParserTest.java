@@ -0,0 +1,110 @@
+package com.tsm.flume.interceptor.json;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.joda.time.format.DateTimeFormat;
+import org.joda.time.format.DateTimeFormatter;
+
+import java.util.Random;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+import static junit.framework.Assert.fail;
+
+@RunWith(JUnit4.class)
+public class JsonInterceptorTimestampParserTest {
+
+    private static final String[] ISO_PATTERNS = {
+            "yyyy-MM-dd'T'HH:mm:ssZ",
+            "yyyy-MM-dd'T'HH:mm:ssZZ",
+            "yyyy-MM-dd'T'HH:mm:ss.SSSZ",
+            "yyyy-MM-dd'T'HH:mm:ss.SSSZZ",
+            "yyyy-MM-dd HH:mm:ssZ"
+    };
+
+    private void assertSameAsJoda(String pattern, String text) {
+        DateTimeFormatter joda = DateTimeFormat.forPattern(pattern);
+        JsonInterceptorTimestampParser parser = new JsonInterceptorTimestampParser(pattern);
+        Long expected = null;
+        try {
+            expected = joda.parseMillis(text);
+        } catch (IllegalArgumentException e) {
+            // expected to fail below as well
+        }
+        for (int i = 0; i < 2; i++) {
+            try {
+                long actual = parser.parseMillis(text);
+                assertEquals(pattern + " " + text, expected, Long.valueOf(actual));
+            } catch (IllegalArgumentException e) {
+                if (expected != null) {
+                    fail(pattern + " " + text + " should parse to " + expected);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testFastPathSelection() {
+        for (String pattern : ISO_PATTERNS) {
+            assertTrue(pattern, new JsonInterceptorTimestampParser(pattern).isFastPath());
+        }
+        assertFalse(new JsonInterceptorTimestampParser("yyyyMMdd").isFastPath());
+        assertFalse(new JsonInterceptorTimestampParser("yyyy-MM-dd'T'HH:mm:ss").isFastPath());
+        assertFalse(new JsonInterceptorTimestampParser("yyyy-MM-dd'T'HH:mm:ss'Z'").isFastPath());
+    }
+
+    @Test
+    public void testKnownValues() {
+        JsonInterceptorTimestampParser parser = new JsonInterceptorTimestampParser("yyyy-MM-dd'T'HH:mm:ssZ");
+        assertEquals(1429753029000L, parser.parseMillis("2015-04-23T01:37:09+00:00"));
+        assertEquals(1429753029000L - 7200000L, parser.parseMillis("2015-04-23T01:37:09+02:00"));
+        assertEquals(1429753029000L + 19800000L, parser.parseMillis("2015-04-23T01:37:09-0530"));
+        assertEquals(1429753029000L, parser.parseMillis("2015-04-23T01:37:09Z"));
+    }
+
+    @Test
+    public void testRandomInstantsMatchJoda() {
+        Random random = new Random(42);
+        String[] offsets = {"+00:00", "+02:00", "-05:30", "+1245", "-0800", "Z", "+14:00", "-11:59"};
+        for (String pattern : ISO_PATTERNS) {
+            for (int i = 0; i < 2000; i++) {
+                long millis = (long) (random.nextDouble() * 4102444800000L) - 2208988800000L;
+                String text = new DateTime(millis, DateTimeZone.UTC).toString(
+                        pattern.contains(".SSS") ? "yyyy-MM-dd'T'HH:mm:ss.SSS" : "yyyy-MM-dd'T'HH:mm:ss");
+                if (pattern.contains(" ")) {
+                    text = text.replace('T', ' ');
+                }
+                assertSameAsJoda(pattern, text + offsets[i % offsets.length]);
+            }
+        }
+    }
+
+    @Test
+    public void testEdgeCasesMatchJoda() {
+        String[] inputs = {
+                "2016-02-29T23:59:59+00:00", "2015-02-29T00:00:00+00:00", "2015-13-01T00:00:00+00:00",
+                "2015-04-31T00:00:00+00:00", "2015-04-23T24:00:00+00:00", "2015-04-23T01:60:00+00:00",
+                "2015-04-23T01:37:09", "2015-04-23T01:37:09+2:00", "2015-04-23T01:37:09+02", "2015-04-23T01:37:09z",
+                "2015-04-23T01:37:09+02:00:30", "2015-4-23T01:37:09+02:00", "20150423T013709+0200",
+                "2015-04-23T01:37:09.5+02:00", "2015-04-23T01:37:09.123+02:00", "2015-04-23T01:37:09.1234+02:00",
+                "0000-01-01T00:00:00+00:00", "1969-12-31T23:59:59-00:00", "2015-04-23 01:37:09+02:00",
+                "2015-04-23T01:37:09+24:00", "2015-04-23T01:37:09 +02:00", "", "garbage"
+        };
+        for (String pattern : ISO_PATTERNS) {
+            for (String input : inputs) {
+                assertSameAsJoda(pattern, input);
+            }
+        }
+    }
+
+    @Test
+    public void testNonIsoPatternsUseJoda() {
+        assertSameAsJoda("yyyyMMddHHmmss", "20150423013709");
+        assertSameAsJoda("dd/MMM/yyyy:HH:mm:ss Z", "23/Apr/2015:01:37:09 +0200");
+    }
+}
@@ -0,0 +1,108 @@
+package com.tsm.flume.interceptor.minifyjson;
+
+import com.google.common.base.Charsets;
+import com.google.gson.JsonParser;
+import org.apache.flume.Context;
+import org.apache.flume.Event;
+import org.apache.flume.event.SimpleEvent;
+import org.apache.flume.interceptor.Interceptor;
+
+import java.util.HashMap;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertSame;
+
+@RunWith(JUnit4.class)
+public class MinifyJsonInterceptorTest {
+
+    private MinifyJsonInterceptor getInterceptor(boolean validate, String onFailure) {
+        Context context = new Context();
+        context.put("validate", Boolean.toString(validate));
+        context.put("metrics", "true");
+        if (onFailure != null) {
+            context.put("onFailure", onFailure);
+        }
+        MinifyJsonInterceptor.Builder builder = new MinifyJsonInterceptor.Builder();
+        builder.configure(context);
+        MinifyJsonInterceptor interceptor = (MinifyJsonInterceptor) builder.build();
+        interceptor.initialize();
+        return interceptor;
+    }
+
+    private Event getEvent(String body) {
+        Event event = new SimpleEvent();
+        event.setBody(body.getBytes(Charsets.UTF_8));
+        event.setHeaders(new HashMap<String, String>());
+        return event;
+    }
+
+    private String minify(Interceptor interceptor, String body) {
+        return new String(interceptor.intercept(getEvent(body)).getBody(), Charsets.UTF_8);
+    }
+
+    @Test
+    public void testMinify() {
+        Interceptor interceptor = getInterceptor(false, null);
+        String body = "{\n  \"action\" : \"page view\",\n  \"params\" : {\n    \"v\" : [ 1, -2.5e3, true, null ]\n  }\n}\n";
+        String minified = minify(interceptor, body);
+        assertEquals("{\"action\":\"page view\",\"params\":{\"v\":[1,-2.5e3,true,null]}}", minified);
+        assertEquals(new JsonParser().parse(body), new JsonParser().parse(minified));
+    }
+
+    @Test
+    public void testStringsAreCopied() {
+        Interceptor interceptor = getInterceptor(false, null);
+        assertEquals("{\"a\":\" x \\\" { \\\\\",\"b\":\"\\u0020\\n\"}",
+                minify(interceptor, "{ \"a\" : \" x \\\" { \\\\\" , \"b\" : \"\\u0020\\n\" }"));
+        assertEquals("[\"été\",\"日本\"]", minify(interceptor, "[ \"été\" ,\t\"日本\" ]"));
+    }
+
+    @Test
+    public void testCompactBodyIsNotCopied() {
+        MinifyJsonInterceptor interceptor = getInterceptor(false, null);
+        Event event = getEvent("{\"a\":\"b c\",\"d\":[1,2]}");
+        byte[] body = event.getBody();
+        assertSame(body, interceptor.intercept(event).getBody());
+        assertEquals(0, interceptor.counter.getEventRewrittenCount());
+
+        minify(interceptor, "{ \"a\": 1 }");
+        assertEquals(1, interceptor.counter.getEventRewrittenCount());
+        assertEquals(2, interceptor.counter.getEventProcessedCount());
+    }
+
+    @Test
+    public void testMalformedBodyIsLeftAlone() {
+        MinifyJsonInterceptor interceptor = getInterceptor(false, null);
+        assertEquals("{ \"a\": \"open }", minify(interceptor, "{ \"a\": \"open }"));
+        assertEquals("[ 1 2 ]", minify(interceptor, "[ 1 2 ]"));
+        assertEquals("{ \"a\": tr ue }", minify(interceptor, "{ \"a\": tr ue }"));
+        assertEquals(3, interceptor.counter.getEventMalformedCount());
+        assertEquals(0, interceptor.counter.getEventRewrittenCount());
+    }
+
+    @Test
+    public void testValidate() {
+        MinifyJsonInterceptor interceptor = getInterceptor(true, "tag");
+        Event event = interceptor.intercept(getEvent("{ \"a\": [1, 2,] }"));
+        assertEquals("{ \"a\": [1, 2,] }", new String(event.getBody(), Charsets.UTF_8));
+        assertEquals(MinifyJsonInterceptor.REASON_MALFORMED, event.getHeaders().get("interceptor_error"));
+        assertEquals("[1,2]", minify(interceptor, " [ 1 , 2 ] "));
+        assertEquals(1, interceptor.counter.getEventMalformedCount());
+
+        assertNull(getInterceptor(true, "drop").intercept(getEvent("{ \"a\" ")));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testCharsetMustBeAsciiCompatible() {
+        Context context = new Context();
+        context.put("charset", "UTF-16");
+        MinifyJsonInterceptor.Builder builder = new MinifyJsonInterceptor.Builder();
+        builder.configure(context);
+        builder.build();
+    }
+}
@@ -0,0 +1,122 @@
+package com.tsm.flume.interceptor.parsejson;
+
+import com.google.common.base.Charsets;
+import com.google.gson.JsonParser;
+import org.apache.flume.Context;
+import org.apache.flume.Event;
+import org.apache.flume.event.SimpleEvent;
+import org.apache.flume.interceptor.Interceptor;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import static junit.framework.Assert.assertEquals;
+
+@RunWith(JUnit4.class)
+public class ParseJsonInterceptorTest {
+
+    private Interceptor getInterceptor(boolean splice, String targetCharset) {
+        Context context = new Context();
+        context.put("headerName", "host");
+        context.put("useHeaderName", "true");
+        context.put("fixedValue", "unknown");
+        context.put("key", "host");
+        context.put("splice", Boolean.toString(splice));
+        if (targetCharset != null) {
+            context.put("target_charset", targetCharset);
+        }
+        ParseJsonInterceptor.Builder builder = new ParseJsonInterceptor.Builder();
+        builder.configure(context);
+        Interceptor interceptor = builder.build();
+        interceptor.initialize();
+        return interceptor;
+    }
+
+    private Event getEvent(String body, String host) {
+        Map<String, String> headers = new HashMap<String, String>();
+        if (host != null) {
+            headers.put("host", host);
+        }
+        Event event = new SimpleEvent();
+        event.setBody(body.getBytes(Charsets.UTF_8));
+        event.setHeaders(headers);
+        return event;
+    }
+
+    private String intercept(boolean splice, String body, String host) {
+        Event event = getInterceptor(splice, null).intercept(getEvent(body, host));
+        return new String(event.getBody(), Charsets.UTF_8);
+    }
+
+    private void assertSameAsGson(String body, String host) {
+        String spliced = intercept(true, body, host);
+        String reserialized = intercept(false, body, host);
+        assertEquals(body, new JsonParser().parse(reserialized), new JsonParser().parse(spliced));
+    }
+
+    @Test
+    public void testSpliceAppendsMember() {
+        assertEquals("{\"a\":1,\"host\":\"agent-01\"}", intercept(true, "{\"a\":1}", "agent-01"));
+        assertEquals("{ \"a\" : [1, 2] ,\"host\":\"agent-01\"}\n", intercept(true, "{ \"a\" : [1, 2] }\n", "agent-01"));
+    }
+
+    @Test
+    public void testSpliceEmptyObject() {
+        assertEquals("{\"host\":\"agent-01\"}", intercept(true, "{}", "agent-01"));
+        assertEquals("{ \"host\":\"agent-01\"}", intercept(true, "{ }", "agent-01"));
+    }
+
+    @Test
+    public void testSpliceReplacesExistingKey() {
+        assertEquals("{\"host\":\"agent-01\",\"a\":{\"host\":\"nested\"}}",
+                intercept(true, "{\"host\":{\"old\":true},\"a\":{\"host\":\"nested\"}}", "agent-01"));
+    }
+
+    @Test
+    public void testSpliceEscapesValue() {
+        String host = "a\"b\\c\n\u0001 中";
+        assertEquals(intercept(false, "{\"a\":1}", host), intercept(true, "{\"a\":1}", host));
+    }
+
+    @Test
+    public void testSpliceMatchesGson() {
+        assertSameAsGson("{\"pageViewId\":\"4eae0122\",\"params\":{\"v1\":\"1\"}}", "agent-01");
+        assertSameAsGson("{\"pageViewId\":\"4eae0122\",\"host\":null}", "agent-01");
+        assertSameAsGson("{\"h\\u006fst\":\"escaped key\"}", "agent-01");
+        assertSameAsGson("{\"a\":1}", null);
+        assertSameAsGson("{\"host\":1,\"host\":2}", "agent-01");
+        assertSameAsGson("{\"k\":\"中文\"}", "中");
+    }
+
+    @Test
+    public void testSpliceTranscodes() {
+        Event event = getInterceptor(true, "UTF-16BE").intercept(getEvent("{\"k\":\"中\"}", "agent-01"));
+        assertEquals("{\"k\":\"中\",\"host\":\"agent-01\"}", new String(event.getBody(), Charsets.UTF_16BE));
+    }
+
+    @Test
+    public void testEngines() {
+        String body = "{ \"a\" : [1, {\"b\":-2.5}], \"host\":\"old\", \"s\":\"\\u00e9\" }";
+        for (String engine : new String[]{"bytes", "gson", "gson-stream", "jackson"}) {
+            Context context = new Context();
+            context.put("headerName", "host");
+            context.put("useHeaderName", "true");
+            context.put("key", "host");
+            context.put("engine", engine);
+            ParseJsonInterceptor.Builder builder = new ParseJsonInterceptor.Builder();
+            builder.configure(context);
+            Event event = builder.build().intercept(getEvent(body, "agent-01"));
+            assertEquals(engine, new JsonParser().parse(intercept(false, body, "agent-01")),
+                    new JsonParser().parse(new String(event.getBody(), Charsets.UTF_8)));
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testNonObjectStillFails() {
+        intercept(true, "[1,2]", "agent-01");
+    }
+}
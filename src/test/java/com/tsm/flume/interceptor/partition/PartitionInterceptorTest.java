@@ -0,0 +1,142 @@
+package com.tsm.flume.interceptor.partition;
+
+import com.google.common.base.Charsets;
+import com.tsm.flume.interceptor.common.ByteHash;
+import org.apache.flume.Context;
+import org.apache.flume.Event;
+import org.apache.flume.event.SimpleEvent;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertTrue;
+
+@RunWith(JUnit4.class)
+public class PartitionInterceptorTest {
+
+    private PartitionInterceptor getInterceptor(Map<String, String> properties) {
+        Context context = new Context(properties);
+        context.put("metrics", "true");
+        PartitionInterceptor.Builder builder = new PartitionInterceptor.Builder();
+        builder.configure(context);
+        PartitionInterceptor interceptor = (PartitionInterceptor) builder.build();
+        interceptor.initialize();
+        return interceptor;
+    }
+
+    private PartitionInterceptor getInterceptor(String keys, int partitions) {
+        Map<String, String> properties = new HashMap<String, String>();
+        properties.put("keys", keys);
+        properties.put("partitions", Integer.toString(partitions));
+        return getInterceptor(properties);
+    }
+
+    private Event getEvent(String body) {
+        Event event = new SimpleEvent();
+        event.setBody(body.getBytes(Charsets.UTF_8));
+        event.setHeaders(new HashMap<String, String>());
+        return event;
+    }
+
+    private String partition(PartitionInterceptor interceptor, String body) {
+        return interceptor.intercept(getEvent(body)).getHeaders().get("partition");
+    }
+
+    @Test
+    public void testSameKeySamePartition() {
+        PartitionInterceptor interceptor = getInterceptor("$.tenant $.user.id", 16);
+        String partition = partition(interceptor, "{\"tenant\":\"acme\",\"user\":{\"id\":42},\"n\":1}");
+        assertEquals(partition, partition(interceptor, "{\"n\":2, \"user\" : {\"id\" : 42}, \"tenant\" : \"acme\"}"));
+        assertEquals(partition, partition(getInterceptor("$.tenant $.user.id", 16), "{\"tenant\":\"acme\",\"user\":{\"id\":42}}"));
+        assertEquals(2, interceptor.counter.getEventExtractedCount());
+    }
+
+    @Test
+    public void testDistribution() {
+        PartitionInterceptor interceptor = getInterceptor("$.id", 8);
+        int[] counts = new int[8];
+        for (int i = 0; i < 10000; i++) {
+            counts[Integer.parseInt(partition(interceptor, "{\"id\":\"user-" + i + "\"}"))]++;
+        }
+        for (int count : counts) {
+            assertTrue(String.valueOf(count), count > 1100 && count < 1400);
+        }
+    }
+
+    @Test
+    public void testMissingKeys() {
+        PartitionInterceptor interceptor = getInterceptor("$.a $.b", 4);
+        assertNull(partition(interceptor, "{\"c\":1}"));
+        assertEquals(1, interceptor.counter.getEventMissingCount());
+
+        // one of the keys is enough, and a missing key differs from any value
+        Set<String> partitions = new HashSet<String>();
+        for (int i = 0; i < 20; i++) {
+            partitions.add(partition(interceptor, "{\"a\":" + i + "}"));
+        }
+        assertTrue(partitions.size() > 1);
+    }
+
+    @Test
+    public void testHotKeySpread() {
+        Map<String, String> properties = new HashMap<String, String>();
+        properties.put("keys", "$.tenant");
+        properties.put("partitions", "16");
+        properties.put("header", "p");
+        properties.put("hotKeySpread", "4");
+        PartitionInterceptor interceptor = getInterceptor(properties);
+        Set<String> hot = new HashSet<String>();
+        for (int i = 0; i < 2000; i++) {
+            hot.add(interceptor.intercept(getEvent("{\"tenant\":\"big\"}")).getHeaders().get("p"));
+            interceptor.intercept(getEvent("{\"tenant\":\"t" + i + "\"}"));
+        }
+        assertTrue(hot.toString(), hot.size() > 1 && hot.size() <= 4);
+
+        PartitionInterceptor plain = getInterceptor("$.tenant", 16);
+        Set<String> cold = new HashSet<String>();
+        for (int i = 0; i < 2000; i++) {
+            cold.add(partition(plain, "{\"tenant\":\"big\"}"));
+        }
+        assertEquals(1, cold.size());
+    }
+
+    @Test
+    public void testMalformedBodies() {
+        PartitionInterceptor interceptor = getInterceptor("$.missing", 4);
+        assertNull(partition(interceptor, "{\"a\":"));
+        assertEquals(1, interceptor.counter.getEventMalformedCount());
+
+        Map<String, String> properties = new HashMap<String, String>();
+        properties.put("keys", "$.missing");
+        properties.put("partitions", "4");
+        properties.put("onFailure", "tag");
+        Event event = getInterceptor(properties).intercept(getEvent("[1,"));
+        assertEquals(PartitionInterceptor.REASON_MALFORMED, event.getHeaders().get("interceptor_error"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testComplexKey() {
+        getInterceptor("$..id", 4);
+    }
+
+    @Test
+    public void testHashOfRange() {
+        byte[] body = "xx{\"id\":\"some longer value\"}yy".getBytes(Charsets.UTF_8);
+        byte[] copy = "{\"id\":\"some longer value\"}".getBytes(Charsets.UTF_8);
+        assertEquals(ByteHash.hash(copy, 0, copy.length), ByteHash.hash(body, 2, body.length - 2));
+        assertFalse(ByteHash.hash(copy, 0, copy.length) == ByteHash.hash(copy, 0, copy.length - 1));
+        for (int n : new int[]{1, 7, 1000}) {
+            int p = ByteHash.reduce(-1L, n);
+            assertTrue(p >= 0 && p < n);
+        }
+    }
+}
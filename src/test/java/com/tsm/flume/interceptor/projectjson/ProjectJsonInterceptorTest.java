@@ -0,0 +1,113 @@
+package com.tsm.flume.interceptor.projectjson;
+
+import com.google.common.base.Charsets;
+import org.apache.flume.Context;
+import org.apache.flume.Event;
+import org.apache.flume.event.SimpleEvent;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertSame;
+
+@RunWith(JUnit4.class)
+public class ProjectJsonInterceptorTest {
+
+    private static final String BODY = "{ \"pageViewId\" : \"p1\", \"junk\": [1, {\"x\": 2}],"
+            + " \"user\": {\"id\": 7, \"agent\": \"Mozilla/5.0 (X11; Linux)\", \"geo\": {\"lat\": 1.5}},"
+            + " \"quote\\\"d\": \"a\\\"b\", \"n\": null }";
+
+    private ProjectJsonInterceptor getInterceptor(String property, String paths) {
+        Map<String, String> properties = new HashMap<String, String>();
+        properties.put(property, paths);
+        properties.put("metrics", "true");
+        Context context = new Context(properties);
+        ProjectJsonInterceptor.Builder builder = new ProjectJsonInterceptor.Builder();
+        builder.configure(context);
+        ProjectJsonInterceptor interceptor = (ProjectJsonInterceptor) builder.build();
+        interceptor.initialize();
+        return interceptor;
+    }
+
+    private Event getEvent(String body) {
+        Event event = new SimpleEvent();
+        event.setBody(body.getBytes(Charsets.UTF_8));
+        event.setHeaders(new HashMap<String, String>());
+        return event;
+    }
+
+    private String project(ProjectJsonInterceptor interceptor, String body) {
+        return new String(interceptor.intercept(getEvent(body)).getBody(), Charsets.UTF_8);
+    }
+
+    @Test
+    public void testInclude() {
+        ProjectJsonInterceptor interceptor = getInterceptor("include", "$.pageViewId $.user.id $['quote\"d'] $.missing.x");
+        assertEquals("{\"pageViewId\":\"p1\",\"user\":{\"id\":7},\"quote\\\"d\":\"a\\\"b\"}", project(interceptor, BODY));
+        assertEquals("{}", project(interceptor, "{\"other\":1}"));
+        assertEquals("{\"pageViewId\":[1,2]}", project(interceptor, "{\"user\":{\"name\":\"x\"},\"pageViewId\":[1,2]}"));
+        assertEquals(3, interceptor.counter.getEventRewrittenCount());
+    }
+
+    @Test
+    public void testIncludeWholeSubtree() {
+        ProjectJsonInterceptor interceptor = getInterceptor("include", "$.user $.user.id");
+        assertEquals("{\"user\":{\"id\": 7, \"agent\": \"Mozilla/5.0 (X11; Linux)\", \"geo\": {\"lat\": 1.5}}}",
+                project(interceptor, BODY));
+    }
+
+    @Test
+    public void testExclude() {
+        ProjectJsonInterceptor interceptor = getInterceptor("exclude", "$.junk $.user.agent $.user.geo.lat $.n.x");
+        assertEquals("{\"pageViewId\":\"p1\",\"user\":{\"id\":7,\"geo\":{}},\"quote\\\"d\":\"a\\\"b\",\"n\":null}",
+                project(interceptor, BODY));
+    }
+
+    @Test
+    public void testUnchangedBodyIsNotCopied() {
+        ProjectJsonInterceptor interceptor = getInterceptor("exclude", "$.junk");
+        Event event = getEvent("{\"a\":1,\"b\":{\"c\":[1,2]}}");
+        byte[] body = event.getBody();
+        assertSame(body, interceptor.intercept(event).getBody());
+        assertEquals(0, interceptor.counter.getEventRewrittenCount());
+    }
+
+    @Test
+    public void testLargeBodies() {
+        StringBuilder sb = new StringBuilder("{");
+        for (int i = 0; i < 2000; i++) {
+            sb.append("\"f").append(i).append("\":\"value ").append(i).append("\",");
+        }
+        sb.append("\"id\":1}");
+        assertEquals("{\"f1999\":\"value 1999\",\"id\":1}", project(getInterceptor("include", "$.id $.f1999"), sb.toString()));
+    }
+
+    @Test
+    public void testMalformedBodies() {
+        ProjectJsonInterceptor interceptor = getInterceptor("include", "$.a");
+        for (String body : new String[]{"[1]", "{\"a\":1", "{\"a\" 1}", "{\"a\":1} x", "{\"a\\q\":1}", ""}) {
+            assertEquals(body, project(interceptor, body));
+        }
+        assertEquals(6, interceptor.counter.getEventMalformedCount());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testArrayPath() {
+        getInterceptor("include", "$.list[0]");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testIncludeAndExclude() {
+        Map<String, String> properties = new HashMap<String, String>();
+        properties.put("include", "$.a");
+        properties.put("exclude", "$.b");
+        ProjectJsonInterceptor.Builder builder = new ProjectJsonInterceptor.Builder();
+        builder.configure(new Context(properties));
+        builder.build();
+    }
+}
@@ -0,0 +1,378 @@
+package com.tsm.flume.interceptor.soak;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Preconditions;
+import com.google.gson.GsonBuilder;
+import org.apache.flume.Channel;
+import org.apache.flume.ChannelSelector;
+import org.apache.flume.Context;
+import org.apache.flume.Event;
+import org.apache.flume.Transaction;
+import org.apache.flume.channel.ChannelProcessor;
+import org.apache.flume.channel.MemoryChannel;
+import org.apache.flume.channel.ReplicatingChannelSelector;
+import org.apache.flume.conf.Configurables;
+import org.apache.flume.event.SimpleEvent;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Random;
+
+/**
+ * Replays a synthetic corpus through the source interceptors of an agent
+ * configuration into an embedded {@link MemoryChannel}, the way a source's
+ * {@link ChannelProcessor} does, and reports throughput, per-batch latency
+ * and allocation.
+ * <p>
+ * The agent file is a regular Flume properties file; only the first channel
+ * and the interceptors of the first source are read. The channel is drained
+ * after every batch, outside of the measured time; its <code>keep-alive</code>
+ * is set to 0 so that taking from the empty channel does not wait.
+ * <p>
+ * Allocation is read from the HotSpot per-thread allocation counter of the
+ * replaying thread, so it misses work done on other threads, for example by
+ * interceptors running with <code>parallel = true</code>.
+ * <p>
+ * Settings are read from system properties prefixed with <code>soak.</code>,
+ * see {@link #fromSystemProperties()}.
+ */
+public class SoakHarness {
+
+    public static final String DEFAULT_CONF = "soak/soak-agent.conf";
+
+    String conf = DEFAULT_CONF;
+    String agent = "a1";
+    int events = 200000;
+    int warmupEvents = 20000;
+    int batchSize = 100;
+    int corpusSize = 10000;
+    double malformed = 0.02;
+    double pretty = 0.1;
+    double heartbeat = 0.3;
+    double huge = 0.001;
+    int hugeBytes = 256 * 1024;
+    long seed = 42;
+    String name = "soak";
+    File outputDir = new File("target/soak");
+
+    /**
+     * Reads <code>soak.conf</code> (a file, or a resource on the test class
+     * path), <code>soak.agent</code>, <code>soak.events</code>,
+     * <code>soak.warmupEvents</code>, <code>soak.batchSize</code>,
+     * <code>soak.corpusSize</code>, the corpus mix <code>soak.malformed</code>,
+     * <code>soak.pretty</code>, <code>soak.heartbeat</code> and
+     * <code>soak.huge</code> (fractions of events), <code>soak.hugeBytes</code>,
+     * <code>soak.seed</code>, and the output <code>soak.name</code> and
+     * <code>soak.outputDir</code>.
+     */
+    public static SoakHarness fromSystemProperties() {
+        SoakHarness harness = new SoakHarness();
+        harness.conf = System.getProperty("soak.conf", harness.conf);
+        harness.agent = System.getProperty("soak.agent", harness.agent);
+        harness.events = Integer.getInteger("soak.events", harness.events);
+        harness.warmupEvents = Integer.getInteger("soak.warmupEvents", harness.events / 10);
+        harness.batchSize = Integer.getInteger("soak.batchSize", harness.batchSize);
+        harness.corpusSize = Integer.getInteger("soak.corpusSize", harness.corpusSize);
+        harness.malformed = doubleProperty("soak.malformed", harness.malformed);
+        harness.pretty = doubleProperty("soak.pretty", harness.pretty);
+        harness.heartbeat = doubleProperty("soak.heartbeat", harness.heartbeat);
+        harness.huge = doubleProperty("soak.huge", harness.huge);
+        harness.hugeBytes = Integer.getInteger("soak.hugeBytes", harness.hugeBytes);
+        harness.seed = Long.getLong("soak.seed", harness.seed);
+        harness.name = System.getProperty("soak.name", harness.name);
+        harness.outputDir = new File(System.getProperty("soak.outputDir", harness.outputDir.getPath()));
+        return harness;
+    }
+
+    private static double doubleProperty(String key, double defaultValue) {
+        String value = System.getProperty(key);
+        return value == null ? defaultValue : Double.parseDouble(value);
+    }
+
+    public static void main(String[] args) throws IOException {
+        SoakHarness harness = fromSystemProperties();
+        Map<String, Object> result = harness.run();
+        System.out.println(harness.write(result));
+    }
+
+    /**
+     * Runs the warmup and the measured replay.
+     *
+     * @return the settings and the results, in the order they are written out
+     */
+    public Map<String, Object> run() throws IOException {
+        Preconditions.checkArgument(batchSize > 0 && events >= batchSize, "events must be at least one batch");
+        Properties properties = load(conf);
+        Context agentContext = new Context(toMap(properties));
+        Context agentProperties = new Context(agentContext.getSubProperties(agent + "."));
+        String sourceName = first(agentProperties.getString("sources"), "sources");
+        String channelName = first(agentProperties.getString("channels"), "channels");
+
+        Map<String, String> channelProperties = agentProperties.getSubProperties("channels." + channelName + ".");
+        Preconditions.checkArgument("memory".equalsIgnoreCase(channelProperties.get("type")),
+                "channel " + channelName + " must be a memory channel");
+        Context channelContext = new Context(channelProperties);
+        // a batch is put in one transaction
+        int transactionCapacity = Math.max(batchSize, channelContext.getInteger("transactionCapacity", batchSize));
+        channelContext.put("transactionCapacity", Integer.toString(transactionCapacity));
+        channelContext.put("capacity", Integer.toString(Math.max(transactionCapacity,
+                channelContext.getInteger("capacity", transactionCapacity))));
+        // the drain takes until the channel is empty, which must not wait for more events
+        channelContext.put("keep-alive", "0");
+        MemoryChannel channel = new MemoryChannel();
+        channel.setName(channelName);
+        Configurables.configure(channel, channelContext);
+        channel.start();
+
+        ChannelSelector selector = new ReplicatingChannelSelector();
+        selector.setChannels(Collections.<Channel>singletonList(channel));
+        ChannelProcessor processor = new ChannelProcessor(selector);
+        processor.configure(new Context(agentProperties.getSubProperties("sources." + sourceName + ".")));
+        processor.initialize();
+
+        Corpus corpus = new Corpus(this);
+        com.sun.management.ThreadMXBean allocation = allocationCounter();
+        long threadId = Thread.currentThread().getId();
+
+        int cursor = replay(processor, channel, corpus, 0, warmupEvents, null, null);
+
+        int batches = events / batchSize;
+        long[] latencies = new long[batches];
+        long allocatedBefore = allocation != null ? allocation.getThreadAllocatedBytes(threadId) : 0;
+        Stats stats = new Stats(latencies);
+        replay(processor, channel, corpus, cursor, batches * batchSize, stats, allocation);
+        long allocated = allocation != null
+                ? allocation.getThreadAllocatedBytes(threadId) - allocatedBefore - stats.drainAllocated
+                : -1;
+
+        processor.close();
+        channel.stop();
+
+        int measured = batches * batchSize;
+        Arrays.sort(latencies);
+        Map<String, Object> settings = new LinkedHashMap<String, Object>();
+        settings.put("conf", conf);
+        settings.put("events", measured);
+        settings.put("warmupEvents", warmupEvents);
+        settings.put("batchSize", batchSize);
+        settings.put("corpusSize", corpusSize);
+        settings.put("malformed", malformed);
+        settings.put("pretty", pretty);
+        settings.put("heartbeat", heartbeat);
+        settings.put("huge", huge);
+        settings.put("hugeBytes", hugeBytes);
+        settings.put("seed", seed);
+
+        Map<String, Object> result = new LinkedHashMap<String, Object>();
+        result.put("name", name);
+        result.put("java", System.getProperty("java.version"));
+        result.put("settings", settings);
+        result.put("eventsPerSecond", Math.round(measured / (stats.nanos / 1e9)));
+        result.put("bytesInPerEvent", stats.bytesIn / measured);
+        result.put("eventsOut", stats.eventsOut);
+        result.put("bytesOutPerEvent", stats.eventsOut == 0 ? 0 : stats.bytesOut / stats.eventsOut);
+        result.put("batchLatencyMicrosP50", percentile(latencies, 0.5));
+        result.put("batchLatencyMicrosP99", percentile(latencies, 0.99));
+        result.put("batchLatencyMicrosP999", percentile(latencies, 0.999));
+        result.put("batchLatencyMicrosMax", latencies[latencies.length - 1] / 1000.0);
+        result.put("allocatedBytesPerEvent", allocated < 0 ? null : (Object) (allocated / measured));
+        return result;
+    }
+
+    /**
+     * Writes the result as JSON to <code>outputDir/name.json</code>.
+     *
+     * @return the written file
+     */
+    public File write(Map<String, Object> result) throws IOException {
+        if (!outputDir.isDirectory() && !outputDir.mkdirs()) {
+            throw new IOException("Cannot create " + outputDir);
+        }
+        File file = new File(outputDir, name + ".json");
+        Writer writer = new OutputStreamWriter(new FileOutputStream(file), Charsets.UTF_8);
+        try {
+            new GsonBuilder().setPrettyPrinting().serializeNulls().create().toJson(result, writer);
+        } finally {
+            writer.close();
+        }
+        return file;
+    }
+
+    /**
+     * @return the HotSpot allocation counter, or null if the JVM has none
+     */
+    private static com.sun.management.ThreadMXBean allocationCounter() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (threads instanceof com.sun.management.ThreadMXBean
+                && ((com.sun.management.ThreadMXBean) threads).isThreadAllocatedMemorySupported()) {
+            return (com.sun.management.ThreadMXBean) threads;
+        }
+        return null;
+    }
+
+    private int replay(ChannelProcessor processor, Channel channel, Corpus corpus, int cursor, int count, Stats stats,
+                       com.sun.management.ThreadMXBean allocation) {
+        long threadId = Thread.currentThread().getId();
+        List<Event> batch = new ArrayList<Event>(batchSize);
+        int batchIndex = 0;
+        for (int done = 0; done < count; done += batchSize) {
+            batch.clear();
+            for (int i = 0; i < batchSize; i++) {
+                byte[] body = corpus.bodies[cursor];
+                cursor = (cursor + 1) % corpus.bodies.length;
+                Event event = new SimpleEvent();
+                event.setBody(body);
+                event.setHeaders(new HashMap<String, String>());
+                batch.add(event);
+                if (stats != null) {
+                    stats.bytesIn += body.length;
+                }
+            }
+            long start = System.nanoTime();
+            processor.processEventBatch(batch);
+            long elapsed = System.nanoTime() - start;
+
+            long drainStart = stats != null && allocation != null ? allocation.getThreadAllocatedBytes(threadId) : 0;
+            Transaction transaction = channel.getTransaction();
+            transaction.begin();
+            // a batch puts at most batchSize events, and taking more would overflow the transaction;
+            // with no keep-alive, take() returns null as soon as the channel is empty
+            Event event;
+            for (int i = 0; i < batchSize && (event = channel.take()) != null; i++) {
+                if (stats != null) {
+                    stats.eventsOut++;
+                    stats.bytesOut += event.getBody().length;
+                }
+            }
+            transaction.commit();
+            transaction.close();
+            if (stats != null) {
+                stats.nanos += elapsed;
+                stats.latencies[batchIndex++] = elapsed;
+                if (allocation != null) {
+                    stats.drainAllocated += allocation.getThreadAllocatedBytes(threadId) - drainStart;
+                }
+            }
+        }
+        return cursor;
+    }
+
+    private static double percentile(long[] sorted, double p) {
+        int index = (int) Math.ceil(p * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(index, sorted.length - 1))] / 1000.0;
+    }
+
+    private static Properties load(String conf) throws IOException {
+        File file = new File(conf);
+        InputStream in = file.isFile() ? new FileInputStream(file) : SoakHarness.class.getClassLoader().getResourceAsStream(conf);
+        if (in == null) {
+            throw new IOException("No agent configuration file or resource " + conf);
+        }
+        try {
+            Properties properties = new Properties();
+            properties.load(in);
+            return properties;
+        } finally {
+            in.close();
+        }
+    }
+
+    private static Map<String, String> toMap(Properties properties) {
+        Map<String, String> map = new HashMap<String, String>();
+        for (String key : properties.stringPropertyNames()) {
+            map.put(key, properties.getProperty(key).trim());
+        }
+        return map;
+    }
+
+    private static String first(String names, String what) {
+        Preconditions.checkArgument(names != null && !names.trim().isEmpty(), "No " + what + " configured");
+        return names.trim().split("\\s+")[0];
+    }
+
+    private static final class Stats {
+        final long[] latencies;
+        long nanos;
+        long bytesIn;
+        long eventsOut;
+        long bytesOut;
+        long drainAllocated;
+
+        Stats(long[] latencies) {
+            this.latencies = latencies;
+        }
+    }
+
+    /**
+     * Synthetic page-view records, generated once and replayed in a loop.
+     * Events share the corpus arrays, which interceptors replace rather than modify.
+     */
+    static final class Corpus {
+
+        private static final String[] ACTIONS = {"view", "click", "scroll", "purchase"};
+        private static final String[] LEVELS = {"debug", "info", "warn", "error"};
+
+        final byte[][] bodies;
+        private final double heartbeat;
+
+        Corpus(SoakHarness harness) {
+            heartbeat = harness.heartbeat;
+            Random random = new Random(harness.seed);
+            bodies = new byte[harness.corpusSize][];
+            for (int i = 0; i < bodies.length; i++) {
+                double kind = random.nextDouble();
+                String body;
+                if (kind < harness.malformed) {
+                    String record = record(random, i, false, 0);
+                    body = record.substring(0, 1 + random.nextInt(record.length() - 1));
+                } else if (kind < harness.malformed + harness.huge) {
+                    body = record(random, i, false, harness.hugeBytes);
+                } else if (kind < harness.malformed + harness.huge + harness.pretty) {
+                    body = record(random, i, true, 0);
+                } else {
+                    body = record(random, i, false, 0);
+                }
+                bodies[i] = body.getBytes(Charsets.UTF_8);
+            }
+        }
+
+        private String record(Random random, int i, boolean pretty, int padding) {
+            String nl = pretty ? "\n  " : "";
+            String sep = pretty ? ": " : ":";
+            String action = random.nextDouble() < heartbeat ? "heartbeat" : ACTIONS[random.nextInt(ACTIONS.length)];
+            StringBuilder sb = new StringBuilder(256 + padding);
+            sb.append('{').append(nl).append("\"pageViewId\"").append(sep).append("\"pv-").append(i).append("\",")
+                    .append(nl).append("\"logtime\"").append(sep).append("\"2019-03-")
+                    .append(10 + random.nextInt(18)).append("T10:").append(10 + random.nextInt(50)).append(":00+0800\",")
+                    .append(nl).append("\"action\"").append(sep).append('"').append(action).append("\",")
+                    .append(nl).append("\"level\"").append(sep).append('"').append(LEVELS[random.nextInt(LEVELS.length)]).append("\",")
+                    .append(nl).append("\"user\"").append(sep).append("{\"id\"").append(sep).append(random.nextInt(100000))
+                    .append(",\"agent\"").append(sep).append("\"Mozilla/5.0 (X11; Linux x86_64) caf\\u00e9\"},")
+                    .append(nl).append("\"tags\"").append(sep).append("[\"a\",\"b\",").append(random.nextInt(10)).append("],")
+                    .append(nl).append("\"ms\"").append(sep).append(random.nextInt(5000)).append('.').append(random.nextInt(10));
+            if (padding > 0) {
+                sb.append(',').append(nl).append("\"payload\"").append(sep).append('"');
+                while (sb.length() < padding) {
+                    sb.append("lorem ipsum dolor sit amet ");
+                }
+                sb.append('"');
+            }
+            return sb.append(pretty ? "\n}" : "}").toString();
+        }
+    }
+}
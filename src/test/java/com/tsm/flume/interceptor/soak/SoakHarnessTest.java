@@ -0,0 +1,47 @@
+package com.tsm.flume.interceptor.soak;
+
+import java.io.File;
+import java.util.Map;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * Runs a short soak as a smoke test. Pass <code>-Dsoak.events=...</code> and the
+ * other <code>soak.*</code> properties, see {@link SoakHarness#fromSystemProperties()},
+ * for a full run:
+ * <pre>
+ * mvn test -Dtest=SoakHarnessTest -Dsoak.events=2000000 -Dsoak.name=baseline
+ * </pre>
+ */
+@RunWith(JUnit4.class)
+public class SoakHarnessTest {
+
+    @Test
+    public void testSoak() throws Exception {
+        SoakHarness harness = SoakHarness.fromSystemProperties();
+        if (System.getProperty("soak.events") == null) {
+            harness.events = 5000;
+            harness.warmupEvents = 1000;
+            harness.corpusSize = 1000;
+            harness.name = "soak-smoke";
+        }
+        Map<String, Object> result = harness.run();
+        File file = harness.write(result);
+
+        assertTrue(file.isFile());
+        assertEquals(harness.name, result.get("name"));
+        assertTrue((Long) result.get("eventsPerSecond") > 0);
+        long eventsOut = (Long) result.get("eventsOut");
+        assertTrue(eventsOut > 0 && eventsOut <= harness.events);
+        if (SoakHarness.DEFAULT_CONF.equals(harness.conf)) {
+            // heartbeats are filtered out by the default agent
+            assertTrue(eventsOut < harness.events);
+        }
+        assertTrue((Double) result.get("batchLatencyMicrosP999") >= (Double) result.get("batchLatencyMicrosP50"));
+    }
+}
@@ -0,0 +1,145 @@
+package com.tsm.flume.interceptor.splitjson;
+
+import com.google.common.base.Charsets;
+import org.apache.flume.Context;
+import org.apache.flume.Event;
+import org.apache.flume.event.SimpleEvent;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertSame;
+import static junit.framework.Assert.assertTrue;
+
+@RunWith(JUnit4.class)
+public class SplitJsonInterceptorTest {
+
+    private SplitJsonInterceptor getInterceptor(Map<String, String> properties) {
+        Context context = new Context(properties);
+        context.put("metrics", "true");
+        SplitJsonInterceptor.Builder builder = new SplitJsonInterceptor.Builder();
+        builder.configure(context);
+        SplitJsonInterceptor interceptor = (SplitJsonInterceptor) builder.build();
+        interceptor.initialize();
+        return interceptor;
+    }
+
+    private SplitJsonInterceptor getInterceptor() {
+        return getInterceptor(new HashMap<String, String>());
+    }
+
+    private Event getEvent(String body) {
+        Map<String, String> headers = new HashMap<String, String>();
+        headers.put("host", "agent-01");
+        Event event = new SimpleEvent();
+        event.setBody(body.getBytes(Charsets.UTF_8));
+        event.setHeaders(headers);
+        return event;
+    }
+
+    private List<String> split(SplitJsonInterceptor interceptor, String... bodies) {
+        List<Event> events = new ArrayList<Event>();
+        for (String body : bodies) {
+            events.add(getEvent(body));
+        }
+        List<String> out = new ArrayList<String>();
+        for (Event event : interceptor.intercept(events)) {
+            out.add(new String(event.getBody(), Charsets.UTF_8));
+        }
+        return out;
+    }
+
+    @Test
+    public void testNewlineDelimited() {
+        assertEquals(Arrays.asList("{\"a\":1}", "{\"a\":\"x\\\"}\\n{\"}", "{ \"b\" : [1, 2] }"),
+                split(getInterceptor(), "{\"a\":1}\n{\"a\":\"x\\\"}\\n{\"}\r\n{ \"b\" : [1, 2] }\n"));
+    }
+
+    @Test
+    public void testConcatenatedRecords() {
+        assertEquals(Arrays.asList("{\"a\":1}", "{\"a\":2}", "\"s\"", "3"),
+                split(getInterceptor(), "{\"a\":1}{\"a\":2}\"s\" 3"));
+    }
+
+    @Test
+    public void testArray() {
+        assertEquals(Arrays.asList("{\"a\":[1]}", "{\"a\":2}", "null", "{\"c\":3}"),
+                split(getInterceptor(), " [ {\"a\":[1]} , {\"a\":2},null ]\n[{\"c\":3}]"));
+
+        Map<String, String> properties = new HashMap<String, String>();
+        properties.put("splitArrays", "false");
+        assertEquals(Arrays.asList("[{\"a\":1}]", "[2]"), split(getInterceptor(properties), "[{\"a\":1}] [2]"));
+    }
+
+    @Test
+    public void testHeadersAreCopied() {
+        Map<String, String> properties = new HashMap<String, String>();
+        properties.put("indexHeader", "record");
+        SplitJsonInterceptor interceptor = getInterceptor(properties);
+        List<Event> events = interceptor.intercept(Collections.singletonList(getEvent("[{\"a\":1},{\"a\":2}]")));
+        assertEquals(2, events.size());
+        for (int i = 0; i < events.size(); i++) {
+            assertEquals("agent-01", events.get(i).getHeaders().get("host"));
+            assertEquals(Integer.toString(i), events.get(i).getHeaders().get("record"));
+        }
+        events.get(0).getHeaders().put("host", "changed");
+        assertEquals("agent-01", events.get(1).getHeaders().get("host"));
+        assertEquals(2, interceptor.counter.getEventRewrittenCount());
+    }
+
+    @Test
+    public void testSingleRecordIsPassedOn() {
+        SplitJsonInterceptor interceptor = getInterceptor();
+        Event event = getEvent("{\"a\":[1,2]}\n");
+        List<Event> events = interceptor.intercept(Collections.singletonList(event));
+        assertEquals(1, events.size());
+        assertSame(event, events.get(0));
+        assertSame(event, interceptor.intercept(event));
+        assertEquals(0, interceptor.counter.getEventRewrittenCount());
+    }
+
+    @Test
+    public void testEmptyBodies() {
+        SplitJsonInterceptor interceptor = getInterceptor();
+        assertEquals(Collections.<String>emptyList(), split(interceptor, "[]", " \n", "[ ]"));
+        assertEquals(3, interceptor.counter.getEventDroppedCount());
+    }
+
+    @Test
+    public void testMalformedBodies() {
+        SplitJsonInterceptor interceptor = getInterceptor();
+        assertEquals(Arrays.asList("{\"a\":1}\n{\"a\":", "[1,]", "[1 2]", "{\"a\":3}"),
+                split(interceptor, "{\"a\":1}\n{\"a\":", "[1,]", "[1 2]", "{\"a\":3}"));
+        assertEquals(3, interceptor.counter.getEventMalformedCount());
+
+        Map<String, String> properties = new HashMap<String, String>();
+        properties.put("onFailure", "tag");
+        List<Event> events = getInterceptor(properties).intercept(Collections.singletonList(getEvent("[1,")));
+        assertEquals(SplitJsonInterceptor.REASON_MALFORMED, events.get(0).getHeaders().get("interceptor_error"));
+    }
+
+    @Test
+    public void testRecords() {
+        SplitJsonInterceptor.Ranges ranges = new SplitJsonInterceptor.Ranges();
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            sb.append("{\"i\":").append(i).append("}\n");
+        }
+        byte[] body = sb.toString().getBytes(Charsets.UTF_8);
+        assertTrue(SplitJsonInterceptor.records(body, true, ranges));
+        assertEquals(100, ranges.size);
+        assertFalse(ranges.fromArray);
+        assertEquals("{\"i\":99}", new String(body, ranges.bounds[198], ranges.bounds[199] - ranges.bounds[198], Charsets.UTF_8));
+        assertFalse(SplitJsonInterceptor.records("[".getBytes(Charsets.UTF_8), true, ranges));
+    }
+}
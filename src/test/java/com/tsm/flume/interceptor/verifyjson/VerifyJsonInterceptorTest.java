@@ -0,0 +1,127 @@
+package com.tsm.flume.interceptor.verifyjson;
+
+import com.google.common.base.Charsets;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.apache.flume.Context;
+import org.apache.flume.Event;
+import org.apache.flume.event.JSONEvent;
+import org.apache.flume.event.SimpleEvent;
+import org.apache.flume.interceptor.Interceptor;
+
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.HashMap;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+
+@RunWith(JUnit4.class)
+public class VerifyJsonInterceptorTest {
+
+    private static final String[] VALIDATORS = {"gson", "structural"};
+
+    private Interceptor getInterceptor(Context context) {
+        VerifyJsonInterceptor.Builder builder = new VerifyJsonInterceptor.Builder();
+        builder.configure(context);
+        Interceptor interceptor = builder.build();
+        interceptor.initialize();
+        return interceptor;
+    }
+
+    private Context getContext(String validator) {
+        Context context = new Context();
+        context.put("validator", validator);
+        return context;
+    }
+
+    private Event getEvent(String body) {
+        Event event = new JSONEvent();
+        event.setBody(body.getBytes(Charsets.UTF_8));
+        event.setHeaders(new HashMap<String, String>());
+        return event;
+    }
+
+    @Test
+    public void testValidBodyIsNotChanged() {
+        for (String validator : VALIDATORS) {
+            String body = "{\"action\":\"pageview\",\"params\":{\"v1\":\"1\"}}";
+            Event event = getInterceptor(getContext(validator)).intercept(getEvent(body));
+
+            assertEquals(validator, body, new String(event.getBody(), Charsets.UTF_8));
+            assertFalse(validator, event.getHeaders().containsKey("verify_json"));
+        }
+    }
+
+    @Test
+    public void testInvalidBodyIsWrapped() {
+        for (String validator : VALIDATORS) {
+            String body = "{ \"pageViewId\":\"4eae0122-052d-41ff-ac5c-120279891184\",";
+            Event event = getInterceptor(getContext(validator)).intercept(getEvent(body));
+
+            assertEquals(validator, "verify_error_", event.getHeaders().get("verify_json"));
+            JsonObject wrapped = new JsonParser().parse(new String(event.getBody(), Charsets.UTF_8)).getAsJsonObject();
+            assertEquals(validator, body, wrapped.get("event_json").getAsString());
+            assertTrue(validator, wrapped.has("time"));
+        }
+    }
+
+    @Test
+    public void testNonObjectBodyIsWrapped() {
+        for (String validator : VALIDATORS) {
+            Event event = getInterceptor(getContext(validator)).intercept(getEvent("[1,2,3]"));
+
+            assertEquals(validator, "verify_error_", event.getHeaders().get("verify_json"));
+        }
+    }
+
+    @Test
+    public void testEngines() {
+        for (String engine : new String[]{"bytes", "gson", "gson-stream", "jackson"}) {
+            Context context = new Context();
+            context.put("engine", engine);
+            Interceptor interceptor = getInterceptor(context);
+
+            Event valid = interceptor.intercept(getEvent("{\"a\":[1,{\"b\":null}]}"));
+            assertFalse(engine, valid.getHeaders().containsKey("verify_json"));
+            Event invalid = interceptor.intercept(getEvent("[1,{\"b\":null}]"));
+            assertEquals(engine, "verify_error_", invalid.getHeaders().get("verify_json"));
+        }
+    }
+
+    @Test
+    public void testWrappedBytesMatchGson() {
+        byte[][] bodies = {
+                "plain text".getBytes(Charsets.UTF_8),
+                "{\"a\":\"q\\\"\n\t\u0001\u2028 caf\u00e9 \ud83d\ude00</script>\"".getBytes(Charsets.UTF_8),
+                {'{', (byte) 0xC3, '"', (byte) 0xFF, (byte) 0xE2, (byte) 0x82},
+        };
+        for (String charset : new String[]{"utf-8", "iso-8859-1"}) {
+            Context context = new Context();
+            context.put("charset", charset);
+            Interceptor interceptor = getInterceptor(context);
+            for (byte[] body : bodies) {
+                Event event = new SimpleEvent();
+                event.setBody(body);
+                event.setHeaders(new HashMap<String, String>());
+                byte[] wrapped = interceptor.intercept(event).getBody();
+
+                String text = new String(wrapped, Charset.forName(charset));
+                JsonObject expected = new JsonObject();
+                expected.addProperty("time", new JsonParser().parse(text).getAsJsonObject().get("time").getAsString());
+                expected.addProperty("event_json", new String(body, Charset.forName(charset)));
+                assertTrue(charset, Arrays.equals(expected.toString().getBytes(Charset.forName(charset)), wrapped));
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownValidator() {
+        getInterceptor(getContext("fast"));
+    }
+}